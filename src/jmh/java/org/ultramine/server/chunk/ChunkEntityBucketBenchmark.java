@@ -0,0 +1,122 @@
+package org.ultramine.server.chunk;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.item.EntityItem;
+import net.minecraft.entity.passive.EntityCow;
+import net.minecraft.util.AxisAlignedBB;
+import net.minecraft.util.MathHelper;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ultramine.server.util.UnsafeUtil;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chunk part of {@code selectEntitiesWithinAABB(EntityItem.class, ...)}: item merge sized box around every item of
+ * a chunk holding 2k items in 3 sections, optionally with cows in the same sections. Bucketed path is
+ * {@link Chunk#getEntitiesOfTypeWithinAAAB}, vanilla path is the same loop over whole section lists. Entities are
+ * allocated without constructors, only position and bounding box are set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkEntityBucketBenchmark
+{
+	@Param({"2000"})
+	public int items;
+
+	/** Living entities in the same sections */
+	@Param({"0", "500"})
+	public int others;
+
+	private Chunk chunk;
+	private AxisAlignedBB[] boxes;
+	private final List<Entity> result = new ArrayList<>();
+
+	@Setup(Level.Trial)
+	public void setup() throws ReflectiveOperationException
+	{
+		Random random = new Random(42);
+		chunk = new Chunk(null, 0, 0);
+		boxes = new AxisAlignedBB[items];
+		int id = 1;
+		for(int i = 0; i < items; i++)
+		{
+			Entity item = entity(EntityItem.class, id++, random);
+			chunk.addEntity(item);
+			boxes[i] = item.boundingBox.expand(0.5D, 0.0D, 0.5D);
+		}
+		for(int i = 0; i < others; i++)
+			chunk.addEntity(entity(EntityCow.class, id++, random));
+	}
+
+	private static Entity entity(Class<? extends Entity> type, int id, Random random) throws ReflectiveOperationException
+	{
+		Entity entity = (Entity)UnsafeUtil.getUnsafe().allocateInstance(type);
+		entity.setEntityId(id);
+		Field boundingBox = Entity.class.getDeclaredField("boundingBox");
+		boundingBox.setAccessible(true);
+		boundingBox.set(entity, AxisAlignedBB.getBoundingBox(0, 0, 0, 0, 0, 0));
+		entity.width = 0.25F;
+		entity.height = 0.25F;
+		entity.setPosition(random.nextDouble() * 16, 48 + random.nextDouble() * 48, random.nextDouble() * 16);
+		return entity;
+	}
+
+	@Benchmark
+	public int buckets()
+	{
+		int found = 0;
+		for(AxisAlignedBB box : boxes)
+		{
+			result.clear();
+			chunk.getEntitiesOfTypeWithinAAAB(EntityItem.class, box, result, null);
+			found += result.size();
+		}
+		return found;
+	}
+
+	/** Chunk.getEntitiesOfTypeWithinAAAB before buckets */
+	@Benchmark
+	public int vanilla()
+	{
+		int found = 0;
+		for(AxisAlignedBB box : boxes)
+		{
+			result.clear();
+			int minSection = MathHelper.clamp_int(MathHelper.floor_double((box.minY - World.MAX_ENTITY_RADIUS) / 16.0D), 0, 15);
+			int maxSection = MathHelper.clamp_int(MathHelper.floor_double((box.maxY + World.MAX_ENTITY_RADIUS) / 16.0D), 0, 15);
+			for(int k = minSection; k <= maxSection; k++)
+			{
+				List list = chunk.entityLists[k];
+				for(int l = 0; l < list.size(); l++)
+				{
+					Entity entity = (Entity)list.get(l);
+					if(!entity.isDead && EntityItem.class.isAssignableFrom(entity.getClass()) && entity.boundingBox.intersectsWith(box))
+						result.add(entity);
+				}
+			}
+			found += result.size();
+		}
+		return found;
+	}
+}
@@ -0,0 +1,119 @@
+package org.ultramine.server.chunk;
+
+import net.minecraft.nbt.ChunkNbtReader;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.world.chunk.storage.AnvilChunkLoader;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ultramine.server.chunk.alloc.unsafe.UnsafeChunkAlloc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of uncompressed chunk data with 16 sections and some entities and tile entities: vanilla
+ * {@link CompressedStreamTools#read} against {@link ChunkNbtReader}, which also copies sections into slots of new
+ * {@link ExtendedBlockStorage}s (released after each operation). Run with {@code -prof gc} to compare heap
+ * allocation per chunk ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkNbtReadBenchmark
+{
+	private byte[] data;
+
+	@Setup(Level.Trial)
+	public void setup() throws ReflectiveOperationException, IOException
+	{
+		// Injected by ServiceInjectionTransformer on server
+		Field alloc = ExtendedBlockStorage.class.getDeclaredField("alloc");
+		alloc.setAccessible(true);
+		alloc.set(null, new UnsafeChunkAlloc());
+
+		Random random = new Random(42);
+		NBTTagList sections = new NBTTagList();
+		for(int y = 0; y < 16; y++)
+		{
+			NBTTagCompound section = new NBTTagCompound();
+			section.setByte("Y", (byte)y);
+			section.setByteArray("Blocks", bytes(random, 4096));
+			section.setByteArray("Data", bytes(random, 2048));
+			section.setByteArray("BlockLight", bytes(random, 2048));
+			section.setByteArray("SkyLight", bytes(random, 2048));
+			sections.appendTag(section);
+		}
+		NBTTagList entities = new NBTTagList();
+		NBTTagList tileEntities = new NBTTagList();
+		for(int i = 0; i < 16; i++)
+		{
+			NBTTagCompound entity = new NBTTagCompound();
+			entity.setString("id", "Item");
+			entity.setShort("Age", (short)i);
+			entities.appendTag(entity);
+			NBTTagCompound tile = new NBTTagCompound();
+			tile.setString("id", "Chest");
+			tile.setInteger("x", i);
+			tile.setInteger("y", 64);
+			tile.setInteger("z", i);
+			tileEntities.appendTag(tile);
+		}
+		NBTTagCompound level = new NBTTagCompound();
+		level.setInteger("xPos", 0);
+		level.setInteger("zPos", 0);
+		level.setLong("LastUpdate", 1000);
+		level.setByteArray("Biomes", bytes(random, 256));
+		level.setIntArray("HeightMap", new int[256]);
+		level.setTag("Sections", sections);
+		level.setTag("Entities", entities);
+		level.setTag("TileEntities", tileEntities);
+		NBTTagCompound root = new NBTTagCompound();
+		root.setTag("Level", level);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CompressedStreamTools.write(root, new DataOutputStream(out));
+		data = out.toByteArray();
+	}
+
+	private static byte[] bytes(Random random, int length)
+	{
+		byte[] arr = new byte[length];
+		random.nextBytes(arr);
+		return arr;
+	}
+
+	@Benchmark
+	public NBTTagCompound vanilla() throws IOException
+	{
+		return CompressedStreamTools.read(new DataInputStream(new ByteArrayInputStream(data)));
+	}
+
+	@Benchmark
+	public NBTTagCompound streaming() throws IOException
+	{
+		NBTTagCompound nbt = ChunkNbtReader.read(new DataInputStream(new ByteArrayInputStream(data)), true);
+		AnvilChunkLoader.releaseNbt(nbt);
+		return nbt;
+	}
+}
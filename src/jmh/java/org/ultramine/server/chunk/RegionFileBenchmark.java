@@ -0,0 +1,114 @@
+package org.ultramine.server.chunk;
+
+import net.minecraft.world.chunk.storage.RegionFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random read/write mix over one region file with all 1024 chunks saved, vanilla {@link RegionFile} against
+ * {@link NioRegionFile}. Chunk payloads are half random, half zeros, so they deflate to ~4-8 KB as real chunks do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class RegionFileBenchmark
+{
+	private static final int PAYLOADS = 16;
+
+	@Param({"vanilla", "nio"})
+	public String backend;
+
+	/** Share of operations, which are writes, in percents */
+	@Param({"10", "50"})
+	public int writePercent;
+
+	@Param({"8192", "16384"})
+	public int payloadSize;
+
+	private File file;
+	private RegionFile region;
+	private byte[][] payloads;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException
+	{
+		Random random = new Random(42);
+		payloads = new byte[PAYLOADS][payloadSize];
+		for(byte[] payload : payloads)
+		{
+			byte[] noise = new byte[payloadSize / 2];
+			random.nextBytes(noise);
+			System.arraycopy(noise, 0, payload, 0, noise.length);
+		}
+
+		file = File.createTempFile("region-bench", ".mca");
+		file.delete();
+		region = open();
+		for(int i = 0; i < 1024; i++)
+			write(i & 31, i >> 5, payloads[i % PAYLOADS]);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException
+	{
+		region.close();
+		file.delete();
+	}
+
+	private RegionFile open() throws IOException
+	{
+		return backend.equals("nio") ? new NioRegionFile(file) : new RegionFile(file);
+	}
+
+	@Benchmark
+	public void mixed(Blackhole bh) throws IOException
+	{
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int x = random.nextInt(32);
+		int z = random.nextInt(32);
+		if(random.nextInt(100) < writePercent)
+		{
+			write(x, z, payloads[random.nextInt(PAYLOADS)]);
+		}
+		else
+		{
+			DataInputStream in = region.getChunkDataInputStream(x, z);
+			byte[] buf = new byte[payloadSize];
+			in.readFully(buf);
+			in.close();
+			bh.consume(buf);
+		}
+	}
+
+	private void write(int x, int z, byte[] payload) throws IOException
+	{
+		DataOutputStream out = region.getChunkDataOutputStream(x, z);
+		out.write(payload);
+		out.close();
+	}
+}
@@ -0,0 +1,213 @@
+package org.ultramine.server.chunk.alloc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ultramine.server.chunk.alloc.palette.PaletteChunkAlloc;
+import org.ultramine.server.chunk.alloc.unsafe.UnsafeChunkAlloc;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code getBlockId} latency of {@link org.ultramine.server.chunk.alloc.palette.PaletteMemSlot} against Unsafe7 and
+ * Unsafe8 layouts, on generated sections resembling real ones: underground (stone, dirt, gravel, ores, caves, no
+ * sky light), surface (ground layers, grass, a tree, sky light above) and built (hundreds of distinct states,
+ * block light). Each operation reads 1024 random blocks of 64 sections. Memory per section, as reported by the
+ * allocator, is printed on tear down. Unsafe layout is selected by a system property, so Unsafe8 runs in its own
+ * fork.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MemSlotLayoutBenchmark
+{
+	private static final int SECTIONS = 64;
+	private static final int READS = 1024;
+
+	@State(Scope.Benchmark)
+	public abstract static class Sections
+	{
+		@Param({"underground", "surface", "built"})
+		public String section;
+
+		ChunkAllocService alloc;
+		MemSlot[] slots;
+		int[] coords;
+
+		abstract ChunkAllocService createAlloc();
+
+		@Setup(Level.Trial)
+		public void setup()
+		{
+			alloc = createAlloc();
+			Random random = new Random(42);
+			slots = new MemSlot[SECTIONS];
+			for(int i = 0; i < SECTIONS; i++)
+			{
+				slots[i] = alloc.allocateSlot();
+				fill(slots[i], section, random);
+			}
+			coords = new int[READS];
+			for(int i = 0; i < READS; i++)
+				coords[i] = random.nextInt(SECTIONS) << 12 | random.nextInt(4096);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown()
+		{
+			System.out.println(alloc.getClass().getSimpleName() + " " + section + ": " + alloc.getOffHeapUsedMemory() / SECTIONS + " bytes per section");
+			for(MemSlot slot : slots)
+				slot.release();
+		}
+	}
+
+	public static class UnsafeSections extends Sections
+	{
+		@Override
+		ChunkAllocService createAlloc()
+		{
+			return new UnsafeChunkAlloc();
+		}
+	}
+
+	public static class PaletteSections extends Sections
+	{
+		@Override
+		ChunkAllocService createAlloc()
+		{
+			return new PaletteChunkAlloc();
+		}
+	}
+
+	private static int readAll(Sections state)
+	{
+		MemSlot[] slots = state.slots;
+		int[] coords = state.coords;
+		int sum = 0;
+		for(int coord : coords)
+			sum += slots[coord >>> 12].getBlockId(coord & 15, coord >> 8 & 15, coord >> 4 & 15);
+		return sum;
+	}
+
+	@Benchmark
+	@Fork(1)
+	public int unsafe7(UnsafeSections state)
+	{
+		return readAll(state);
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "-Dorg.ultramine.chunk.alloc.layout=8")
+	public int unsafe8(UnsafeSections state)
+	{
+		return readAll(state);
+	}
+
+	@Benchmark
+	@Fork(1)
+	public int palette(PaletteSections state)
+	{
+		return readAll(state);
+	}
+
+	private static void fill(MemSlot slot, String section, Random random)
+	{
+		byte[] lsb = new byte[4096];
+		byte[] msb = new byte[2048];
+		byte[] meta = new byte[2048];
+		byte[] blockLight = new byte[2048];
+		byte[] skyLight = new byte[2048];
+		for(int y = 0; y < 16; y++)
+		{
+			for(int z = 0; z < 16; z++)
+			{
+				for(int x = 0; x < 16; x++)
+				{
+					int ind = y << 8 | z << 4 | x;
+					int state;
+					int sky = 0;
+					int light = 0;
+					switch(section)
+					{
+					case "underground":
+						state = underground(x, y, z, random);
+						break;
+					case "surface":
+						state = surface(x, y, z, random);
+						sky = y < 9 ? 0 : y == 9 ? 14 : 15;
+						break;
+					default:
+						state = 1 + random.nextInt(200) | random.nextInt(4) << 12;
+						light = random.nextInt(16);
+						sky = random.nextInt(16);
+						break;
+					}
+					lsb[ind] = (byte)state;
+					setNibble(msb, ind, state >> 8 & 15);
+					setNibble(meta, ind, state >> 12);
+					setNibble(blockLight, ind, light);
+					setNibble(skyLight, ind, sky);
+				}
+			}
+		}
+		slot.setData(lsb, msb, meta, blockLight, skyLight);
+	}
+
+	private static int underground(int x, int y, int z, Random random)
+	{
+		int dx = x - 8, dy = y - 6, dz = z - 5;
+		if(dx*dx + dy*dy*2 + dz*dz < 20)
+			return 0; // cave
+		int r = random.nextInt(1000);
+		if(r < 8)
+			return 16; // coal ore
+		if(r < 13)
+			return 15; // iron ore
+		if(r < 15)
+			return 73; // redstone ore
+		if(r < 16)
+			return 14; // gold ore
+		if(y > 11 && x < 6 && z < 6)
+			return 3; // dirt
+		if(y < 3 && x > 10 && z > 10)
+			return 13; // gravel
+		return 1;
+	}
+
+	private static int surface(int x, int y, int z, Random random)
+	{
+		if(x == 4 && z == 4 && y >= 10 && y < 14)
+			return 17; // oak log
+		if(y >= 12 && Math.abs(x - 4) <= 2 && Math.abs(z - 4) <= 2)
+			return 18; // oak leaves
+		if(y < 6)
+			return 1;
+		if(y < 9)
+			return 3;
+		if(y == 9)
+			return 2; // grass
+		if(y == 10 && random.nextInt(10) == 0)
+			return 31 | 1 << 12; // tall grass
+		return 0;
+	}
+
+	private static void setNibble(byte[] arr, int ind, int value)
+	{
+		if((ind & 1) == 0)
+			arr[ind >> 1] = (byte)(arr[ind >> 1] & 0xF0 | value);
+		else
+			arr[ind >> 1] = (byte)(arr[ind >> 1] & 0x0F | value << 4);
+	}
+}
@@ -0,0 +1,72 @@
+package org.ultramine.server.chunk.alloc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ultramine.server.chunk.alloc.unsafe.UnsafeChunkAlloc;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Threads allocating and releasing batches of slots of one {@link UnsafeChunkAlloc}, as chunk loading, snapshot
+ * and saving threads do. Allocator modes are selected by system properties read once, so every mode runs in its
+ * own fork: striped released lists (default), arena blocks and a single released list ({@code stripes=1}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+public class UnsafeChunkAllocBenchmark
+{
+	/** Slots allocated by thread before releasing them */
+	@Param({"1", "16"})
+	public int batch;
+
+	private final UnsafeChunkAlloc alloc = new UnsafeChunkAlloc();
+
+	@State(Scope.Thread)
+	public static class Batch
+	{
+		MemSlot[] slots = new MemSlot[16];
+	}
+
+	private void allocateAndRelease(Batch state)
+	{
+		MemSlot[] slots = state.slots;
+		for(int i = 0; i < batch; i++)
+			slots[i] = alloc.allocateSlot();
+		for(int i = 0; i < batch; i++)
+			slots[i].release();
+	}
+
+	@Benchmark
+	@Fork(1)
+	public void striped(Batch state)
+	{
+		allocateAndRelease(state);
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "-Dorg.ultramine.chunk.alloc.offheap.arenaMb=64")
+	public void arena(Batch state)
+	{
+		allocateAndRelease(state);
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "-Dorg.ultramine.chunk.alloc.offheap.stripes=1")
+	public void singleList(Batch state)
+	{
+		allocateAndRelease(state);
+	}
+}
@@ -0,0 +1,84 @@
+package org.ultramine.server.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import net.minecraft.network.EnumConnectionState;
+import net.minecraft.network.NetworkManager;
+import net.minecraft.network.NetworkStatistics;
+import net.minecraft.network.play.server.S3FPacketCustomPayload;
+import net.minecraft.util.MessageSerializer;
+import net.minecraft.util.MessageSerializer2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server outbound packet encoding on an {@link EmbeddedChannel} with pooled allocator: {@link MessageSerializer}
+ * followed by {@link MessageSerializer2} prefix encoder, which copies every packet, against in-place padded varint
+ * length prefix written by {@link MessageSerializer} itself ({@code -Dorg.ultramine.network.pooledDirect=true}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PacketEncoderBenchmark
+{
+	@Param({"prefix", "inPlace"})
+	public String encoder;
+
+	/** Custom payload packet data size */
+	@Param({"16", "512", "8192"})
+	public int payloadSize;
+
+	private EmbeddedChannel channel;
+	private S3FPacketCustomPayload packet;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		NetworkStatistics statistics = new NetworkStatistics();
+		channel = encoder.equals("inPlace")
+				? new EmbeddedChannel(new MessageSerializer(statistics, true))
+				: new EmbeddedChannel(new MessageSerializer2(), new MessageSerializer(statistics));
+		channel.config().setOption(ChannelOption.ALLOCATOR, NetworkTransport.getAllocator());
+		channel.attr(NetworkManager.attrKeyConnectionState).set(EnumConnectionState.PLAY);
+		channel.attr(NetworkManager.attrKeySendable).set(EnumConnectionState.PLAY.func_150754_b(false));
+
+		byte[] data = new byte[payloadSize];
+		new Random(42).nextBytes(data);
+		packet = new S3FPacketCustomPayload("UM|Bench", data);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		channel.finish();
+	}
+
+	@Benchmark
+	public int encode()
+	{
+		channel.writeOutbound(packet);
+		Object buf = channel.readOutbound();
+		int bytes = ((ByteBuf)buf).readableBytes();
+		ReferenceCountUtil.release(buf);
+		return bytes;
+	}
+}
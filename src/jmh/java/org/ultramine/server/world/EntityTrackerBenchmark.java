@@ -0,0 +1,157 @@
+package org.ultramine.server.world;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityTracker;
+import net.minecraft.entity.EntityTrackerEntry;
+import net.minecraft.entity.item.EntityItem;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.openhft.koloboke.collect.map.hash.HashIntObjMaps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ultramine.server.chunk.ChunkHash;
+import org.ultramine.server.util.UnsafeUtil;
+import sun.misc.Unsafe;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Player part of {@link EntityTracker#updateTrackedEntities()}: every player has moved to the adjacent chunk and
+ * trackers are checked for it. Vanilla path checks all trackers, indexed path only trackers of chunks within
+ * tracking range ({@code updateNearbyTrackers}). Items are spread uniformly over the world area, players already
+ * track items in their range, so no packets are sent and only tracker lookup is measured. Tracker, entities and
+ * players are allocated without constructors (no world is needed), only fields read by the lookup are set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityTrackerBenchmark
+{
+	private static final Unsafe U = UnsafeUtil.getUnsafe();
+	/** View distance 10, as in server.properties by default */
+	private static final int ENTITY_VIEW_DISTANCE = 10 * 16 - 16;
+
+	@Param({"2000", "20000"})
+	public int entities;
+
+	@Param({"10", "100"})
+	public int players;
+
+	/** Side of the square world area, in blocks */
+	@Param({"2048"})
+	public int worldSize;
+
+	private EntityTracker tracker;
+	private HashSet trackedEntities;
+	private EntityPlayerMP[] movedPlayers;
+	private int[] oldChunks;
+	private MethodHandle updateNearbyTrackers;
+
+	@Setup(Level.Trial)
+	public void setup() throws Throwable
+	{
+		Random random = new Random(42);
+		tracker = (EntityTracker)U.allocateInstance(EntityTracker.class);
+		trackedEntities = new HashSet();
+		set(tracker, "trackedEntities", trackedEntities);
+		set(tracker, "entityViewDistance", ENTITY_VIEW_DISTANCE);
+		set(tracker, "chunkIndex", HashIntObjMaps.newMutableMap());
+		updateNearbyTrackers = method("updateNearbyTrackers", EntityPlayerMP.class, int.class);
+		MethodHandle indexEntry = method("indexEntry", EntityTrackerEntry.class);
+
+		// As addEntityToTracker(item, 64, 20, true) does, without world and player notification
+		for(int i = 0; i < entities; i++)
+		{
+			EntityItem item = (EntityItem)U.allocateInstance(EntityItem.class);
+			item.setEntityId(i + 1);
+			place(item, random);
+			EntityTrackerEntry entry = new EntityTrackerEntry(item, 64, 20, true);
+			trackedEntities.add(entry);
+			indexEntry.invokeExact(tracker, entry);
+		}
+
+		movedPlayers = new EntityPlayerMP[players];
+		oldChunks = new int[players];
+		for(int i = 0; i < players; i++)
+		{
+			EntityPlayerMP player = (EntityPlayerMP)U.allocateInstance(EntityPlayerMP.class);
+			player.setEntityId(entities + i + 1);
+			place(player, random);
+			movedPlayers[i] = player;
+			oldChunks[i] = ChunkHash.chunkToKey(player.chunkCoordX - 1, player.chunkCoordZ);
+			// Items in range are already tracked, as after the previous update
+			for(Object o : trackedEntities)
+			{
+				EntityTrackerEntry entry = (EntityTrackerEntry)o;
+				double dx = player.posX - (double)(entry.lastScaledXPosition / 32);
+				double dz = player.posZ - (double)(entry.lastScaledZPosition / 32);
+				if(Math.abs(dx) <= entry.blocksDistanceThreshold && Math.abs(dz) <= entry.blocksDistanceThreshold)
+					entry.trackingPlayers.add(player);
+			}
+		}
+	}
+
+	private void place(Entity entity, Random random)
+	{
+		entity.posX = random.nextDouble() * worldSize - worldSize / 2;
+		entity.posY = 64;
+		entity.posZ = random.nextDouble() * worldSize - worldSize / 2;
+		entity.chunkCoordX = (int)Math.floor(entity.posX) >> 4;
+		entity.chunkCoordZ = (int)Math.floor(entity.posZ) >> 4;
+	}
+
+	private static MethodHandle method(String name, Class<?>... params) throws ReflectiveOperationException
+	{
+		Method method = EntityTracker.class.getDeclaredMethod(name, params);
+		method.setAccessible(true);
+		return MethodHandles.lookup().unreflect(method);
+	}
+
+	private static void set(EntityTracker tracker, String name, Object value) throws ReflectiveOperationException
+	{
+		Field field = EntityTracker.class.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(tracker, value);
+	}
+
+	@Benchmark
+	public void vanilla()
+	{
+		for(EntityPlayerMP player : movedPlayers)
+		{
+			Iterator iterator = trackedEntities.iterator();
+			while(iterator.hasNext())
+			{
+				EntityTrackerEntry entry = (EntityTrackerEntry)iterator.next();
+				if(entry.myEntity != player)
+					entry.tryStartWachingThis(player);
+			}
+		}
+	}
+
+	@Benchmark
+	public void chunkIndex() throws Throwable
+	{
+		for(int i = 0; i < movedPlayers.length; i++)
+			updateNearbyTrackers.invokeExact(tracker, movedPlayers[i], oldChunks[i]);
+	}
+}
@@ -0,0 +1,202 @@
+package org.ultramine.server.world;
+
+import net.minecraft.entity.DataWatcher;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.item.EntityItem;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.profiler.Profiler;
+import net.minecraft.util.AxisAlignedBB;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldProvider;
+import net.minecraft.world.WorldSettings;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.IChunkProvider;
+import net.minecraft.world.storage.ISaveHandler;
+import net.openhft.koloboke.collect.map.IntObjMap;
+import net.openhft.koloboke.collect.map.hash.HashIntObjMaps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ultramine.server.chunk.ChunkHash;
+import org.ultramine.server.util.UnsafeUtil;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Item merging of a tick in which all items of a mob grinder are candidates: {@link ItemMerger#mergeQueued} against
+ * the removed {@code EntityItem.searchForOtherItemsNearby}, an AABB query per item followed by
+ * {@link EntityItem#combineItems}. Items of 4 types lie in a square area at y 64, as single items (most of them are
+ * merged, state is restored before each invocation) or full stacks (nothing is merged, only lookup is measured).
+ * World, entities and items are allocated without constructors, only fields read by merging are set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ItemMergerBenchmark
+{
+	private static final int ITEM_TYPES = 4;
+
+	@Param({"1000", "4000"})
+	public int items;
+
+	/** Side of the square area items lie in, in blocks */
+	@Param({"4", "48"})
+	public int area;
+
+	@Param({"1", "64"})
+	public int stackSize;
+
+	private BenchWorld world;
+	private ItemMerger merger;
+	private EntityItem[] entities;
+	private ItemStack[] stacks;
+
+	@Setup(Level.Trial)
+	public void setup() throws ReflectiveOperationException
+	{
+		Random random = new Random(42);
+		world = (BenchWorld)UnsafeUtil.getUnsafe().allocateInstance(BenchWorld.class);
+		world.chunks = HashIntObjMaps.newMutableMap();
+		merger = new ItemMerger(world, null);
+		Item[] types = new Item[ITEM_TYPES];
+		for(int i = 0; i < ITEM_TYPES; i++)
+			types[i] = new Item();
+
+		Field boundingBox = Entity.class.getDeclaredField("boundingBox");
+		boundingBox.setAccessible(true);
+		entities = new EntityItem[items];
+		stacks = new ItemStack[items];
+		for(int i = 0; i < items; i++)
+		{
+			EntityItem item = (EntityItem)UnsafeUtil.getUnsafe().allocateInstance(EntityItem.class);
+			item.setEntityId(i + 1);
+			item.worldObj = world;
+			boundingBox.set(item, AxisAlignedBB.getBoundingBox(0, 0, 0, 0, 0, 0));
+			item.width = 0.25F;
+			item.height = 0.25F;
+			item.setPosition(8 + random.nextDouble() * area, 64, 8 + random.nextDouble() * area);
+			DataWatcher watcher = new DataWatcher(item);
+			watcher.addObjectByDataType(10, 5);
+			set(item, "dataWatcher", watcher);
+			stacks[i] = new ItemStack(types[random.nextInt(ITEM_TYPES)], stackSize);
+			item.setEntityItemStack(stacks[i]);
+			world.getChunk(item.chunkCoordX = (int)item.posX >> 4, item.chunkCoordZ = (int)item.posZ >> 4).addEntity(item);
+			item.addedToChunk = false; // Chunks are not throttled by load balancer
+			entities[i] = item;
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void reset()
+	{
+		for(int i = 0; i < items; i++)
+		{
+			entities[i].isDead = false;
+			stacks[i].stackSize = stackSize;
+		}
+	}
+
+	private static void set(Object obj, String name, Object value) throws ReflectiveOperationException
+	{
+		Field field = Entity.class.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(obj, value);
+	}
+
+	@Benchmark
+	public long grid()
+	{
+		for(EntityItem item : entities)
+			merger.enqueue(item);
+		merger.mergeQueued();
+		return ItemMerger.getMergedItems();
+	}
+
+	/** EntityItem.searchForOtherItemsNearby for every item, before ItemMerger */
+	@Benchmark
+	public int aabb()
+	{
+		int merged = 0;
+		for(EntityItem item : entities)
+		{
+			if(item.isDead)
+				continue; // Dead items are not updated
+			List list = world.getEntitiesWithinAABB(EntityItem.class, item.boundingBox.expand(0.5D, 0.0D, 0.5D));
+			for(int i = 0; i < list.size(); i++)
+				if(item.combineItems((EntityItem)list.get(i)))
+					merged++;
+		}
+		return merged;
+	}
+
+	/** Allocated without constructor, only chunks are set */
+	public static class BenchWorld extends World
+	{
+		IntObjMap<Chunk> chunks;
+
+		public BenchWorld()
+		{
+			super((ISaveHandler)null, null, (WorldProvider)null, (WorldSettings)null, (Profiler)null);
+		}
+
+		Chunk getChunk(int cx, int cz)
+		{
+			Chunk chunk = chunks.get(ChunkHash.chunkToKey(cx, cz));
+			if(chunk == null)
+				chunks.put(ChunkHash.chunkToKey(cx, cz), chunk = new Chunk(this, cx, cz));
+			return chunk;
+		}
+
+		@Override
+		public boolean chunkExists(int cx, int cz)
+		{
+			return chunks.containsKey(ChunkHash.chunkToKey(cx, cz));
+		}
+
+		@Override
+		public Chunk getChunkFromChunkCoords(int cx, int cz)
+		{
+			return chunks.get(ChunkHash.chunkToKey(cx, cz));
+		}
+
+		@Override
+		public long getTotalWorldTime()
+		{
+			return 0;
+		}
+
+		@Override
+		protected IChunkProvider createChunkProvider()
+		{
+			return null;
+		}
+
+		@Override
+		protected int func_152379_p()
+		{
+			return 0;
+		}
+
+		@Override
+		public Entity getEntityByID(int id)
+		{
+			return null;
+		}
+	}
+}
@@ -38,6 +38,7 @@ import net.minecraft.world.storage.WorldInfo;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.Logger;
+import org.ultramine.server.world.ParallelWorldTicker;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
@@ -154,7 +155,7 @@ public class FMLCommonHandler
 	public Side getEffectiveSide()
 	{
 		Thread thr = Thread.currentThread();
-		if ((thr.getName().equals("Server thread")))
+		if ((thr.getName().equals("Server thread")) || thr instanceof ParallelWorldTicker.WorldTickThread)
 		{
 			return Side.SERVER;
 		}
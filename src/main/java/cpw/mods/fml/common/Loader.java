@@ -346,7 +346,7 @@ public class Loader
 			}
 			mods.add(new InjectedModContainer(mc,mc.getSource()));
 		}
-		ModDiscoverer discoverer = new ModDiscoverer();
+		ModDiscoverer discoverer = new ModDiscoverer(new File(minecraftDir, "cache/mod-scan.bin"));
 		FMLLog.fine("Attempting to load mods contained in the minecraft jar file and associated classes");
 		discoverer.findClasspathMods(modClassLoader);
 		FMLLog.fine("Minecraft jar mods loaded successfully");
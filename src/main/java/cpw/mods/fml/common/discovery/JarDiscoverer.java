@@ -12,17 +12,13 @@
 
 package cpw.mods.fml.common.discovery;
 
-import java.util.Collections;
+import java.io.ByteArrayInputStream;
 import java.util.List;
-import java.util.jar.JarFile;
 import org.apache.logging.log4j.Level;
-import java.util.regex.Matcher;
-import java.util.zip.ZipEntry;
 
 import com.google.common.collect.Lists;
 
 import cpw.mods.fml.common.FMLLog;
-import cpw.mods.fml.common.LoaderException;
 import cpw.mods.fml.common.MetadataCollection;
 import cpw.mods.fml.common.ModContainer;
 import cpw.mods.fml.common.ModContainerFactory;
@@ -35,78 +31,57 @@ public class JarDiscoverer implements ITypeDiscoverer
 	{
 		List<ModContainer> foundMods = Lists.newArrayList();
 		FMLLog.fine("Examining file %s for potential mods", candidate.getModContainer().getName());
-		JarFile jar = null;
+		JarScan scan = candidate.getJarScan();
+		if (scan == null)
+		{
+			scan = JarScan.scan(candidate.getModContainer(), null);
+		}
 		try
 		{
-			jar = new JarFile(candidate.getModContainer());
-
-			if (jar.getManifest()!=null && (jar.getManifest().getMainAttributes().get("FMLCorePlugin") != null || jar.getManifest().getMainAttributes().get("TweakClass") != null))
+			if (scan.failure != null && scan.failedEntry == null)
+			{
+				throw scan.failure;
+			}
+			if (scan.coremod)
 			{
 				FMLLog.finer("Ignoring coremod or tweak system %s", candidate.getModContainer());
 				return foundMods;
 			}
-			ZipEntry modInfo = jar.getEntry("mcmod.info");
 			MetadataCollection mc = null;
-			if (modInfo != null)
+			if (scan.modInfo != null)
 			{
 				FMLLog.finer("Located mcmod.info file in file %s", candidate.getModContainer().getName());
-				mc = MetadataCollection.from(jar.getInputStream(modInfo), candidate.getModContainer().getName());
+				mc = MetadataCollection.from(new ByteArrayInputStream(scan.modInfo), candidate.getModContainer().getName());
 			}
 			else
 			{
 				FMLLog.fine("The mod container %s appears to be missing an mcmod.info file", candidate.getModContainer().getName());
 				mc = MetadataCollection.from(null, "");
 			}
-			for (ZipEntry ze : Collections.list(jar.entries()))
+			for (JarScan.ClassEntry entry : scan.classes)
 			{
-				if (ze.getName()!=null && ze.getName().startsWith("__MACOSX"))
+				ASMModParser modParser = entry.parser;
+				candidate.addClassEntry(entry.name);
+				modParser.validate();
+				modParser.sendToTable(table, candidate);
+				ModContainer container = ModContainerFactory.instance().build(modParser, candidate.getModContainer(), candidate);
+				if (container!=null)
 				{
-					continue;
-				}
-				Matcher match = classFile.matcher(ze.getName());
-				if (match.matches())
-				{
-					ASMModParser modParser;
-					try
-					{
-						modParser = new ASMModParser(jar.getInputStream(ze));
-						candidate.addClassEntry(ze.getName());
-					}
-					catch (LoaderException e)
-					{
-						FMLLog.log(Level.ERROR, e, "There was a problem reading the entry %s in the jar %s - probably a corrupt zip", ze.getName(), candidate.getModContainer().getPath());
-						jar.close();
-						throw e;
-					}
-					modParser.validate();
-					modParser.sendToTable(table, candidate);
-					ModContainer container = ModContainerFactory.instance().build(modParser, candidate.getModContainer(), candidate);
-					if (container!=null)
-					{
-						table.addContainer(container);
-						foundMods.add(container);
-						container.bindMetadata(mc);
-					}
+					table.addContainer(container);
+					foundMods.add(container);
+					container.bindMetadata(mc);
 				}
 			}
+			if (scan.failedEntry != null)
+			{
+				FMLLog.log(Level.ERROR, scan.failure, "There was a problem reading the entry %s in the jar %s - probably a corrupt zip", scan.failedEntry, candidate.getModContainer().getPath());
+				throw scan.failure;
+			}
 		}
 		catch (Exception e)
 		{
 			FMLLog.log(Level.WARN, e, "Zip file %s failed to read properly, it will be ignored", candidate.getModContainer().getName());
 		}
-		finally
-		{
-			if (jar != null)
-			{
-				try
-				{
-					jar.close();
-				}
-				catch (Exception e)
-				{
-				}
-			}
-		}
 		return foundMods;
 	}
 
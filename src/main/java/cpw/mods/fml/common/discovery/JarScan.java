@@ -0,0 +1,166 @@
+package cpw.mods.fml.common.discovery;
+
+import java.io.File;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+
+import cpw.mods.fml.common.LoaderException;
+import cpw.mods.fml.common.discovery.asm.ASMModParser;
+
+/**
+ * Result of reading a mod jar: manifest check, mcmod.info and parsed classes in jar order. Jars are read in parallel
+ * by {@link ModDiscoverer}, the result is then consumed by {@link JarDiscoverer} in candidate order, so mod list and
+ * {@link ASMDataTable} content do not depend on scan threads.
+ */
+public class JarScan
+{
+	boolean coremod;
+	byte[] modInfo;
+	final List<ClassEntry> classes = Lists.newArrayList();
+	/** Failure to read the jar, or a class entry if {@link #failedEntry} is set */
+	Exception failure;
+	String failedEntry;
+
+	public static JarScan scan(File file, ModScanIndex index)
+	{
+		JarScan scan = new JarScan();
+		JarFile jar = null;
+		try
+		{
+			jar = new JarFile(file);
+			if (jar.getManifest()!=null && (jar.getManifest().getMainAttributes().get("FMLCorePlugin") != null || jar.getManifest().getMainAttributes().get("TweakClass") != null))
+			{
+				scan.coremod = true;
+				return scan;
+			}
+			ZipEntry modInfo = jar.getEntry("mcmod.info");
+			if (modInfo != null)
+			{
+				InputStream is = jar.getInputStream(modInfo);
+				try
+				{
+					scan.modInfo = ByteStreams.toByteArray(is);
+				}
+				finally
+				{
+					is.close();
+				}
+			}
+
+			List<? extends ZipEntry> entries = Collections.list(jar.entries());
+			byte[] hash = index != null ? hashEntries(entries) : null;
+			Map<String, ModScanIndex.ClassRecord> indexed = index != null ? index.get(file, hash) : null;
+			Map<String, ModScanIndex.ClassRecord> records = index != null ? Maps.<String, ModScanIndex.ClassRecord>newHashMap() : null;
+			for (ZipEntry ze : entries)
+			{
+				if (ze.getName()!=null && ze.getName().startsWith("__MACOSX"))
+				{
+					continue;
+				}
+				if (ITypeDiscoverer.classFile.matcher(ze.getName()).matches())
+				{
+					ModScanIndex.ClassRecord record = indexed != null ? indexed.get(ze.getName()) : null;
+					ASMModParser modParser;
+					if (record != null && !record.annotated)
+					{
+						modParser = record.toParser();
+					}
+					else
+					{
+						try
+						{
+							InputStream is = jar.getInputStream(ze);
+							try
+							{
+								modParser = new ASMModParser(is);
+							}
+							finally
+							{
+								is.close();
+							}
+						}
+						catch (LoaderException e)
+						{
+							scan.failure = e;
+							scan.failedEntry = ze.getName();
+							return scan;
+						}
+					}
+					scan.classes.add(new ClassEntry(ze.getName(), modParser));
+					if (records != null)
+					{
+						records.put(ze.getName(), record != null ? record : ModScanIndex.ClassRecord.of(modParser));
+					}
+				}
+			}
+			if (index != null)
+			{
+				index.put(file, hash, records);
+			}
+		}
+		catch (Exception e)
+		{
+			scan.failure = e;
+		}
+		finally
+		{
+			if (jar != null)
+			{
+				try
+				{
+					jar.close();
+				}
+				catch (Exception e)
+				{
+				}
+			}
+		}
+		return scan;
+	}
+
+	/** Hash of the zip central directory: names, sizes and CRCs of all entries */
+	private static byte[] hashEntries(List<? extends ZipEntry> entries) throws NoSuchAlgorithmException
+	{
+		MessageDigest md = MessageDigest.getInstance("SHA-1");
+		byte[] buf = new byte[12];
+		for (ZipEntry ze : entries)
+		{
+			md.update(ze.getName().getBytes(StandardCharsets.UTF_8));
+			long crc = ze.getCrc();
+			long size = ze.getSize();
+			for (int i = 0; i < 8; i++)
+			{
+				buf[i] = (byte) (crc >>> (i * 8));
+			}
+			for (int i = 0; i < 4; i++)
+			{
+				buf[8 + i] = (byte) (size >>> (i * 8));
+			}
+			md.update(buf);
+		}
+		return md.digest();
+	}
+
+	static class ClassEntry
+	{
+		final String name;
+		final ASMModParser parser;
+
+		ClassEntry(String name, ASMModParser parser)
+		{
+			this.name = name;
+			this.parser = parser;
+		}
+	}
+}
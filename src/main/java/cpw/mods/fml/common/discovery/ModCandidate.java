@@ -37,6 +37,7 @@ public class ModCandidate
 	private List<ModContainer> mods;
 	private List<String> packages = Lists.newArrayList();
 	private ASMDataTable table;
+	private JarScan jarScan;
 
 	public ModCandidate(File classPathRoot, File modContainer, ContainerType sourceType)
 	{
@@ -123,4 +124,15 @@ public class ModCandidate
 	{
 		return packages;
 	}
+
+	/** @return jar read ahead by {@link ModDiscoverer}, or null */
+	JarScan getJarScan()
+	{
+		return jarScan;
+	}
+
+	void setJarScan(JarScan jarScan)
+	{
+		this.jarScan = jarScan;
+	}
 }
\ No newline at end of file
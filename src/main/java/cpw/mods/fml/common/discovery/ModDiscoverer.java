@@ -14,6 +14,9 @@ package cpw.mods.fml.common.discovery;
 
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.logging.log4j.Level;
@@ -33,6 +36,8 @@ import cpw.mods.fml.relauncher.ModListHelper;
 public class ModDiscoverer
 {
 	private static Pattern zipJar = Pattern.compile("(.+).(zip|jar)$");
+	private static final boolean SCAN_CACHE = Boolean.parseBoolean(System.getProperty("org.ultramine.core.modScanCache", "true"));
+	private static final int SCAN_THREADS = Integer.parseInt(System.getProperty("org.ultramine.core.modScanThreads", Integer.toString(Runtime.getRuntime().availableProcessors())));
 
 	private List<ModCandidate> candidates = Lists.newArrayList();
 
@@ -40,6 +45,21 @@ public class ModDiscoverer
 
 	private List<File> nonModLibs = Lists.newArrayList();
 
+	private File scanIndexFile;
+
+	public ModDiscoverer()
+	{
+	}
+
+	/**
+	 * @param scanIndexFile {@link ModScanIndex} file, reused between restarts unless
+	 *                      {@code -Dorg.ultramine.core.modScanCache=false}
+	 */
+	public ModDiscoverer(File scanIndexFile)
+	{
+		this.scanIndexFile = SCAN_CACHE ? scanIndexFile : null;
+	}
+
 	public void findClasspathMods(ModClassLoader modClassLoader)
 	{
 		List<String> knownLibraries = ImmutableList.<String>builder()
@@ -124,11 +144,13 @@ public class ModDiscoverer
 	{
 		List<ModContainer> modList = Lists.newArrayList();
 
+		scanJars();
 		for (ModCandidate candidate : candidates)
 		{
 			try
 			{
 				List<ModContainer> mods = candidate.explore(dataTable);
+				candidate.setJarScan(null);
 				if (mods.isEmpty() && !candidate.isClasspath())
 				{
 					nonModLibs.add(candidate.getModContainer());
@@ -151,6 +173,58 @@ public class ModDiscoverer
 		return modList;
 	}
 
+	/**
+	 * Reads and parses all jar candidates in parallel. Results are consumed by {@link #identifyMods()} in candidate
+	 * order, so scan threads affect neither mod order nor {@link ASMDataTable} content.
+	 */
+	private void scanJars()
+	{
+		final List<ModCandidate> jars = Lists.newArrayList();
+		for (ModCandidate candidate : candidates)
+		{
+			if (candidate.getSourceType() == ContainerType.JAR)
+			{
+				jars.add(candidate);
+			}
+		}
+		if (jars.isEmpty())
+		{
+			return;
+		}
+
+		long start = System.nanoTime();
+		final ModScanIndex index = scanIndexFile != null ? ModScanIndex.load(scanIndexFile) : null;
+		List<Callable<Void>> tasks = Lists.newArrayListWithCapacity(jars.size());
+		for (final ModCandidate candidate : jars)
+		{
+			tasks.add(new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					candidate.setJarScan(JarScan.scan(candidate.getModContainer(), index));
+					return null;
+				}
+			});
+		}
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(SCAN_THREADS, jars.size())));
+		try
+		{
+			// Candidates left without scan result (on unexpected error) are read by JarDiscoverer itself
+			pool.invokeAll(tasks);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		if (index != null)
+		{
+			index.save();
+		}
+		FMLLog.fine("Scanned %d mod jars in %d ms, %d unchanged jars reused from index", jars.size(),
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), index != null ? index.getReused() : 0);
+	}
+
 	public ASMDataTable getASMTable()
 	{
 		return dataTable;
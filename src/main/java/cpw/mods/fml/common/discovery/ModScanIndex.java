@@ -0,0 +1,235 @@
+package cpw.mods.fml.common.discovery;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.Level;
+
+import com.google.common.collect.Maps;
+
+import cpw.mods.fml.common.FMLLog;
+import cpw.mods.fml.common.discovery.asm.ASMModParser;
+
+/**
+ * Persistent index of mod jar scans, stored between restarts. A jar record is used only if jar size, modification time
+ * and hash of its zip directory are unchanged. Classes without annotations are restored from the index as is, so
+ * only annotated classes of unchanged jars are parsed again.
+ * <p>
+ * Only jars scanned in the current run are saved, records of removed jars are dropped.
+ */
+public class ModScanIndex
+{
+	private static final int MAGIC = 0x464D4C53;
+	private static final int VERSION = 1;
+
+	private final File file;
+	private final Map<String, JarRecord> loaded = new ConcurrentHashMap<String, JarRecord>();
+	private final Map<String, JarRecord> scanned = new ConcurrentHashMap<String, JarRecord>();
+	private int reused;
+
+	private ModScanIndex(File file)
+	{
+		this.file = file;
+	}
+
+	public static ModScanIndex load(File file)
+	{
+		ModScanIndex index = new ModScanIndex(file);
+		if (file.isFile())
+		{
+			try
+			{
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				try
+				{
+					index.read(in);
+				}
+				finally
+				{
+					in.close();
+				}
+			}
+			catch (IOException e)
+			{
+				FMLLog.log(Level.WARN, e, "Failed to read mod scan index %s, all mods will be scanned", file);
+				index.loaded.clear();
+			}
+		}
+		return index;
+	}
+
+	private void read(DataInputStream in) throws IOException
+	{
+		if (in.readInt() != MAGIC || in.readInt() != VERSION)
+		{
+			return;
+		}
+		for (int jars = in.readInt(); jars > 0; jars--)
+		{
+			String path = in.readUTF();
+			long size = in.readLong();
+			long lastModified = in.readLong();
+			byte[] hash = new byte[in.readUnsignedByte()];
+			in.readFully(hash);
+			int count = in.readInt();
+			Map<String, ClassRecord> classes = Maps.newHashMapWithExpectedSize(count);
+			for (int i = 0; i < count; i++)
+			{
+				String entry = in.readUTF();
+				if (in.readBoolean())
+				{
+					classes.put(entry, ClassRecord.ANNOTATED);
+				}
+				else
+				{
+					String type = in.readUTF();
+					int classVersion = in.readInt();
+					String superType = in.readUTF();
+					classes.put(entry, new ClassRecord(false, type, classVersion, superType.isEmpty() ? null : superType));
+				}
+			}
+			loaded.put(path, new JarRecord(size, lastModified, hash, classes));
+		}
+	}
+
+	public void save()
+	{
+		File tmp = new File(file.getPath() + ".tmp");
+		try
+		{
+			file.getParentFile().mkdirs();
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try
+			{
+				write(out);
+			}
+			finally
+			{
+				out.close();
+			}
+			if (file.exists() && !file.delete() || !tmp.renameTo(file))
+			{
+				throw new IOException("Failed to replace " + file);
+			}
+		}
+		catch (IOException e)
+		{
+			FMLLog.log(Level.WARN, e, "Failed to save mod scan index %s", file);
+			tmp.delete();
+		}
+	}
+
+	private void write(DataOutputStream out) throws IOException
+	{
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(scanned.size());
+		for (Map.Entry<String, JarRecord> jar : scanned.entrySet())
+		{
+			JarRecord record = jar.getValue();
+			out.writeUTF(jar.getKey());
+			out.writeLong(record.size);
+			out.writeLong(record.lastModified);
+			out.writeByte(record.hash.length);
+			out.write(record.hash);
+			out.writeInt(record.classes.size());
+			for (Map.Entry<String, ClassRecord> cls : record.classes.entrySet())
+			{
+				ClassRecord c = cls.getValue();
+				out.writeUTF(cls.getKey());
+				out.writeBoolean(c.annotated);
+				if (!c.annotated)
+				{
+					out.writeUTF(c.type);
+					out.writeInt(c.classVersion);
+					out.writeUTF(c.superType != null ? c.superType : "");
+				}
+			}
+		}
+	}
+
+	/** @return class records of unchanged jar, or null */
+	Map<String, ClassRecord> get(File jar, byte[] hash)
+	{
+		JarRecord record = loaded.get(jar.getAbsolutePath());
+		if (record == null || record.size != jar.length() || record.lastModified != jar.lastModified() || !Arrays.equals(record.hash, hash))
+		{
+			return null;
+		}
+		synchronized (this)
+		{
+			reused++;
+		}
+		return record.classes;
+	}
+
+	void put(File jar, byte[] hash, Map<String, ClassRecord> classes)
+	{
+		scanned.put(jar.getAbsolutePath(), new JarRecord(jar.length(), jar.lastModified(), hash, Collections.unmodifiableMap(classes)));
+	}
+
+	/** @return number of jars whose records were reused in this run */
+	public synchronized int getReused()
+	{
+		return reused;
+	}
+
+	private static class JarRecord
+	{
+		final long size;
+		final long lastModified;
+		final byte[] hash;
+		final Map<String, ClassRecord> classes;
+
+		JarRecord(long size, long lastModified, byte[] hash, Map<String, ClassRecord> classes)
+		{
+			this.size = size;
+			this.lastModified = lastModified;
+			this.hash = hash;
+			this.classes = classes;
+		}
+	}
+
+	static class ClassRecord
+	{
+		static final ClassRecord ANNOTATED = new ClassRecord(true, null, 0, null);
+
+		final boolean annotated;
+		final String type;
+		final int classVersion;
+		final String superType;
+
+		ClassRecord(boolean annotated, String type, int classVersion, String superType)
+		{
+			this.annotated = annotated;
+			this.type = type;
+			this.classVersion = classVersion;
+			this.superType = superType;
+		}
+
+		static ClassRecord of(ASMModParser parser)
+		{
+			if (!parser.getAnnotations().isEmpty())
+			{
+				return ANNOTATED;
+			}
+			return new ClassRecord(false, parser.getASMType().getInternalName(), parser.getClassVersion(),
+					parser.getASMSuperType() != null ? parser.getASMSuperType().getInternalName() : null);
+		}
+
+		ASMModParser toParser()
+		{
+			return new ASMModParser(type, classVersion, superType);
+		}
+	}
+}
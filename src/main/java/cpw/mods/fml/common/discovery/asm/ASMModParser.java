@@ -59,6 +59,14 @@ public class ASMModParser
 		}
 	}
 
+	/**
+	 * Creates parser of a class without annotations restored from {@link cpw.mods.fml.common.discovery.ModScanIndex}
+	 */
+	public ASMModParser(String typeQName, int classVersion, String superClassQName)
+	{
+		beginNewTypeName(typeQName, classVersion, superClassQName);
+	}
+
 	public void beginNewTypeName(String typeQName, int classVersion, String superClassQName)
 	{
 		this.asmType = Type.getObjectType(typeQName);
@@ -11,6 +11,8 @@ import javax.annotation.Nonnull;
 
 import net.minecraft.profiler.Profiler;
 
+import org.ultramine.server.event.EventProfiler;
+
 import org.apache.logging.log4j.Level;
 
 import com.google.common.base.Preconditions;
@@ -133,6 +135,10 @@ public class EventBus implements IEventExceptionHandler
 
 	public boolean post(Event event)
 	{
+		if (EventProfiler.isEnabled())
+		{
+			return postWithProfile(null, event);
+		}
 		IEventListener[] listeners = event.getListenerList().getListeners(busID);
 		int index = 0;
 		try
@@ -163,20 +169,64 @@ public class EventBus implements IEventExceptionHandler
 	
 	/* ======================================== ULTRAMINE START ===================================== */
 	
+	private static final ClassValue<ListenerList> eventListenerLists = new ClassValue<ListenerList>()
+	{
+		@Override
+		protected ListenerList computeValue(Class<?> type)
+		{
+			try
+			{
+				// Every event has default constructor (added by EventSubscriptionTransformer), as in register()
+				return ((Event)type.getConstructor().newInstance()).getListenerList();
+			}
+			catch (Exception e)
+			{
+				return null;
+			}
+		}
+	};
+
+	/**
+	 * Allows to skip construction of frequently posted events when nobody listens to them on this bus. Listeners of
+	 * parent event types are taken into account.
+	 */
+	public boolean hasListeners(Class<? extends Event> eventType)
+	{
+		ListenerList list = eventListenerLists.get(eventType);
+		return list == null || list.hasListeners(busID);
+	}
+
+	/**
+	 * Posts event with profiler section for every listener owner. Also records events and listener times to
+	 * {@link EventProfiler} if it is enabled.
+	 *
+	 * @param profiler may be null if only {@link EventProfiler} is used
+	 */
 	public boolean postWithProfile(Profiler profiler, Event event)
 	{
 		IEventListener[] listeners = event.getListenerList().getListeners(busID);
+		boolean record = EventProfiler.isEnabled();
+		long postStart = record ? System.nanoTime() : 0;
 		int index = 0;
 		try
 		{
 			for (; index < listeners.length; index++)
 			{
 				IEventListener listener = listeners[index];
-				String owner = listener instanceof ASMEventHandler ? ((ASMEventHandler)listener).getOwner() : null;
+				String owner = profiler != null && listener instanceof ASMEventHandler ? ((ASMEventHandler)listener).getOwner() : null;
 				if(owner != null)
 					profiler.startSection(owner);
 
-				listener.invoke(event);
+				if(record && !(listener instanceof EventPriority))
+				{
+					long start = System.nanoTime();
+					listener.invoke(event);
+					EventProfiler.recordListener(listener, System.nanoTime() - start);
+				}
+				else
+				{
+					listener.invoke(event);
+				}
 
 				if(owner != null)
 					profiler.endSection();
@@ -187,6 +237,8 @@ public class EventBus implements IEventExceptionHandler
 			exceptionHandler.handleException(this, event, listeners, index, throwable);
 			Throwables.propagate(throwable);
 		}
+		if(record)
+			EventProfiler.recordPost(event, System.nanoTime() - postStart);
 		return (event.isCancelable() ? event.isCanceled() : false);
 	}
 }
\ No newline at end of file
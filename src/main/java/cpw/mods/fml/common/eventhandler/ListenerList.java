@@ -96,6 +96,14 @@ public class ListenerList
 		return lists[id].getListeners();
 	}
 
+	/**
+	 * Does not allocate once listener cache of the bus is built
+	 */
+	public boolean hasListeners(int id)
+	{
+		return lists[id].getListeners().length > 0;
+	}
+
 	public void register(int id, EventPriority priority, IEventListener listener)
 	{
 		lists[id].register(priority, listener);
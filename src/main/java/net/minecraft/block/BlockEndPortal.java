@@ -92,7 +92,7 @@ public class BlockEndPortal extends BlockContainer
 
 	public void onBlockAdded(World p_149726_1_, int p_149726_2_, int p_149726_3_, int p_149726_4_)
 	{
-		if (!field_149948_a && !p_149726_1_.isRemote)
+		if (!isPlacingPortal() && !p_149726_1_.isRemote) // ultramine: per-thread flag
 		{
 			int endlink = ((WorldServer)p_149726_1_).getConfig().portals.enderLink;
 			if(endlink == Integer.MIN_VALUE || endlink == p_149726_1_.provider.dimensionId)
@@ -118,4 +118,22 @@ public class BlockEndPortal extends BlockContainer
 	{
 		return MapColor.obsidianColor;
 	}
+
+	/*===================================== ULTRAMINE START =====================================*/
+
+	/**
+	 * Set by the dragon while building the exit portal. Worlds may be ticked concurrently, so the flag is kept per
+	 * thread. {@link #field_149948_a} is still checked for mods setting it directly.
+	 */
+	private static final ThreadLocal<Boolean> placingPortalLocal = new ThreadLocal<Boolean>();
+
+	public static void setPlacingPortal(boolean value)
+	{
+		placingPortalLocal.set(value ? Boolean.TRUE : null);
+	}
+
+	public static boolean isPlacingPortal()
+	{
+		return field_149948_a || placingPortalLocal.get() != null;
+	}
 }
\ No newline at end of file
@@ -47,7 +47,7 @@ public class BlockFalling extends Block
 		{
 			byte b0 = 32;
 
-			if (!fallInstantly && p_149830_1_.checkChunksExist(p_149830_2_ - b0, p_149830_3_ - b0, p_149830_4_ - b0, p_149830_2_ + b0, p_149830_3_ + b0, p_149830_4_ + b0))
+			if (!isFallingInstantly() && p_149830_1_.checkChunksExist(p_149830_2_ - b0, p_149830_3_ - b0, p_149830_4_ - b0, p_149830_2_ + b0, p_149830_3_ + b0, p_149830_4_ + b0)) // ultramine: per-thread flag
 			{
 				if (!p_149830_1_.isRemote)
 				{
@@ -101,4 +101,22 @@ public class BlockFalling extends Block
 	}
 
 	public void func_149828_a(World p_149828_1_, int p_149828_2_, int p_149828_3_, int p_149828_4_, int p_149828_5_) {}
+	
+	/*===================================== ULTRAMINE START =====================================*/
+	
+	/**
+	 * Set by vanilla chunk providers while populating a chunk. Worlds may be ticked (and populated) concurrently, so
+	 * the flag is kept per thread. {@link #fallInstantly} is still checked for mods setting it directly.
+	 */
+	private static final ThreadLocal<Boolean> fallInstantlyLocal = new ThreadLocal<Boolean>();
+	
+	public static void setFallInstantly(boolean value)
+	{
+		fallInstantlyLocal.set(value ? Boolean.TRUE : null);
+	}
+	
+	public static boolean isFallingInstantly()
+	{
+		return fallInstantly || fallInstantlyLocal.get() != null;
+	}
 }
\ No newline at end of file
@@ -24,7 +24,7 @@ public class BlockFurnace extends BlockContainer
 {
 	private final Random field_149933_a = new Random();
 	private final boolean field_149932_b;
-	private static boolean field_149934_M;
+	private static final ThreadLocal<Boolean> field_149934_M = new ThreadLocal<Boolean>(); // ultramine: per thread, furnaces of several worlds may be updated in parallel
 	@SideOnly(Side.CLIENT)
 	private IIcon field_149935_N;
 	@SideOnly(Side.CLIENT)
@@ -119,7 +119,7 @@ public class BlockFurnace extends BlockContainer
 	{
 		int l = p_149931_1_.getBlockMetadata(p_149931_2_, p_149931_3_, p_149931_4_);
 		TileEntity tileentity = p_149931_1_.getTileEntity(p_149931_2_, p_149931_3_, p_149931_4_);
-		field_149934_M = true;
+		field_149934_M.set(Boolean.TRUE);
 
 		if (p_149931_0_)
 		{
@@ -130,7 +130,7 @@ public class BlockFurnace extends BlockContainer
 			p_149931_1_.setBlock(p_149931_2_, p_149931_3_, p_149931_4_, Blocks.furnace);
 		}
 
-		field_149934_M = false;
+		field_149934_M.remove();
 		p_149931_1_.setBlockMetadataWithNotify(p_149931_2_, p_149931_3_, p_149931_4_, l, 2);
 
 		if (tileentity != null)
@@ -177,7 +177,7 @@ public class BlockFurnace extends BlockContainer
 
 	public void breakBlock(World p_149749_1_, int p_149749_2_, int p_149749_3_, int p_149749_4_, Block p_149749_5_, int p_149749_6_)
 	{
-		if (!field_149934_M)
+		if (field_149934_M.get() == null)
 		{
 			TileEntityFurnace tileentityfurnace = (TileEntityFurnace)p_149749_1_.getTileEntity(p_149749_2_, p_149749_3_, p_149749_4_);
 
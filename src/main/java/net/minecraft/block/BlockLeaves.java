@@ -19,7 +19,6 @@ import org.ultramine.server.util.MinecraftUtil;
 
 public abstract class BlockLeaves extends BlockLeavesBase implements IShearable
 {
-	int[] field_150128_a;
 	@SideOnly(Side.CLIENT)
 	protected int field_150127_b;
 	protected IIcon[][] field_150129_M = new IIcon[2][];
@@ -3,10 +3,11 @@ package net.minecraft.block;
 import cpw.mods.fml.relauncher.Side;
 import cpw.mods.fml.relauncher.SideOnly;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.WeakHashMap;
 import net.minecraft.creativetab.CreativeTabs;
 import net.minecraft.init.Blocks;
 import net.minecraft.item.Item;
@@ -16,7 +17,7 @@ import net.minecraft.world.World;
 public class BlockRedstoneTorch extends BlockTorch
 {
 	private boolean field_150113_a;
-	private static Map field_150112_b = new HashMap();
+	private static Map field_150112_b = Collections.synchronizedMap(new WeakHashMap()); // ultramine: worlds may be ticked in parallel, each list is accessed by its world thread only
 	private static final String __OBFID = "CL_00000298";
 
 	private boolean func_150111_a(World p_150111_1_, int p_150111_2_, int p_150111_3_, int p_150111_4_, boolean p_150111_5_)
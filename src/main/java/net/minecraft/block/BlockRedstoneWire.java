@@ -20,8 +20,14 @@ import net.minecraft.world.World;
 
 public class BlockRedstoneWire extends Block
 {
-	private boolean field_150181_a = true;
-	private Set field_150179_b = new HashSet();
+	private final ThreadLocal<UpdateState> updateState = new ThreadLocal<UpdateState>() // ultramine: worlds may be ticked concurrently
+	{
+		@Override
+		protected UpdateState initialValue()
+		{
+			return new UpdateState();
+		}
+	};
 	@SideOnly(Side.CLIENT)
 	private IIcon field_150182_M;
 	@SideOnly(Side.CLIENT)
@@ -72,8 +78,9 @@ public class BlockRedstoneWire extends Block
 	private void func_150177_e(World p_150177_1_, int p_150177_2_, int p_150177_3_, int p_150177_4_)
 	{
 		this.func_150175_a(p_150177_1_, p_150177_2_, p_150177_3_, p_150177_4_, p_150177_2_, p_150177_3_, p_150177_4_);
-		ArrayList arraylist = new ArrayList(this.field_150179_b);
-		this.field_150179_b.clear();
+		Set field_150179_b = this.updateState.get().field_150179_b; // ultramine
+		ArrayList arraylist = new ArrayList(field_150179_b);
+		field_150179_b.clear();
 
 		for (int l = 0; l < arraylist.size(); ++l)
 		{
@@ -87,9 +94,10 @@ public class BlockRedstoneWire extends Block
 		int k1 = p_150175_1_.getBlockMetadata(p_150175_2_, p_150175_3_, p_150175_4_);
 		byte b0 = 0;
 		int i3 = this.func_150178_a(p_150175_1_, p_150175_5_, p_150175_6_, p_150175_7_, b0);
-		this.field_150181_a = false;
+		UpdateState state = this.updateState.get(); // ultramine
+		state.field_150181_a = false;
 		int l1 = p_150175_1_.getStrongestIndirectPower(p_150175_2_, p_150175_3_, p_150175_4_);
-		this.field_150181_a = true;
+		state.field_150181_a = true;
 
 		if (l1 > 0 && l1 > i3 - 1)
 		{
@@ -162,13 +170,13 @@ public class BlockRedstoneWire extends Block
 		if (k1 != i3)
 		{
 			p_150175_1_.setBlockMetadataWithNotify(p_150175_2_, p_150175_3_, p_150175_4_, i3, 2);
-			this.field_150179_b.add(new ChunkPosition(p_150175_2_, p_150175_3_, p_150175_4_));
-			this.field_150179_b.add(new ChunkPosition(p_150175_2_ - 1, p_150175_3_, p_150175_4_));
-			this.field_150179_b.add(new ChunkPosition(p_150175_2_ + 1, p_150175_3_, p_150175_4_));
-			this.field_150179_b.add(new ChunkPosition(p_150175_2_, p_150175_3_ - 1, p_150175_4_));
-			this.field_150179_b.add(new ChunkPosition(p_150175_2_, p_150175_3_ + 1, p_150175_4_));
-			this.field_150179_b.add(new ChunkPosition(p_150175_2_, p_150175_3_, p_150175_4_ - 1));
-			this.field_150179_b.add(new ChunkPosition(p_150175_2_, p_150175_3_, p_150175_4_ + 1));
+			state.field_150179_b.add(new ChunkPosition(p_150175_2_, p_150175_3_, p_150175_4_));
+			state.field_150179_b.add(new ChunkPosition(p_150175_2_ - 1, p_150175_3_, p_150175_4_));
+			state.field_150179_b.add(new ChunkPosition(p_150175_2_ + 1, p_150175_3_, p_150175_4_));
+			state.field_150179_b.add(new ChunkPosition(p_150175_2_, p_150175_3_ - 1, p_150175_4_));
+			state.field_150179_b.add(new ChunkPosition(p_150175_2_, p_150175_3_ + 1, p_150175_4_));
+			state.field_150179_b.add(new ChunkPosition(p_150175_2_, p_150175_3_, p_150175_4_ - 1));
+			state.field_150179_b.add(new ChunkPosition(p_150175_2_, p_150175_3_, p_150175_4_ + 1));
 		}
 	}
 
@@ -334,12 +342,12 @@ public class BlockRedstoneWire extends Block
 
 	public int isProvidingStrongPower(IBlockAccess p_149748_1_, int p_149748_2_, int p_149748_3_, int p_149748_4_, int p_149748_5_)
 	{
-		return !this.field_150181_a ? 0 : this.isProvidingWeakPower(p_149748_1_, p_149748_2_, p_149748_3_, p_149748_4_, p_149748_5_);
+		return !this.updateState.get().field_150181_a ? 0 : this.isProvidingWeakPower(p_149748_1_, p_149748_2_, p_149748_3_, p_149748_4_, p_149748_5_);
 	}
 
 	public int isProvidingWeakPower(IBlockAccess p_149709_1_, int p_149709_2_, int p_149709_3_, int p_149709_4_, int p_149709_5_)
 	{
-		if (!this.field_150181_a)
+		if (!this.updateState.get().field_150181_a)
 		{
 			return 0;
 		}
@@ -392,7 +400,7 @@ public class BlockRedstoneWire extends Block
 
 	public boolean canProvidePower()
 	{
-		return this.field_150181_a;
+		return this.updateState.get().field_150181_a;
 	}
 
 	public static boolean isPowerProviderOrWire(IBlockAccess p_150174_0_, int p_150174_1_, int p_150174_2_, int p_150174_3_, int p_150174_4_)
@@ -487,4 +495,13 @@ public class BlockRedstoneWire extends Block
 	{
 		return p_150173_0_.equals("cross") ? Blocks.redstone_wire.field_150182_M : (p_150173_0_.equals("line") ? Blocks.redstone_wire.field_150183_N : (p_150173_0_.equals("cross_overlay") ? Blocks.redstone_wire.field_150184_O : (p_150173_0_.equals("line_overlay") ? Blocks.redstone_wire.field_150180_P : null)));
 	}
+	
+	/*===================================== ULTRAMINE START =====================================*/
+	
+	/** Update state of the thread, it was kept in fields of the block before */
+	private static class UpdateState
+	{
+		boolean field_150181_a = true;
+		Set field_150179_b = new HashSet();
+	}
 }
\ No newline at end of file
@@ -15,6 +15,7 @@ import java.util.concurrent.ThreadLocalRandom;
 import org.ultramine.server.EntityType;
 import org.ultramine.server.internal.UMHooks;
 import org.ultramine.server.event.EntitySetFireEvent;
+import org.ultramine.server.world.ParallelWorldTicker;
 
 import com.mojang.authlib.GameProfile;
 
@@ -156,9 +157,14 @@ public abstract class Entity
 		this.entityId = p_145769_1_;
 	}
 
+	private static synchronized int allocateEntityId()
+	{
+		return nextEntityID++; // entities may be constructed in several world tick threads simultaneously
+	}
+
 	public Entity(World p_i1582_1_)
 	{
-		this.entityId = nextEntityID++;
+		this.entityId = allocateEntityId();
 		this.renderDistanceWeight = 1.0D;
 		this.boundingBox = AxisAlignedBB.getBoundingBox(0.0D, 0.0D, 0.0D, 0.0D, 0.0D, 0.0D);
 		this.field_70135_K = true;
@@ -185,7 +191,8 @@ public abstract class Entity
 
 		extendedProperties = new HashMap<String, IExtendedEntityProperties>();
 
-		MinecraftForge.EVENT_BUS.post(new EntityEvent.EntityConstructing(this));
+		if (MinecraftForge.EVENT_BUS.hasListeners(EntityEvent.EntityConstructing.class)) // ultramine: do not allocate event if nobody listens
+			MinecraftForge.EVENT_BUS.post(new EntityEvent.EntityConstructing(this));
 
 		for (IExtendedEntityProperties props : this.extendedProperties.values())
 		{
@@ -2045,6 +2052,8 @@ public abstract class Entity
 	{
 		if (!this.worldObj.isRemote && !this.isDead)
 		{
+			if (ParallelWorldTicker.deferTravelToDimension(this, p_71027_1_))
+				return;
 			this.worldObj.theProfiler.startSection("changeDimension");
 			int enderLink = ((WorldServer)worldObj).getConfig().portals.enderLink;
 			MinecraftServer minecraftserver = MinecraftServer.getServer();
@@ -2243,7 +2252,7 @@ public abstract class Entity
 	 */
 	public final void resetEntityId()
 	{
-		this.entityId = nextEntityID++;
+		this.entityId = allocateEntityId();
 	}
 
 	public boolean shouldRenderInPass(int pass)
@@ -3,6 +3,7 @@ package net.minecraft.entity;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import net.minecraft.crash.CrashReport;
@@ -40,7 +41,12 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import cpw.mods.fml.common.registry.EntityRegistry;
+import gnu.trove.list.array.TIntArrayList;
+import net.openhft.koloboke.collect.map.IntObjCursor;
+import net.openhft.koloboke.collect.map.IntObjMap;
+import net.openhft.koloboke.collect.map.hash.HashIntObjMaps;
 import org.ultramine.core.permissions.MinecraftPermissions;
+import org.ultramine.server.chunk.ChunkHash;
 
 public class EntityTracker
 {
@@ -200,6 +206,7 @@ public class EntityTracker
 			EntityTrackerEntry entitytrackerentry = new EntityTrackerEntry(p_72785_1_, p_72785_2_, p_72785_3_, p_72785_4_);
 			this.trackedEntities.add(entitytrackerentry);
 			this.trackedEntityIDs.addKey(p_72785_1_.getEntityId(), entitytrackerentry);
+			this.indexEntry(entitytrackerentry);
 			entitytrackerentry.sendEventsToPlayers(this.theWorld.playerEntities);
 		}
 		catch (Throwable throwable)
@@ -257,6 +264,7 @@ public class EntityTracker
 		if (entitytrackerentry1 != null)
 		{
 			this.trackedEntities.remove(entitytrackerentry1);
+			this.unindexEntry(entitytrackerentry1);
 			entitytrackerentry1.informAllAssociatedPlayersOfItemDestruction();
 		}
 	}
@@ -266,33 +274,28 @@ public class EntityTracker
 		if(theWorld.playerEntities.size() == 0)
 			return;
 		ArrayList arraylist = new ArrayList();
+		TIntArrayList oldChunks = new TIntArrayList(); // ultramine
 		Iterator iterator = this.trackedEntities.iterator();
 
 		while (iterator.hasNext())
 		{
 			EntityTrackerEntry entitytrackerentry = (EntityTrackerEntry)iterator.next();
 			entitytrackerentry.sendLocationToAllClients(this.theWorld.playerEntities);
+			int oldChunk = entitytrackerentry.indexedChunkKey;
+			this.reindexEntry(entitytrackerentry);
 
 			if (entitytrackerentry.playerEntitiesUpdated && entitytrackerentry.myEntity instanceof EntityPlayerMP)
 			{
 				arraylist.add((EntityPlayerMP)entitytrackerentry.myEntity);
+				oldChunks.add(oldChunk);
 			}
 		}
 
 		for (int i = 0; i < arraylist.size(); ++i)
 		{
 			EntityPlayerMP entityplayermp = (EntityPlayerMP)arraylist.get(i);
-			Iterator iterator1 = this.trackedEntities.iterator();
-
-			while (iterator1.hasNext())
-			{
-				EntityTrackerEntry entitytrackerentry1 = (EntityTrackerEntry)iterator1.next();
-
-				if (entitytrackerentry1.myEntity != entityplayermp)
-				{
-					entitytrackerentry1.tryStartWachingThis(entityplayermp);
-				}
-			}
+			// ultramine: only trackers near old and new player chunks may change their state for this player
+			this.updateNearbyTrackers(entityplayermp, oldChunks.get(i));
 		}
 	}
 
@@ -329,11 +332,16 @@ public class EntityTracker
 
 	public void func_85172_a(EntityPlayerMP p_85172_1_, Chunk p_85172_2_)
 	{
-		Iterator iterator = this.trackedEntities.iterator();
+		List<EntityTrackerEntry> list = this.chunkIndex.get(ChunkHash.chunkToKey(p_85172_2_.xPosition, p_85172_2_.zPosition));
 
-		while (iterator.hasNext())
+		if (list == null)
 		{
-			EntityTrackerEntry entitytrackerentry = (EntityTrackerEntry)iterator.next();
+			return;
+		}
+
+		for (int i = 0; i < list.size(); ++i)
+		{
+			EntityTrackerEntry entitytrackerentry = list.get(i);
 
 			if (entitytrackerentry.myEntity != p_85172_1_ && entitytrackerentry.myEntity.chunkCoordX == p_85172_2_.xPosition && entitytrackerentry.myEntity.chunkCoordZ == p_85172_2_.zPosition)
 			{
@@ -344,6 +352,98 @@ public class EntityTracker
 	
 	/*===================================== ULTRAMINE START =====================================*/
 	
+	/**
+	 * Trackers indexed by the chunk their entity was in at the last {@link #updateTrackedEntities()}. Chunk
+	 * changes of entities are picked up on each update, so the index may lag behind entity positions by one
+	 * tick at most.
+	 */
+	private final IntObjMap<List<EntityTrackerEntry>> chunkIndex = HashIntObjMaps.newMutableMap();
+	
+	private void indexEntry(EntityTrackerEntry entry)
+	{
+		int key = ChunkHash.chunkToKey(entry.myEntity.chunkCoordX, entry.myEntity.chunkCoordZ);
+		entry.indexedChunkKey = key;
+		List<EntityTrackerEntry> list = chunkIndex.get(key);
+		if(list == null)
+		{
+			list = new ArrayList<>(4);
+			chunkIndex.put(key, list);
+		}
+		list.add(entry);
+	}
+	
+	private void unindexEntry(EntityTrackerEntry entry)
+	{
+		List<EntityTrackerEntry> list = chunkIndex.get(entry.indexedChunkKey);
+		if(list != null && list.remove(entry) && list.isEmpty())
+			chunkIndex.remove(entry.indexedChunkKey);
+	}
+	
+	private void reindexEntry(EntityTrackerEntry entry)
+	{
+		if(entry.indexedChunkKey != ChunkHash.chunkToKey(entry.myEntity.chunkCoordX, entry.myEntity.chunkCoordZ))
+		{
+			unindexEntry(entry);
+			indexEntry(entry);
+		}
+	}
+	
+	/**
+	 * Replacement of checking all trackers for moved player. Player could start or stop tracking only entities,
+	 * that are within tracking range (capped by entityViewDistance) from its current or previous chunk. Extra
+	 * 2 chunks cover movements of player and entities inside their chunks since the previous check.
+	 */
+	private void updateNearbyTrackers(EntityPlayerMP player, int oldChunkKey)
+	{
+		int radius = (entityViewDistance >> 4) + 2;
+		int area = (radius*2 + 1) * (radius*2 + 1);
+		int newX = player.chunkCoordX;
+		int newZ = player.chunkCoordZ;
+		int oldX = ChunkHash.keyToX(oldChunkKey);
+		int oldZ = ChunkHash.keyToZ(oldChunkKey);
+		boolean sameArea = Math.abs(newX - oldX) <= 1 && Math.abs(newZ - oldZ) <= 1;
+		if(chunkIndex.size() <= (sameArea ? area : area*2))
+		{
+			for(IntObjCursor<List<EntityTrackerEntry>> it = chunkIndex.cursor(); it.moveNext();)
+			{
+				int x = ChunkHash.keyToX(it.key());
+				int z = ChunkHash.keyToZ(it.key());
+				if(Math.abs(x - newX) <= radius && Math.abs(z - newZ) <= radius || Math.abs(x - oldX) <= radius && Math.abs(z - oldZ) <= radius)
+					tryStartWatching(it.value(), player);
+			}
+		}
+		else if(sameArea)
+		{
+			int maxX = Math.max(newX, oldX) + radius;
+			int maxZ = Math.max(newZ, oldZ) + radius;
+			for(int x = Math.min(newX, oldX) - radius; x <= maxX; x++)
+				for(int z = Math.min(newZ, oldZ) - radius; z <= maxZ; z++)
+					tryStartWatching(chunkIndex.get(ChunkHash.chunkToKey(x, z)), player);
+		}
+		else
+		{
+			for(int x = newX - radius; x <= newX + radius; x++)
+				for(int z = newZ - radius; z <= newZ + radius; z++)
+					tryStartWatching(chunkIndex.get(ChunkHash.chunkToKey(x, z)), player);
+			for(int x = oldX - radius; x <= oldX + radius; x++)
+				for(int z = oldZ - radius; z <= oldZ + radius; z++)
+					if(Math.abs(x - newX) > radius || Math.abs(z - newZ) > radius)
+						tryStartWatching(chunkIndex.get(ChunkHash.chunkToKey(x, z)), player);
+		}
+	}
+	
+	private static void tryStartWatching(List<EntityTrackerEntry> list, EntityPlayerMP player)
+	{
+		if(list == null)
+			return;
+		for(int i = 0; i < list.size(); i++)
+		{
+			EntityTrackerEntry entry = list.get(i);
+			if(entry.myEntity != player)
+				entry.tryStartWachingThis(player);
+		}
+	}
+	
 	public EntityTrackerEntry findPlayerTracker(EntityPlayerMP player)
 	{
 		for(Object o : trackedEntities)
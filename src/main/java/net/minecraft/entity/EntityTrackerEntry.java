@@ -636,4 +636,9 @@ public class EntityTrackerEntry
 			p_73123_1_.func_152339_d(this.myEntity);
 		}
 	}
-}
\ No newline at end of file
+
+	/* ======================================== ULTRAMINE START =====================================*/
+
+	/** Key of the chunk this entry is stored under in EntityTracker chunk index */
+	int indexedChunkKey;
+}
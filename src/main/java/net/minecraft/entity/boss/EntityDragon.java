@@ -593,7 +593,7 @@ public class EntityDragon extends EntityLiving implements IBossDisplayData, IEnt
 	private void createEnderPortal(int p_70975_1_, int p_70975_2_)
 	{
 		byte b0 = 64;
-		BlockEndPortal.field_149948_a = true;
+		BlockEndPortal.setPlacingPortal(true); // ultramine
 		byte b1 = 4;
 
 		for (int k = b0 - 1; k <= b0 + 32; ++k)
@@ -641,7 +641,7 @@ public class EntityDragon extends EntityLiving implements IBossDisplayData, IEnt
 		this.worldObj.setBlock(p_70975_1_, b0 + 2, p_70975_2_ + 1, Blocks.torch);
 		this.worldObj.setBlock(p_70975_1_, b0 + 3, p_70975_2_, Blocks.bedrock);
 		this.worldObj.setBlock(p_70975_1_, b0 + 4, p_70975_2_, Blocks.dragon_egg);
-		BlockEndPortal.field_149948_a = false;
+		BlockEndPortal.setPlacingPortal(false); // ultramine
 	}
 
 	protected void despawnEntity() {}
@@ -1,7 +1,5 @@
 package net.minecraft.entity.item;
 
-import java.util.Iterator;
-
 import net.minecraft.block.material.Material;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.EntityPlayer;
@@ -125,7 +123,7 @@ public class EntityItem extends Entity
 
 				if (!this.worldObj.isRemote)
 				{
-					this.searchForOtherItemsNearby();
+					this.worldObj.getItemMerger().enqueue(this); // ultramine: merged by one pass after entity update loop
 				}
 			}
 
@@ -176,17 +174,6 @@ public class EntityItem extends Entity
 		}
 	}
 
-	private void searchForOtherItemsNearby()
-	{
-		Iterator iterator = this.worldObj.getEntitiesWithinAABB(EntityItem.class, this.boundingBox.expand(0.5D, 0.0D, 0.5D)).iterator();
-
-		while (iterator.hasNext())
-		{
-			EntityItem entityitem = (EntityItem)iterator.next();
-			this.combineItems(entityitem);
-		}
-	}
-
 	public boolean combineItems(EntityItem p_70289_1_)
 	{
 		if (p_70289_1_ == this)
@@ -419,7 +406,7 @@ public class EntityItem extends Entity
 
 		if (!this.worldObj.isRemote)
 		{
-			this.searchForOtherItemsNearby();
+			this.worldObj.getItemMerger().enqueue(this); // ultramine
 		}
 	}
 
@@ -154,6 +154,10 @@ public class EntityXPOrb extends Entity
 		{
 			this.setDead();
 		}
+		else if (!this.worldObj.isRemote && this.ticksExisted % 25 == 0) // ultramine: merging orbs lying close to each other
+		{
+			this.worldObj.getItemMerger().enqueue(this);
+		}
 	}
 
 	public boolean handleWaterMovement()
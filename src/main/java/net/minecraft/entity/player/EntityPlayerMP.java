@@ -108,9 +108,11 @@ import org.ultramine.server.WorldConstants;
 import org.ultramine.server.event.PlayerDeathEvent;
 import org.ultramine.server.internal.UMHooks;
 import org.ultramine.server.chunk.ChunkSendManager;
+import org.ultramine.server.world.ParallelWorldTicker;
 import org.ultramine.server.data.player.PlayerData;
 import org.ultramine.server.internal.UMEventFactory;
 import org.ultramine.server.util.BasicTypeParser;
+import org.ultramine.server.util.GlobalExecutors;
 
 import net.minecraft.entity.item.EntityItem;
 import net.minecraftforge.common.ForgeHooks;
@@ -466,6 +468,8 @@ public class EntityPlayerMP extends EntityPlayer implements ICrafting
 	{
 		if(mcServer.worldServerForDimension(p_71027_1_) == null)
 			return;
+		if(ParallelWorldTicker.deferTravelToDimension(this, p_71027_1_))
+			return;
 		int enderLink = ((WorldServer)worldObj).getConfig().portals.enderLink;
 		if (this.dimension == enderLink && p_71027_1_ == enderLink)
 		{
@@ -935,12 +939,21 @@ public class EntityPlayerMP extends EntityPlayer implements ICrafting
 		this.chatVisibility = p_147100_1_.func_149523_e();
 		this.chatColours = p_147100_1_.func_149520_f();
 
-		if (this.mcServer.isSinglePlayer() && this.mcServer.getServerOwner().equals(this.getCommandSenderName()))
+		// ultramine: the packet is handled on network thread, server difficulty and data watcher are updated on server thread
+		final C15PacketClientSettings settings = p_147100_1_;
+		GlobalExecutors.nextTick().execute(new Runnable()
 		{
-			this.mcServer.func_147139_a(p_147100_1_.func_149518_g());
-		}
+			@Override
+			public void run()
+			{
+				if (EntityPlayerMP.this.mcServer.isSinglePlayer() && EntityPlayerMP.this.mcServer.getServerOwner().equals(EntityPlayerMP.this.getCommandSenderName()))
+				{
+					EntityPlayerMP.this.mcServer.func_147139_a(settings.func_149518_g());
+				}
 
-		this.setHideCape(1, !p_147100_1_.func_149519_h());
+				EntityPlayerMP.this.setHideCape(1, !settings.func_149519_h());
+			}
+		});
 	}
 
 	public EntityPlayer.EnumChatVisibility func_147096_v()
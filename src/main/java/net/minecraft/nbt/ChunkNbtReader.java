@@ -0,0 +1,299 @@
+package net.minecraft.nbt;
+
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import org.ultramine.server.chunk.alloc.MemSlot;
+import org.ultramine.server.internal.LambdaHolder;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streaming decoder of region file chunk data. Block arrays of "Level/Sections" entries are read into a reusable
+ * buffer and copied straight into slot of a new {@link ExtendedBlockStorage}, which is put into the tree as
+ * {@link EbsSaveFakeNbt}. All other tags, including Entities, TileEntities and TileTicks, are materialized as usual.
+ * Sections with unknown tags or arrays of unexpected length are materialized too, so data added by mods is kept.
+ */
+// Localed in net.minecraft.nbt package due to access issues
+public class ChunkNbtReader
+{
+	private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("org.ultramine.chunk.io.streamingNbt", "true"));
+
+	private static final int LSB_OFF = 0;
+	private static final int MSB_OFF = 4096;
+	private static final int META_OFF = MSB_OFF + 2048;
+	private static final int BLOCKLIGHT_OFF = META_OFF + 2048;
+	private static final int SKYLIGHT_OFF = BLOCKLIGHT_OFF + 2048;
+	private static final ThreadLocal<byte[]> LOCAL_BUFFER = ThreadLocal.withInitial(LambdaHolder.newByteArray(SKYLIGHT_OFF + 2048));
+
+	private static final int HAS_LSB = 1;
+	private static final int HAS_MSB = 2;
+	private static final int HAS_META = 4;
+	private static final int HAS_BLOCKLIGHT = 8;
+	private static final int HAS_SKYLIGHT = 16;
+	private static final int HAS_Y = 32;
+	private static final int HAS_REQUIRED = HAS_Y | HAS_LSB | HAS_META | HAS_BLOCKLIGHT;
+
+	private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+	private static final boolean MEASURE_ALLOCATION = isAllocationMeasurable();
+	private static final AtomicLong decodedChunks = new AtomicLong();
+	private static final AtomicLong allocatedBytes = new AtomicLong();
+
+	private final DataInput in;
+	private final boolean hasSky;
+	private NBTTagList sections;
+
+	private ChunkNbtReader(DataInput in, boolean hasSky)
+	{
+		this.in = in;
+		this.hasSky = hasSky;
+	}
+
+	/**
+	 * Reads chunk data, sections of returned tree should be released by
+	 * {@link net.minecraft.world.chunk.storage.AnvilChunkLoader#releaseNbt(NBTTagCompound)}
+	 */
+	public static NBTTagCompound read(DataInputStream in, boolean hasSky) throws IOException
+	{
+		long allocatedBefore = allocatedBytes();
+		NBTTagCompound nbt = ENABLED ? new ChunkNbtReader(in, hasSky).readSafe() : CompressedStreamTools.read(in);
+		if(MEASURE_ALLOCATION)
+		{
+			allocatedBytes.addAndGet(allocatedBytes() - allocatedBefore);
+			decodedChunks.incrementAndGet();
+		}
+		return nbt;
+	}
+
+	public static boolean isEnabled()
+	{
+		return ENABLED;
+	}
+
+	public static long getDecodedChunks()
+	{
+		return decodedChunks.get();
+	}
+
+	/** @return average heap allocation of decoding a chunk, in bytes, or -1 if JVM does not support measuring it */
+	public static long getAllocatedBytesPerChunk()
+	{
+		if(!MEASURE_ALLOCATION)
+			return -1;
+		long chunks = decodedChunks.get();
+		return chunks == 0 ? 0 : allocatedBytes.get() / chunks;
+	}
+
+	private NBTTagCompound readSafe() throws IOException
+	{
+		try
+		{
+			return readRoot();
+		}
+		catch(IOException | RuntimeException e)
+		{
+			if(sections != null)
+			{
+				for(int i = 0; i < sections.tagCount(); i++)
+				{
+					NBTTagCompound nbt = sections.getCompoundTagAt(i);
+					if(nbt instanceof EbsSaveFakeNbt)
+						((EbsSaveFakeNbt)nbt).release();
+				}
+			}
+			throw e;
+		}
+	}
+
+	private NBTTagCompound readRoot() throws IOException
+	{
+		if(in.readByte() != 10)
+			throw new IOException("Root tag must be a named compound tag");
+		in.readUTF();
+		NBTTagCompound root = new NBTTagCompound();
+		byte type;
+		while((type = in.readByte()) != 0)
+		{
+			String name = in.readUTF();
+			if(type == 10 && name.equals("Level"))
+				root.setTag(name, readLevel());
+			else
+				root.setTag(name, NBTTagCompound.func_152449_a(type, name, in, 1, NBTSizeTracker.field_152451_a));
+		}
+		return root;
+	}
+
+	private NBTTagCompound readLevel() throws IOException
+	{
+		NBTTagCompound level = new NBTTagCompound(13);
+		byte type;
+		while((type = in.readByte()) != 0)
+		{
+			String name = in.readUTF();
+			if(type == 9 && name.equals("Sections"))
+				level.setTag(name, readSections());
+			else
+				level.setTag(name, NBTTagCompound.func_152449_a(type, name, in, 2, NBTSizeTracker.field_152451_a));
+		}
+		return level;
+	}
+
+	private NBTTagList readSections() throws IOException
+	{
+		byte elemType = in.readByte();
+		int count = in.readInt();
+		NBTTagList list = new NBTTagList(Math.max(count, 0));
+		if(sections == null)
+			sections = list;
+		for(int i = 0; i < count; i++)
+		{
+			if(elemType == 10)
+			{
+				list.appendTag(readSection());
+			}
+			else
+			{
+				NBTBase nbt = NBTBase.func_150284_a(elemType);
+				nbt.func_152446_a(in, 3, NBTSizeTracker.field_152451_a);
+				list.appendTag(nbt);
+			}
+		}
+		return list;
+	}
+
+	private NBTTagCompound readSection() throws IOException
+	{
+		byte[] buf = LOCAL_BUFFER.get();
+		int present = 0;
+		byte y = 0;
+		NBTTagCompound other = null;
+		byte type;
+		while((type = in.readByte()) != 0)
+		{
+			String name = in.readUTF();
+			int flag = type == 7 ? arrayFlag(name) : 0;
+			if(flag != 0)
+			{
+				int len = in.readInt();
+				if(len == arrayLength(flag))
+				{
+					in.readFully(buf, arrayOffset(flag), len);
+					present |= flag;
+					continue;
+				}
+				byte[] arr = new byte[len];
+				in.readFully(arr);
+				if(other == null)
+					other = new NBTTagCompound();
+				other.setByteArray(name, arr);
+			}
+			else if(type == 1 && name.equals("Y"))
+			{
+				y = in.readByte();
+				present |= HAS_Y;
+			}
+			else
+			{
+				if(other == null)
+					other = new NBTTagCompound();
+				other.setTag(name, NBTTagCompound.func_152449_a(type, name, in, 4, NBTSizeTracker.field_152451_a));
+			}
+		}
+
+		if(other == null && (present & HAS_REQUIRED) == HAS_REQUIRED)
+		{
+			ExtendedBlockStorage ebs = new ExtendedBlockStorage(y << 4, hasSky, false);
+			MemSlot slot = ebs.getSlot();
+			slot.setLSB(buf, LSB_OFF);
+			if((present & HAS_MSB) != 0)
+				slot.setMSB(buf, MSB_OFF);
+			else
+				slot.zerofillMSB();
+			slot.setBlockMetadata(buf, META_OFF);
+			slot.setBlocklight(buf, BLOCKLIGHT_OFF);
+			if(hasSky && (present & HAS_SKYLIGHT) != 0)
+				slot.setSkylight(buf, SKYLIGHT_OFF);
+			else
+				slot.zerofillSkylight();
+			ebs.removeInvalidBlocks();
+			return new EbsSaveFakeNbt(ebs, !hasSky);
+		}
+
+		// Not a plain vanilla section, materializing it as is
+		NBTTagCompound section = other != null ? other : new NBTTagCompound();
+		if((present & HAS_Y) != 0)
+			section.setByte("Y", y);
+		for(int flag = HAS_LSB; flag <= HAS_SKYLIGHT; flag <<= 1)
+		{
+			if((present & flag) != 0)
+			{
+				int off = arrayOffset(flag);
+				section.setByteArray(arrayName(flag), Arrays.copyOfRange(buf, off, off + arrayLength(flag)));
+			}
+		}
+		return section;
+	}
+
+	private static int arrayFlag(String name)
+	{
+		switch(name)
+		{
+		case "Blocks":		return HAS_LSB;
+		case "Add":			return HAS_MSB;
+		case "Data":		return HAS_META;
+		case "BlockLight":	return HAS_BLOCKLIGHT;
+		case "SkyLight":	return HAS_SKYLIGHT;
+		default:			return 0;
+		}
+	}
+
+	private static String arrayName(int flag)
+	{
+		switch(flag)
+		{
+		case HAS_LSB:		return "Blocks";
+		case HAS_MSB:		return "Add";
+		case HAS_META:		return "Data";
+		case HAS_BLOCKLIGHT:return "BlockLight";
+		default:			return "SkyLight";
+		}
+	}
+
+	private static int arrayOffset(int flag)
+	{
+		switch(flag)
+		{
+		case HAS_LSB:		return LSB_OFF;
+		case HAS_MSB:		return MSB_OFF;
+		case HAS_META:		return META_OFF;
+		case HAS_BLOCKLIGHT:return BLOCKLIGHT_OFF;
+		default:			return SKYLIGHT_OFF;
+		}
+	}
+
+	private static int arrayLength(int flag)
+	{
+		return flag == HAS_LSB ? 4096 : 2048;
+	}
+
+	private static boolean isAllocationMeasurable()
+	{
+		try
+		{
+			return THREAD_BEAN instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)THREAD_BEAN).isThreadAllocatedMemoryEnabled();
+		}
+		catch(Throwable t)
+		{
+			return false;
+		}
+	}
+
+	private static long allocatedBytes()
+	{
+		return MEASURE_ALLOCATION ? ((com.sun.management.ThreadMXBean)THREAD_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+	}
+}
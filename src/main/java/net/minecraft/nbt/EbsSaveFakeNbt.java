@@ -10,6 +10,8 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 // Localed in net.minecraft.nbt package due to access issues
@@ -36,22 +38,235 @@ public class EbsSaveFakeNbt extends NBTTagCompound implements ReferenceCounted
 		return ebs;
 	}
 
-	public void convertToNbt()
+	public synchronized void convertToNbt()
 	{
 		if(isNbt)
 			return;
 		createMap(0);
-		setByte("Y", (byte)(ebs.getYLocation() >> 4 & 255));
+		super.setByte("Y", (byte)(ebs.getYLocation() >> 4 & 255));
 		MemSlot slot = ebs.getSlot();
-		setByteArray("Blocks", slot.copyLSB());
-		setByteArray("Add", slot.copyMSB());
-		setByteArray("Data", slot.copyBlockMetadata());
-		setByteArray("BlockLight", slot.copyBlocklight());
-		setByteArray("SkyLight", hasNoSky ? new byte[2048] : slot.copySkylight());
+		super.setByteArray("Blocks", slot.copyLSB());
+		super.setByteArray("Add", slot.copyMSB());
+		super.setByteArray("Data", slot.copyBlockMetadata());
+		super.setByteArray("BlockLight", slot.copyBlocklight());
+		super.setByteArray("SkyLight", hasNoSky ? new byte[2048] : slot.copySkylight());
 
 		isNbt = true;
 	}
 
+	// Sections may be read or modified by mods in ChunkDataEvent.Load, so they are converted to nbt on first access.
+	// Slot is not changed by modifications, the chunk is already read from it
+
+	@Override
+	public Set func_150296_c()
+	{
+		convertToNbt();
+		return super.func_150296_c();
+	}
+
+	@Override
+	public NBTBase getTag(String key)
+	{
+		convertToNbt();
+		return super.getTag(key);
+	}
+
+	@Override
+	public byte func_150299_b(String key)
+	{
+		convertToNbt();
+		return super.func_150299_b(key);
+	}
+
+	@Override
+	public boolean hasKey(String key)
+	{
+		convertToNbt();
+		return super.hasKey(key);
+	}
+
+	@Override
+	public byte getByte(String key)
+	{
+		convertToNbt();
+		return super.getByte(key);
+	}
+
+	@Override
+	public short getShort(String key)
+	{
+		convertToNbt();
+		return super.getShort(key);
+	}
+
+	@Override
+	public int getInteger(String key)
+	{
+		convertToNbt();
+		return super.getInteger(key);
+	}
+
+	@Override
+	public long getLong(String key)
+	{
+		convertToNbt();
+		return super.getLong(key);
+	}
+
+	@Override
+	public float getFloat(String key)
+	{
+		convertToNbt();
+		return super.getFloat(key);
+	}
+
+	@Override
+	public double getDouble(String key)
+	{
+		convertToNbt();
+		return super.getDouble(key);
+	}
+
+	@Override
+	public String getString(String key)
+	{
+		convertToNbt();
+		return super.getString(key);
+	}
+
+	@Override
+	public byte[] getByteArray(String key)
+	{
+		convertToNbt();
+		return super.getByteArray(key);
+	}
+
+	@Override
+	public int[] getIntArray(String key)
+	{
+		convertToNbt();
+		return super.getIntArray(key);
+	}
+
+	@Override
+	public NBTTagCompound getCompoundTag(String key)
+	{
+		convertToNbt();
+		return super.getCompoundTag(key);
+	}
+
+	@Override
+	public NBTTagList getTagList(String key, int type)
+	{
+		convertToNbt();
+		return super.getTagList(key, type);
+	}
+
+	@Override
+	public boolean hasNoTags()
+	{
+		convertToNbt();
+		return super.hasNoTags();
+	}
+
+	@Override
+	public Map<String, NBTBase> geTagMap()
+	{
+		convertToNbt();
+		return super.geTagMap();
+	}
+
+	@Override
+	public void setTag(String key, NBTBase value)
+	{
+		convertToNbt();
+		super.setTag(key, value);
+	}
+
+	@Override
+	public void setByte(String key, byte value)
+	{
+		convertToNbt();
+		super.setByte(key, value);
+	}
+
+	@Override
+	public void setShort(String key, short value)
+	{
+		convertToNbt();
+		super.setShort(key, value);
+	}
+
+	@Override
+	public void setInteger(String key, int value)
+	{
+		convertToNbt();
+		super.setInteger(key, value);
+	}
+
+	@Override
+	public void setLong(String key, long value)
+	{
+		convertToNbt();
+		super.setLong(key, value);
+	}
+
+	@Override
+	public void setFloat(String key, float value)
+	{
+		convertToNbt();
+		super.setFloat(key, value);
+	}
+
+	@Override
+	public void setDouble(String key, double value)
+	{
+		convertToNbt();
+		super.setDouble(key, value);
+	}
+
+	@Override
+	public void setString(String key, String value)
+	{
+		convertToNbt();
+		super.setString(key, value);
+	}
+
+	@Override
+	public void setByteArray(String key, byte[] value)
+	{
+		convertToNbt();
+		super.setByteArray(key, value);
+	}
+
+	@Override
+	public void setIntArray(String key, int[] value)
+	{
+		convertToNbt();
+		super.setIntArray(key, value);
+	}
+
+	@Override
+	public void removeTag(String key)
+	{
+		convertToNbt();
+		super.removeTag(key);
+	}
+
+	@Override
+	public synchronized void setTagMap(Map tagMap)
+	{
+		super.setTagMap(tagMap);
+		isNbt = true;
+	}
+
+	@Override
+	public void clear()
+	{
+		convertToNbt();
+		super.clear();
+	}
+
 	@Override
 	public void write(DataOutput out) throws IOException
 	{
@@ -105,40 +320,36 @@ public class EbsSaveFakeNbt extends NBTTagCompound implements ReferenceCounted
 	@Override
 	public void func_152446_a(DataInput p_152446_1_, int p_152446_2_, NBTSizeTracker p_152446_3_) throws IOException
 	{
-		if(!isNbt)
-			throw new UnsupportedOperationException();
+		convertToNbt();
 		super.func_152446_a(p_152446_1_, p_152446_2_, p_152446_3_);
 	}
 
 	@Override
 	public String toString()
 	{
-		if(!isNbt)
-			return "";
+		convertToNbt();
 		return super.toString();
 	}
 
+	/** @return ordinary compound, the copy does not hold the slot */
 	@Override
 	public NBTBase copy()
 	{
-		if(!isNbt)
-			return new EbsSaveFakeNbt(ebs.copy(), hasNoSky);
+		convertToNbt();
 		return super.copy();
 	}
 
 	@Override
 	public boolean equals(Object o)
 	{
-		if(!isNbt)
-			throw new UnsupportedOperationException();
+		convertToNbt();
 		return super.equals(o);
 	}
 
 	@Override
 	public int hashCode()
 	{
-		if(!isNbt)
-			throw new UnsupportedOperationException();
+		convertToNbt();
 		return super.hashCode();
 	}
 
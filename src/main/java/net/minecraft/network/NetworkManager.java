@@ -10,6 +10,7 @@ import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelException;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
@@ -46,6 +47,8 @@ import org.apache.logging.log4j.Marker;
 import org.apache.logging.log4j.MarkerManager;
 import org.ultramine.server.ConfigurationHandler;
 import org.ultramine.server.event.WorldUpdateObjectType;
+import org.ultramine.server.network.CoalescingWriter;
+import org.ultramine.server.network.PacketHandlingStats;
 
 public class NetworkManager extends SimpleChannelInboundHandler
 {
@@ -68,6 +71,7 @@ public class NetworkManager extends SimpleChannelInboundHandler
 	private IChatComponent terminationReason;
 	private boolean field_152463_r;
 	private static final String __OBFID = "CL_00001240";
+	private CoalescingWriter coalescingWriter; // ultramine
 
 	public NetworkManager(boolean p_i45147_1_)
 	{
@@ -80,6 +84,17 @@ public class NetworkManager extends SimpleChannelInboundHandler
 		this.channel = p_channelActive_1_.channel();
 		this.socketAddress = this.channel.remoteAddress();
 		this.setConnectionState(EnumConnectionState.HANDSHAKING);
+
+		if (CoalescingWriter.isEnabled() && !this.isClientSide && !this.isLocalChannel())
+		{
+			ChannelHandler encoder = this.channel.pipeline().get("encoder");
+
+			if (encoder instanceof MessageSerializer)
+			{
+				this.coalescingWriter = new CoalescingWriter(this.channel);
+				((MessageSerializer)encoder).setCoalescingWriter(this.coalescingWriter);
+			}
+		}
 	}
 
 	public void setConnectionState(EnumConnectionState p_150723_1_)
@@ -118,7 +133,9 @@ public class NetworkManager extends SimpleChannelInboundHandler
 		{
 			if (p_channelRead0_2_.hasPriority())
 			{
+				long startT = System.nanoTime();
 				p_channelRead0_2_.processPacket(this.netHandler);
+				PacketHandlingStats.record(p_channelRead0_2_, System.nanoTime() - startT, true); // ultramine
 			}
 			else
 			{
@@ -152,6 +169,13 @@ public class NetworkManager extends SimpleChannelInboundHandler
 		final EnumConnectionState enumconnectionstate = EnumConnectionState.func_150752_a(p_150732_1_);
 		final EnumConnectionState enumconnectionstate1 = (EnumConnectionState)this.channel.attr(attrKeyConnectionState).get();
 
+		// ultramine: play packets are written without flush, see CoalescingWriter
+		if (this.coalescingWriter != null && enumconnectionstate1 == EnumConnectionState.PLAY && (enumconnectionstate == EnumConnectionState.PLAY || p_150732_1_ instanceof FMLProxyPacket))
+		{
+			this.coalescingWriter.write(p_150732_1_, p_150732_2_);
+			return;
+		}
+
 		if (enumconnectionstate1 != enumconnectionstate && !( p_150732_1_ instanceof FMLProxyPacket))
 		{
 			logger.debug("Disabled auto read");
@@ -165,6 +189,11 @@ public class NetworkManager extends SimpleChannelInboundHandler
 				this.setConnectionState(enumconnectionstate);
 			}
 
+			if (this.coalescingWriter != null)
+			{
+				this.coalescingWriter.drain();
+			}
+
 			this.channel.writeAndFlush(p_150732_1_).addListeners(p_150732_2_).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
 		}
 		else
@@ -179,6 +208,11 @@ public class NetworkManager extends SimpleChannelInboundHandler
 						NetworkManager.this.setConnectionState(enumconnectionstate);
 					}
 
+					if (NetworkManager.this.coalescingWriter != null)
+					{
+						NetworkManager.this.coalescingWriter.drain();
+					}
+
 					NetworkManager.this.channel.writeAndFlush(p_150732_1_).addListeners(p_150732_2_).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
 				}
 			});
@@ -229,9 +263,10 @@ public class NetworkManager extends SimpleChannelInboundHandler
 				if(profiler != null)
 					profiler.startSection(packet.getClass().getSimpleName());
 				long startT = System.nanoTime();
-				packet.processPacket(this.netHandler);			
+				packet.processPacket(this.netHandler);
+				long elapsed = System.nanoTime() - startT;
+				PacketHandlingStats.record(packet, elapsed, false);
 				if (ConfigurationHandler.getServerConfig().settings.other.spamLagConsole) {
-					long elapsed = System.nanoTime() - startT;
 					if (elapsed > 20000000) {
 						logger.warn("Possible lag source on processiong packet {} from {} {}ms", packet.getClass().getSimpleName(), player, (elapsed / 1000000));
 						if (packet instanceof C0EPacketClickWindow && player != null)
@@ -250,7 +285,15 @@ public class NetworkManager extends SimpleChannelInboundHandler
 			this.netHandler.onNetworkTick();
 		}
 
-		this.channel.flush();
+		if (this.coalescingWriter != null)
+		{
+			this.coalescingWriter.flush();
+			CoalescingWriter.roll();
+		}
+		else
+		{
+			this.channel.flush();
+		}
 	}
 
 	public SocketAddress getSocketAddress()
@@ -13,8 +13,7 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.local.LocalAddress;
 import io.netty.channel.local.LocalServerChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.EventLoopGroup;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
@@ -35,16 +34,15 @@ import net.minecraft.server.network.NetHandlerHandshakeTCP;
 import net.minecraft.util.ChatComponentText;
 import net.minecraft.util.MessageDeserializer;
 import net.minecraft.util.MessageDeserializer2;
-import net.minecraft.util.MessageSerializer;
-import net.minecraft.util.MessageSerializer2;
 import net.minecraft.util.ReportedException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.ultramine.server.network.NetworkTransport;
 
 public class NetworkSystem
 {
 	private static final Logger logger = LogManager.getLogger();
-	private static final NioEventLoopGroup eventLoops = new NioEventLoopGroup(0, (new ThreadFactoryBuilder()).setNameFormat("Netty IO #%d").setDaemon(true).build());
+	private static final EventLoopGroup eventLoops = NetworkTransport.newEventLoopGroup((new ThreadFactoryBuilder()).setNameFormat("Netty IO #%d").setDaemon(true).build()); // ultramine: epoll if available
 	private final MinecraftServer mcServer;
 	public volatile boolean isAlive;
 	private final List endpoints = Collections.synchronizedList(new ArrayList());
@@ -63,7 +61,14 @@ public class NetworkSystem
 
 		synchronized (this.endpoints)
 		{
-			this.endpoints.add(((ServerBootstrap)((ServerBootstrap)(new ServerBootstrap()).channel(NioServerSocketChannel.class)).childHandler(new ChannelInitializer()
+			ServerBootstrap bootstrap = new ServerBootstrap().channel(NetworkTransport.getServerChannelClass(eventLoops)); // ultramine
+
+			if (NetworkTransport.isPooledDirect())
+			{
+				bootstrap.childOption(ChannelOption.ALLOCATOR, NetworkTransport.getAllocator());
+			}
+
+			this.endpoints.add(((ServerBootstrap)bootstrap.childHandler(new ChannelInitializer()
 			{
 				private static final String __OBFID = "CL_00001448";
 				protected void initChannel(Channel p_initChannel_1_)
@@ -86,7 +91,7 @@ public class NetworkSystem
 						;
 					}
 
-					p_initChannel_1_.pipeline().addLast("timeout", new ReadTimeoutHandler(FMLNetworkHandler.READ_TIMEOUT)).addLast("legacy_query", new PingResponseHandler(NetworkSystem.this)).addLast("splitter", new MessageDeserializer2()).addLast("decoder", new MessageDeserializer(NetworkManager.field_152462_h)).addLast("prepender", new MessageSerializer2()).addLast("encoder", new MessageSerializer(NetworkManager.field_152462_h));
+					p_initChannel_1_.pipeline().addLast("timeout", new ReadTimeoutHandler(FMLNetworkHandler.READ_TIMEOUT)).addLast("legacy_query", new PingResponseHandler(NetworkSystem.this)).addLast("splitter", new MessageDeserializer2()).addLast("decoder", new MessageDeserializer(NetworkManager.field_152462_h)).addLast("prepender", NetworkTransport.newPrepender()).addLast("encoder", NetworkTransport.newEncoder(NetworkManager.field_152462_h));
 					NetworkManager networkmanager = new NetworkManager(false);
 					NetworkSystem.this.networkManagers.add(networkmanager);
 					p_initChannel_1_.pipeline().addLast("packet_handler", networkmanager);
@@ -58,6 +58,12 @@ public class C15PacketClientSettings extends Packet
 		p_148833_1_.processClientSettings(this);
 	}
 
+	/** ultramine: handled on network thread, see EntityPlayerMP.func_147100_a() */
+	public boolean hasPriority()
+	{
+		return true;
+	}
+
 	public String func_149524_c()
 	{
 		return this.field_149530_a;
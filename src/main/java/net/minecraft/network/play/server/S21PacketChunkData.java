@@ -19,8 +19,11 @@ import net.minecraft.world.chunk.NibbleArray;
 import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import org.ultramine.server.chunk.ChunkSnapshot;
 import org.ultramine.server.internal.UMHooks;
+import org.ultramine.server.network.ISharedEncodingPacket;
+import org.ultramine.server.network.SharedPacketEncoding;
+import org.ultramine.server.util.DeflaterPool;
 
-public class S21PacketChunkData extends Packet
+public class S21PacketChunkData extends Packet implements ISharedEncodingPacket
 {
 	private int field_149284_a;
 	private int field_149282_b;
@@ -33,9 +36,13 @@ public class S21PacketChunkData extends Packet
 	private static byte[] field_149286_i = new byte[196864];
 	private static final String __OBFID = "CL_00001304";
 	private Semaphore deflateGate;
+	private volatile boolean deflated;
+	private SharedPacketEncoding sharedEncoding;
 	
 	private static final byte[] unloadSequence = new byte[] {0x78, (byte) 0x9C, 0x63, 0x64, 0x1C, (byte) 0xD9, 0x00, 0x00, (byte) 0x81, (byte) 0x80, 0x01, 0x01};
 	private ChunkSnapshot chunkSnapshot;
+	private UMHooks.ChunkPacketData packedData;
+	private static final DeflaterPool deflaterPool = new DeflaterPool(7, 32);
 
 	public S21PacketChunkData() {}
 
@@ -59,6 +66,40 @@ public class S21PacketChunkData extends Packet
 		this.chunkSnapshot = chunkSnapshot;
 	}
 	
+	/** Partial update of the given sections, compressed lazily, see {@link #ensureDeflated()} */
+	private S21PacketChunkData(ChunkSnapshot chunkSnapshot, int sectionMask)
+	{
+		this.field_149284_a = chunkSnapshot.getX();
+		this.field_149282_b = chunkSnapshot.getZ();
+		this.field_149279_g = false;
+		this.field_149283_c = sectionMask;
+		this.chunkSnapshot = chunkSnapshot;
+		this.deflateGate = new Semaphore(1);
+	}
+
+	private S21PacketChunkData(int cx, int cz, UMHooks.ChunkPacketData data)
+	{
+		this.field_149284_a = cx;
+		this.field_149282_b = cz;
+		this.field_149279_g = true;
+		setPackedData(data);
+	}
+
+	private void setPackedData(UMHooks.ChunkPacketData data)
+	{
+		this.packedData = data;
+		this.field_149281_e = data.data;
+		this.field_149285_h = data.length;
+		this.field_149280_d = data.ebsMask;
+		this.field_149283_c = data.ebsMask;
+	}
+
+	/** @return compressed data of packet made by {@link #makeForSend(ChunkSnapshot)}, available after {@link #deflate()} */
+	public UMHooks.ChunkPacketData getPackedData()
+	{
+		return packedData;
+	}
+	
 	private S21PacketChunkData(int cx, int cz) //for unload
 	{
 		this.field_149284_a = cx;
@@ -71,17 +112,13 @@ public class S21PacketChunkData extends Packet
 
 	public void deflate()
 	{
-		Deflater deflater = new Deflater(7);
+		Deflater deflater = deflaterPool.acquire();
 		try
 		{
 			if(chunkSnapshot != null)
 			{
-				UMHooks.ChunkPacketData data = UMHooks.extractAndDeflateChunkPacketData(deflater, chunkSnapshot);
-				field_149281_e = data.data;
-				field_149285_h = data.length;
-
-				this.field_149280_d = data.ebsMask;
-				this.field_149283_c = data.ebsMask;
+				setPackedData(this.field_149279_g ? UMHooks.extractAndDeflateChunkPacketData(deflater, chunkSnapshot) :
+						UMHooks.extractAndDeflateChunkSections(deflater, chunkSnapshot, this.field_149283_c));
 				this.field_149278_f = null;
 				chunkSnapshot.release();
 				chunkSnapshot = null;
@@ -101,10 +138,45 @@ public class S21PacketChunkData extends Packet
 		}
 		finally
 		{
-			deflater.end();
+			deflaterPool.release(deflater);
 		}
 	}
 
+	/**
+	 * Compresses data of a lazily compressed packet exactly once. May be called concurrently from any thread, for
+	 * example by chunk compression thread and network thread writing this packet.
+	 */
+	public void ensureDeflated()
+	{
+		if(deflated)
+			return;
+		deflateGate.acquireUninterruptibly();
+		try
+		{
+			if(!deflated)
+			{
+				deflate();
+				deflated = true;
+			}
+		}
+		finally
+		{
+			deflateGate.release();
+		}
+	}
+
+	public void shareEncoding()
+	{
+		if(sharedEncoding == null)
+			sharedEncoding = new SharedPacketEncoding();
+	}
+
+	@Override
+	public SharedPacketEncoding getSharedEncoding()
+	{
+		return sharedEncoding;
+	}
+
 	public static int func_149275_c()
 	{
 		return 196864;
@@ -163,14 +235,9 @@ public class S21PacketChunkData extends Packet
 
 	public void writePacketData(PacketBuffer p_148840_1_) throws IOException
 	{
-		if (this.field_149281_e == null)
+		if (this.deflateGate != null)
 		{
-			deflateGate.acquireUninterruptibly();
-			if (this.field_149281_e == null)
-			{
-				deflate();
-			}
-			deflateGate.release();
+			ensureDeflated();
 		}
 		p_148840_1_.writeInt(this.field_149284_a);
 		p_148840_1_.writeInt(this.field_149282_b);
@@ -347,6 +414,17 @@ public class S21PacketChunkData extends Packet
 		return new S21PacketChunkData(chunkSnapshot);
 	}
 	
+	/** Resend of changed sections, chunkSnapshot is released after compression */
+	public static S21PacketChunkData makeForUpdate(ChunkSnapshot chunkSnapshot, int sectionMask)
+	{
+		return new S21PacketChunkData(chunkSnapshot, sectionMask);
+	}
+
+	public static S21PacketChunkData makeForSend(int cx, int cz, UMHooks.ChunkPacketData data)
+	{
+		return new S21PacketChunkData(cx, cz, data);
+	}
+	
 	public static S21PacketChunkData makeForUnload(Chunk chunk)
 	{
 		return new S21PacketChunkData(chunk.xPosition, chunk.zPosition);
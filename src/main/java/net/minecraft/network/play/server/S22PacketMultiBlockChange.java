@@ -14,14 +14,17 @@ import net.minecraft.world.ChunkCoordIntPair;
 import net.minecraft.world.chunk.Chunk;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.ultramine.server.network.ISharedEncodingPacket;
+import org.ultramine.server.network.SharedPacketEncoding;
 
-public class S22PacketMultiBlockChange extends Packet
+public class S22PacketMultiBlockChange extends Packet implements ISharedEncodingPacket
 {
 	private static final Logger logger = LogManager.getLogger();
 	private ChunkCoordIntPair field_148925_b;
 	private byte[] field_148926_c;
 	private int field_148924_d;
 	private static final String __OBFID = "CL_00001290";
+	private SharedPacketEncoding sharedEncoding;
 
 	public S22PacketMultiBlockChange() {}
 
@@ -89,6 +92,21 @@ public class S22PacketMultiBlockChange extends Packet
 		}
 	}
 
+	/** ultramine: must be called before the packet is sent to the first of several players */
+	public void shareEncoding()
+	{
+		if (this.sharedEncoding == null)
+		{
+			this.sharedEncoding = new SharedPacketEncoding();
+		}
+	}
+
+	@Override
+	public SharedPacketEncoding getSharedEncoding()
+	{
+		return this.sharedEncoding;
+	}
+
 	public void processPacket(INetHandlerPlayClient p_148833_1_)
 	{
 		p_148833_1_.handleMultiBlockChange(this);
@@ -1,5 +1,7 @@
 package net.minecraft.pathfinding;
 
+import java.util.Arrays;
+
 public class Path
 {
 	private PathPoint[] pathPoints = new PathPoint[1024];
@@ -30,6 +32,8 @@ public class Path
 
 	public void clearPath()
 	{
+		// ultramine: releasing points, path is reused by PathFinder
+		Arrays.fill(this.pathPoints, 0, this.count, null);
 		this.count = 0;
 	}
 
@@ -16,6 +16,12 @@ public class PathEntity
 		this.pathLength = p_i2136_1_.length;
 	}
 
+	/** ultramine: @return path over the same points with its own progress, points are not modified after search */
+	public PathEntity copy()
+	{
+		return new PathEntity(this.points);
+	}
+
 	public void incrementPathIndex()
 	{
 		++this.currentPathIndex;
@@ -4,21 +4,28 @@ import net.minecraft.block.Block;
 import net.minecraft.block.material.Material;
 import net.minecraft.entity.Entity;
 import net.minecraft.init.Blocks;
-import net.minecraft.util.IntHashMap;
 import net.minecraft.util.MathHelper;
 import net.minecraft.world.IBlockAccess;
+import net.minecraft.world.World;
+import net.openhft.koloboke.collect.map.IntObjMap;
+import net.openhft.koloboke.collect.map.hash.HashIntObjMaps;
+import org.ultramine.server.world.pathfinding.PathRequest;
 
 public class PathFinder
 {
 	private IBlockAccess worldMap;
-	private Path path = new Path();
-	private IntHashMap pointMap = new IntHashMap();
+	private Path path;
+	private IntObjMap<PathPoint> pointMap;
 	private PathPoint[] pathOptions = new PathPoint[32];
 	private boolean isWoddenDoorAllowed;
 	private boolean isMovementBlockAllowed;
 	private boolean isPathingInWater;
 	private boolean canEntityDrown;
 	private static final String __OBFID = "CL_00000576";
+	// ultramine: search structures are reused by thread, blocks are checked through the block view of the request
+	private static final ThreadLocal<Buffers> LOCAL_BUFFERS = new ThreadLocal<Buffers>();
+	private IBlockAccess blockView;
+	private int expandedNodes;
 
 	public PathFinder(IBlockAccess p_i2137_1_, boolean p_i2137_2_, boolean p_i2137_3_, boolean p_i2137_4_, boolean p_i2137_5_)
 	{
@@ -40,17 +47,58 @@ public class PathFinder
 	}
 
 	private PathEntity createEntityPathTo(Entity p_75857_1_, double p_75857_2_, double p_75857_4_, double p_75857_6_, float p_75857_8_)
+	{
+		// ultramine: entity state is captured, blocks are checked through entity world as before
+		PathRequest request = new PathRequest(p_75857_1_, p_75857_2_, p_75857_4_, p_75857_6_, p_75857_8_, this.isWoddenDoorAllowed, this.isMovementBlockAllowed, this.isPathingInWater, this.canEntityDrown);
+		return this.createPath(request, p_75857_1_.worldObj);
+	}
+
+	/**
+	 * ultramine: searches a path for the captured entity state. Flags of the request are ignored, flags of this
+	 * path finder are used.
+	 * @param blockView used for block checks, while {@link #worldMap} is used to find start point only
+	 */
+	public PathEntity createPath(PathRequest request, IBlockAccess blockView)
+	{
+		Buffers buffers = LOCAL_BUFFERS.get();
+		LOCAL_BUFFERS.set(null);
+		if (buffers == null)
+		{
+			buffers = new Buffers();
+		}
+
+		this.path = buffers.path;
+		this.pointMap = buffers.pointMap;
+		this.blockView = blockView;
+		this.expandedNodes = 0;
+
+		try
+		{
+			return this.createPath(request);
+		}
+		finally
+		{
+			this.path.clearPath();
+			this.pointMap.clear();
+			this.path = null;
+			this.pointMap = null;
+			this.blockView = null;
+			LOCAL_BUFFERS.set(buffers);
+		}
+	}
+
+	private PathEntity createPath(PathRequest p_75857_1_)
 	{
 		this.path.clearPath();
-		this.pointMap.clearMap();
+		this.pointMap.clear();
 		boolean flag = this.isPathingInWater;
-		int i = MathHelper.floor_double(p_75857_1_.boundingBox.minY + 0.5D);
+		int i = MathHelper.floor_double(p_75857_1_.minY + 0.5D);
 
-		if (this.canEntityDrown && p_75857_1_.isInWater())
+		if (this.canEntityDrown && p_75857_1_.inWater)
 		{
-			i = (int)p_75857_1_.boundingBox.minY;
+			i = (int)p_75857_1_.minY;
 
-			for (Block block = this.worldMap.getBlock(MathHelper.floor_double(p_75857_1_.posX), i, MathHelper.floor_double(p_75857_1_.posZ)); block == Blocks.flowing_water || block == Blocks.water; block = this.worldMap.getBlock(MathHelper.floor_double(p_75857_1_.posX), i, MathHelper.floor_double(p_75857_1_.posZ)))
+			for (Block block = this.worldMap.getBlock(p_75857_1_.entityX, i, p_75857_1_.entityZ); block == Blocks.flowing_water || block == Blocks.water; block = this.worldMap.getBlock(p_75857_1_.entityX, i, p_75857_1_.entityZ))
 			{
 				++i;
 			}
@@ -60,18 +108,33 @@ public class PathFinder
 		}
 		else
 		{
-			i = MathHelper.floor_double(p_75857_1_.boundingBox.minY + 0.5D);
+			i = MathHelper.floor_double(p_75857_1_.minY + 0.5D);
+		}
+
+		PathPoint pathpoint2 = this.openPoint(MathHelper.floor_double(p_75857_1_.minX), i, MathHelper.floor_double(p_75857_1_.minZ));
+		PathPoint pathpoint = this.openPoint(p_75857_1_.getEndX(), p_75857_1_.getEndY(), p_75857_1_.getEndZ());
+		PathPoint pathpoint1 = new PathPoint(p_75857_1_.getSizeX(), p_75857_1_.getSizeY(), p_75857_1_.getSizeX());
+		PathEntity pathentity;
+
+		try
+		{
+			pathentity = this.addToPath(p_75857_1_, pathpoint2, pathpoint, pathpoint1, p_75857_1_.range);
+		}
+		finally
+		{
+			this.isPathingInWater = flag;
 		}
 
-		PathPoint pathpoint2 = this.openPoint(MathHelper.floor_double(p_75857_1_.boundingBox.minX), i, MathHelper.floor_double(p_75857_1_.boundingBox.minZ));
-		PathPoint pathpoint = this.openPoint(MathHelper.floor_double(p_75857_2_ - (double)(p_75857_1_.width / 2.0F)), MathHelper.floor_double(p_75857_4_), MathHelper.floor_double(p_75857_6_ - (double)(p_75857_1_.width / 2.0F)));
-		PathPoint pathpoint1 = new PathPoint(MathHelper.floor_float(p_75857_1_.width + 1.0F), MathHelper.floor_float(p_75857_1_.height + 1.0F), MathHelper.floor_float(p_75857_1_.width + 1.0F));
-		PathEntity pathentity = this.addToPath(p_75857_1_, pathpoint2, pathpoint, pathpoint1, p_75857_8_);
-		this.isPathingInWater = flag;
 		return pathentity;
 	}
 
-	private PathEntity addToPath(Entity p_75861_1_, PathPoint p_75861_2_, PathPoint p_75861_3_, PathPoint p_75861_4_, float p_75861_5_)
+	/** ultramine: @return number of nodes expanded by the last search */
+	public int getExpandedNodes()
+	{
+		return this.expandedNodes;
+	}
+
+	private PathEntity addToPath(PathRequest p_75861_1_, PathPoint p_75861_2_, PathPoint p_75861_3_, PathPoint p_75861_4_, float p_75861_5_)
 	{
 		p_75861_2_.totalPathDistance = 0.0F;
 		p_75861_2_.distanceToNext = p_75861_2_.distanceToSquared(p_75861_3_);
@@ -95,6 +158,7 @@ public class PathFinder
 			}
 
 			pathpoint4.isFirst = true;
+			++this.expandedNodes;
 			int i = this.findPathOptions(p_75861_1_, pathpoint4, p_75861_4_, p_75861_3_, p_75861_5_);
 
 			for (int j = 0; j < i; ++j)
@@ -131,7 +195,7 @@ public class PathFinder
 		}
 	}
 
-	private int findPathOptions(Entity p_75860_1_, PathPoint p_75860_2_, PathPoint p_75860_3_, PathPoint p_75860_4_, float p_75860_5_)
+	private int findPathOptions(PathRequest p_75860_1_, PathPoint p_75860_2_, PathPoint p_75860_3_, PathPoint p_75860_4_, float p_75860_5_)
 	{
 		int i = 0;
 		byte b0 = 0;
@@ -169,7 +233,7 @@ public class PathFinder
 		return i;
 	}
 
-	private PathPoint getSafePoint(Entity p_75858_1_, int p_75858_2_, int p_75858_3_, int p_75858_4_, PathPoint p_75858_5_, int p_75858_6_)
+	private PathPoint getSafePoint(PathRequest p_75858_1_, int p_75858_2_, int p_75858_3_, int p_75858_4_, PathPoint p_75858_5_, int p_75858_6_)
 	{
 		PathPoint pathpoint1 = null;
 		int i1 = this.getVerticalOffset(p_75858_1_, p_75858_2_, p_75858_3_, p_75858_4_, p_75858_5_);
@@ -210,7 +274,7 @@ public class PathFinder
 						break;
 					}
 
-					if (j1++ >= p_75858_1_.getMaxSafePointTries())
+					if (j1++ >= p_75858_1_.maxSafePointTries)
 					{
 						return null;
 					}
@@ -236,12 +300,12 @@ public class PathFinder
 	private final PathPoint openPoint(int p_75854_1_, int p_75854_2_, int p_75854_3_)
 	{
 		int l = PathPoint.makeHash(p_75854_1_, p_75854_2_, p_75854_3_);
-		PathPoint pathpoint = (PathPoint)this.pointMap.lookup(l);
+		PathPoint pathpoint = this.pointMap.get(l);
 
 		if (pathpoint == null)
 		{
 			pathpoint = new PathPoint(p_75854_1_, p_75854_2_, p_75854_3_);
-			this.pointMap.addKey(l, pathpoint);
+			this.pointMap.put(l, pathpoint);
 		}
 
 		return pathpoint;
@@ -252,7 +316,19 @@ public class PathFinder
 		return func_82565_a(p_75855_1_, p_75855_2_, p_75855_3_, p_75855_4_, p_75855_5_, this.isPathingInWater, this.isMovementBlockAllowed, this.isWoddenDoorAllowed);
 	}
 
+	private int getVerticalOffset(PathRequest p_75855_1_, int p_75855_2_, int p_75855_3_, int p_75855_4_, PathPoint p_75855_5_)
+	{
+		return getVerticalOffset(this.blockView, p_75855_1_.entityX, p_75855_1_.entityY, p_75855_1_.entityZ, p_75855_1_.inLava, p_75855_2_, p_75855_3_, p_75855_4_, p_75855_5_, this.isPathingInWater, this.isMovementBlockAllowed, this.isWoddenDoorAllowed);
+	}
+
 	public static int func_82565_a(Entity p_82565_0_, int p_82565_1_, int p_82565_2_, int p_82565_3_, PathPoint p_82565_4_, boolean p_82565_5_, boolean p_82565_6_, boolean p_82565_7_)
+	{
+		return getVerticalOffset(p_82565_0_.worldObj, MathHelper.floor_double(p_82565_0_.posX), MathHelper.floor_double(p_82565_0_.posY), MathHelper.floor_double(p_82565_0_.posZ),
+				p_82565_0_.handleLavaMovement(), p_82565_1_, p_82565_2_, p_82565_3_, p_82565_4_, p_82565_5_, p_82565_6_, p_82565_7_);
+	}
+
+	/** ultramine: {@link #func_82565_a} for captured entity position, blocks are checked through the block view */
+	private static int getVerticalOffset(IBlockAccess world, int entityX, int entityY, int entityZ, boolean entityInLava, int p_82565_1_, int p_82565_2_, int p_82565_3_, PathPoint p_82565_4_, boolean p_82565_5_, boolean p_82565_6_, boolean p_82565_7_)
 	{
 		boolean flag3 = false;
 
@@ -262,7 +338,7 @@ public class PathFinder
 			{
 				for (int j1 = p_82565_3_; j1 < p_82565_3_ + p_82565_4_.zCoord; ++j1)
 				{
-					Block block = p_82565_0_.worldObj.getBlockIfExists(l, i1, j1);
+					Block block = getBlockIfExists(world, l, i1, j1);
 
 					if (block.getMaterial() != Material.air)
 					{
@@ -289,18 +365,14 @@ public class PathFinder
 
 						int k1 = block.getRenderType();
 
-						if (p_82565_0_.worldObj.getBlock(l, i1, j1).getRenderType() == 9)
+						if (k1 == 9)
 						{
-							int j2 = MathHelper.floor_double(p_82565_0_.posX);
-							int l1 = MathHelper.floor_double(p_82565_0_.posY);
-							int i2 = MathHelper.floor_double(p_82565_0_.posZ);
-
-							if (p_82565_0_.worldObj.getBlock(j2, l1, i2).getRenderType() != 9 && p_82565_0_.worldObj.getBlock(j2, l1 - 1, i2).getRenderType() != 9)
+							if (getBlockIfExists(world, entityX, entityY, entityZ).getRenderType() != 9 && getBlockIfExists(world, entityX, entityY - 1, entityZ).getRenderType() != 9)
 							{
 								return -3;
 							}
 						}
-						else if (!block.getBlocksMovement(p_82565_0_.worldObj, l, i1, j1) && (!p_82565_6_ || block != Blocks.wooden_door))
+						else if (!block.getBlocksMovement(world, l, i1, j1) && (!p_82565_6_ || block != Blocks.wooden_door))
 						{
 							if (k1 == 11 || block == Blocks.fence_gate || k1 == 32)
 							{
@@ -319,7 +391,7 @@ public class PathFinder
 								return 0;
 							}
 
-							if (!p_82565_0_.handleLavaMovement())
+							if (!entityInLava)
 							{
 								return -2;
 							}
@@ -332,6 +404,11 @@ public class PathFinder
 		return flag3 ? 2 : 1;
 	}
 
+	private static Block getBlockIfExists(IBlockAccess world, int x, int y, int z)
+	{
+		return world instanceof World ? ((World)world).getBlockIfExists(x, y, z) : world.getBlock(x, y, z);
+	}
+
 	private PathEntity createEntityPath(PathPoint p_75853_1_, PathPoint p_75853_2_)
 	{
 		int i = 1;
@@ -354,4 +431,11 @@ public class PathFinder
 
 		return new PathEntity(apathpoint);
 	}
+
+	/** ultramine: search structures reused by thread. Set to null while in use, so nested search allocates its own */
+	private static class Buffers
+	{
+		final Path path = new Path();
+		final IntObjMap<PathPoint> pointMap = HashIntObjMaps.<PathPoint>newMutableMap();
+	}
 }
\ No newline at end of file
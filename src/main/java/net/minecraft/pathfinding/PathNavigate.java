@@ -12,6 +12,8 @@ import net.minecraft.init.Blocks;
 import net.minecraft.util.MathHelper;
 import net.minecraft.util.Vec3;
 import net.minecraft.world.World;
+import org.ultramine.server.world.pathfinding.AsyncPathfinder;
+import org.ultramine.server.world.pathfinding.PathRequest;
 
 public class PathNavigate
 {
@@ -29,6 +31,10 @@ public class PathNavigate
 	private boolean avoidsWater;
 	private boolean canSwim;
 	private static final String __OBFID = "CL_00001627";
+	// ultramine: path being searched asynchronously, it is set by onUpdateNavigation when found, if pendingMove is set
+	private AsyncPathfinder.PathTask pendingPath;
+	private boolean pendingMove;
+	private double pendingSpeed;
 
 	public PathNavigate(EntityLiving p_i1671_1_, World p_i1671_2_)
 	{
@@ -84,28 +90,88 @@ public class PathNavigate
 
 	public PathEntity getPathToXYZ(double p_75488_1_, double p_75488_3_, double p_75488_5_)
 	{
+		// ultramine: searching off the world thread, if enabled
+		if (this.canNavigate() && AsyncPathfinder.isEnabled() && !this.worldObj.isRemote)
+		{
+			return this.requestPath(PathRequest.toBlock(this.theEntity, MathHelper.floor_double(p_75488_1_), (int)p_75488_3_, MathHelper.floor_double(p_75488_5_), this.getPathSearchRange(), this.canPassOpenWoodenDoors, this.canPassClosedWoodenDoors, this.avoidsWater, this.canSwim));
+		}
+
 		return !this.canNavigate() ? null : this.worldObj.getEntityPathToXYZ(this.theEntity, MathHelper.floor_double(p_75488_1_), (int)p_75488_3_, MathHelper.floor_double(p_75488_5_), this.getPathSearchRange(), this.canPassOpenWoodenDoors, this.canPassClosedWoodenDoors, this.avoidsWater, this.canSwim);
 	}
 
 	public boolean tryMoveToXYZ(double p_75492_1_, double p_75492_3_, double p_75492_5_, double p_75492_7_)
 	{
 		PathEntity pathentity = this.getPathToXYZ((double)MathHelper.floor_double(p_75492_1_), (double)((int)p_75492_3_), (double)MathHelper.floor_double(p_75492_5_));
+
+		if (pathentity == null && this.pendingPath != null && this.canNavigate())
+		{
+			return this.setPendingMove(p_75492_7_);
+		}
+
 		return this.setPath(pathentity, p_75492_7_);
 	}
 
 	public PathEntity getPathToEntityLiving(Entity p_75494_1_)
 	{
+		// ultramine: searching off the world thread, if enabled
+		if (this.canNavigate() && AsyncPathfinder.isEnabled() && !this.worldObj.isRemote)
+		{
+			return this.requestPath(PathRequest.toEntity(this.theEntity, p_75494_1_, this.getPathSearchRange(), this.canPassOpenWoodenDoors, this.canPassClosedWoodenDoors, this.avoidsWater, this.canSwim));
+		}
+
 		return !this.canNavigate() ? null : this.worldObj.getPathEntityToEntity(this.theEntity, p_75494_1_, this.getPathSearchRange(), this.canPassOpenWoodenDoors, this.canPassClosedWoodenDoors, this.avoidsWater, this.canSwim);
 	}
 
 	public boolean tryMoveToEntityLiving(Entity p_75497_1_, double p_75497_2_)
 	{
 		PathEntity pathentity = this.getPathToEntityLiving(p_75497_1_);
+
+		if (pathentity == null && this.pendingPath != null && this.canNavigate())
+		{
+			return this.setPendingMove(p_75497_2_);
+		}
+
 		return pathentity != null ? this.setPath(pathentity, p_75497_2_) : false;
 	}
 
+	/**
+	 * ultramine: returns path found by the pending search, if it has been searched to nearly the same target, or
+	 * requests a new search. Results of searches with the same inputs are shared by navigators.
+	 * @return null if there is no path or it is being searched, the later is indicated by non-null {@link #pendingPath}
+	 */
+	private PathEntity requestPath(PathRequest request)
+	{
+		AsyncPathfinder.PathTask task = this.pendingPath;
+
+		if (task == null || !task.getRequest().isNearTarget(request))
+		{
+			task = this.worldObj.getAsyncPathfinder().request(request);
+			this.pendingMove = false;
+		}
+
+		if (!task.isDone())
+		{
+			this.pendingPath = task;
+			return null;
+		}
+
+		this.pendingPath = null;
+		this.pendingMove = false;
+		return task.getPath(this.worldObj);
+	}
+
+	/** ultramine: path is set by {@link #onUpdateNavigation()} when the pending search is done */
+	private boolean setPendingMove(double speed)
+	{
+		this.pendingMove = true;
+		this.pendingSpeed = speed;
+		return true;
+	}
+
 	public boolean setPath(PathEntity p_75484_1_, double p_75484_2_)
 	{
+		this.pendingMove = false; // ultramine: replaces the path being searched
+
 		if (p_75484_1_ == null)
 		{
 			this.currentPath = null;
@@ -149,6 +215,21 @@ public class PathNavigate
 	{
 		++this.totalTicks;
 
+		// ultramine: setting path found by the pending search
+		if (this.pendingMove && this.pendingPath.isDone())
+		{
+			AsyncPathfinder.PathTask task = this.pendingPath;
+			this.pendingPath = null;
+			PathEntity pathentity = task.getPath(this.worldObj);
+
+			if (pathentity != null)
+			{
+				this.setPath(pathentity, this.pendingSpeed);
+			}
+
+			this.pendingMove = false;
+		}
+
 		if (!this.noPath())
 		{
 			if (this.canNavigate())
@@ -228,6 +309,8 @@ public class PathNavigate
 	public void clearPathEntity()
 	{
 		this.currentPath = null;
+		this.pendingPath = null;
+		this.pendingMove = false;
 	}
 
 	private Vec3 getEntityPosition()
@@ -85,6 +85,7 @@ import org.ultramine.server.ConfigurationHandler;
 import org.ultramine.server.internal.WatchdogThread;
 import org.ultramine.server.internal.ChatComponentLogMessage;
 import org.ultramine.server.world.MultiWorld;
+import org.ultramine.server.world.ParallelWorldTicker;
 
 import net.minecraftforge.common.DimensionManager;
 import net.minecraftforge.common.MinecraftForge;
@@ -127,6 +128,8 @@ public abstract class MinecraftServer implements ICommandSender, Runnable, IPlay
 	public final long[] tickTimeArray = new long[100];
 	//public long[][] timeOfLastDimensionTick;
 	public Hashtable<Integer, long[]> worldTickTimes = new Hashtable<Integer, long[]>();
+	public Hashtable<Integer, long[]> worldTickCpuTimes = new Hashtable<Integer, long[]>();
+	private final ParallelWorldTicker parallelWorldTicker = ParallelWorldTicker.isEnabled() ? new ParallelWorldTicker(this) : null;
 	private KeyPair serverKeyPair;
 	private String serverOwner;
 	private String folderName;
@@ -631,60 +634,25 @@ public abstract class MinecraftServer implements ICommandSender, Runnable, IPlay
 		int i;
 
 		Integer[] ids = DimensionManager.getIDs(this.tickCounter % 200 == 0);
-		for (int x = 0; x < ids.length; x++)
+		if (parallelWorldTicker != null && parallelWorldTicker.canTickInParallel(ids.length))
 		{
-			int id = ids[x];
-			long j = System.nanoTime();
-
-			if (id == 0 || this.getAllowNether())
+			parallelWorldTicker.tickWorlds(ids);
+		}
+		else
+		{
+			for (int x = 0; x < ids.length; x++)
 			{
-				WorldServer worldserver = DimensionManager.getWorld(id);
-				this.theProfiler.startSection(worldserver.getWorldInfo().getWorldName());
-				this.theProfiler.startSection("pools");
-				this.theProfiler.endSection();
-
-				if (this.tickCounter % 20 == 0)
-				{
-					this.theProfiler.startSection("timeSync");
-					this.serverConfigManager.sendPacketToAllPlayersInDimension(new S03PacketTimeUpdate(worldserver.getTotalWorldTime(), worldserver.getWorldTime(), worldserver.getGameRules().getGameRuleBooleanValue("doDaylightCycle")), worldserver.provider.dimensionId);
-					this.theProfiler.endSection();
-				}
-
-				this.theProfiler.startSection("tick");
-				FMLCommonHandler.instance().onPreWorldTick(worldserver);
-				CrashReport crashreport;
-
-				try
-				{
-					worldserver.tick();
-				}
-				catch (Throwable throwable1)
-				{
-					crashreport = CrashReport.makeCrashReport(throwable1, "Exception ticking world");
-					worldserver.addWorldInfoToCrashReport(crashreport);
-					throw new ReportedException(crashreport);
-				}
+				int id = ids[x];
+				long j = System.nanoTime();
+				long cpu = ParallelWorldTicker.currentThreadCpuTime();
 
-				try
+				if (id == 0 || this.getAllowNether())
 				{
-					worldserver.updateEntities();
-				}
-				catch (Throwable throwable)
-				{
-					crashreport = CrashReport.makeCrashReport(throwable, "Exception ticking world entities");
-					worldserver.addWorldInfoToCrashReport(crashreport);
-					throw new ReportedException(crashreport);
+					this.tickWorld(DimensionManager.getWorld(id));
 				}
 
-				FMLCommonHandler.instance().onPostWorldTick(worldserver);
-				this.theProfiler.endSection();
-				this.theProfiler.startSection("tracker");
-				worldserver.getEntityTracker().updateTrackedEntities();
-				this.theProfiler.endSection();
-				this.theProfiler.endSection();
+				this.recordWorldTickTime(id, System.nanoTime() - j, ParallelWorldTicker.currentThreadCpuTime() - cpu);
 			}
-
-			worldTickTimes.get(id)[this.tickCounter % 100] = System.nanoTime() - j;
 		}
 
 		this.theProfiler.endStartSection("dim_unloading");
@@ -703,6 +671,64 @@ public abstract class MinecraftServer implements ICommandSender, Runnable, IPlay
 		this.theProfiler.endSection();
 	}
 
+	public void tickWorld(WorldServer worldserver)
+	{
+		this.theProfiler.startSection(worldserver.getWorldInfo().getWorldName());
+		this.theProfiler.startSection("pools");
+		this.theProfiler.endSection();
+
+		if (this.tickCounter % 20 == 0)
+		{
+			this.theProfiler.startSection("timeSync");
+			this.serverConfigManager.sendPacketToAllPlayersInDimension(new S03PacketTimeUpdate(worldserver.getTotalWorldTime(), worldserver.getWorldTime(), worldserver.getGameRules().getGameRuleBooleanValue("doDaylightCycle")), worldserver.provider.dimensionId);
+			this.theProfiler.endSection();
+		}
+
+		this.theProfiler.startSection("tick");
+		FMLCommonHandler.instance().onPreWorldTick(worldserver);
+		CrashReport crashreport;
+
+		try
+		{
+			worldserver.tick();
+		}
+		catch (Throwable throwable1)
+		{
+			crashreport = CrashReport.makeCrashReport(throwable1, "Exception ticking world");
+			worldserver.addWorldInfoToCrashReport(crashreport);
+			throw new ReportedException(crashreport);
+		}
+
+		try
+		{
+			worldserver.updateEntities();
+		}
+		catch (Throwable throwable)
+		{
+			crashreport = CrashReport.makeCrashReport(throwable, "Exception ticking world entities");
+			worldserver.addWorldInfoToCrashReport(crashreport);
+			throw new ReportedException(crashreport);
+		}
+
+		FMLCommonHandler.instance().onPostWorldTick(worldserver);
+		this.theProfiler.endSection();
+		this.theProfiler.startSection("tracker");
+		worldserver.getEntityTracker().updateTrackedEntities();
+		this.theProfiler.endSection();
+		this.theProfiler.endSection();
+	}
+
+	public void recordWorldTickTime(int dimension, long wallTime, long cpuTime)
+	{
+		int index = this.tickCounter % 100;
+		long[] wall = worldTickTimes.get(dimension);
+		if (wall != null)
+			wall[index] = wallTime;
+		long[] cpu = worldTickCpuTimes.get(dimension);
+		if (cpu != null)
+			cpu[index] = cpuTime;
+	}
+
 	public boolean getAllowNether()
 	{
 		return true;
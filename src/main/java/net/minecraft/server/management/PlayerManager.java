@@ -1,6 +1,7 @@
 package net.minecraft.server.management;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -18,6 +19,9 @@ import net.minecraft.world.WorldServer;
 import net.minecraft.world.chunk.Chunk;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.ultramine.server.chunk.ChunkPacketCache;
+import org.ultramine.server.chunk.ChunkSendManager;
+import org.ultramine.server.chunk.ChunkSnapshot;
 
 public class PlayerManager
 {
@@ -31,6 +35,7 @@ public class PlayerManager
 	private long previousTotalWorldTime;
 	private final int[][] xzDirectionsConst = new int[][] {{1, 0}, {0, 1}, { -1, 0}, {0, -1}};
 	private static final String __OBFID = "CL_00001434";
+	private final ChunkPacketCache chunkPacketCache = new ChunkPacketCache(); // ultramine
 
 	public PlayerManager(WorldServer p_i1176_1_)
 	{
@@ -43,6 +48,11 @@ public class PlayerManager
 		return this.theWorldServer;
 	}
 
+	public ChunkPacketCache getChunkPacketCache()
+	{
+		return this.chunkPacketCache;
+	}
+
 	public void updatePlayerInstances()
 	{
 		long i = this.theWorldServer.getTotalWorldTime();
@@ -107,6 +117,7 @@ public class PlayerManager
 	{
 		int l = p_151250_1_ >> 4;
 		int i1 = p_151250_3_ >> 4;
+		this.chunkPacketCache.invalidate(l, i1); // ultramine
 		PlayerManager.PlayerInstance playerinstance = this.getOrCreateChunkWatcher(l, i1, false);
 
 		if (playerinstance != null)
@@ -265,6 +276,8 @@ public class PlayerManager
 		private short[] locationOfBlockChange = new short[64];
 		private int numberOfTilesToUpdate;
 		private int flagsYAreasToUpdate;
+		private long[] changedBlocksBitmap; // ultramine: index of locationOfBlockChange for big batches
+		private boolean changedBlocksIndexed;
 		private long previousWorldTime;
 		private static final String __OBFID = "CL_00001435";
 
@@ -348,22 +361,76 @@ public class PlayerManager
 			{
 				short short1 = (short)(p_151253_1_ << 12 | p_151253_3_ << 8 | p_151253_2_);
 
-				for (int l = 0; l < this.numberOfTilesToUpdate; ++l)
+				// ultramine: linear search makes quarries and explosions quadratic, big batches are deduplicated by bitmap
+				if (this.numberOfTilesToUpdate >= 64)
 				{
-					if (this.locationOfBlockChange[l] == short1)
+					if (!this.changedBlocksIndexed)
+					{
+						this.indexChangedBlocks();
+					}
+
+					int index = short1 & 65535;
+					long bit = 1L << index;
+
+					if ((this.changedBlocksBitmap[index >>> 6] & bit) != 0)
 					{
 						return;
 					}
+
+					this.changedBlocksBitmap[index >>> 6] |= bit;
+				}
+				else
+				{
+					for (int l = 0; l < this.numberOfTilesToUpdate; ++l)
+					{
+						if (this.locationOfBlockChange[l] == short1)
+						{
+							return;
+						}
+					}
 				}
 
 				if (numberOfTilesToUpdate == locationOfBlockChange.length)
 				{
-					locationOfBlockChange = java.util.Arrays.copyOf(locationOfBlockChange, locationOfBlockChange.length << 1);
+					locationOfBlockChange = Arrays.copyOf(locationOfBlockChange, locationOfBlockChange.length << 1);
 				}
 				this.locationOfBlockChange[this.numberOfTilesToUpdate++] = short1;
 			}
 		}
 
+		private void indexChangedBlocks()
+		{
+			if (this.changedBlocksBitmap == null)
+			{
+				this.changedBlocksBitmap = new long[1024];
+			}
+
+			for (int i = 0; i < this.numberOfTilesToUpdate; ++i)
+			{
+				int index = this.locationOfBlockChange[i] & 65535;
+				this.changedBlocksBitmap[index >>> 6] |= 1L << index;
+			}
+
+			this.changedBlocksIndexed = true;
+		}
+
+		private void clearChangedBlocksIndex()
+		{
+			if (this.numberOfTilesToUpdate > 1024)
+			{
+				Arrays.fill(this.changedBlocksBitmap, 0L);
+			}
+			else
+			{
+				for (int i = 0; i < this.numberOfTilesToUpdate; ++i)
+				{
+					this.changedBlocksBitmap[(this.locationOfBlockChange[i] & 65535) >>> 6] = 0L;
+				}
+			}
+
+			this.changedBlocksIndexed = false;
+		}
+
 		public void sendToAllPlayersWatchingChunk(Packet p_151251_1_)
 		{
 			for (int i = 0; i < this.playersWatchingChunk.size(); ++i)
@@ -406,7 +473,18 @@ public class PlayerManager
 					{
 						i = this.chunkLocation.chunkXPos * 16;
 						j = this.chunkLocation.chunkZPos * 16;
-						this.sendToAllPlayersWatchingChunk(new S21PacketChunkData(PlayerManager.this.theWorldServer.getChunkFromChunkCoords(this.chunkLocation.chunkXPos, this.chunkLocation.chunkZPos), false, this.flagsYAreasToUpdate));
+						// ultramine: changed sections are snapshotted here and compressed once on chunk compression threads.
+						// The packet is queued right away to keep order with other packets, see S21PacketChunkData.ensureDeflated()
+						Chunk chunk = PlayerManager.this.theWorldServer.getChunkFromChunkCoords(this.chunkLocation.chunkXPos, this.chunkLocation.chunkZPos);
+						S21PacketChunkData packet = S21PacketChunkData.makeForUpdate(ChunkSnapshot.of(chunk), this.flagsYAreasToUpdate);
+						ChunkSendManager.deflateAsync(packet);
+
+						if (this.playersWatchingChunk.size() > 1)
+						{
+							packet.shareEncoding();
+						}
+
+						this.sendToAllPlayersWatchingChunk(packet);
 
 						// Forge: Grabs ALL tile entities is costly on a modded server, only send needed ones
 						for (k = 0; false && k < 16; ++k)
@@ -425,7 +503,14 @@ public class PlayerManager
 					}
 					else
 					{
-						this.sendToAllPlayersWatchingChunk(new S22PacketMultiBlockChange(this.numberOfTilesToUpdate, this.locationOfBlockChange, PlayerManager.this.theWorldServer.getChunkFromChunkCoords(this.chunkLocation.chunkXPos, this.chunkLocation.chunkZPos)));
+						S22PacketMultiBlockChange packet = new S22PacketMultiBlockChange(this.numberOfTilesToUpdate, this.locationOfBlockChange, PlayerManager.this.theWorldServer.getChunkFromChunkCoords(this.chunkLocation.chunkXPos, this.chunkLocation.chunkZPos));
+
+						if (this.playersWatchingChunk.size() > 1)
+						{
+							packet.shareEncoding(); // ultramine
+						}
+
+						this.sendToAllPlayersWatchingChunk(packet);
 					}
 
 					{ //Forge: Send only the tile entities that are updated, Adding this brace lets us keep the indent and the patch small
@@ -444,6 +529,11 @@ public class PlayerManager
 					}
 				}
 
+				if (this.changedBlocksIndexed)
+				{
+					this.clearChangedBlocksIndex();
+				}
+
 				this.numberOfTilesToUpdate = 0;
 				this.flagsYAreasToUpdate = 0;
 			}
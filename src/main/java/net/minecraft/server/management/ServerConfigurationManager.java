@@ -74,6 +74,7 @@ import org.ultramine.server.ConfigurationHandler;
 import org.ultramine.server.data.ServerDataLoader;
 import org.ultramine.server.internal.UMHooks;
 import org.ultramine.server.util.WarpLocation;
+import org.ultramine.server.world.ParallelWorldTicker;
 
 public abstract class ServerConfigurationManager
 {
@@ -536,6 +537,8 @@ public abstract class ServerConfigurationManager
 
 	public void transferPlayerToDimension(EntityPlayerMP p_72356_1_, int p_72356_2_, Teleporter teleporter)
 	{
+		if(ParallelWorldTicker.deferTransferPlayerToDimension(this, p_72356_1_, p_72356_2_, teleporter))
+			return;
 		org.ultramine.server.event.PreDimChangeEvent event = new org.ultramine.server.event.PreDimChangeEvent(p_72356_1_, p_72356_2_, teleporter);
 		net.minecraftforge.common.MinecraftForge.EVENT_BUS.post(event);
 		p_72356_2_ = event.getDimTo();
@@ -692,6 +695,8 @@ public abstract class ServerConfigurationManager
 
 	public void sendPacketToAllPlayers(Packet p_148540_1_)
 	{
+		if(ParallelWorldTicker.deferPacketToAllPlayers(this, p_148540_1_))
+			return;
 		for (int i = 0; i < this.playerEntityList.size(); ++i)
 		{
 			((EntityPlayerMP)this.playerEntityList.get(i)).playerNetServerHandler.sendPacket(p_148540_1_);
@@ -1101,6 +1106,8 @@ public abstract class ServerConfigurationManager
 
 	public void sendChatMsgImpl(IChatComponent p_148544_1_, boolean p_148544_2_)
 	{
+		if(ParallelWorldTicker.deferChatMsg(this, p_148544_1_, p_148544_2_))
+			return;
 		this.mcServer.addChatMessage(p_148544_1_);
 //		this.sendPacketToAllPlayers(new S02PacketChat(p_148544_1_, p_148544_2_));
 		for (int i = 0; i < this.playerEntityList.size(); ++i)
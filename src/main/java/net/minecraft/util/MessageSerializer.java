@@ -13,6 +13,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.Marker;
 import org.apache.logging.log4j.MarkerManager;
+import org.ultramine.server.network.CoalescingWriter;
+import org.ultramine.server.network.ISharedEncodingPacket;
 
 public class MessageSerializer extends MessageToByteEncoder
 {
@@ -20,10 +22,24 @@ public class MessageSerializer extends MessageToByteEncoder
 	private static final Marker field_150797_b = MarkerManager.getMarker("PACKET_SENT", NetworkManager.logMarkerPackets);
 	private final NetworkStatistics field_152500_c;
 	private static final String __OBFID = "CL_00001253";
+	private CoalescingWriter coalescingWriter; // ultramine
+	private final boolean inPlaceLengthPrefix; // ultramine
 
 	public MessageSerializer(NetworkStatistics p_i1182_1_)
 	{
-		this.field_152500_c = p_i1182_1_;
+		this(p_i1182_1_, false);
+	}
+
+	/** ultramine: with inPlaceLengthPrefix packet length is written by this encoder instead of MessageSerializer2 */
+	public MessageSerializer(NetworkStatistics statistics, boolean inPlaceLengthPrefix)
+	{
+		this.field_152500_c = statistics;
+		this.inPlaceLengthPrefix = inPlaceLengthPrefix;
+	}
+
+	public void setCoalescingWriter(CoalescingWriter coalescingWriter)
+	{
+		this.coalescingWriter = coalescingWriter;
 	}
 
 	protected void encode(ChannelHandlerContext p_encode_1_, Packet p_encode_2_, ByteBuf p_encode_3_) throws IOException
@@ -41,11 +57,51 @@ public class MessageSerializer extends MessageToByteEncoder
 		}
 		else
 		{
-			PacketBuffer packetbuffer = new PacketBuffer(p_encode_3_);
-			packetbuffer.writeVarIntToBuffer(integer.intValue());
-			p_encode_2_.writePacketData(packetbuffer);
-			this.field_152500_c.func_152464_b(integer.intValue(), (long)packetbuffer.readableBytes());
+			int start = p_encode_3_.writerIndex();
+
+			if (this.inPlaceLengthPrefix)
+			{
+				p_encode_3_.writeMedium(0); // ultramine: reserved for length
+			}
+
+			if (p_encode_2_ instanceof ISharedEncodingPacket && ((ISharedEncodingPacket)p_encode_2_).getSharedEncoding() != null)
+			{
+				// ultramine: packet broadcasted to many players is serialized once
+				((ISharedEncodingPacket)p_encode_2_).getSharedEncoding().encode(p_encode_2_, integer.intValue(), p_encode_3_);
+			}
+			else
+			{
+				PacketBuffer packetbuffer = new PacketBuffer(p_encode_3_);
+				packetbuffer.writeVarIntToBuffer(integer.intValue());
+				p_encode_2_.writePacketData(packetbuffer);
+			}
+
+			int length = p_encode_3_.writerIndex() - start;
+
+			if (this.inPlaceLengthPrefix)
+			{
+				length -= 3;
+				writeLengthPrefix(p_encode_3_, start, length);
+			}
+
+			this.field_152500_c.func_152464_b(integer.intValue(), (long)length);
+
+			if (this.coalescingWriter != null)
+			{
+				this.coalescingWriter.onEncoded(p_encode_3_.writerIndex() - start);
+			}
+		}
+	}
+
+	/** ultramine: 3-byte varint, padded with continuation bits, as MessageDeserializer2 accepts up to 3 bytes */
+	private static void writeLengthPrefix(ByteBuf buf, int index, int length)
+	{
+		if (length >= 1 << 21)
+		{
+			throw new IllegalArgumentException("unable to fit " + length + " into 3");
 		}
+
+		buf.setMedium(index, (0x80 | length & 0x7F) << 16 | (0x80 | length >>> 7 & 0x7F) << 8 | length >>> 14);
 	}
 
 	protected void encode(ChannelHandlerContext p_encode_1_, Object p_encode_2_, ByteBuf p_encode_3_) throws IOException
@@ -21,6 +21,7 @@ import org.ultramine.server.WorldConstants;
 import static org.ultramine.server.WorldConstants.MAX_BLOCK_COORD;
 
 import org.ultramine.server.chunk.CallbackAddDependency;
+import org.ultramine.server.chunk.ChunkGenerationQueue;
 import org.ultramine.server.chunk.ChunkHash;
 import org.ultramine.server.chunk.ChunkProfiler;
 import org.ultramine.server.chunk.ChunkProfiler.WorldChunkProfiler;
@@ -30,6 +31,9 @@ import org.ultramine.server.event.WorldEventProxy;
 import org.ultramine.server.event.WorldUpdateObjectType;
 import org.ultramine.server.internal.LambdaHolder;
 import org.ultramine.server.util.VanillaChunkCoordIntPairSet;
+import org.ultramine.server.world.ExplosionTracer;
+import org.ultramine.server.world.ItemMerger;
+import org.ultramine.server.world.pathfinding.AsyncPathfinder;
 
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockHopper;
@@ -156,6 +160,8 @@ public abstract class World implements IBlockAccess
 
 	public BiomeGenBase getBiomeGenForCoordsBody(final int p_72807_1_, final int p_72807_2_)
 	{
+		if(ChunkGenerationQueue.isGenerationThread()) // ultramine: loaded chunks can not be accessed from chunk generation threads
+			return this.provider.worldChunkMgr.getBiomeGenAt(p_72807_1_, p_72807_2_);
 		if (this.blockExists(p_72807_1_, 0, p_72807_2_))
 		{
 			Chunk chunk = this.getChunkFromBlockCoords(p_72807_1_, p_72807_2_);
@@ -2027,6 +2033,12 @@ public abstract class World implements IBlockAccess
 		removeEntityThisTick = false;
 		eventProxy.popState();
 
+		if (!this.isRemote) // ultramine: merging items queued during the update
+		{
+			this.theProfiler.endStartSection("itemMerge");
+			this.itemMerger.mergeQueued();
+		}
+
 		this.theProfiler.endStartSection("blockEntities");
 		this.field_147481_N = true;
 		theProfiler.startSection("unload");
@@ -3506,7 +3518,10 @@ public abstract class World implements IBlockAccess
 		int i2 = j + l;
 		int j2 = k + l;
 		ChunkCache chunkcache = new ChunkCache(this, i1, j1, k1, l1, i2, j2, 0);
-		PathEntity pathentity = (new PathFinder(chunkcache, p_72865_4_, p_72865_5_, p_72865_6_, p_72865_7_)).createEntityPathTo(p_72865_1_, p_72865_2_, p_72865_3_);
+		PathFinder pathfinder = new PathFinder(chunkcache, p_72865_4_, p_72865_5_, p_72865_6_, p_72865_7_);
+		long start = System.nanoTime();
+		PathEntity pathentity = pathfinder.createEntityPathTo(p_72865_1_, p_72865_2_, p_72865_3_);
+		this.asyncPathfinder.recordSearch(pathfinder, System.nanoTime() - start); // ultramine
 		this.theProfiler.endSection();
 		return pathentity;
 	}
@@ -3525,7 +3540,10 @@ public abstract class World implements IBlockAccess
 		int l2 = i1 + k1;
 		int i3 = j1 + k1;
 		ChunkCache chunkcache = new ChunkCache(this, l1, i2, j2, k2, l2, i3, 0);
-		PathEntity pathentity = (new PathFinder(chunkcache, p_72844_6_, p_72844_7_, p_72844_8_, p_72844_9_)).createEntityPathTo(p_72844_1_, p_72844_2_, p_72844_3_, p_72844_4_, p_72844_5_);
+		PathFinder pathfinder = new PathFinder(chunkcache, p_72844_6_, p_72844_7_, p_72844_8_, p_72844_9_);
+		long start = System.nanoTime();
+		PathEntity pathentity = pathfinder.createEntityPathTo(p_72844_1_, p_72844_2_, p_72844_3_, p_72844_4_, p_72844_5_);
+		this.asyncPathfinder.recordSearch(pathfinder, System.nanoTime() - start); // ultramine
 		this.theProfiler.endSection();
 		return pathentity;
 	}
@@ -4212,6 +4230,24 @@ public abstract class World implements IBlockAccess
 	private final ServerLoadBalancer balancer = new ServerLoadBalancer(this);
 	protected WorldEventProxy eventProxy = new WorldEventProxy();
 	protected final WorldChunkProfiler chunkProfiler;
+	private final ExplosionTracer explosionTracer = new ExplosionTracer(this);
+	private final AsyncPathfinder asyncPathfinder = new AsyncPathfinder(this);
+	private final ItemMerger itemMerger = new ItemMerger(this, balancer);
+	
+	public ExplosionTracer getExplosionTracer()
+	{
+		return explosionTracer;
+	}
+	
+	public AsyncPathfinder getAsyncPathfinder()
+	{
+		return asyncPathfinder;
+	}
+	
+	public ItemMerger getItemMerger()
+	{
+		return itemMerger;
+	}
 	
 	public Chunk getChunkIfExists(int cx, int cz)
 	{
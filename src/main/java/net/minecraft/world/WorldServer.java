@@ -213,6 +213,8 @@ public class WorldServer extends World
 		{
 			tele.removeStalePortalLocations(getTotalWorldTime());
 		}
+		this.theProfiler.endStartSection("pathfinding");
+		this.getAsyncPathfinder().onTick(); // ultramine
 		this.theProfiler.endSection();
 		this.func_147488_Z();
 	}
@@ -479,9 +481,7 @@ public class WorldServer extends World
 
 		if (chunk != null)
 		{
-			PendingBlockUpdate p = new PendingBlockUpdate(x&15, y, z&15, block, worldInfo.getWorldTotalTime() + (long)time, priority);
-			p.initiator = getEventProxy().getObjectOwner();
-			chunk.scheduleBlockUpdate(p, true);
+			chunk.scheduleBlockUpdate(x&15, y, z&15, block, worldInfo.getWorldTotalTime() + (long)time, priority, getEventProxy().getObjectOwner(), true);
 		}
 	}
 
@@ -492,8 +492,7 @@ public class WorldServer extends World
 
 		if (chunk != null)
 		{
-			PendingBlockUpdate p = new PendingBlockUpdate(p_147446_1_&15, p_147446_2_, p_147446_3_&15, p_147446_4_, worldInfo.getWorldTotalTime() + (long)p_147446_5_, p_147446_6_);
-			chunk.scheduleBlockUpdate(p, true);
+			chunk.scheduleBlockUpdate(p_147446_1_&15, p_147446_2_, p_147446_3_&15, p_147446_4_, worldInfo.getWorldTotalTime() + (long)p_147446_5_, p_147446_6_, null, true);
 		}
 	}
 
@@ -56,7 +56,8 @@ public class BiomeGenMesa extends BiomeGenBase
 		super.decorate(p_76728_1_, p_76728_2_, p_76728_3_, p_76728_4_);
 	}
 
-	public void genTerrainBlocks(World p_150573_1_, Random p_150573_2_, Block[] p_150573_3_, byte[] p_150573_4_, int p_150573_5_, int p_150573_6_, double p_150573_7_)
+	// ultramine: lazily initialized noise fields are shared between chunk generation threads
+	public synchronized void genTerrainBlocks(World p_150573_1_, Random p_150573_2_, Block[] p_150573_3_, byte[] p_150573_4_, int p_150573_5_, int p_150573_6_, double p_150573_7_)
 	{
 		if (this.field_150621_aC == null || this.field_150622_aD != p_150573_1_.getSeed())
 		{
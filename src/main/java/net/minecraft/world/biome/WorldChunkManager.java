@@ -16,6 +16,7 @@ import net.minecraft.world.gen.layer.GenLayer;
 import net.minecraft.world.gen.layer.IntCache;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.terraingen.WorldTypeEvent;
+import org.ultramine.server.chunk.ChunkGenerationQueue;
 import static net.minecraft.world.biome.BiomeGenBase.*;
 
 public class WorldChunkManager
@@ -26,6 +27,11 @@ public class WorldChunkManager
 	private BiomeCache biomeCache;
 	private List biomesToSpawnIn;
 	private static final String __OBFID = "CL_00000166";
+	// ultramine: GenLayer and BiomeCache are not thread-safe, so chunk generation threads use their own copies
+	private long seed;
+	private WorldType worldType;
+	private boolean isThreadCopy;
+	private final ThreadLocal<WorldChunkManager> threadCopy = new ThreadLocal<WorldChunkManager>();
 
 	protected WorldChunkManager()
 	{
@@ -41,6 +47,22 @@ public class WorldChunkManager
 		agenlayer = getModdedBiomeGenerators(p_i1975_3_, p_i1975_1_, agenlayer);
 		this.genBiomes = agenlayer[0];
 		this.biomeIndexLayer = agenlayer[1];
+		this.seed = p_i1975_1_;
+		this.worldType = p_i1975_3_;
+	}
+
+	private WorldChunkManager forCurrentThread()
+	{
+		if(isThreadCopy || genBiomes == null || !ChunkGenerationQueue.isGenerationThread())
+			return this;
+		WorldChunkManager copy = threadCopy.get();
+		if(copy == null)
+		{
+			copy = new WorldChunkManager(seed, worldType);
+			copy.isThreadCopy = true;
+			threadCopy.set(copy);
+		}
+		return copy;
 	}
 
 	public WorldChunkManager(World p_i1976_1_)
@@ -55,11 +77,17 @@ public class WorldChunkManager
 
 	public BiomeGenBase getBiomeGenAt(int p_76935_1_, int p_76935_2_)
 	{
+		WorldChunkManager local = forCurrentThread();
+		if(local != this)
+			return local.getBiomeGenAt(p_76935_1_, p_76935_2_);
 		return this.biomeCache.getBiomeGenAt(p_76935_1_, p_76935_2_);
 	}
 
 	public float[] getRainfall(float[] p_76936_1_, int p_76936_2_, int p_76936_3_, int p_76936_4_, int p_76936_5_)
 	{
+		WorldChunkManager local = forCurrentThread();
+		if(local != this)
+			return local.getRainfall(p_76936_1_, p_76936_2_, p_76936_3_, p_76936_4_, p_76936_5_);
 		IntCache.resetIntCache();
 
 		if (p_76936_1_ == null || p_76936_1_.length < p_76936_4_ * p_76936_5_)
@@ -107,6 +135,9 @@ public class WorldChunkManager
 
 	public BiomeGenBase[] getBiomesForGeneration(BiomeGenBase[] p_76937_1_, int p_76937_2_, int p_76937_3_, int p_76937_4_, int p_76937_5_)
 	{
+		WorldChunkManager local = forCurrentThread();
+		if(local != this)
+			return local.getBiomesForGeneration(p_76937_1_, p_76937_2_, p_76937_3_, p_76937_4_, p_76937_5_);
 		IntCache.resetIntCache();
 
 		if (p_76937_1_ == null || p_76937_1_.length < p_76937_4_ * p_76937_5_)
@@ -145,6 +176,9 @@ public class WorldChunkManager
 
 	public BiomeGenBase[] getBiomeGenAt(BiomeGenBase[] p_76931_1_, int p_76931_2_, int p_76931_3_, int p_76931_4_, int p_76931_5_, boolean p_76931_6_)
 	{
+		WorldChunkManager local = forCurrentThread();
+		if(local != this)
+			return local.getBiomeGenAt(p_76931_1_, p_76931_2_, p_76931_3_, p_76931_4_, p_76931_5_, p_76931_6_);
 		IntCache.resetIntCache();
 
 		if (p_76931_1_ == null || p_76931_1_.length < p_76931_4_ * p_76931_5_)
@@ -173,6 +207,9 @@ public class WorldChunkManager
 
 	public boolean areBiomesViable(int p_76940_1_, int p_76940_2_, int p_76940_3_, List p_76940_4_)
 	{
+		WorldChunkManager local = forCurrentThread();
+		if(local != this)
+			return local.areBiomesViable(p_76940_1_, p_76940_2_, p_76940_3_, p_76940_4_);
 		IntCache.resetIntCache();
 		int l = p_76940_1_ - p_76940_3_ >> 2;
 		int i1 = p_76940_2_ - p_76940_3_ >> 2;
@@ -211,6 +248,9 @@ public class WorldChunkManager
 
 	public ChunkPosition findBiomePosition(int p_150795_1_, int p_150795_2_, int p_150795_3_, List p_150795_4_, Random p_150795_5_)
 	{
+		WorldChunkManager local = forCurrentThread();
+		if(local != this)
+			return local.findBiomePosition(p_150795_1_, p_150795_2_, p_150795_3_, p_150795_4_, p_150795_5_);
 		IntCache.resetIntCache();
 		int l = p_150795_1_ - p_150795_3_ >> 2;
 		int i1 = p_150795_2_ - p_150795_3_ >> 2;
@@ -240,7 +280,7 @@ public class WorldChunkManager
 
 	public void cleanupCache()
 	{
-		this.biomeCache.cleanupCache();
+		forCurrentThread().biomeCache.cleanupCache();
 	}
 
 	public GenLayer[] getModdedBiomeGenerators(WorldType worldType, long seed, GenLayer[] original)
@@ -11,9 +11,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.Callable;
 
+import com.mojang.authlib.GameProfile;
 import gnu.trove.iterator.TByteIterator;
 import gnu.trove.set.TByteSet;
 import gnu.trove.set.hash.TByteHashSet;
@@ -49,11 +49,12 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.ultramine.server.EntityType;
 import org.ultramine.server.chunk.ChunkBindState;
+import org.ultramine.server.chunk.ChunkEntityBucket;
+import org.ultramine.server.chunk.ChunkGC;
 import org.ultramine.server.chunk.ChunkHash;
 import org.ultramine.server.chunk.IChunkDependency;
 import org.ultramine.server.chunk.PendingBlockUpdate;
-import org.ultramine.server.internal.LambdaHolder;
-import org.ultramine.server.util.WeakObjectPool;
+import org.ultramine.server.chunk.PendingBlockUpdateQueue;
 import org.ultramine.server.event.WorldUpdateObject;
 import org.ultramine.server.event.WorldUpdateObjectType;
 
@@ -73,6 +74,8 @@ public class Chunk implements IChunkDependency
 	private boolean isGapLightingUpdated;
 	public Map chunkTileEntityMap;
 	public List[] entityLists;
+	/** ultramine: per-section lists of entities of {@link ChunkEntityBucket} types, indexed by bucket * 16 + section */
+	private List<Entity>[] entityBuckets;
 	public boolean isTerrainPopulated;
 	public boolean isLightPopulated;
 	public boolean field_150815_m;
@@ -822,13 +825,15 @@ public class Chunk implements IChunkDependency
 			k = this.entityLists.length - 1;
 		}
 
-		MinecraftForge.EVENT_BUS.post(new EntityEvent.EnteringChunk(p_76612_1_, this.xPosition, this.zPosition, p_76612_1_.chunkCoordX, p_76612_1_.chunkCoordZ));
+		if (MinecraftForge.EVENT_BUS.hasListeners(EntityEvent.EnteringChunk.class)) // ultramine: do not allocate event if nobody listens
+			MinecraftForge.EVENT_BUS.post(new EntityEvent.EnteringChunk(p_76612_1_, this.xPosition, this.zPosition, p_76612_1_.chunkCoordX, p_76612_1_.chunkCoordZ));
 		p_76612_1_.addedToChunk = true;
 		p_76612_1_.chunkCoordX = this.xPosition;
 		p_76612_1_.chunkCoordY = k;
 		p_76612_1_.chunkCoordZ = this.zPosition;
 		this.entityLists[k].add(p_76612_1_);
 		onEntityAdd(p_76612_1_);
+		addToBuckets(p_76612_1_, k);
 	}
 
 	public void removeEntity(Entity p_76622_1_)
@@ -849,7 +854,10 @@ public class Chunk implements IChunkDependency
 		}
 
 		if(this.entityLists[p_76608_2_].remove(p_76608_1_))
+		{
 			onEntityRemove(p_76608_1_);
+			removeFromBuckets(p_76608_1_, p_76608_2_);
+		}
 	}
 
 	public boolean canBlockSeeTheSky(int p_76619_1_, int p_76619_2_, int p_76619_3_)
@@ -988,7 +996,10 @@ public class Chunk implements IChunkDependency
 			{
 				Entity ent = (Entity)it.next();
 				if(ent.isEntityPlayerMP() || ent.isDead)
+				{
 					it.remove();
+					removeFromBuckets(ent, i);
+				}
 			}
 			this.worldObj.unloadEntities(this.entityLists[i]);
 		}
@@ -1046,9 +1057,13 @@ public class Chunk implements IChunkDependency
 		i = MathHelper.clamp_int(i, 0, this.entityLists.length - 1);
 		j = MathHelper.clamp_int(j, 0, this.entityLists.length - 1);
 
+		ChunkEntityBucket bucket = ChunkEntityBucket.forQuery(p_76618_1_); // ultramine: iterate over entities of requested type only
+
 		for (int k = i; k <= j; ++k)
 		{
-			List list1 = this.entityLists[k];
+			List list1 = bucket == null ? this.entityLists[k] : getBucket(bucket, k);
+			if (list1 == null)
+				continue;
 
 			for (int l = 0; l < list1.size(); ++l)
 			{
@@ -1556,20 +1571,17 @@ public class Chunk implements IChunkDependency
 	
 	/*======================================== ULTRAMINE START =====================================*/
 
-	private static final WeakObjectPool<ShortObjMap<PendingBlockUpdate>> shortObjMapPool = new WeakObjectPool<>(LambdaHolder.newShortObjMap());
-	private static final WeakObjectPool<TreeSet<PendingBlockUpdate>> treeSetPool = new WeakObjectPool<>(LambdaHolder.newTreeSet());
-
 	private final ShortObjMap<TileEntity> fastTileEntityMap = HashShortObjMaps.newMutableMap();
 	private final TByteSet updateLightCoords = new TByteHashSet();
 	
-	private ShortObjMap<PendingBlockUpdate> pendingUpdatesSet;
-	private TreeSet<PendingBlockUpdate> pendingUpdatesQueue;
+	private PendingBlockUpdateQueue pendingUpdates;
 	
 	private ChunkBindState bindState = ChunkBindState.NONE;
 	private List<IChunkDependency> dependencies = new ArrayList<IChunkDependency>(2);
 	private int loadTime;
 	private int unbindTime;
 	private boolean wasActive;
+	private ChunkGC chunkGC;
 
 	private short entityLivingCount;
 	private short entityMonsterCount;
@@ -1581,19 +1593,7 @@ public class Chunk implements IChunkDependency
 
 	private void releasePendingUpdatesSets()
 	{
-		if(pendingUpdatesQueue != null)
-		{
-			if(!pendingUpdatesSet.isEmpty())
-				pendingUpdatesSet.clear();
-			if(!pendingUpdatesQueue.isEmpty())
-				pendingUpdatesQueue.clear();
-
-			shortObjMapPool.release(pendingUpdatesSet);
-			treeSetPool.release(pendingUpdatesQueue);
-
-			pendingUpdatesSet = null;
-			pendingUpdatesQueue = null;
-		}
+		pendingUpdates = null;
 	}
 
 	private void convertTileEntityMap()
@@ -1610,56 +1610,48 @@ public class Chunk implements IChunkDependency
 	
 	public PendingBlockUpdate pollPending(long time)
 	{
-		if(pendingUpdatesQueue == null || pendingUpdatesQueue.size() == 0) return null;
+		if(pendingUpdates == null || pendingUpdates.size() == 0) return null;
 		
-		PendingBlockUpdate p = pendingUpdatesQueue.first();
-		if(p.scheduledTime <= time)
+		PendingBlockUpdate p = pendingUpdates.poll(time);
+		if(p != null)
 		{
-			pendingUpdatesSet.remove(p.getChunkCoordHash());
-			pendingUpdatesQueue.remove(p);
-			
-			if(pendingUpdatesQueue.isEmpty())
+			if(pendingUpdates.size() == 0)
 				releasePendingUpdatesSets();
-
 			isModified = true;
-			return p;
 		}
-		
-		return null;
+		return p;
 	}
 	
 	public void scheduleBlockUpdate(PendingBlockUpdate p, boolean check)
 	{
-		if(pendingUpdatesQueue == null)
-		{
-			pendingUpdatesSet = shortObjMapPool.getOrCreateInstance();
-			pendingUpdatesQueue = treeSetPool.getOrCreateInstance();
-		}
+		scheduleBlockUpdate(p.x, p.y, p.z, p.getBlock(), p.scheduledTime, p.priority, p.initiator, check);
+	}
 
-		PendingBlockUpdate prev = null;
-		if(!check || (prev = pendingUpdatesSet.get(p.getChunkCoordHash())) == null || !Block.isEqualTo(p.getBlock(), prev.getBlock()))
-		{
-			if(prev != null)
-				pendingUpdatesQueue.remove(prev);
-			pendingUpdatesSet.put(p.getChunkCoordHash(), p);
-			pendingUpdatesQueue.add(p);
+	/** Coordinates are relative to chunk */
+	public void scheduleBlockUpdate(int x, int y, int z, Block block, long time, int priority, GameProfile initiator, boolean check)
+	{
+		long now = worldObj.getTotalWorldTime();
+		if(pendingUpdates == null)
+			pendingUpdates = new PendingBlockUpdateQueue(now);
+
+		if(pendingUpdates.add(x, y, z, block, time, priority, initiator, check, now))
 			isModified = true;
-		}
 	}
 	
+	/** @return copy of scheduled updates or null if there are no ones */
 	public Set<PendingBlockUpdate> getPendingUpdatesForSave()
 	{
-		return pendingUpdatesQueue;
+		return pendingUpdates == null || pendingUpdates.size() == 0 ? null : pendingUpdates.toSet();
 	}
 
 	public int getPendingUpdatesCount()
 	{
-		return pendingUpdatesSet == null ? 0 : pendingUpdatesSet.size();
+		return pendingUpdates == null ? 0 : pendingUpdates.size();
 	}
 
 	public long getFirstPendingUpdateTime()
 	{
-		return pendingUpdatesQueue == null ? 0 : pendingUpdatesQueue.first().scheduledTime;
+		return pendingUpdates == null ? 0 : pendingUpdates.getFirstTime();
 	}
 
 	public ChunkBindState getBindState()
@@ -1670,6 +1662,19 @@ public class Chunk implements IChunkDependency
 	public void setBindState(ChunkBindState bindState)
 	{
 		this.bindState = bindState;
+		if(chunkGC != null)
+			chunkGC.onBindStateChanged(this);
+	}
+
+	/** Set while chunk is loaded in server world, notified on bind state and unbind time change */
+	public void setChunkGC(ChunkGC chunkGC)
+	{
+		this.chunkGC = chunkGC;
+	}
+
+	public ChunkGC getChunkGC()
+	{
+		return chunkGC;
 	}
 	
 	public void addDependency(IChunkDependency dep)
@@ -1721,6 +1726,8 @@ public class Chunk implements IChunkDependency
 	public void updateUnbindTime()
 	{
 		unbindTime = ((WorldServer)worldObj).func_73046_m().getTickCounter();
+		if(chunkGC != null)
+			chunkGC.onBindStateChanged(this);
 	}
 	
 	public int getLoadTime()
@@ -1784,6 +1791,48 @@ public class Chunk implements IChunkDependency
 		}
 	}
 	
+	private void addToBuckets(Entity e, int section)
+	{
+		int mask = ChunkEntityBucket.maskOf(e);
+		if(mask == 0)
+			return;
+		if(entityBuckets == null)
+			entityBuckets = new List[ChunkEntityBucket.COUNT * 16];
+		for(int i = 0; i < ChunkEntityBucket.COUNT; i++)
+		{
+			if((mask & (1 << i)) != 0)
+			{
+				int ind = i * 16 + section;
+				List<Entity> list = entityBuckets[ind];
+				if(list == null)
+					entityBuckets[ind] = list = new ArrayList<Entity>(4);
+				list.add(e);
+			}
+		}
+	}
+	
+	private void removeFromBuckets(Entity e, int section)
+	{
+		int mask = ChunkEntityBucket.maskOf(e);
+		if(mask == 0 || entityBuckets == null)
+			return;
+		for(int i = 0; i < ChunkEntityBucket.COUNT; i++)
+		{
+			if((mask & (1 << i)) != 0)
+			{
+				List<Entity> list = entityBuckets[i * 16 + section];
+				if(list != null)
+					list.remove(e);
+			}
+		}
+	}
+	
+	/** @return entities of the section in the bucket, or null if there were no such entities */
+	public List<Entity> getBucket(ChunkEntityBucket bucket, int section)
+	{
+		return entityBuckets == null ? null : entityBuckets[bucket.ordinal() * 16 + section];
+	}
+	
 	private void resetEntityCounters()
 	{
 		entityLivingCount = 0;
@@ -5,15 +5,21 @@ import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import net.minecraft.block.Block;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityList;
+import net.minecraft.nbt.ChunkNbtReader;
 import net.minecraft.nbt.CompressedStreamTools;
 import net.minecraft.nbt.EbsSaveFakeNbt;
 import net.minecraft.nbt.NBTTagCompound;
@@ -30,11 +36,14 @@ import net.minecraftforge.event.world.ChunkDataEvent;
 import net.openhft.koloboke.collect.map.IntObjCursor;
 import net.openhft.koloboke.collect.map.IntObjMap;
 import net.openhft.koloboke.collect.map.hash.HashIntObjMaps;
+import net.openhft.koloboke.collect.set.IntSet;
+import net.openhft.koloboke.collect.set.hash.HashIntSets;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.ultramine.server.chunk.ChunkHash;
+import org.ultramine.server.chunk.ChunkSavePipeline;
 import org.ultramine.server.chunk.PendingBlockUpdate;
 import org.ultramine.server.util.VanillaChunkCoordIntPairSet;
 
@@ -67,6 +76,21 @@ public class AnvilChunkLoader implements IChunkLoader, IThreadedFileIO
 	}); //mods compatibility
 	private final Set<ChunkCoordIntPair> pendingAnvilChunksCoordinates = new VanillaChunkCoordIntPairSet(pendingSaves.keySet()); //mods compatibility
 	protected final Object syncLockObject = new Object();
+	private final IntSet inFlightChunks = HashIntSets.newMutableSet(); // guarded by syncLockObject
+	private final BlockingQueue<SerializedChunk> serializedChunks = new LinkedBlockingQueue<>();
+	private static final Comparator<SerializedChunk> REGION_ORDER = new Comparator<SerializedChunk>()
+	{
+		@Override
+		public int compare(SerializedChunk c1, SerializedChunk c2)
+		{
+			ChunkCoordIntPair p1 = c1.pending.chunkCoordinate;
+			ChunkCoordIntPair p2 = c2.pending.chunkCoordinate;
+			int cmp = Integer.compare(p1.chunkXPos >> 5, p2.chunkXPos >> 5);
+			if(cmp == 0)
+				cmp = Integer.compare(p1.chunkZPos >> 5, p2.chunkZPos >> 5);
+			return cmp;
+		}
+	};
 	public File chunkSaveLocation;
 	private static final String __OBFID = "CL_00000384";
 
@@ -136,7 +160,7 @@ public class AnvilChunkLoader implements IChunkLoader, IThreadedFileIO
 
             try
 			{
-				nbttagcompound = CompressedStreamTools.read(datainputstream);
+				nbttagcompound = ChunkNbtReader.read(datainputstream, !par1World.provider.hasNoSky); // ultramine: sections are decoded straight into slots
 			}
 			catch (IOException e)
 			{
@@ -146,8 +170,21 @@ public class AnvilChunkLoader implements IChunkLoader, IThreadedFileIO
         }
         
         if(nbttagcompound == null) return null;
-        Chunk chunk = checkedReadChunkFromNBT(par1World, par2, par3, nbttagcompound);
-        if(chunk == null) return null;
+        Chunk chunk;
+        try
+        {
+            chunk = checkedReadChunkFromNBT(par1World, par2, par3, nbttagcompound);
+        }
+        catch (RuntimeException e)
+        {
+            releaseNbt(nbttagcompound); // ultramine: slots of streamed or retained sections
+            throw e;
+        }
+        if(chunk == null)
+        {
+            releaseNbt(nbttagcompound); // ultramine
+            return null;
+        }
         
         Object[] data = new Object[2];
         data[0] = chunk;
@@ -197,6 +234,7 @@ public class AnvilChunkLoader implements IChunkLoader, IThreadedFileIO
 					}
 				}
 
+				chunk.release(); // ultramine: the chunk is read again, its storages share slots of the sections
 				chunk = this.readChunkFromNBT(par1World, par4NBTTagCompound.getCompoundTag("Level"));
 			}
 			return chunk;
@@ -265,6 +303,9 @@ public class AnvilChunkLoader implements IChunkLoader, IThreadedFileIO
 
 	public boolean writeNextIO()
 	{
+		if(ChunkSavePipeline.isEnabled())
+			return writeNextIOPipelined();
+
 		AnvilChunkLoader.PendingChunk pendingchunk = null;
 		Object object = this.syncLockObject;
 		int key;
@@ -318,6 +359,130 @@ public class AnvilChunkLoader implements IChunkLoader, IThreadedFileIO
 		return RegionFileCache.getChunkOutputStream(this.chunkSaveLocation, pending.chunkCoordinate.chunkXPos, pending.chunkCoordinate.chunkZPos);
 	}
 
+	protected RegionFile getRegionFile(int cx, int cz)
+	{
+		return RegionFileCache.createOrLoadRegionFile(this.chunkSaveLocation, cx, cz);
+	}
+
+	/**
+	 * Staged save: pending chunks are serialized and deflated on {@link ChunkSavePipeline} workers, deflated data is
+	 * written here, on the file IO thread. Chunk stays in pendingSaves until written, so it may be loaded meanwhile.
+	 * A newer version of the chunk is not submitted until the previous one is written, so writes are never reordered.
+	 */
+	private boolean writeNextIOPipelined()
+	{
+		ChunkSavePipeline pipeline = ChunkSavePipeline.instance();
+
+		synchronized(this.syncLockObject)
+		{
+			if(this.pendingSaves.isEmpty())
+				return false;
+
+			int maxInFlight = pipeline.getMaxInFlight();
+			for(int i = 0, s = chunksToRemoveUm.size(); i < s && inFlightChunks.size() < maxInFlight; i++)
+			{
+				PendingChunk pending = chunksToRemoveUm.get(i);
+				if(inFlightChunks.add(ChunkHash.chunkToKey(pending.chunkCoordinate.chunkXPos, pending.chunkCoordinate.chunkZPos)))
+					pipeline.submit(new SerializeTask(pending));
+			}
+		}
+
+		List<SerializedChunk> batch = new ArrayList<>();
+		serializedChunks.drainTo(batch);
+		if(batch.isEmpty())
+		{
+			try
+			{
+				SerializedChunk first = serializedChunks.poll(2, TimeUnit.MILLISECONDS);
+				if(first == null)
+					return true;
+				batch.add(first);
+			}
+			catch(InterruptedException e)
+			{
+				return true;
+			}
+			serializedChunks.drainTo(batch);
+		}
+
+		if(batch.size() > 1)
+			Collections.sort(batch, REGION_ORDER);
+
+		for(SerializedChunk serialized : batch)
+		{
+			PendingChunk pending = serialized.pending;
+			int cx = pending.chunkCoordinate.chunkXPos;
+			int cz = pending.chunkCoordinate.chunkZPos;
+			long start = System.nanoTime();
+			if(serialized.data != null)
+			{
+				try
+				{
+					getRegionFile(cx, cz).write(cx & 31, cz & 31, serialized.data.getBuffer(), serialized.data.size());
+				}
+				catch(Exception e)
+				{
+					logger.error("Failed to write chunk [" + cx + ", " + cz + "] to region file", e);
+				}
+			}
+			pipeline.onWritten(System.nanoTime() - start, serialized.data == null ? 0 : serialized.data.size());
+
+			int key = ChunkHash.chunkToKey(cx, cz);
+			synchronized(this.syncLockObject)
+			{
+				inFlightChunks.remove(key);
+				// may be replaced by newer version while serializing, it will be written by next call
+				if(pendingSaves.get(key) == pending)
+				{
+					pendingSaves.remove(key);
+					chunksToRemoveUm.remove(pending);
+				}
+			}
+
+			releaseNbt(pending.nbtTags);
+		}
+
+		return true;
+	}
+
+	private class SerializeTask implements Runnable
+	{
+		private final PendingChunk pending;
+
+		SerializeTask(PendingChunk pending)
+		{
+			this.pending = pending;
+		}
+
+		@Override
+		public void run()
+		{
+			ChunkSavePipeline.Output data = null;
+			try
+			{
+				data = ChunkSavePipeline.instance().serialize(pending.nbtTags);
+			}
+			catch(Throwable t)
+			{
+				logger.error("Failed to serialize chunk [" + pending.chunkCoordinate.chunkXPos + ", " + pending.chunkCoordinate.chunkZPos + "]", t);
+			}
+			serializedChunks.add(new SerializedChunk(pending, data));
+			ChunkSavePipeline.instance().onSerialized();
+		}
+	}
+
+	private static class SerializedChunk
+	{
+		final PendingChunk pending;
+		@Nullable final ChunkSavePipeline.Output data;
+
+		SerializedChunk(PendingChunk pending, @Nullable ChunkSavePipeline.Output data)
+		{
+			this.pending = pending;
+			this.data = data;
+		}
+	}
+
 	public void saveExtraChunkData(World par1World, Chunk par2Chunk) {}
 
 	public void chunkTick() {}
@@ -477,7 +642,8 @@ public class AnvilChunkLoader implements IChunkLoader, IThreadedFileIO
 			NBTTagCompound nbttagcompound1 = nbttaglist.getCompoundTagAt(k);
 			if(nbttagcompound1 instanceof EbsSaveFakeNbt)
 			{
-				ExtendedBlockStorage ebs = ((EbsSaveFakeNbt)nbttagcompound1).getEbs().copy();
+				// Slot is copied on first write, if the nbt is still retained by pending save
+				ExtendedBlockStorage ebs = ((EbsSaveFakeNbt)nbttagcompound1).getEbs().share();
 				aextendedblockstorage[ebs.getYLocation() >> 4 & 255] = ebs;
 				continue;
 			}
@@ -584,8 +750,8 @@ public class AnvilChunkLoader implements IChunkLoader, IThreadedFileIO
 				for (int j1 = 0; j1 < nbttaglist3.tagCount(); ++j1)
 				{
 					NBTTagCompound nbttagcompound5 = nbttaglist3.getCompoundTagAt(j1);
-					chunk.scheduleBlockUpdate(new PendingBlockUpdate(nbttagcompound5.getInteger("x")&15, nbttagcompound5.getInteger("y"), nbttagcompound5.getInteger("z")&15,
-							Block.getBlockById(nbttagcompound5.getInteger("i")), (long)nbttagcompound5.getInteger("t") + time, nbttagcompound5.getInteger("p")), false);
+					chunk.scheduleBlockUpdate(nbttagcompound5.getInteger("x")&15, nbttagcompound5.getInteger("y"), nbttagcompound5.getInteger("z")&15,
+							Block.getBlockById(nbttagcompound5.getInteger("i")), (long)nbttagcompound5.getInteger("t") + time, nbttagcompound5.getInteger("p"), null, false);
 				}
 			}
 		}
@@ -600,6 +766,12 @@ public class AnvilChunkLoader implements IChunkLoader, IThreadedFileIO
 			return pendingSaves.size();
 		}
 	}
+
+	/** @return how many chunks may be queued for save before chunk unloading is postponed */
+	public int getSaveQueueCapacity()
+	{
+		return ChunkSavePipeline.isEnabled() ? ChunkSavePipeline.instance().getQueueCapacity() : 64;
+	}
 	
 	public void unsafeRemoveAll()
 	{
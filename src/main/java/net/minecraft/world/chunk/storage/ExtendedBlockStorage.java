@@ -10,6 +10,7 @@ import net.minecraft.block.Block;
 import net.minecraft.init.Blocks;
 import net.minecraft.world.chunk.NibbleArray;
 import org.ultramine.server.chunk.alloc.ChunkAllocService;
+import org.ultramine.server.chunk.ChunkSnapshot;
 import org.ultramine.server.chunk.alloc.MemSlot;
 
 public class ExtendedBlockStorage
@@ -19,6 +20,7 @@ public class ExtendedBlockStorage
 	private int blockRefCount;
 	private int tickRefCount;
 	private volatile MemSlot slot; // volatile read is cheap on x86
+	private int modCount;
 	private static final String __OBFID = "CL_00000375";
 
 	public ExtendedBlockStorage(int p_i1997_1_, boolean p_i1997_2_, boolean zerofill)
@@ -72,7 +74,7 @@ public class ExtendedBlockStorage
 		}
 
 		int i1 = Block.getIdFromBlock(p_150818_4_);
-		slot.setBlockId(p_150818_1_, p_150818_2_, p_150818_3_, i1);
+		getWritableSlot().setBlockId(p_150818_1_, p_150818_2_, p_150818_3_, i1);
 	}
 
 	public int getExtBlockMetadata(int p_76665_1_, int p_76665_2_, int p_76665_3_)
@@ -82,7 +84,7 @@ public class ExtendedBlockStorage
 
 	public void setExtBlockMetadata(int p_76654_1_, int p_76654_2_, int p_76654_3_, int p_76654_4_)
 	{
-		slot.setMeta(p_76654_1_, p_76654_2_, p_76654_3_, p_76654_4_);
+		getWritableSlot().setMeta(p_76654_1_, p_76654_2_, p_76654_3_, p_76654_4_);
 	}
 
 	public boolean isEmpty()
@@ -102,7 +104,7 @@ public class ExtendedBlockStorage
 
 	public void setExtSkylightValue(int p_76657_1_, int p_76657_2_, int p_76657_3_, int p_76657_4_)
 	{
-		slot.setSkylight(p_76657_1_, p_76657_2_, p_76657_3_, p_76657_4_);
+		getWritableSlot().setSkylight(p_76657_1_, p_76657_2_, p_76657_3_, p_76657_4_);
 	}
 
 	public int getExtSkylightValue(int p_76670_1_, int p_76670_2_, int p_76670_3_)
@@ -112,7 +114,7 @@ public class ExtendedBlockStorage
 
 	public void setExtBlocklightValue(int p_76677_1_, int p_76677_2_, int p_76677_3_, int p_76677_4_)
 	{
-		slot.setBlocklight(p_76677_1_, p_76677_2_, p_76677_3_, p_76677_4_);
+		getWritableSlot().setBlocklight(p_76677_1_, p_76677_2_, p_76677_3_, p_76677_4_);
 	}
 
 	public int getExtBlocklightValue(int p_76674_1_, int p_76674_2_, int p_76674_3_)
@@ -158,7 +160,7 @@ public class ExtendedBlockStorage
 	@SideOnly(Side.CLIENT)
 	public void clearMSBArray()
 	{
-		slot.zerofillMSB();
+		getWritableSlot().zerofillMSB();
 	}
 
 	@Deprecated
@@ -193,35 +195,35 @@ public class ExtendedBlockStorage
 	public void setBlockLSBArray(byte[] p_76664_1_)
 	{
 		logDeprecation();
-		slot.setLSB(p_76664_1_);
+		getWritableSlot().setLSB(p_76664_1_);
 	}
 
 	@Deprecated
 	public void setBlockMSBArray(NibbleArray p_76673_1_)
 	{
 		logDeprecation();
-		slot.setMSB(p_76673_1_.data);
+		getWritableSlot().setMSB(p_76673_1_.data);
 	}
 
 	@Deprecated
 	public void setBlockMetadataArray(NibbleArray p_76668_1_)
 	{
 		logDeprecation();
-		slot.setBlockMetadata(p_76668_1_.data);
+		getWritableSlot().setBlockMetadata(p_76668_1_.data);
 	}
 
 	@Deprecated
 	public void setBlocklightArray(NibbleArray p_76659_1_)
 	{
 		logDeprecation();
-		slot.setBlocklight(p_76659_1_.data);
+		getWritableSlot().setBlocklight(p_76659_1_.data);
 	}
 
 	@Deprecated
 	public void setSkylightArray(NibbleArray p_76666_1_)
 	{
 		logDeprecation();
-		slot.setSkylight(p_76666_1_.data);
+		getWritableSlot().setSkylight(p_76666_1_.data);
 	}
 
 	@Deprecated
@@ -229,7 +231,7 @@ public class ExtendedBlockStorage
 	public NibbleArray createBlockMSBArray()
 	{
 		logDeprecation();
-		slot.zerofillMSB();
+		getWritableSlot().zerofillMSB();
 		return getBlockMSBArray();
 	}
 
@@ -240,11 +242,40 @@ public class ExtendedBlockStorage
 		log.warn("Called deprecated method in ExtendedBlockStorage. It may have no effect intended by the modder or lead to performance issues", new Throwable());
 	}
 	
+	/** Slot of this storage for reading. Use {@link #getWritableSlot()} for modification */
 	public MemSlot getSlot()
 	{
 		return slot;
 	}
 
+	/** Slot of this storage for modification. Copies the slot first, if it is shared with snapshots */
+	public MemSlot getWritableSlot()
+	{
+		modCount++;
+		MemSlot slotLocal = this.slot;
+		if(slotLocal.isShared())
+		{
+			MemSlot copy = slotLocal.copy();
+			this.slot = copy;
+			slotLocal.release();
+			ChunkSnapshot.onSectionCopiedOnWrite();
+			return copy;
+		}
+		return slotLocal;
+	}
+
+	/** @return counter, incremented on each {@link #getWritableSlot()} call */
+	public int getModCount()
+	{
+		return modCount;
+	}
+
+	/** @return storage sharing the same slot with this one, it is copied on first write to any of them */
+	public ExtendedBlockStorage share()
+	{
+		return new ExtendedBlockStorage(slot.share(), yBase, blockRefCount, tickRefCount);
+	}
+
 	public ExtendedBlockStorage copy()
 	{
 		slot.getClass(); //NPE
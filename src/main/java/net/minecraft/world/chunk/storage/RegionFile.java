@@ -104,6 +104,12 @@ public class RegionFile
 		}
 	}
 
+	// ultramine: for alternative implementations (NioRegionFile), which do not use fields of this class
+	protected RegionFile()
+	{
+		this.fileName = null;
+	}
+
 	// This is a copy (sort of) of the method below it, make sure they stay in sync
 	public synchronized boolean chunkExists(int x, int z)
 	{
@@ -10,12 +10,16 @@ import java.util.Map;
 
 import com.google.common.collect.Maps;
 import net.minecraft.world.storage.ThreadedFileIOBase;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ultramine.server.chunk.NioRegionFile;
 import org.ultramine.server.internal.LambdaHolder;
 import org.ultramine.server.util.CachedEntry;
 import org.ultramine.server.util.CollectionUtil;
 
 public class RegionFileCache
 {
+	private static final Logger logger = LogManager.getLogger();
 	private static final Map<File, CachedEntry<RegionFile>> regionsByFilenameUM = new HashMap<>();
 	private static final Map regionsByFilename = Maps.transformValues(regionsByFilenameUM, LambdaHolder.cachedEntryGetValueGuavaFunc());
 	private static final String __OBFID = "CL_00000383";
@@ -52,12 +56,30 @@ public class RegionFileCache
 				}
 			}
 
-			RegionFile regionfile1 = new RegionFile(file3);
+			RegionFile regionfile1 = createRegionFile(file3);
 			regionsByFilenameUM.put(file3, CachedEntry.of(regionfile1));
 			return regionfile1;
 		}
 	}
 
+	// ultramine: chooses region file implementation, NioRegionFile if enabled
+	public static RegionFile createRegionFile(File file)
+	{
+		if(NioRegionFile.isEnabled())
+		{
+			try
+			{
+				return new NioRegionFile(file);
+			}
+			catch(IOException e)
+			{
+				logger.error("Failed to open region file " + file + ", falling back to vanilla implementation", e);
+			}
+		}
+
+		return new RegionFile(file);
+	}
+
 	public static void clearRegionFileReferences()
 	{
 		if(!Thread.currentThread().getName().equals("File IO Thread"))
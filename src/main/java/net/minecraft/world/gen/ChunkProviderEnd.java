@@ -360,7 +360,7 @@ public class ChunkProviderEnd implements IChunkProvider
 
 	public void populate(IChunkProvider p_73153_1_, int p_73153_2_, int p_73153_3_)
 	{
-		BlockFalling.fallInstantly = true;
+		BlockFalling.setFallInstantly(true); // ultramine
 
 		MinecraftForge.EVENT_BUS.post(new PopulateChunkEvent.Pre(p_73153_1_, endWorld, endWorld.rand, p_73153_2_, p_73153_3_, false));
 
@@ -371,7 +371,7 @@ public class ChunkProviderEnd implements IChunkProvider
 
 		MinecraftForge.EVENT_BUS.post(new PopulateChunkEvent.Post(p_73153_1_, endWorld, endWorld.rand, p_73153_2_, p_73153_3_, false));
 
-		BlockFalling.fallInstantly = false;
+		BlockFalling.setFallInstantly(false); // ultramine
 	}
 
 	public boolean saveChunks(boolean p_73151_1_, IProgressUpdate p_73151_2_)
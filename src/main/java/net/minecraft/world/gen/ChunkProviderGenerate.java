@@ -364,7 +364,7 @@ public class ChunkProviderGenerate implements IChunkProvider
 
 	public void populate(IChunkProvider p_73153_1_, int p_73153_2_, int p_73153_3_)
 	{
-		BlockFalling.fallInstantly = true;
+		BlockFalling.setFallInstantly(true); // ultramine
 		int k = p_73153_2_ * 16;
 		int l = p_73153_3_ * 16;
 		BiomeGenBase biomegenbase = this.worldObj.getBiomeGenForCoords(k + 16, l + 16);
@@ -447,7 +447,7 @@ public class ChunkProviderGenerate implements IChunkProvider
 
 		MinecraftForge.EVENT_BUS.post(new PopulateChunkEvent.Post(p_73153_1_, worldObj, rand, p_73153_2_, p_73153_3_, flag));
 
-		BlockFalling.fallInstantly = false;
+		BlockFalling.setFallInstantly(false); // ultramine
 	}
 
 	public boolean saveChunks(boolean p_73151_1_, IProgressUpdate p_73151_2_)
@@ -28,6 +28,7 @@ import static net.minecraftforge.event.terraingen.OreGenEvent.GenerateMinable.Ev
 import net.minecraftforge.common.*;
 import cpw.mods.fml.common.eventhandler.Event.*;
 import net.minecraftforge.event.terraingen.*;
+import org.ultramine.server.chunk.ChunkGenerationQueue;
 
 public class ChunkProviderHell implements IChunkProvider
 {
@@ -271,7 +272,8 @@ public class ChunkProviderHell implements IChunkProvider
 		this.func_147419_a(p_73154_1_, p_73154_2_, ablock);
 		this.replaceBiomeBlocks(p_73154_1_, p_73154_2_, ablock, meta, abiomegenbase);
 		this.netherCaveGenerator.func_151539_a(this, this.worldObj, p_73154_1_, p_73154_2_, ablock);
-		this.genNetherBridge.func_151539_a(this, this.worldObj, p_73154_1_, p_73154_2_, ablock);
+		if(!ChunkGenerationQueue.isGenerationThread()) // ultramine: registered by main thread generator in recreateStructures()
+			this.genNetherBridge.func_151539_a(this, this.worldObj, p_73154_1_, p_73154_2_, ablock);
 		Chunk chunk = new Chunk(this.worldObj, ablock, meta, p_73154_1_, p_73154_2_);
 		byte[] abyte = chunk.getBiomeArray();
 
@@ -435,7 +437,7 @@ public class ChunkProviderHell implements IChunkProvider
 
 	public void populate(IChunkProvider p_73153_1_, int p_73153_2_, int p_73153_3_)
 	{
-		BlockFalling.fallInstantly = true;
+		BlockFalling.setFallInstantly(true); // ultramine
 
 		MinecraftForge.EVENT_BUS.post(new PopulateChunkEvent.Pre(p_73153_1_, worldObj, hellRNG, p_73153_2_, p_73153_3_, false));
 
@@ -529,7 +531,7 @@ public class ChunkProviderHell implements IChunkProvider
 		MinecraftForge.EVENT_BUS.post(new DecorateBiomeEvent.Post(worldObj, hellRNG, k, l));
 		MinecraftForge.EVENT_BUS.post(new PopulateChunkEvent.Post(p_73153_1_, worldObj, hellRNG, p_73153_2_, p_73153_3_, false));
 
-		BlockFalling.fallInstantly = false;
+		BlockFalling.setFallInstantly(false); // ultramine
 	}
 
 	public boolean saveChunks(boolean p_73151_1_, IProgressUpdate p_73151_2_)
@@ -224,6 +224,7 @@ public class ChunkProviderServer implements IChunkProvider
 
 			this.chunkMap.put(par1, par2, chunk);
 			chunk.onChunkLoad();
+			trackLoadedChunk(chunk);
 			chunk.populateChunk(this, this, par1, par2);
 		}
 
@@ -391,9 +392,11 @@ public class ChunkProviderServer implements IChunkProvider
 			*/
 			
 			Set<ChunkCoordIntPair> persistentChunks = worldObj.getPersistentChunks().keySet();
-			int savequeueSize = ((AnvilChunkLoader)currentChunkLoader).getSaveQueueSize();
+			AnvilChunkLoader loader = (AnvilChunkLoader)currentChunkLoader;
+			int savequeueSize = loader.getSaveQueueSize();
+			int savequeueCapacity = loader.getSaveQueueCapacity();
 			
-			for(IntCursor it = unloadQueue.cursor(); it.moveNext() && savequeueSize < MAX_SAVE_QUEUE_SIZE;)
+			for(IntCursor it = unloadQueue.cursor(); it.moveNext() && savequeueSize < savequeueCapacity;)
 			{
 				int hash = it.elem();
 				Chunk chunk = chunkMap.get(hash);
@@ -402,6 +405,7 @@ public class ChunkProviderServer implements IChunkProvider
 					if(chunk.canUnload() && !persistentChunks.contains(chunk.getChunkCoordIntPair()))
 					{
 						chunk.onChunkUnload();
+						worldObj.getPlayerManager().getChunkPacketCache().invalidate(chunk.xPosition, chunk.zPosition);
 						if(chunk.shouldSaveOnUnload())
 						{
 							savequeueSize++;
@@ -413,6 +417,8 @@ public class ChunkProviderServer implements IChunkProvider
 						}
 						this.safeSaveExtraChunkData(chunk);
 						this.chunkMap.remove(hash);
+						if(isServer)
+							chunkGC.onChunkUnloaded(chunk);
 						chunk.release();
 					}
 				}
@@ -459,7 +465,6 @@ public class ChunkProviderServer implements IChunkProvider
 	
 	/* ======================================== ULTRAMINE START =====================================*/
 	
-	private static final int MAX_SAVE_QUEUE_SIZE = 64;
 	private static final int FULL_SAVE_INTERVAL = 10*60*20; //10 min
 	private static final boolean isServer = FMLCommonHandler.instance().getSide().isServer();
 	private static final boolean debugSyncLoad = Boolean.parseBoolean(System.getProperty("ultramine.debug.chunksyncload"));
@@ -523,6 +528,21 @@ public class ChunkProviderServer implements IChunkProvider
 				loadAsync(x, z, callback);
 	}
 	
+	/**
+	 * Отменяет загрузку чанков, запрошенную {@link #loadAsyncRadius} с указанным callback, если она еще не начата.
+	 * Чанки, уже загруженные или генерируемые, не отменяются
+	 * @return количество отмененных загрузок
+	 */
+	public int cancelLoadAsyncRadius(int cx, int cz, int radius, IChunkLoadCallback callback)
+	{
+		int cancelled = 0;
+		for(int x = cx - radius; x <= cx + radius; x++)
+			for(int z = cz - radius; z <= cz + radius; z++)
+				if(ChunkIOExecutor.cancelQueuedChunkLoad(worldObj, x, z, callback))
+					cancelled++;
+		return cancelled;
+	}
+	
 	/**
 	 * Загружает все чанки в радиусе, callback вызывается, когда все чанки загружены
 	 */
@@ -552,6 +572,13 @@ public class ChunkProviderServer implements IChunkProvider
 		return chunkMap.get(cx, cz);
 	}
 	
+	/** Must be called for every chunk added to {@link #chunkMap}, after {@link Chunk#onChunkLoad()} */
+	public void trackLoadedChunk(Chunk chunk)
+	{
+		if(isServer)
+			chunkGC.onChunkLoaded(chunk);
+	}
+	
 	public boolean isChunkGenerated(int cx, int cz)
 	{
 		return ((AnvilChunkLoader)currentChunkLoader).chunkExists(worldObj, cx, cz);
@@ -622,6 +649,24 @@ public class ChunkProviderServer implements IChunkProvider
 				populate(this, x, z);
 	}
 	
+	/**
+	 * Adds chunk generated by detached generator (see {@link ChunkGenerationQueue}) to this world. Structures
+	 * are registered and chunk is populated here, on main thread.
+	 */
+	public Chunk finishGeneratedChunk(Chunk chunk)
+	{
+		int cx = chunk.xPosition;
+		int cz = chunk.zPosition;
+		this.unloadQueue.removeInt(ChunkHash.chunkToKey(cx, cz));
+		if(this.currentChunkProvider != null)
+			this.currentChunkProvider.recreateStructures(cx, cz);
+		this.chunkMap.put(cx, cz, chunk);
+		chunk.onChunkLoad();
+		trackLoadedChunk(chunk);
+		chunk.populateChunk(this, this, cx, cz);
+		return chunk;
+	}
+	
 	public void preventSaving()
 	{
 		preventSaving = true;
@@ -655,6 +700,8 @@ public class ChunkProviderServer implements IChunkProvider
 		}
 		
 		chunkMap.clear();
+		if(isServer)
+			chunkGC.clear();
 		unloadQueue.clear();
 		possibleSaves.clear();
 		if(!save)
@@ -666,6 +713,8 @@ public class ChunkProviderServer implements IChunkProvider
 		for(Chunk chunk : chunkMap.valueCollection())
 			chunk.release();
 		chunkMap.clear();
+		if(isServer)
+			chunkGC.clear();
 		setWorldUnloaded();
 	}
 	
@@ -5,14 +5,38 @@ import java.util.List;
 
 public class IntCache
 {
-	private static int intCacheSize = 256;
-	private static List freeSmallArrays = new ArrayList();
-	private static List inUseSmallArrays = new ArrayList();
-	private static List freeLargeArrays = new ArrayList();
-	private static List inUseLargeArrays = new ArrayList();
+	// ultramine: cache is thread-local, so generator layers may be used from several threads simultaneously
+	private static final ThreadLocal<IntCache> LOCAL = new ThreadLocal<IntCache>()
+	{
+		@Override
+		protected IntCache initialValue()
+		{
+			return new IntCache();
+		}
+	};
+	private int intCacheSize = 256;
+	private final List freeSmallArrays = new ArrayList();
+	private final List inUseSmallArrays = new ArrayList();
+	private final List freeLargeArrays = new ArrayList();
+	private final List inUseLargeArrays = new ArrayList();
 	private static final String __OBFID = "CL_00000557";
 
-	public static synchronized int[] getIntCache(int p_76445_0_)
+	public static int[] getIntCache(int p_76445_0_)
+	{
+		return LOCAL.get().getLocalIntCache(p_76445_0_);
+	}
+
+	public static void resetIntCache()
+	{
+		LOCAL.get().resetLocalIntCache();
+	}
+
+	public static String getCacheSizes()
+	{
+		return LOCAL.get().getLocalCacheSizes();
+	}
+
+	private int[] getLocalIntCache(int p_76445_0_)
 	{
 		int[] aint;
 
@@ -54,7 +78,7 @@ public class IntCache
 		}
 	}
 
-	public static synchronized void resetIntCache()
+	private void resetLocalIntCache()
 	{
 		if (!freeLargeArrays.isEmpty())
 		{
@@ -72,8 +96,8 @@ public class IntCache
 		inUseSmallArrays.clear();
 	}
 
-	public static synchronized String getCacheSizes()
+	private String getLocalCacheSizes()
 	{
 		return "cache: " + freeLargeArrays.size() + ", tcache: " + freeSmallArrays.size() + ", allocated: " + inUseLargeArrays.size() + ", tallocated: " + inUseSmallArrays.size();
 	}
-}
\ No newline at end of file
+}
@@ -169,17 +169,20 @@ public class MapGenStronghold extends MapGenStructure
 			public Start(World p_i2067_1_, Random p_i2067_2_, int p_i2067_3_, int p_i2067_4_)
 			{
 				super(p_i2067_3_, p_i2067_4_);
-				StructureStrongholdPieces.prepareStructurePieces();
-				StructureStrongholdPieces.Stairs2 stairs2 = new StructureStrongholdPieces.Stairs2(0, p_i2067_2_, (p_i2067_3_ << 4) + 2, (p_i2067_4_ << 4) + 2);
-				this.components.add(stairs2);
-				stairs2.buildComponent(stairs2, this.components, p_i2067_2_);
-				List list = stairs2.field_75026_c;
-
-				while (!list.isEmpty())
+				synchronized (StructureStrongholdPieces.class) // ultramine: piece list and weights are static, worlds may be generated in parallel
 				{
-					int k = p_i2067_2_.nextInt(list.size());
-					StructureComponent structurecomponent = (StructureComponent)list.remove(k);
-					structurecomponent.buildComponent(stairs2, this.components, p_i2067_2_);
+					StructureStrongholdPieces.prepareStructurePieces();
+					StructureStrongholdPieces.Stairs2 stairs2 = new StructureStrongholdPieces.Stairs2(0, p_i2067_2_, (p_i2067_3_ << 4) + 2, (p_i2067_4_ << 4) + 2);
+					this.components.add(stairs2);
+					stairs2.buildComponent(stairs2, this.components, p_i2067_2_);
+					List list = stairs2.field_75026_c;
+
+					while (!list.isEmpty())
+					{
+						int k = p_i2067_2_.nextInt(list.size());
+						StructureComponent structurecomponent = (StructureComponent)list.remove(k);
+						structurecomponent.buildComponent(stairs2, this.components, p_i2067_2_);
+					}
 				}
 
 				this.updateBoundingBox();
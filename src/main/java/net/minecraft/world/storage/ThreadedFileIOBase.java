@@ -62,7 +62,7 @@ public class ThreadedFileIOBase implements Runnable
 		}
 	}
 
-	public void queueIO(IThreadedFileIO p_75735_1_)
+	public synchronized void queueIO(IThreadedFileIO p_75735_1_)
 	{
 		if (!this.threadedIOQueue.contains(p_75735_1_))
 		{
@@ -192,12 +192,14 @@ public class DimensionManager
 			worlds.put(id, world);
 			weakWorldMap.put(world, world);
 			MinecraftServer.getServer().worldTickTimes.put(id, new long[100]);
+			MinecraftServer.getServer().worldTickCpuTimes.put(id, new long[100]);
 			FMLLog.info("Loading dimension %d (%s) (%s)", id, world.getWorldInfo().getWorldName(), world.func_73046_m());
 		}
 		else
 		{
 			worlds.remove(id);
 			MinecraftServer.getServer().worldTickTimes.remove(id);
+			MinecraftServer.getServer().worldTickCpuTimes.remove(id);
 			FMLLog.info("Unloading dimension %d", id);
 		}
 
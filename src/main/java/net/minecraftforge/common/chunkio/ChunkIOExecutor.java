@@ -1,39 +1,117 @@
 package net.minecraftforge.common.chunkio;
 
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.server.MinecraftServer;
 import org.ultramine.server.chunk.ChunkLoadCallbackRunnable;
 import org.ultramine.server.chunk.IChunkLoadCallback;
+import org.ultramine.server.util.LatencyRecorder;
 
 import net.minecraftforge.common.util.AsynchronousExecutor;
 
 public class ChunkIOExecutor {
-	static final int BASE_THREADS = 1;
+	// ultramine: loads are executed by a priority queue, ordered by distance to the nearest player in the world
+	static final int BASE_THREADS = Integer.parseInt(System.getProperty("org.ultramine.chunk.io.threads",
+			Integer.toString(Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)))));
+	static final int MAX_THREADS = Integer.parseInt(System.getProperty("org.ultramine.chunk.io.maxThreads",
+			Integer.toString(Math.max(BASE_THREADS, Runtime.getRuntime().availableProcessors()))));
 	static final int PLAYERS_PER_THREAD = 50;
+	private static final int REPRIORITIZE_INTERVAL = 10;
+	private static final int ADJUST_POOL_INTERVAL = 100;
+
+	static final LatencyRecorder waitTime = new LatencyRecorder(1024);
+	static final LatencyRecorder loadTime = new LatencyRecorder(1024);
+	static final LatencyRecorder totalTime = new LatencyRecorder(1024);
 
-	private static final AsynchronousExecutor<QueuedChunk, net.minecraft.world.chunk.Chunk, IChunkLoadCallback, RuntimeException> instance = new AsynchronousExecutor<QueuedChunk, net.minecraft.world.chunk.Chunk, IChunkLoadCallback, RuntimeException>(new ChunkIOProvider(), BASE_THREADS);
+	// All methods are synchronized because chunks may be requested from several world tick threads (see ParallelWorldTicker)
+	private static final AsynchronousExecutor<QueuedChunk, net.minecraft.world.chunk.Chunk, IChunkLoadCallback, RuntimeException> instance = new AsynchronousExecutor<QueuedChunk, net.minecraft.world.chunk.Chunk, IChunkLoadCallback, RuntimeException>(new ChunkIOProvider(), BASE_THREADS, new ToLongFunction<QueuedChunk>() {
+		@Override
+		public long applyAsLong(QueuedChunk chunk) {
+			return distanceToNearestPlayer(chunk);
+		}
+	});
+	private static int tickCounter;
 
-	public static net.minecraft.world.chunk.Chunk syncChunkLoad(net.minecraft.world.World world, net.minecraft.world.chunk.storage.AnvilChunkLoader loader, net.minecraft.world.gen.ChunkProviderServer provider, int x, int z) {
+	public static synchronized net.minecraft.world.chunk.Chunk syncChunkLoad(net.minecraft.world.World world, net.minecraft.world.chunk.storage.AnvilChunkLoader loader, net.minecraft.world.gen.ChunkProviderServer provider, int x, int z) {
 		return instance.getSkipQueue(new QueuedChunk(x, z, loader, world, provider));
 	}
 
-	public static void queueChunkLoad(net.minecraft.world.World world, net.minecraft.world.chunk.storage.AnvilChunkLoader loader, net.minecraft.world.gen.ChunkProviderServer provider, int x, int z, Runnable runnable) {
+	public static synchronized void queueChunkLoad(net.minecraft.world.World world, net.minecraft.world.chunk.storage.AnvilChunkLoader loader, net.minecraft.world.gen.ChunkProviderServer provider, int x, int z, Runnable runnable) {
 		queueChunkLoad(world, loader, provider, x, z, new ChunkLoadCallbackRunnable(runnable));
 	}
-	
-	public static void queueChunkLoad(net.minecraft.world.World world, net.minecraft.world.chunk.storage.AnvilChunkLoader loader, net.minecraft.world.gen.ChunkProviderServer provider, int x, int z, IChunkLoadCallback callback) {
-		instance.add(new QueuedChunk(x, z, loader, world, provider), callback);
+
+	public static synchronized void queueChunkLoad(net.minecraft.world.World world, net.minecraft.world.chunk.storage.AnvilChunkLoader loader, net.minecraft.world.gen.ChunkProviderServer provider, int x, int z, IChunkLoadCallback callback) {
+		QueuedChunk chunk = new QueuedChunk(x, z, loader, world, provider);
+		chunk.queuedAt = System.nanoTime();
+		instance.add(chunk, callback);
 	}
 
 	// Abuses the fact that hashCode and equals for QueuedChunk only use world and coords
-	public static void dropQueuedChunkLoad(net.minecraft.world.World world, int x, int z, Runnable runnable) {
+	public static synchronized void dropQueuedChunkLoad(net.minecraft.world.World world, int x, int z, Runnable runnable) {
 		instance.drop(new QueuedChunk(x, z, null, world, null), new ChunkLoadCallbackRunnable(runnable));
 	}
 
-	public static void adjustPoolSize(int players) {
-		int size = Math.max(BASE_THREADS, (int) Math.ceil(players / PLAYERS_PER_THREAD));
+	/**
+	 * Removes callback from a queued chunk load, the load itself is removed from queue if there are no more callbacks.
+	 * @return true if the load was not started yet and the callback will not be called
+	 */
+	public static synchronized boolean cancelQueuedChunkLoad(net.minecraft.world.World world, int x, int z, IChunkLoadCallback callback) {
+		return instance.cancel(new QueuedChunk(x, z, null, world, null), callback);
+	}
+
+	public static synchronized void adjustPoolSize(int players) {
+		int size = Math.max(BASE_THREADS, Math.min(MAX_THREADS, (players + PLAYERS_PER_THREAD - 1) / PLAYERS_PER_THREAD));
 		instance.setActiveThreads(size);
 	}
 
-	public static void tick() {
+	public static synchronized void tick() {
 		instance.finishActive();
+
+		tickCounter++;
+		// Players are moving, so as their chunks
+		if (tickCounter % REPRIORITIZE_INTERVAL == 0 && instance.getQueueSize() > 1) {
+			instance.reprioritize();
+		}
+		if (tickCounter % ADJUST_POOL_INTERVAL == 0) {
+			adjustPoolSize(MinecraftServer.getServer().getCurrentPlayerCount());
+		}
+	}
+
+	private static long distanceToNearestPlayer(QueuedChunk chunk) {
+		long min = Long.MAX_VALUE;
+		@SuppressWarnings("unchecked")
+		List<EntityPlayer> players = chunk.world.playerEntities;
+		for (int i = 0, s = players.size(); i < s; i++) {
+			EntityPlayer player = players.get(i);
+			long dx = (player.chunkCoordX - chunk.x);
+			long dz = (player.chunkCoordZ - chunk.z);
+			min = Math.min(min, dx * dx + dz * dz);
+		}
+		return min;
+	}
+
+	public static synchronized int getQueueSize() {
+		return instance.getQueueSize();
+	}
+
+	public static synchronized int getActiveThreads() {
+		return instance.getActiveThreads();
+	}
+
+	/** @return time between request and start of loading, in nanoseconds */
+	public static LatencyRecorder getWaitTime() {
+		return waitTime;
+	}
+
+	/** @return time of reading and decoding chunk on I/O thread, in nanoseconds */
+	public static LatencyRecorder getLoadTime() {
+		return loadTime;
+	}
+
+	/** @return time between request and chunk is added to world, in nanoseconds */
+	public static LatencyRecorder getTotalTime() {
+		return totalTime;
 	}
-}
\ No newline at end of file
+}
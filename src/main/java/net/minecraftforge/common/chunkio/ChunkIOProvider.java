@@ -22,11 +22,15 @@ class ChunkIOProvider implements AsynchronousExecutor.CallBackProvider<QueuedChu
 			return null;
 		net.minecraft.world.chunk.storage.AnvilChunkLoader loader = queuedChunk.loader;
 		Object[] data = null;
+		long start = System.nanoTime();
+		if (queuedChunk.queuedAt != 0)
+			ChunkIOExecutor.waitTime.record(start - queuedChunk.queuedAt);
 //		try {
 			data = loader.loadChunk__Async(queuedChunk.world, queuedChunk.x, queuedChunk.z);
 //		} catch (IOException e) {
 //			e.printStackTrace();
 //		}
+		ChunkIOExecutor.loadTime.record(System.nanoTime() - start);
 
 		if (data != null) {
 			queuedChunk.compound = (net.minecraft.nbt.NBTTagCompound) data[1];
@@ -38,8 +42,11 @@ class ChunkIOProvider implements AsynchronousExecutor.CallBackProvider<QueuedChu
 
 	// sync stuff
 	public void callStage2(QueuedChunk queuedChunk, net.minecraft.world.chunk.Chunk chunk) throws RuntimeException {
-		if(queuedChunk.provider.isWorldUnloaded())
+		if(queuedChunk.provider.isWorldUnloaded()) {
+			if(chunk != null)
+				AnvilChunkLoader.releaseNbt(queuedChunk.compound);
 			return;
+		}
 		if(chunk == null) {
 			// If the chunk loading failed just do it synchronously (may generate)
 			queuedChunk.provider.originalLoadChunk(queuedChunk.x, queuedChunk.z);
@@ -52,12 +59,16 @@ class ChunkIOProvider implements AsynchronousExecutor.CallBackProvider<QueuedChu
 		chunk.lastSaveTime = queuedChunk.provider.worldObj.getTotalWorldTime();
 		queuedChunk.provider.chunkMap.put(ChunkHash.chunkToKey(queuedChunk.x, queuedChunk.z), chunk);
 		chunk.onChunkLoad();
+		queuedChunk.provider.trackLoadedChunk(chunk);
 
 		if (queuedChunk.provider.currentChunkProvider != null) {
 			queuedChunk.provider.currentChunkProvider.recreateStructures(queuedChunk.x, queuedChunk.z);
 		}
 
 		chunk.populateChunk(queuedChunk.provider, queuedChunk.provider, queuedChunk.x, queuedChunk.z);
+
+		if (queuedChunk.queuedAt != 0)
+			ChunkIOExecutor.totalTime.record(System.nanoTime() - queuedChunk.queuedAt);
 	}
 
 	public void callStage3(QueuedChunk queuedChunk, net.minecraft.world.chunk.Chunk chunk, IChunkLoadCallback callback) throws RuntimeException {
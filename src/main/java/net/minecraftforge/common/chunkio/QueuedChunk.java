@@ -8,6 +8,7 @@ class QueuedChunk {
 	final net.minecraft.world.World world;
 	final net.minecraft.world.gen.ChunkProviderServer provider;
 	net.minecraft.nbt.NBTTagCompound compound;
+	long queuedAt; // ultramine: for latency metrics, 0 for synchronous loads
 
 	public QueuedChunk(int x, int z, net.minecraft.world.chunk.storage.AnvilChunkLoader loader, net.minecraft.world.World world, net.minecraft.world.gen.ChunkProviderServer provider) {
 		this.x = x;
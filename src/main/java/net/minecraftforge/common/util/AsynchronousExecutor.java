@@ -1,5 +1,6 @@
 package net.minecraftforge.common.util;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -7,10 +8,12 @@ import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.ToLongFunction;
 
 import cpw.mods.fml.common.FMLLog;
 
@@ -65,7 +68,7 @@ public final class AsynchronousExecutor<P, T, C, E extends Throwable> {
 		return STATE_FIELD.compareAndSet($this, expected, value);
 	}
 
-	class Task implements Runnable {
+	class Task implements Runnable, Comparable<Task> {
 		static final int PENDING = 0x0;
 		static final int STAGE_1_ASYNC = PENDING + 1;
 		static final int STAGE_1_SYNC = STAGE_1_ASYNC + 1;
@@ -77,9 +80,19 @@ public final class AsynchronousExecutor<P, T, C, E extends Throwable> {
 		T object;
 		final List<C> callbacks = new LinkedList<C>();
 		E t = null;
+		// ultramine: queue order, lower priority values are executed first, FIFO for equal priority
+		final long sequence = sequenceCounter++;
+		long priority;
 
 		Task(final P parameter) {
 			this.parameter = parameter;
+			this.priority = priorityFunction != null ? priorityFunction.applyAsLong(parameter) : 0;
+		}
+
+		@Override
+		public int compareTo(Task o) {
+			int cmp = Long.compare(priority, o.priority);
+			return cmp != 0 ? cmp : Long.compare(sequence, o.sequence);
 		}
 
 		public void run() {
@@ -219,6 +232,8 @@ public final class AsynchronousExecutor<P, T, C, E extends Throwable> {
 	final Queue<Task> finished = new ConcurrentLinkedQueue<Task>();
 	final Map<P, Task> tasks = new HashMap<P, Task>();
 	final ThreadPoolExecutor pool;
+	final ToLongFunction<? super P> priorityFunction;
+	long sequenceCounter;
 
 	/**
 	 * Uses a thread pool to pass executions to the provider.
@@ -229,11 +244,30 @@ public final class AsynchronousExecutor<P, T, C, E extends Throwable> {
 			throw new IllegalArgumentException("Provider cannot be null");
 		}
 		this.provider = provider;
+		this.priorityFunction = null;
 
 		// We have an unbound queue size so do not need a max thread size
 		pool = new ThreadPoolExecutor(coreSize, Integer.MAX_VALUE, 60l, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), provider);
 	}
 
+	/**
+	 * Uses a thread pool with priority queue, tasks with lower values of priorityFunction are executed first.
+	 * Priorities of queued tasks may be recalculated by {@link #reprioritize()}.
+	 * <p>
+	 * Pool has exactly coreSize threads, see {@link #setActiveThreads(int)}.
+	 */
+	public AsynchronousExecutor(final CallBackProvider<P, T, C, E> provider, final int coreSize, final ToLongFunction<? super P> priorityFunction) {
+		if (provider == null) {
+			throw new IllegalArgumentException("Provider cannot be null");
+		}
+		this.provider = provider;
+		this.priorityFunction = priorityFunction;
+
+		pool = new ThreadPoolExecutor(coreSize, Integer.MAX_VALUE, 60l, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), provider);
+		// Tasks are moved in queue directly, so workers must exist
+		pool.prestartAllCoreThreads();
+	}
+
 	/**
 	 * Adds a callback to the parameter provided, adding parameter to the queue if needed.
 	 * <p>
@@ -244,10 +278,67 @@ public final class AsynchronousExecutor<P, T, C, E extends Throwable> {
 		if (task == null) {
 			tasks.put(parameter, task = new Task(parameter));
 			pool.execute(task);
+		} else if (priorityFunction != null && task.state == Task.PENDING) {
+			// Coalesced request may be more urgent than the queued one
+			long priority = priorityFunction.applyAsLong(parameter);
+			if (priority < task.priority && pool.remove(task)) {
+				task.priority = priority;
+				pool.getQueue().add(task);
+			}
 		}
 		task.callbacks.add(callback);
 	}
 
+	/**
+	 * Removes a callback registered for the parameter if the parameter is not processed yet. If no callbacks remain,
+	 * the task is removed from the queue. Unlike {@link #drop(Object, Object)}, never removes callbacks of started
+	 * tasks, so callbacks are either cancelled or will be called.
+	 * <p>
+	 * This should always be synchronous.
+	 * @return true if the callback is removed and will not be called
+	 */
+	public boolean cancel(P parameter, C callback) {
+		final Task task = tasks.get(parameter);
+		if (task == null || task.state != Task.PENDING || !task.callbacks.contains(callback)) {
+			return false;
+		}
+		if (task.callbacks.size() == 1) {
+			if (!task.drop()) {
+				return false;
+			}
+			pool.remove(task);
+		}
+		task.callbacks.remove(callback);
+		return true;
+	}
+
+	/**
+	 * Recalculates priorities of all queued tasks.
+	 * <p>
+	 * This should always be synchronous.
+	 */
+	@SuppressWarnings("unchecked")
+	public void reprioritize() {
+		if (priorityFunction == null) {
+			return;
+		}
+		List<Runnable> queued = new ArrayList<Runnable>(pool.getQueue().size());
+		pool.getQueue().drainTo(queued);
+		for (Runnable runnable : queued) {
+			Task task = (Task) runnable;
+			task.priority = priorityFunction.applyAsLong(task.parameter);
+		}
+		pool.getQueue().addAll(queued);
+	}
+
+	public int getQueueSize() {
+		return pool.getQueue().size();
+	}
+
+	public int getActiveThreads() {
+		return pool.getPoolSize();
+	}
+
 	/**
 	 * This removes a particular callback from the specified parameter.
 	 * <p>
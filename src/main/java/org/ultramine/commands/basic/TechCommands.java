@@ -12,10 +12,12 @@ import net.minecraft.command.CommandException;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EnumCreatureType;
 import net.minecraft.entity.item.EntityItem;
+import net.minecraft.entity.item.EntityXPOrb;
 import net.minecraft.entity.passive.EntityVillager;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemBlock;
+import net.minecraft.nbt.ChunkNbtReader;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.ChatComponentText;
 import net.minecraft.util.ChatComponentTranslation;
@@ -23,6 +25,8 @@ import net.minecraft.util.DamageSource;
 import net.minecraft.util.MathHelper;
 import net.minecraft.world.WorldServer;
 import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.AnvilChunkLoader;
+import net.minecraftforge.common.chunkio.ChunkIOExecutor;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -38,13 +42,28 @@ import org.ultramine.server.UltramineServerModContainer;
 import org.ultramine.server.BackupManager.BackupDescriptor;
 import org.ultramine.server.WorldsConfig.WorldConfig;
 import org.ultramine.server.WorldsConfig.WorldConfig.ImportFrom;
+import org.ultramine.server.chunk.ChunkGC;
+import org.ultramine.server.chunk.ChunkGenerationQueue;
+import org.ultramine.server.chunk.ChunkPacketCache;
 import org.ultramine.server.chunk.ChunkProfiler;
+import org.ultramine.server.chunk.ChunkSavePipeline;
+import org.ultramine.server.chunk.ChunkSnapshot;
 import org.ultramine.server.chunk.alloc.ChunkAllocService;
+import org.ultramine.server.data.IDataProvider;
+import org.ultramine.server.data.JDBCDataProvider;
+import org.ultramine.server.data.JDBCWriteQueue;
+import org.ultramine.server.event.EventProfiler;
+import org.ultramine.server.network.CoalescingWriter;
+import org.ultramine.server.network.PacketHandlingStats;
 import org.ultramine.server.util.BasicTypeParser;
+import org.ultramine.server.util.LatencyRecorder;
+import org.ultramine.server.world.ExplosionTracer;
+import org.ultramine.server.world.ItemMerger;
 import org.ultramine.server.world.MultiWorld;
 import org.ultramine.server.world.WorldDescriptor;
 import org.ultramine.server.world.WorldState;
 import org.ultramine.server.world.imprt.ZipFileChunkLoader;
+import org.ultramine.server.world.pathfinding.AsyncPathfinder;
 
 import cpw.mods.fml.common.FMLCommonHandler;
 import cpw.mods.fml.common.eventhandler.SubscribeEvent;
@@ -106,6 +125,15 @@ public class TechCommands
 			syntax = {
 					"",
 					"[chunk]",
+					"[chunkgen]",
+					"[chunksave]",
+					"[chunkio]",
+					"[network]",
+					"[packets]",
+					"[database]",
+					"[explosions]",
+					"[pathfinding]",
+					"[items]",
 					"<world>",
 					"<player>"
 			}
@@ -124,6 +152,110 @@ public class TechCommands
 			ctx.sendMessage("EntityAmbient: %s", chunk.getEntityCountByType(EnumCreatureType.ambient));
 			ctx.sendMessage("EntityWater: %s", chunk.getEntityCountByType(EnumCreatureType.waterCreature));
 		}
+		else if(ctx.getAction().equals("chunkgen"))
+		{
+			ChunkGenerationQueue queue = ChunkGenerationQueue.instance();
+			ctx.sendMessage("Queue depth: %s (in flight: %s)", queue.getQueueDepth(), queue.getInFlight());
+			ctx.sendMessage("Generated: %s (%s chunks/s)", queue.getTotalGenerated(), Math.round(queue.getThroughput() * 100) / 100d);
+			ctx.sendMessage("Wait: %sms (max %sms)", queue.getWaitStat().getMeanMillis(), queue.getWaitStat().getMaxMillis());
+			ctx.sendMessage("Generate: %sms (max %sms)", queue.getGenerateStat().getMeanMillis(), queue.getGenerateStat().getMaxMillis());
+			ctx.sendMessage("Finish: %sms (max %sms)", queue.getFinishStat().getMeanMillis(), queue.getFinishStat().getMaxMillis());
+		}
+		else if(ctx.getAction().equals("chunksave"))
+		{
+			ChunkSavePipeline pipeline = ChunkSavePipeline.instance();
+			ctx.sendMessage("In flight: %s, awaiting write: %s, queue capacity: %s", pipeline.getInFlight(), pipeline.getAwaitingWrite(), pipeline.getQueueCapacity());
+			ctx.sendMessage("Serialize: %s chunks/s, %sms (max %sms), compression %sx", Math.round(pipeline.getSerializeThroughput() * 100) / 100d,
+					pipeline.getSerializeStat().getMeanMillis(), pipeline.getSerializeStat().getMaxMillis(), Math.round(pipeline.getCompressionRatio() * 100) / 100d);
+			ctx.sendMessage("Write: %s chunks/s (%sk/s), %sms (max %sms)", Math.round(pipeline.getWriteThroughput() * 100) / 100d,
+					Math.round(pipeline.getWriteBytesThroughput()) >> 10, pipeline.getWriteStat().getMeanMillis(), pipeline.getWriteStat().getMaxMillis());
+		}
+		else if(ctx.getAction().equals("chunkio"))
+		{
+			ctx.sendMessage("Queue depth: %s, threads: %s", ChunkIOExecutor.getQueueSize(), ChunkIOExecutor.getActiveThreads());
+			sendPercentiles(ctx, "Wait", ChunkIOExecutor.getWaitTime());
+			sendPercentiles(ctx, "Load", ChunkIOExecutor.getLoadTime());
+			sendPercentiles(ctx, "Total", ChunkIOExecutor.getTotalTime());
+			long allocated = ChunkNbtReader.getAllocatedBytesPerChunk();
+			ctx.sendMessage("Decode allocation: %s per chunk (%s chunks, streaming decoder %s)", allocated < 0 ? "n/a" : (allocated >> 10) + "k",
+					ChunkNbtReader.getDecodedChunks(), ChunkNbtReader.isEnabled() ? "on" : "off");
+		}
+		else if(ctx.getAction().equals("explosions"))
+		{
+			ctx.sendMessage("Traced: %s in parallel, %s on world thread, %s batched", ExplosionTracer.getParallelCount(),
+					ExplosionTracer.getSequentialCount(), ExplosionTracer.getBatchedCount());
+			sendPercentiles(ctx, "Trace", ExplosionTracer.getTraceTime());
+		}
+		else if(ctx.getAction().equals("pathfinding"))
+		{
+			ctx.sendMessage("Async search %s", AsyncPathfinder.isEnabled() ? "enabled" : "disabled");
+			for(WorldServer world : ctx.getServer().getMultiWorld().getLoadedWorlds())
+				ctx.sendMessage("%s: %s searches per tick", world.getWorldInfo().getWorldName(), Math.round(world.getAsyncPathfinder().getSearchesPerTick() * 100) / 100d);
+			long searches = AsyncPathfinder.getSearchCount();
+			long hits = AsyncPathfinder.getCacheHits();
+			long requests = hits + AsyncPathfinder.getCacheMisses();
+			ctx.sendMessage("Searches: %s, %s nodes expanded per search, %s on world thread as fallback", searches,
+					searches == 0 ? 0 : AsyncPathfinder.getExpandedNodes() / searches, AsyncPathfinder.getFallbackCount());
+			ctx.sendMessage("Cache hit rate: %s%% (%s of %s requests)", requests == 0 ? 0 : hits * 100 / requests, hits, requests);
+			sendPercentiles(ctx, "Search", AsyncPathfinder.getSearchTime());
+		}
+		else if(ctx.getAction().equals("items"))
+		{
+			for(WorldServer world : ctx.getServer().getMultiWorld().getLoadedWorlds())
+			{
+				int items = 0;
+				int orbs = 0;
+				for(Object o : world.loadedEntityList)
+				{
+					if(o instanceof EntityItem)
+						items++;
+					else if(o instanceof EntityXPOrb)
+						orbs++;
+				}
+				ctx.sendMessage("%s: %s items, %s xp orbs", world.getWorldInfo().getWorldName(), items, orbs);
+			}
+			ctx.sendMessage("Merged: %s items, %s xp orbs of %s checked", ItemMerger.getMergedItems(), ItemMerger.getMergedXPOrbs(), ItemMerger.getCheckedCandidates());
+			sendPercentiles(ctx, "Merge pass", ItemMerger.getPassTime());
+		}
+		else if(ctx.getAction().equals("network"))
+		{
+			if(CoalescingWriter.isEnabled())
+			{
+				ctx.sendMessage("Flushes: %s/s, %s bytes per flush", Math.round(CoalescingWriter.getFlushesPerSecond() * 100) / 100d,
+						Math.round(CoalescingWriter.getBytesPerFlush()));
+				ctx.sendMessage("Event loop tasks: %s/s", Math.round(CoalescingWriter.getTasksPerSecond() * 100) / 100d);
+			}
+			else
+			{
+				ctx.sendMessage("Write coalescing is disabled");
+			}
+		}
+		else if(ctx.getAction().equals("packets"))
+		{
+			List<PacketHandlingStats.Entry> entries = PacketHandlingStats.getEntries();
+			for(int i = 0; i < Math.min(10, entries.size()); i++)
+			{
+				PacketHandlingStats.Entry entry = entries.get(i);
+				double[] p = entry.getTime().getPercentilesMillis(50, 99, 100);
+				ctx.sendMessage("%s%s: %s handled, total %sms, p50 %sms, p99 %sms, max %sms", entry.getName(), entry.isNetworkThread() ? " (network)" : "",
+						entry.getCount(), entry.getTotalTime() / 1000000, p[0], p[1], p[2]);
+			}
+		}
+		else if(ctx.getAction().equals("database"))
+		{
+			IDataProvider provider = ctx.getServer().getConfigurationManager().getDataLoader().getDataProvider();
+			if(provider instanceof JDBCDataProvider)
+			{
+				JDBCWriteQueue queue = ((JDBCDataProvider) provider).getWriteQueue();
+				ctx.sendMessage("Write queue: %s, coalesced writes: %s", queue.getQueueSize(), queue.getCoalescedWrites());
+				ctx.sendMessage("Batch size: %s (last %s)", Math.round(queue.getMeanBatchSize() * 100) / 100d, queue.getLastBatchSize());
+				sendPercentiles(ctx, "Queue latency", queue.getQueueLatency());
+			}
+			else
+			{
+				ctx.sendMessage("SQL storage is disabled");
+			}
+		}
 		else if(ctx.contains("world") || ctx.getArgs().length == 0)
 		{
 			WorldServer world = ctx.contains("world") ? ctx.get("world").asWorld() : ctx.getSenderAsPlayer().getServerForPlayer();
@@ -131,9 +263,17 @@ public class TechCommands
 			ctx.sendMessage("Chunks loaded:  %s", world.theChunkProviderServer.getLoadedChunkCount());
 			ctx.sendMessage("Chunks active:  %s", world.getActiveChunkSetSize());
 			ctx.sendMessage("Chunks for unload:  %s", world.theChunkProviderServer.chunksToUnload.size());
+			if(world.theChunkProviderServer.currentChunkLoader instanceof AnvilChunkLoader)
+				ctx.sendMessage("Chunks for save:  %s", ((AnvilChunkLoader)world.theChunkProviderServer.currentChunkLoader).getSaveQueueSize());
 			ctx.sendMessage("Players: %s", world.playerEntities.size());
 			ctx.sendMessage("Entities:  %s", world.loadedEntityList.size());
 			ctx.sendMessage("TileEntities:  %s", world.loadedTileEntityList.size());
+			int dim = world.provider.dimensionId;
+			ctx.sendMessage("Tick time:  %sms (CPU: %sms)", meanMillis(ctx.getServer().worldTickTimes.get(dim)), meanMillis(ctx.getServer().worldTickCpuTimes.get(dim)));
+			ChunkPacketCache cache = world.getPlayerManager().getChunkPacketCache();
+			long hits = cache.getHits();
+			long total = hits + cache.getMisses();
+			ctx.sendMessage("Chunk packet cache: %s entries, %sk, hit rate %s%%", cache.size(), cache.getMemory() >> 10, total == 0 ? 0 : hits * 100 / total);
 		}
 		else
 		{
@@ -147,6 +287,22 @@ public class TechCommands
 		}
 	}
 	
+	private static void sendPercentiles(CommandContext ctx, String name, LatencyRecorder recorder)
+	{
+		double[] p = recorder.getPercentilesMillis(50, 95, 99, 100);
+		ctx.sendMessage("%s: p50 %sms, p95 %sms, p99 %sms, max %sms", name, p[0], p[1], p[2], p[3]);
+	}
+
+	private static double meanMillis(long[] times)
+	{
+		if(times == null)
+			return 0;
+		long sum = 0;
+		for(long time : times)
+			sum += time;
+		return Math.round(sum / times.length / 10_000d) / 100d;
+	}
+	
 	@Command(
 			name = "memstat",
 			group = "technical",
@@ -159,6 +315,13 @@ public class TechCommands
 		ctx.sendMessage("Heap free: %sm", Runtime.getRuntime().freeMemory() >> 20);
 		ctx.sendMessage("Off-Heap chunk total: %sm", alloc.getOffHeapTotalMemory() >> 20);
 		ctx.sendMessage("Off-Heap chunk used: %sm", alloc.getOffHeapUsedMemory() >> 20);
+		int loadedChunks = 0;
+		for(WorldServer world : ctx.getServer().getMultiWorld().getLoadedWorlds())
+			loadedChunks += world.theChunkProviderServer.getLoadedChunkCount();
+		if(loadedChunks != 0)
+			ctx.sendMessage("Chunk storage per loaded chunk: %sk", alloc.getOffHeapUsedMemory() / loadedChunks >> 10);
+		ctx.sendMessage("Chunk snapshots: %s alive, %s created", ChunkSnapshot.getAliveCount(), ChunkSnapshot.getCreatedCount());
+		ctx.sendMessage("Snapshot sections: %s shared, %s copied on write", ChunkSnapshot.getSharedSectionCount(), ChunkSnapshot.getCopiedSectionCount());
 		ctx.sendMessage("Threads: %s", Thread.activeCount());
 	}
 	
@@ -503,7 +666,13 @@ public class TechCommands
 	public static void chunkgc(CommandContext ctx)
 	{
 		for(WorldServer world : ctx.getServer().getMultiWorld().getLoadedWorlds())
-			world.theChunkProviderServer.getChunkGC().forceCollect();
+		{
+			ChunkGC gc = world.theChunkProviderServer.getChunkGC();
+			gc.forceCollect();
+			ctx.sendMessage("[%s] Unload candidates: %s, collected in %sms", world.provider.dimensionId, gc.getCandidateCount(),
+					Math.round(gc.getLastForceCollectTime() / 10_000d) / 100d);
+			sendPercentiles(ctx, "GC pass", gc.getPassTime());
+		}
 		ctx.sendMessage("command.chunkgc.success");
 	}
 	
@@ -593,6 +762,49 @@ public class TechCommands
 		}
 	}
 	
+	@Command(
+			name = "eventdebug",
+			group = "technical",
+			permissions = {"command.technical.eventdebug"},
+			syntax = {
+					"",
+					"[start stop]",
+					"[events listeners]",
+					"[events listeners] <%count>"
+			}
+	)
+	public static void eventdebug(CommandContext ctx)
+	{
+		if(ctx.getAction().equals("start"))
+		{
+			EventProfiler.setEnabled(true);
+			ctx.sendMessage("command.eventdebug.start");
+		}
+		else if(ctx.getAction().equals("stop"))
+		{
+			EventProfiler.setEnabled(false);
+			ctx.sendMessage("command.eventdebug.stop");
+		}
+		else
+		{
+			boolean listeners = ctx.getAction().equals("listeners");
+			int count = ctx.contains("count") ? ctx.get("count").asInt(1) : 9;
+			List<EventProfiler.Entry> entries = listeners ? EventProfiler.getListeners() : EventProfiler.getEvents();
+			if(entries.isEmpty())
+			{
+				ctx.sendMessage("command.eventdebug.empty");
+				return;
+			}
+			ctx.sendMessage(listeners ? "command.eventdebug.listeners.head" : "command.eventdebug.events.head");
+			for(int i = 0; i < Math.min(count, entries.size()); i++)
+			{
+				EventProfiler.Entry entry = entries.get(i);
+				ctx.sendMessage(GOLD, "    - %s: %s calls, %sms (%sus per call)", entry.getName(), entry.getCount(),
+						entry.getTotalTime() / 1000000, entry.getTotalTime() / 1000 / Math.max(1, entry.getCount()));
+			}
+		}
+	}
+	
 	@SideOnly(Side.SERVER)
 	@Command(
 			name = "backup",
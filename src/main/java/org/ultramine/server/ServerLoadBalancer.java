@@ -77,17 +77,7 @@ public class ServerLoadBalancer
 		if(!ent.addedToChunk)
 			return true;
 
-		int lowerLimit = limits.lowerLimit;
-
-		if(prior == WorldConstants.CL_CHUNK_PRIOR)
-		{
-			if(!limits.updateByChunkLoader)
-				lowerLimit = 1;
-		}
-		else if(prior > limits.updateRadius)
-		{
-			lowerLimit = 1;
-		}
+		int lowerLimit = getLowerLimit(limits, prior);
 
 		if(count > lowerLimit)
 		{
@@ -97,6 +87,26 @@ public class ServerLoadBalancer
 		return true;
 	}
 	
+	/**
+	 * @return true if the entity is in an active chunk, where entities of its type are updated at random, because
+	 * there are more of them than the lower limit
+	 */
+	public boolean isUpdateThrottled(Entity ent)
+	{
+		Chunk chunk = world.getChunkIfExists(MathHelper.floor_double(ent.posX) >> 4, MathHelper.floor_double(ent.posZ) >> 4);
+		if(chunk == null)
+			return false;
+		int prior = activeChunkSet.get(ChunkHash.chunkToKey(chunk.xPosition, chunk.zPosition));
+		return prior != Byte.MAX_VALUE && chunk.getEntityCountOfSameType(ent) > getLowerLimit(getLimits(ent), prior);
+	}
+	
+	private static int getLowerLimit(PerChunkEntityLimits limits, int prior)
+	{
+		if(prior == WorldConstants.CL_CHUNK_PRIOR)
+			return limits.updateByChunkLoader ? limits.lowerLimit : 1;
+		return prior > limits.updateRadius ? 1 : limits.lowerLimit;
+	}
+	
 	private PerChunkEntityLimits getLimits(Entity e)
 	{
 		if(isClient)
@@ -4,6 +4,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 
 import org.ultramine.server.util.WarpLocation;
+import org.ultramine.server.world.ParallelWorldTicker;
 
 import cpw.mods.fml.common.FMLCommonHandler;
 import net.minecraft.entity.player.EntityPlayerMP;
@@ -50,6 +51,8 @@ public class Teleporter
 	
 	public static void tpLater(EntityPlayerMP target, WarpLocation dst)
 	{
+		if(ParallelWorldTicker.defer(() -> tpLater(target, dst)))
+			return;
 		long timeto = target.getData().core().getNextTeleportationTime() - System.currentTimeMillis();
 		if(timeto > 0 && !target.hasPermission("admin.abilities.skipteleportcooldown"))
 		{
@@ -86,6 +89,8 @@ public class Teleporter
 	
 	private static void doTeleportation(EntityPlayerMP player, int dimension, double x, double y, double z, float yaw, float pitch)
 	{
+		if(ParallelWorldTicker.defer(() -> doTeleportation(player, dimension, x, y, z, yaw, pitch)))
+			return;
 		if(player.ridingEntity != null)
 		{
 			player.addChatMessage(new ChatComponentTranslation("ultramine.teleporter.fail.riding").setChatStyle(new ChatStyle().setColor(EnumChatFormatting.RED)));
@@ -20,10 +20,12 @@ import org.ultramine.core.economy.service.Economy;
 import org.ultramine.core.economy.service.EconomyRegistry;
 import org.ultramine.core.service.InjectService;
 import org.ultramine.core.service.ServiceManager;
+import org.ultramine.server.asm.UMTBatchTransformer;
 import org.ultramine.server.chunk.AntiXRayService;
 import org.ultramine.server.chunk.ChunkGenerationQueue;
 import org.ultramine.server.chunk.ChunkProfiler;
 import org.ultramine.server.chunk.alloc.ChunkAllocService;
+import org.ultramine.server.chunk.alloc.palette.PaletteChunkAlloc;
 import org.ultramine.server.chunk.alloc.unsafe.UnsafeChunkAlloc;
 import org.ultramine.server.data.Databases;
 import org.ultramine.server.data.ServerDataLoader;
@@ -105,7 +107,7 @@ public class UltramineServerModContainer extends DummyModContainer
 	{
 		try
 		{
-			services.register(ChunkAllocService.class, new UnsafeChunkAlloc(), 0);
+			services.register(ChunkAllocService.class, PaletteChunkAlloc.isEnabled() ? new PaletteChunkAlloc() : new UnsafeChunkAlloc(), 0);
 			services.register(AntiXRayService.class, new AntiXRayService.EmptyImpl(), 0);
 			if(e.getSide().isServer())
 			{
@@ -211,6 +213,7 @@ public class UltramineServerModContainer extends DummyModContainer
 			ServerDataLoader loader = MinecraftServer.getServer().getConfigurationManager().getDataLoader();
 			CommandRegistry reg = ((CommandHandler)MinecraftServer.getServer().getCommandManager()).getRegistry();
 			loader.loadCache();
+			UMTBatchTransformer.logStats();
 			if(e.getSide().isServer())
 			{
 				getRecipeCache().setEnabled(ConfigurationHandler.getServerConfig().settings.other.recipeCacheEnabled);
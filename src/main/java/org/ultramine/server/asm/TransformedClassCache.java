@@ -0,0 +1,224 @@
+package org.ultramine.server.asm;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * On-disk cache of {@link UMTBatchTransformer} output. Entries are keyed by SHA-1 of class name and input bytes, so
+ * any change made by preceding transformers is a cache miss. The whole file is dropped when the configuration hash
+ * given on open does not match the stored one.
+ * <p>
+ * The file is append-only: header (magic, version, configuration hash), then records of key, length and class bytes.
+ * Zero length record means that the class was not changed. Index of records is kept in memory, class bytes are read
+ * from the file on demand.
+ */
+@ThreadSafe
+public class TransformedClassCache
+{
+	private static final Logger log = LogManager.getLogger();
+	private static final int MAGIC = 0x554D4343;
+	private static final int VERSION = 1;
+	private static final int KEY_LENGTH = 20;
+	private static final int HEADER_LENGTH = 8 + KEY_LENGTH;
+	private static final long MAX_SIZE = Long.parseLong(System.getProperty("org.ultramine.core.asm.cacheMaxMb", "256")) * 1024 * 1024;
+	private static final byte[] UNCHANGED = new byte[0];
+
+	private static final ThreadLocal<MessageDigest> digest = ThreadLocal.withInitial(TransformedClassCache::newDigest);
+
+	private final File file;
+	private final FileChannel channel;
+	private final Map<ByteBuffer, Entry> index = new ConcurrentHashMap<>();
+	private long end; // guarded by this
+	private boolean full; // guarded by this
+
+	private TransformedClassCache(File file, FileChannel channel)
+	{
+		this.file = file;
+		this.channel = channel;
+	}
+
+	/** @return opened cache or null if the file can not be used */
+	@Nullable
+	public static TransformedClassCache open(File file, byte[] configHash)
+	{
+		try
+		{
+			file.getParentFile().mkdirs();
+			@SuppressWarnings("resource")
+			FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+			TransformedClassCache cache = new TransformedClassCache(file, channel);
+			if(!cache.load(configHash))
+				cache.reset(configHash);
+			return cache;
+		}
+		catch(IOException e)
+		{
+			log.warn("Failed to open transformed class cache " + file, e);
+			return null;
+		}
+	}
+
+	public static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	public static byte[] key(String className, byte[] classBytes)
+	{
+		MessageDigest md = digest.get();
+		md.update(className.getBytes(StandardCharsets.UTF_8));
+		md.update((byte) 0);
+		md.update(classBytes);
+		return md.digest();
+	}
+
+	private boolean load(byte[] configHash) throws IOException
+	{
+		long size = channel.size();
+		if(size < HEADER_LENGTH || size > MAX_SIZE)
+			return false;
+		ByteBuffer header = readFully(0, HEADER_LENGTH);
+		byte[] storedHash = new byte[KEY_LENGTH];
+		if(header.getInt() != MAGIC || header.getInt() != VERSION)
+			return false;
+		header.get(storedHash);
+		if(!Arrays.equals(storedHash, configHash))
+			return false;
+
+		long pos = HEADER_LENGTH;
+		while(pos + KEY_LENGTH + 4 <= size)
+		{
+			ByteBuffer recordHeader = readFully(pos, KEY_LENGTH + 4);
+			byte[] key = new byte[KEY_LENGTH];
+			recordHeader.get(key);
+			int len = recordHeader.getInt();
+			long dataPos = pos + KEY_LENGTH + 4;
+			if(len < 0 || dataPos + len > size)
+				break;
+			index.put(ByteBuffer.wrap(key), new Entry(dataPos, len));
+			pos = dataPos + len;
+		}
+		if(pos != size)
+			channel.truncate(pos); // incomplete record written on crash
+		end = pos;
+		log.info("Loaded {} transformed classes from cache", index.size());
+		return true;
+	}
+
+	private void reset(byte[] configHash) throws IOException
+	{
+		index.clear();
+		channel.truncate(0);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		header.putInt(MAGIC).putInt(VERSION).put(configHash).flip();
+		writeFully(0, header);
+		end = HEADER_LENGTH;
+	}
+
+	/** @return cached class bytes, the given bytes if the class is not changed by transformation, or null on miss */
+	@Nullable
+	public byte[] get(byte[] key, byte[] basicClass)
+	{
+		Entry entry = index.get(ByteBuffer.wrap(key));
+		if(entry == null)
+			return null;
+		if(entry.len == 0)
+			return basicClass;
+		try
+		{
+			return readFully(entry.pos, entry.len).array();
+		}
+		catch(IOException e)
+		{
+			log.warn("Failed to read transformed class cache " + file, e);
+			index.remove(ByteBuffer.wrap(key));
+			return null;
+		}
+	}
+
+	public void put(byte[] key, byte[] basicClass, byte[] transformed)
+	{
+		byte[] data = transformed == basicClass ? UNCHANGED : transformed;
+		synchronized(this)
+		{
+			if(full)
+				return;
+			if(end + KEY_LENGTH + 4 + data.length > MAX_SIZE)
+			{
+				full = true;
+				log.warn("Transformed class cache {} reached size limit, new classes will not be cached", file);
+				return;
+			}
+			ByteBuffer buf = ByteBuffer.allocate(KEY_LENGTH + 4 + data.length);
+			buf.put(key).putInt(data.length).put(data).flip();
+			try
+			{
+				writeFully(end, buf);
+			}
+			catch(IOException e)
+			{
+				full = true;
+				log.warn("Failed to write transformed class cache " + file, e);
+				return;
+			}
+			index.put(ByteBuffer.wrap(key), new Entry(end + KEY_LENGTH + 4, data.length));
+			end += buf.capacity();
+		}
+	}
+
+	public int size()
+	{
+		return index.size();
+	}
+
+	private ByteBuffer readFully(long pos, int len) throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(len);
+		while(buf.hasRemaining())
+		{
+			if(channel.read(buf, pos + buf.position()) < 0)
+				throw new IOException("Unexpected end of file");
+		}
+		buf.flip();
+		return buf;
+	}
+
+	private void writeFully(long pos, ByteBuffer buf) throws IOException
+	{
+		while(buf.hasRemaining())
+			channel.write(buf, pos + buf.position());
+	}
+
+	private static final class Entry
+	{
+		final long pos;
+		final int len;
+
+		Entry(long pos, int len)
+		{
+			this.pos = pos;
+			this.len = len;
+		}
+	}
+}
@@ -1,32 +1,65 @@
 package org.ultramine.server.asm;
 
+import cpw.mods.fml.relauncher.FMLLaunchHandler;
 import net.minecraft.launchwrapper.IClassTransformer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Runs all registered {@link IUMClassTransformer}s over a single ClassNode.
+ * <p>
+ * Global transformers declaring {@link IUMClassTransformer#getRequiredConstants()} are skipped for classes which
+ * constant pool has none of them, ClassNode is not built at all if no transformer is left. Results are stored in
+ * {@link TransformedClassCache} (disabled by {@code -Dorg.ultramine.core.asm.cache=false}), which is dropped when
+ * frames repair setting, transformer set, server core jar or any file in mods directory changes.
+ */
 public class UMTBatchTransformer implements IClassTransformer
 {
+	private static final Logger log = LogManager.getLogger();
 	private static final boolean REPAIR_FRAMES = Boolean.parseBoolean(System.getProperty("org.ultramine.core.asm.repairJavaClassFrames", "true"));
-	private List<IUMClassTransformer> globalTransformers = new ArrayList<>();
-	private Map<String, List<IUMClassTransformer>> specialTransformers = new HashMap<>();
+	private static final boolean CACHE = Boolean.parseBoolean(System.getProperty("org.ultramine.core.asm.cache", "true"));
+	private static final int CACHE_VERSION = 1;
+
+	private static final List<Stats> stats = new ArrayList<>();
+	private static final Stats framesStats = new Stats("frames computation");
+	private static final AtomicLong classes = new AtomicLong();
+	private static final AtomicLong skippedClasses = new AtomicLong();
+	private static final AtomicLong cacheHits = new AtomicLong();
+	private static final AtomicLong cacheMisses = new AtomicLong();
+	private static final AtomicLong totalTime = new AtomicLong();
+
+	private List<Registered> globalTransformers = new ArrayList<>();
+	private Map<String, List<Registered>> specialTransformers = new HashMap<>();
+	private volatile boolean cacheOpened;
+	private TransformedClassCache cache;
 
 	protected void registerGlobalTransformer(IUMClassTransformer transformer)
 	{
-		globalTransformers.add(transformer);
+		globalTransformers.add(new Registered(transformer));
 	}
 
 	protected void registerSpecialTransformer(IUMClassTransformer transformer, String className)
 	{
-		specialTransformers.computeIfAbsent(className, k -> new ArrayList<>(1)).add(transformer);
+		specialTransformers.computeIfAbsent(className, k -> new ArrayList<>(1)).add(new Registered(transformer));
 	}
 
 	protected void registerSpecialTransformer(IUMClassTransformer transformer, String... classNames)
@@ -40,24 +73,260 @@ public class UMTBatchTransformer implements IClassTransformer
 	{
 		if(basicClass == null)
 			return null;
-		ClassNode classNode = new ClassNode();
+		long start = System.nanoTime();
+		classes.incrementAndGet();
 		ClassReader classReader = new ClassReader(basicClass);
+
+		List<Registered> special = specialTransformers.getOrDefault(transformedName, Collections.emptyList());
+		List<Registered> global = new ArrayList<>(globalTransformers.size());
+		for(Registered transformer : globalTransformers)
+			if(transformer.requiredConstants == null || containsAnyUtf8(classReader, transformer.requiredConstants))
+				global.add(transformer);
+
+		// Computing frames even if we did not changed class to fix other mod changes of 1.7 & 1.8 classes
+		boolean shouldComputeFrames = REPAIR_FRAMES && classReader.readUnsignedShort(6) > Opcodes.V1_6;
+		if(special.isEmpty() && global.isEmpty() && !shouldComputeFrames)
+		{
+			skippedClasses.incrementAndGet();
+			totalTime.addAndGet(System.nanoTime() - start);
+			return basicClass;
+		}
+
+		TransformedClassCache cache = getCache();
+		byte[] key = null;
+		if(cache != null)
+		{
+			key = TransformedClassCache.key(transformedName, basicClass);
+			byte[] cached = cache.get(key, basicClass);
+			if(cached != null)
+			{
+				cacheHits.incrementAndGet();
+				totalTime.addAndGet(System.nanoTime() - start);
+				return cached;
+			}
+			cacheMisses.incrementAndGet();
+		}
+
+		byte[] result = transform(name, transformedName, basicClass, classReader, special, global, shouldComputeFrames);
+		if(cache != null)
+			cache.put(key, basicClass, result);
+		totalTime.addAndGet(System.nanoTime() - start);
+		return result;
+	}
+
+	private static byte[] transform(String name, String transformedName, byte[] basicClass, ClassReader classReader,
+									List<Registered> special, List<Registered> global, boolean shouldComputeFrames)
+	{
+		if(special.isEmpty() && global.isEmpty())
+		{
+			// Only frames repair, no need to build a tree
+			long start = System.nanoTime();
+			ClassWriter writer = new ComputeFramesClassWriter();
+			classReader.accept(writer, ClassReader.SKIP_FRAMES);
+			byte[] result = writer.toByteArray();
+			framesStats.record(System.nanoTime() - start, true);
+			return result;
+		}
+
+		ClassNode classNode = new ClassNode();
 		classReader.accept(classNode, 0);
 
 		int flags = 0;
-		for(IUMClassTransformer transformer : specialTransformers.getOrDefault(transformedName, Collections.emptyList()))
-			flags |= transformer.transform(name, transformedName, classReader, classNode).ordinal();
-		for(IUMClassTransformer transformer : globalTransformers)
-			flags |= transformer.transform(name, transformedName, classReader, classNode).ordinal();
+		for(Registered transformer : special)
+			flags |= transformer.transform(name, transformedName, classReader, classNode);
+		for(Registered transformer : global)
+			flags |= transformer.transform(name, transformedName, classReader, classNode);
 
-		// Computing frames even if we did not changed class to fix other mod changes of 1.7 & 1.8 classes
-		boolean shouldComputeFrames = REPAIR_FRAMES && (classNode.version & 0xFFFF) > Opcodes.V1_6;
 		if(flags == 0 && !shouldComputeFrames)
 			return basicClass;
 
+		long start = System.nanoTime();
 		ClassWriter writer = shouldComputeFrames ? new ComputeFramesClassWriter() : new ClassWriter(flags == 1 ? 0 : 1);
 		classNode.accept(writer);
-		return writer.toByteArray();
+		byte[] result = writer.toByteArray();
+		if(shouldComputeFrames)
+			framesStats.record(System.nanoTime() - start, true);
+		return result;
+	}
+
+	/** Compares raw modified UTF-8 bytes of constant pool entries, constants are expected to be ASCII */
+	private static boolean containsAnyUtf8(ClassReader reader, byte[][] constants)
+	{
+		byte[] b = reader.b;
+		for(int i = 1, count = reader.getItemCount(); i < count; i++)
+		{
+			int item = reader.getItem(i);
+			if(item == 0 || b[item - 1] != 1) // second slot of long/double or not CONSTANT_Utf8
+				continue;
+			int len = reader.readUnsignedShort(item);
+			for(byte[] constant : constants)
+			{
+				if(constant.length == len && regionEquals(b, item + 2, constant))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean regionEquals(byte[] b, int off, byte[] constant)
+	{
+		for(int i = 0; i < constant.length; i++)
+			if(b[off + i] != constant[i])
+				return false;
+		return true;
+	}
+
+	@Nullable
+	private TransformedClassCache getCache()
+	{
+		if(!cacheOpened)
+		{
+			synchronized(this)
+			{
+				if(!cacheOpened)
+				{
+					cache = CACHE ? openCache() : null;
+					cacheOpened = true;
+				}
+			}
+		}
+		return cache;
+	}
+
+	@Nullable
+	private TransformedClassCache openCache()
+	{
+		File home = FMLLaunchHandler.getMinecraftHome();
+		File coreJar = getCoreJar();
+		if(home == null || coreJar == null)
+		{
+			log.info("Transformed class cache is disabled: server core is not loaded from jar");
+			return null;
+		}
+
+		MessageDigest md = TransformedClassCache.newDigest();
+		StringBuilder config = new StringBuilder();
+		config.append(CACHE_VERSION).append('\n').append(REPAIR_FRAMES).append('\n');
+		for(Registered transformer : globalTransformers)
+			config.append(transformer.transformer.getClass().getName()).append('\n');
+		for(Map.Entry<String, List<Registered>> ent : new TreeMap<>(specialTransformers).entrySet())
+			for(Registered transformer : ent.getValue())
+				config.append(ent.getKey()).append(':').append(transformer.transformer.getClass().getName()).append('\n');
+		appendFile(config, coreJar, coreJar.getName());
+		// Frames are computed using hierarchy of classes from other mods
+		appendDir(config, new File(home, "mods"), "mods/");
+		md.update(config.toString().getBytes(StandardCharsets.UTF_8));
+
+		return TransformedClassCache.open(new File(home, "cache/transformed-classes.bin"), md.digest());
+	}
+
+	@Nullable
+	private static File getCoreJar()
+	{
+		try
+		{
+			CodeSource source = UMTBatchTransformer.class.getProtectionDomain().getCodeSource();
+			if(source == null || !"file".equals(source.getLocation().getProtocol()))
+				return null;
+			File file = new File(source.getLocation().toURI());
+			return file.isFile() ? file : null;
+		}
+		catch(Exception e)
+		{
+			return null;
+		}
+	}
+
+	private static void appendDir(StringBuilder config, File dir, String path)
+	{
+		File[] files = dir.listFiles();
+		if(files == null)
+			return;
+		Arrays.sort(files);
+		for(File file : files)
+		{
+			if(file.isDirectory())
+				appendDir(config, file, path + file.getName() + '/');
+			else
+				appendFile(config, file, path + file.getName());
+		}
+	}
+
+	private static void appendFile(StringBuilder config, File file, String path)
+	{
+		config.append(path).append(':').append(file.length()).append(':').append(file.lastModified()).append('\n');
+	}
+
+	/** Logs time spent by each transformer, called once server is started */
+	public static void logStats()
+	{
+		log.info("Class transformation: {} classes in {} ms, {} skipped by constant pool pre-scan, cache {} hits / {} misses",
+				classes.get(), totalTime.get() / 1000000, skippedClasses.get(), cacheHits.get(), cacheMisses.get());
+		List<Stats> list;
+		synchronized(stats)
+		{
+			list = new ArrayList<>(stats);
+		}
+		list.add(framesStats);
+		for(Stats s : list)
+			log.info("  {}: {} classes, {} modified, {} ms", s.name, s.calls.get(), s.modified.get(), s.time.get() / 1000000);
+	}
+
+	private static class Stats
+	{
+		final String name;
+		final AtomicLong calls = new AtomicLong();
+		final AtomicLong modified = new AtomicLong();
+		final AtomicLong time = new AtomicLong();
+
+		Stats(String name)
+		{
+			this.name = name;
+		}
+
+		void record(long nanos, boolean isModified)
+		{
+			calls.incrementAndGet();
+			if(isModified)
+				modified.incrementAndGet();
+			time.addAndGet(nanos);
+		}
+	}
+
+	private static class Registered
+	{
+		final IUMClassTransformer transformer;
+		final byte[][] requiredConstants;
+		final Stats stats;
+
+		Registered(IUMClassTransformer transformer)
+		{
+			this.transformer = transformer;
+			String[] constants = transformer.getRequiredConstants();
+			if(constants != null)
+			{
+				requiredConstants = new byte[constants.length][];
+				for(int i = 0; i < constants.length; i++)
+					requiredConstants[i] = constants[i].getBytes(StandardCharsets.UTF_8);
+			}
+			else
+			{
+				requiredConstants = null;
+			}
+			stats = new Stats(transformer.getClass().getSimpleName());
+			synchronized(UMTBatchTransformer.stats)
+			{
+				UMTBatchTransformer.stats.add(stats);
+			}
+		}
+
+		int transform(String name, String transformedName, ClassReader classReader, ClassNode classNode)
+		{
+			long start = System.nanoTime();
+			int result = transformer.transform(name, transformedName, classReader, classNode).ordinal();
+			stats.record(System.nanoTime() - start, result != 0);
+			return result;
+		}
 	}
 
 	public enum TransformResult
@@ -73,5 +342,15 @@ public class UMTBatchTransformer implements IClassTransformer
 	public interface IUMClassTransformer
 	{
 		@Nonnull TransformResult transform(String name, String transformedName, ClassReader classReader, ClassNode classNode);
+
+		/**
+		 * @return names or descriptors, at least one of which must be present in class constant pool for this global
+		 * transformer to change the class, or null if it should be called for every class
+		 */
+		@Nullable
+		default String[] getRequiredConstants()
+		{
+			return null;
+		}
 	}
 }
@@ -37,6 +37,12 @@ public class PrintStackTraceTransformer implements IUMClassTransformer
 		THROWABLE_TYPES.add("java/io/IOException");
 	}
 	
+	@Override
+	public String[] getRequiredConstants()
+	{
+		return new String[]{PST_NAME};
+	}
+	
 	@Override
 	public TransformResult transform(String name, String transformedName, ClassReader classReader, ClassNode classNode)
 	{
@@ -25,6 +25,12 @@ public class ServiceInjectionTransformer implements IUMClassTransformer
 	private static final String INJECT_SERVICE_DESC = "Lorg/ultramine/core/service/InjectService;";
 	private static final String SBA_CLASS = "org/ultramine/core/service/ServiceBytecodeAdapter";
 
+	@Override
+	public String[] getRequiredConstants()
+	{
+		return new String[]{INJECT_SERVICE_DESC};
+	}
+
 	@Nonnull
 	@Override
 	public TransformResult transform(String name, String transformedName, ClassReader classReader, ClassNode classNode)
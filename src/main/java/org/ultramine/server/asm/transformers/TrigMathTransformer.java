@@ -30,6 +30,12 @@ public class TrigMathTransformer implements IUMClassTransformer
 	private static final String ATAN_NAME = "atan";
 	private static final String ATAN_DESC = "(D)D";
 	
+	@Override
+	public String[] getRequiredConstants()
+	{
+		return new String[]{ATAN_NAME, ATAN2_NAME};
+	}
+	
 	@Override
 	public TransformResult transform(String name, String transformedName, ClassReader classReader, ClassNode classNode)
 	{
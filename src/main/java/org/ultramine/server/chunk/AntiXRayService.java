@@ -10,6 +10,12 @@ public interface AntiXRayService<T>
 
 	void prepareChunkAsync(ChunkSnapshot chunkSnapshot, T param);
 
+	/** @return true if chunk data sent to players does not depend on player, so it may be compressed once for all */
+	default boolean isPlayerIndependent()
+	{
+		return false;
+	}
+
 	class EmptyImpl implements AntiXRayService<Void>
 	{
 		@Override
@@ -22,5 +28,11 @@ public interface AntiXRayService<T>
 		public void prepareChunkAsync(ChunkSnapshot chunkSnapshot, Void v)
 		{
 		}
+
+		@Override
+		public boolean isPlayerIndependent()
+		{
+			return true;
+		}
 	}
 }
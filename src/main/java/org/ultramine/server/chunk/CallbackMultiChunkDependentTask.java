@@ -6,6 +6,7 @@ public class CallbackMultiChunkDependentTask implements IChunkLoadCallback, IChu
 {
 	private int numChunksForLoad;
 	private final Runnable task;
+	private boolean cancelled;
 	
 	public CallbackMultiChunkDependentTask(int numChunksForLoad, Runnable task)
 	{
@@ -16,6 +17,8 @@ public class CallbackMultiChunkDependentTask implements IChunkLoadCallback, IChu
 	@Override
 	public void onChunkLoaded(Chunk chunk)
 	{
+		if(cancelled)
+			return;
 		// When task executes, this dependency is no longer binds chunks in loaded state
 		if(--numChunksForLoad == 0)
 			task.run();
@@ -26,6 +29,12 @@ public class CallbackMultiChunkDependentTask implements IChunkLoadCallback, IChu
 	@Override
 	public boolean isDependent(Chunk chunk)
 	{
-		return numChunksForLoad != 0;
+		return !cancelled && numChunksForLoad != 0;
+	}
+
+	/** Task will not be executed, already loaded chunks are no longer bound by this dependency */
+	public void cancel()
+	{
+		cancelled = true;
 	}
 }
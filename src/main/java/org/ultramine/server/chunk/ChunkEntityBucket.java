@@ -0,0 +1,70 @@
+package org.ultramine.server.chunk;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityLivingBase;
+import net.minecraft.entity.item.EntityItem;
+import net.minecraft.entity.item.EntityMinecart;
+import net.minecraft.entity.item.EntityXPOrb;
+import net.minecraft.inventory.IInventory;
+
+/**
+ * Secondary per-section entity lists of a chunk for frequently queried entity types. Type-filtered AABB queries
+ * ({@link net.minecraft.world.World#selectEntitiesWithinAABB}) iterate over a bucket instead of all entities of a
+ * section when requested class is a bucket type or its subtype.
+ */
+public enum ChunkEntityBucket
+{
+	ITEM(EntityItem.class),
+	XP_ORB(EntityXPOrb.class),
+	MINECART(EntityMinecart.class),
+	INVENTORY(IInventory.class),
+	LIVING(EntityLivingBase.class);
+
+	private static final ChunkEntityBucket[] VALUES = values();
+	public static final int COUNT = VALUES.length;
+
+	/** Bit mask of buckets containing entities of the class */
+	private static final ClassValue<Integer> MASKS = new ClassValue<Integer>()
+	{
+		@Override
+		protected Integer computeValue(Class<?> type)
+		{
+			int mask = 0;
+			for(ChunkEntityBucket bucket : VALUES)
+				if(bucket.type.isAssignableFrom(type))
+					mask |= 1 << bucket.ordinal();
+			return mask;
+		}
+	};
+
+	/** Bucket to use for query of the class, null if entities of the class may be out of any bucket */
+	private static final ClassValue<ChunkEntityBucket> QUERIES = new ClassValue<ChunkEntityBucket>()
+	{
+		@Override
+		protected ChunkEntityBucket computeValue(Class<?> type)
+		{
+			for(ChunkEntityBucket bucket : VALUES)
+				if(bucket.type.isAssignableFrom(type))
+					return bucket;
+			return null;
+		}
+	};
+
+	private final Class<?> type;
+
+	ChunkEntityBucket(Class<?> type)
+	{
+		this.type = type;
+	}
+
+	public static int maskOf(Entity entity)
+	{
+		return MASKS.get(entity.getClass());
+	}
+
+	/** @return bucket containing all entities assignable to the class, or null */
+	public static ChunkEntityBucket forQuery(Class<?> type)
+	{
+		return QUERIES.get(type);
+	}
+}
@@ -1,9 +1,10 @@
 package org.ultramine.server.chunk;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -14,18 +15,37 @@ import net.minecraft.world.ChunkCoordIntPair;
 import net.minecraft.world.WorldServer;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.gen.ChunkProviderServer;
+import org.ultramine.server.util.LatencyRecorder;
 
+/**
+ * Chooses unbound chunks to unload. Candidates are kept incrementally: loaded chunks are registered by
+ * {@link ChunkProviderServer} and notify GC on every bind state and unbind time change, so both candidate sets are
+ * ordered by unbind time. A GC pass looks only at a bounded window at the head of the set instead of scanning all
+ * loaded chunks.
+ */
 @SideOnly(Side.SERVER)
 public class ChunkGC
 {
 	private static final int MIN_GC_INTERVAL = 100;
 	private static final int MAX_UNLOAD_QUEUE_SIZE = 128;
 	private static final int MAX_CHUNKS_PER_OP = 1024;
+	/** Chunks taken from the head of unbound set per pass, most suitable of them are unloaded */
+	private static final int WINDOW_SIZE = MAX_CHUNKS_PER_OP * 2;
+	/** Limits skipped dependent and already queued chunks per pass */
+	private static final int MAX_SCANNED_PER_OP = MAX_CHUNKS_PER_OP * 4;
 	private static final int _10_MINUTES = 20*60*10;
 	
 	private final ChunkProviderServer provider;
 	private final WorldServer world;
 	
+	/** Chunks in {@link ChunkBindState#NONE} state, ordered by unbind time */
+	private final Set<Chunk> unbound = new LinkedHashSet<Chunk>();
+	/** Chunks in {@link ChunkBindState#LEAK} or {@link ChunkBindState#FORGE} state, ordered by unbind time */
+	private final Set<Chunk> leaked = new LinkedHashSet<Chunk>();
+	private final List<Chunk> window = new ArrayList<Chunk>();
+	private final LatencyRecorder passTime = new LatencyRecorder(64);
+	private long lastForceCollectTime;
+	
 	private int lastGCTime;
 	private int lastChunkCount;
 	private int minChunkDiff;
@@ -36,6 +56,41 @@ public class ChunkGC
 		this.world = provider.worldObj;
 	}
 	
+	public void onChunkLoaded(Chunk chunk)
+	{
+		chunk.setChunkGC(this);
+		onBindStateChanged(chunk);
+	}
+	
+	public void onChunkUnloaded(Chunk chunk)
+	{
+		chunk.setChunkGC(null);
+		unbound.remove(chunk);
+		leaked.remove(chunk);
+	}
+	
+	/** Called by chunk on bind state or unbind time change, moves chunk to the tail of its set */
+	public void onBindStateChanged(Chunk chunk)
+	{
+		unbound.remove(chunk);
+		leaked.remove(chunk);
+		ChunkBindState state = chunk.getBindState();
+		if(state.canUnload())
+			unbound.add(chunk);
+		else if(state.isLeak())
+			leaked.add(chunk);
+	}
+	
+	public void clear()
+	{
+		for(Chunk chunk : unbound)
+			chunk.setChunkGC(null);
+		for(Chunk chunk : leaked)
+			chunk.setChunkGC(null);
+		unbound.clear();
+		leaked.clear();
+	}
+	
 	public void onTick()
 	{
 		int confCacheSize = world.getConfig().chunkLoading.chunkCacheSize;
@@ -50,36 +105,33 @@ public class ChunkGC
 		
 		if(chunkCount > chunkLimit && /*timePassed > MIN_GC_INTERVAL &&*/ unloadQueueSize < MAX_UNLOAD_QUEUE_SIZE && (minChunkDiff == 0 || chunkDiff > minChunkDiff))
 		{
-			List<Chunk> unbound = findChunksForUnload();
+			long start = System.nanoTime();
+			unbindLeaks(curTime, MAX_CHUNKS_PER_OP);
+			int unboundCount = unbound.size();
 			
 			int unboundLimit = confCacheSize + MAX_CHUNKS_PER_OP + unloadQueueSize;
 			
-			if(unbound.size() > unboundLimit)
+			if(unboundCount > unboundLimit)
 			{
 				//performing GC
-				Collections.sort(unbound, new ChunkComparator(curTime));
-				
-				for(int i = 0, s = Math.min(unbound.size(), MAX_CHUNKS_PER_OP); i < s; i++)
-				{
-					Chunk chunk = unbound.get(i);
-					provider.unloadQueue.add(ChunkHash.chunkToKey(chunk.xPosition, chunk.zPosition));
-				}
+				int queued = queueOldestUnbound(curTime);
 				
-				if(unbound.size() - Math.min(unbound.size(), MAX_CHUNKS_PER_OP) > unboundLimit)
+				if(unboundCount - queued > unboundLimit)
 					minChunkDiff = 0;
 				else
-					minChunkDiff = unboundLimit - unbound.size();
+					minChunkDiff = unboundLimit - unboundCount;
 			}
 			else
 			{
-				minChunkDiff = unboundLimit - unbound.size();
+				minChunkDiff = unboundLimit - unboundCount;
 			}
 			
 			lastGCTime = curTime;
 			lastChunkCount = provider.chunkMap.size() - provider.unloadQueue.size();
+			passTime.record(System.nanoTime() - start);
 		}
 	}
-
+	
 	private int countPlayerBoundChunks()
 	{
 		int boundChunks = 0;
@@ -93,47 +145,109 @@ public class ChunkGC
 	
 	public void forceCollect()
 	{
-		for(Chunk chunk : findChunksForUnload())
-			provider.unloadQueue.add(ChunkHash.chunkToKey(chunk.xPosition, chunk.zPosition));
-		lastGCTime = world.func_73046_m().getTickCounter();
+		long start = System.nanoTime();
+		int curTime = world.func_73046_m().getTickCounter();
+		// Picks up chunks added by mods through vanilla chunk map
+		for(Chunk chunk : provider.chunkMap.valueCollection())
+			if(chunk.getChunkGC() != this)
+				onChunkLoaded(chunk);
+		unbindLeaks(curTime, Integer.MAX_VALUE);
+		for(Chunk chunk : new ArrayList<Chunk>(unbound))
+		{
+			if(isTracked(chunk) && !chunk.isDependent())
+				provider.unloadQueue.add(ChunkHash.chunkToKey(chunk.xPosition, chunk.zPosition));
+		}
+		lastGCTime = curTime;
 		lastChunkCount = provider.chunkMap.size() - provider.unloadQueue.size();
+		lastForceCollectTime = System.nanoTime() - start;
 	}
 	
-	private List<Chunk> findChunksForUnload()
+	/** Unbinds leaked chunks that are not used for 10 minutes, starting from the oldest ones */
+	private void unbindLeaks(int curTime, int limit)
 	{
-		int chunksPerPlayer = (int)Math.pow(world.getViewDistance()*2 + 1, 2);
-		int boundChunks = world.playerEntities.size()*chunksPerPlayer + world.getPersistentChunks().size();
-		int curTime = world.func_73046_m().getTickCounter();
+		window.clear();
+		for(Iterator<Chunk> it = leaked.iterator(); it.hasNext() && window.size() < limit;)
+		{
+			Chunk chunk = it.next();
+			if(curTime - chunk.getUnbindTime() <= _10_MINUTES)
+				break;
+			window.add(chunk);
+		}
 		
-		Set<ChunkCoordIntPair> persistentChunks = world.getPersistentChunks().keySet();
-		Collection<Chunk> all = provider.chunkMap.valueCollection();
-		List<Chunk> unbound = new ArrayList<Chunk>(Math.max(2, all.size() - boundChunks));
-		for(Chunk chunk : all)
+		Set<ChunkCoordIntPair> persistentChunks = window.isEmpty() ? Collections.<ChunkCoordIntPair>emptySet() : world.getPersistentChunks().keySet();
+		for(Chunk chunk : window)
 		{
-			if(chunk.isDependent())
+			if(!isTracked(chunk) || chunk.isDependent())
 				continue;
-			ChunkBindState state = chunk.getBindState();
-			if(state.canUnload())
+			if(persistentChunks.contains(chunk.getChunkCoordIntPair()))
 			{
-				unbound.add(chunk);
+				if(chunk.getBindState() != ChunkBindState.FORGE)
+					chunk.setBindState(ChunkBindState.FORGE);
+				chunk.updateUnbindTime();
 			}
-			else if(state.isLeak() && curTime - chunk.getUnbindTime() > _10_MINUTES)
+			else
 			{
-				if(persistentChunks.contains(chunk.getChunkCoordIntPair()))
-				{
-					if(state != ChunkBindState.FORGE)
-						chunk.setBindState(ChunkBindState.FORGE);
-					chunk.updateUnbindTime();
-				}
-				else
-				{
-					chunk.unbind();
-					unbound.add(chunk);
-				}
+				chunk.unbind();
 			}
 		}
+		window.clear();
+	}
+	
+	/** @return number of chunks added to unload queue */
+	private int queueOldestUnbound(int curTime)
+	{
+		window.clear();
+		int scanned = 0;
+		for(Iterator<Chunk> it = unbound.iterator(); it.hasNext() && window.size() < WINDOW_SIZE && scanned < MAX_SCANNED_PER_OP; scanned++)
+		{
+			Chunk chunk = it.next();
+			if(!provider.unloadQueue.contains(ChunkHash.chunkToKey(chunk.xPosition, chunk.zPosition)))
+				window.add(chunk);
+		}
 		
-		return unbound;
+		// isDependent() may update unbind time and reorder the set, so it is checked outside of the iteration
+		for(Iterator<Chunk> it = window.iterator(); it.hasNext();)
+		{
+			Chunk chunk = it.next();
+			if(!isTracked(chunk) || chunk.isDependent())
+				it.remove();
+		}
+		
+		Collections.sort(window, new ChunkComparator(curTime));
+		int queued = Math.min(window.size(), MAX_CHUNKS_PER_OP);
+		for(int i = 0; i < queued; i++)
+		{
+			Chunk chunk = window.get(i);
+			provider.unloadQueue.add(ChunkHash.chunkToKey(chunk.xPosition, chunk.zPosition));
+		}
+		window.clear();
+		return queued;
+	}
+	
+	/** Drops chunks removed from chunk map bypassing provider (by mods through vanilla map) */
+	private boolean isTracked(Chunk chunk)
+	{
+		if(provider.chunkMap.get(chunk.xPosition, chunk.zPosition) == chunk)
+			return true;
+		onChunkUnloaded(chunk);
+		return false;
+	}
+	
+	public int getCandidateCount()
+	{
+		return unbound.size();
+	}
+	
+	/** @return duration of recent GC passes made on tick */
+	public LatencyRecorder getPassTime()
+	{
+		return passTime;
+	}
+	
+	/** @return duration of last {@link #forceCollect()} in nanoseconds */
+	public long getLastForceCollectTime()
+	{
+		return lastForceCollectTime;
 	}
 	
 	private static class ChunkComparator implements Comparator<Chunk>
@@ -4,29 +4,127 @@ import com.google.common.collect.Queues;
 import cpw.mods.fml.common.FMLCommonHandler;
 import cpw.mods.fml.common.eventhandler.SubscribeEvent;
 import cpw.mods.fml.common.gameevent.TickEvent;
+import net.minecraft.crash.CrashReport;
+import net.minecraft.crash.CrashReportCategory;
+import net.minecraft.util.ReportedException;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.biome.BiomeGenBase;
+import net.minecraft.world.biome.WorldChunkManager;
+import net.minecraft.world.biome.WorldChunkManagerHell;
 import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.IChunkProvider;
+import net.minecraft.world.gen.ChunkProviderEnd;
+import net.minecraft.world.gen.ChunkProviderGenerate;
+import net.minecraft.world.gen.ChunkProviderHell;
 import net.minecraft.world.gen.ChunkProviderServer;
-import net.openhft.koloboke.collect.map.IntObjMap;
-import net.openhft.koloboke.collect.map.hash.HashIntObjMaps;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.terraingen.ChunkProviderEvent;
+import net.minecraftforge.event.terraingen.InitMapGenEvent;
+import net.minecraftforge.event.terraingen.WorldTypeEvent;
+import net.openhft.koloboke.collect.map.LongObjMap;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.terraingen.ChunkProviderEvent;
+import net.minecraftforge.event.terraingen.InitMapGenEvent;
+import net.minecraftforge.event.terraingen.WorldTypeEvent;
+import net.openhft.koloboke.collect.map.hash.HashLongObjMaps;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ultramine.server.world.ParallelWorldTicker;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Generates chunks requested by {@link ChunkProviderServer#loadAsync(int, int, IChunkLoadCallback)}.
+ * <p>
+ * For worlds using vanilla generators ({@link ChunkProviderGenerate}, {@link ChunkProviderHell},
+ * {@link ChunkProviderEnd}) with vanilla biome providers, noise, biome blocks and caves are generated on worker
+ * threads by detached generator instances. Structure registration, population and the {@code PopulateChunkEvent}
+ * stay on the main thread, see {@link ChunkProviderServer#finishGeneratedChunk(Chunk)}. Chunks of other
+ * generators are generated on the main thread one per tick and in idle time, as before.
+ * <p>
+ * Off-thread generation is opt-in: number of worker threads is set by {@code -Dorg.ultramine.chunk.gen.threads}
+ * (default 0 disables it). Even when enabled it is not used if mod code could be called by the detached generators
+ * (terrain event listeners, non-vanilla biomes or replaced map generators), as it is not known to be thread-safe.
+ * Main thread time spent on finishing generated chunks per tick is limited by
+ * {@code -Dorg.ultramine.chunk.gen.finishBudgetMs}.
+ */
 public class ChunkGenerationQueue
 {
+	private static final Logger log = LogManager.getLogger();
+	private static final int THREADS = Integer.parseInt(System.getProperty("org.ultramine.chunk.gen.threads",
+			"0"));
+	private static final long FINISH_BUDGET = Long.parseLong(System.getProperty("org.ultramine.chunk.gen.finishBudgetMs", "10")) * 1_000_000;
+	private static final int MAX_IN_FLIGHT = THREADS * 4;
+	private static final long STAT_WINDOW = 5_000_000_000L;
 	private static final ChunkGenerationQueue INSTANCE = new ChunkGenerationQueue();
+
 	private final Queue<QueuedChunk> queue = Queues.newArrayDeque();
-	private final IntObjMap<QueuedChunk> map = HashIntObjMaps.newMutableMap();
+	private final Queue<QueuedChunk> syncQueue = Queues.newArrayDeque();
+	private final LongObjMap<QueuedChunk> map = HashLongObjMaps.newMutableMap();
+	private final Queue<QueuedChunk> generated = new ConcurrentLinkedQueue<>();
+	private final Map<ChunkProviderServer, DetachedGenerators> generators = new IdentityHashMap<>();
+	private final ExecutorService executor;
+	private int inFlight;
+
+	private final StageStat waitStat = new StageStat();
+	private final StageStat generateStat = new StageStat();
+	private final StageStat finishStat = new StageStat();
+	private long totalGenerated;
+	private long windowStart = System.nanoTime();
+	private long windowStartGenerated;
+	private double throughput;
+
+	private ChunkGenerationQueue()
+	{
+		if(THREADS > 0)
+		{
+			executor = new ThreadPoolExecutor(THREADS, THREADS, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+			{
+				private final AtomicInteger counter = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					return new GenerationThread(r, counter.incrementAndGet());
+				}
+			});
+		}
+		else
+		{
+			executor = null;
+		}
+	}
 
 	public static ChunkGenerationQueue instance()
 	{
 		return INSTANCE;
 	}
 
+	public static boolean isGenerationThread()
+	{
+		return Thread.currentThread() instanceof GenerationThread;
+	}
+
+	/** Queue state is accessed on the main thread only, calls from world tick threads are deferred to the merge phase */
 	public void queueChunkGeneration(ChunkProviderServer provider, int cx, int cz, IChunkLoadCallback callback)
 	{
-		int key = ChunkHash.chunkToKey(cx, cz);
+		if(ParallelWorldTicker.defer(() -> queueChunkGeneration(provider, cx, cz, callback)))
+			return;
+		long key = key(provider, cx, cz);
 		QueuedChunk chunk = map.get(key);
 		if(chunk != null)
 		{
@@ -40,22 +138,108 @@ public class ChunkGenerationQueue
 		}
 	}
 
+	/** @return true if one chunk was generated or finished */
 	public boolean generateOneChunk()
 	{
-		for(QueuedChunk chunk; (chunk = queue.poll()) != null;)
+		dispatch();
+		return finishOne() || generateOneSync();
+	}
+
+	private void dispatch()
+	{
+		for(QueuedChunk chunk; inFlight < MAX_IN_FLIGHT && (chunk = queue.poll()) != null;)
 		{
-			map.remove(ChunkHash.chunkToKey(chunk.cx, chunk.cz));
 			if(chunk.provider.isWorldUnloaded())
+			{
+				map.remove(chunk.key());
+				generators.remove(chunk.provider);
 				continue;
+			}
 			if(chunk.provider.loadAsync(chunk.cx, chunk.cz, false, chunk))
+			{
+				map.remove(chunk.key());
 				continue;
+			}
+			DetachedGenerators gens = getGenerators(chunk.provider);
+			if(gens == null)
+			{
+				syncQueue.add(chunk);
+				continue;
+			}
+			inFlight++;
+			executor.execute(new GenerationTask(chunk, gens));
+		}
+	}
+
+	private boolean finishOne()
+	{
+		QueuedChunk chunk = generated.poll();
+		if(chunk == null)
+			return false;
+		inFlight--;
+		map.remove(chunk.key());
+		long start = System.nanoTime();
+		if(chunk.error != null)
+		{
+			CrashReport crashreport = CrashReport.makeCrashReport(chunk.error, "Exception generating new chunk");
+			CrashReportCategory crashreportcategory = crashreport.makeCategory("Chunk to be generated");
+			crashreportcategory.addCrashSection("Location", String.format("%d,%d", chunk.cx, chunk.cz));
+			crashreportcategory.addCrashSection("Generator", chunk.provider.currentChunkProvider.makeString());
+			throw new ReportedException(crashreport);
+		}
+		if(chunk.provider.isWorldUnloaded() || chunk.provider.loadAsync(chunk.cx, chunk.cz, false, chunk))
+		{
+			// world was unloaded or chunk was loaded/generated in other way while we were generating it
+			chunk.result.release();
+			return true;
+		}
+		chunk.onChunkLoaded(chunk.provider.finishGeneratedChunk(chunk.result));
+		finishStat.record(System.nanoTime() - start);
+		totalGenerated++;
+		return true;
+	}
+
+	private boolean generateOneSync()
+	{
+		for(QueuedChunk chunk; (chunk = syncQueue.poll()) != null;)
+		{
+			map.remove(chunk.key());
+			if(chunk.provider.isWorldUnloaded())
+				continue;
+			if(chunk.provider.loadAsync(chunk.cx, chunk.cz, false, chunk))
+				continue;
+			long start = System.nanoTime();
 			chunk.onChunkLoaded(chunk.provider.originalLoadChunk(chunk.cx, chunk.cz));
+			generateStat.record(System.nanoTime() - start);
+			totalGenerated++;
 			return true;
 		}
 
 		return false;
 	}
 
+	private DetachedGenerators getGenerators(ChunkProviderServer provider)
+	{
+		if(executor == null)
+			return null;
+		DetachedGenerators gens = generators.get(provider);
+		if(gens == null && !generators.containsKey(provider))
+		{
+			gens = DetachedGenerators.create(provider.worldObj, provider.currentChunkProvider);
+			generators.put(provider, gens);
+			if(gens != null)
+				log.info("Using off-thread chunk generation for dimension {} ({})", provider.worldObj.provider.dimensionId, provider.currentChunkProvider.getClass().getName());
+			else if(DetachedGenerators.lastRefusal != null)
+				log.info("Not using off-thread chunk generation for dimension {}: {}", provider.worldObj.provider.dimensionId, DetachedGenerators.lastRefusal);
+		}
+		return gens;
+	}
+
+	private static long key(ChunkProviderServer provider, int cx, int cz)
+	{
+		return ChunkHash.worldChunkToKey(provider.worldObj.provider.dimensionId, cx, cz);
+	}
+
 	public void register()
 	{
 		FMLCommonHandler.instance().bus().register(this);
@@ -65,14 +249,78 @@ public class ChunkGenerationQueue
 	{
 		FMLCommonHandler.instance().bus().unregister(this);
 		queue.clear();
+		syncQueue.clear();
 		map.clear();
+		generators.clear();
 	}
 
 	@SubscribeEvent
 	public void onTick(TickEvent.ServerTickEvent e)
 	{
 		if(e.phase == TickEvent.Phase.END)
+		{
+			long deadline = System.nanoTime() + FINISH_BUDGET;
 			generateOneChunk();
+			while(System.nanoTime() < deadline && finishOne())
+				dispatch();
+			dispatch();
+			updateStats();
+		}
+	}
+
+	private void updateStats()
+	{
+		long now = System.nanoTime();
+		if(now - windowStart >= STAT_WINDOW)
+		{
+			throughput = (totalGenerated - windowStartGenerated) * 1_000_000_000d / (now - windowStart);
+			windowStart = now;
+			windowStartGenerated = totalGenerated;
+			waitStat.roll();
+			generateStat.roll();
+			finishStat.roll();
+		}
+	}
+
+	/** @return number of chunks waiting for generation */
+	public int getQueueDepth()
+	{
+		return queue.size() + syncQueue.size();
+	}
+
+	/** @return number of chunks being generated on worker threads or waiting to be finished on main thread */
+	public int getInFlight()
+	{
+		return inFlight;
+	}
+
+	public long getTotalGenerated()
+	{
+		return totalGenerated;
+	}
+
+	/** @return chunks per second, generated during last measurement window (5 seconds) */
+	public double getThroughput()
+	{
+		return throughput;
+	}
+
+	/** Time between chunk dispatching and the start of its generation on worker thread */
+	public StageStat getWaitStat()
+	{
+		return waitStat;
+	}
+
+	/** Time of chunk generation, on worker thread or on main thread for not offloaded generators */
+	public StageStat getGenerateStat()
+	{
+		return generateStat;
+	}
+
+	/** Time of structure registration and population on main thread */
+	public StageStat getFinishStat()
+	{
+		return finishStat;
 	}
 
 	private static class QueuedChunk implements IChunkLoadCallback
@@ -81,6 +329,8 @@ public class ChunkGenerationQueue
 		public final int cx;
 		public final int cz;
 		public final List<IChunkLoadCallback> callbacks = new ArrayList<>(1);
+		public Chunk result;
+		public Throwable error;
 
 		public QueuedChunk(ChunkProviderServer provider, int cx, int cz, IChunkLoadCallback callback)
 		{
@@ -90,6 +340,11 @@ public class ChunkGenerationQueue
 			this.callbacks.add(callback);
 		}
 
+		public long key()
+		{
+			return ChunkGenerationQueue.key(provider, cx, cz);
+		}
+
 		@Override
 		public void onChunkLoaded(Chunk chunk)
 		{
@@ -97,4 +352,153 @@ public class ChunkGenerationQueue
 				cb.onChunkLoaded(chunk);
 		}
 	}
+
+	private class GenerationTask implements Runnable
+	{
+		private final QueuedChunk chunk;
+		private final DetachedGenerators gens;
+		private final long dispatchTime = System.nanoTime();
+
+		GenerationTask(QueuedChunk chunk, DetachedGenerators gens)
+		{
+			this.chunk = chunk;
+			this.gens = gens;
+		}
+
+		@Override
+		public void run()
+		{
+			long start = System.nanoTime();
+			waitStat.record(start - dispatchTime);
+			try
+			{
+				IChunkProvider generator = gens.idle.take();
+				try
+				{
+					chunk.result = generator.provideChunk(chunk.cx, chunk.cz);
+				}
+				finally
+				{
+					gens.idle.add(generator);
+					gens.chunkManager.cleanupCache();
+				}
+			}
+			catch(Throwable t)
+			{
+				chunk.error = t;
+			}
+			generateStat.record(System.nanoTime() - start);
+			generated.add(chunk);
+		}
+	}
+
+	/**
+	 * Generator instances of one world, one per worker thread. Instances are created on main thread, because
+	 * generator constructors post terrain gen events. These instances do not generate structure starts
+	 * (map features are disabled, nether bridges are skipped on generation threads), structures are registered
+	 * by the main generator instance when chunk is finished.
+	 */
+	private static class DetachedGenerators
+	{
+		final BlockingQueue<IChunkProvider> idle = new ArrayBlockingQueue<>(THREADS);
+		final WorldChunkManager chunkManager;
+
+		private DetachedGenerators(WorldChunkManager chunkManager)
+		{
+			this.chunkManager = chunkManager;
+		}
+
+		/** Reason why mod code may be called by the last refused generator, for logging */
+		static String lastRefusal;
+
+		static DetachedGenerators create(WorldServer world, IChunkProvider generator)
+		{
+			lastRefusal = null;
+			if(generator == null)
+				return null;
+			Class<?> wcmCls = world.getWorldChunkManager().getClass();
+			if(wcmCls != WorldChunkManager.class && wcmCls != WorldChunkManagerHell.class)
+				return null;
+			Class<?> cls = generator.getClass();
+			if(cls != ChunkProviderGenerate.class && cls != ChunkProviderHell.class && cls != ChunkProviderEnd.class)
+				return null;
+			if((lastRefusal = findModCode()) != null)
+				return null;
+			DetachedGenerators gens = new DetachedGenerators(world.getWorldChunkManager());
+			for(int i = 0; i < THREADS; i++)
+			{
+				if(cls == ChunkProviderGenerate.class)
+					gens.idle.add(new ChunkProviderGenerate(world, world.getSeed(), false));
+				else if(cls == ChunkProviderHell.class)
+					gens.idle.add(new ChunkProviderHell(world, world.getSeed()));
+				else
+					gens.idle.add(new ChunkProviderEnd(world, world.getSeed()));
+			}
+			return gens;
+		}
+
+		/**
+		 * Vanilla generators post terrain events and call biomes and map generators which may come from mods,
+		 * returns description of the first such hook that is in use or null if there are none.
+		 */
+		private static String findModCode()
+		{
+			if(MinecraftForge.EVENT_BUS.hasListeners(ChunkProviderEvent.ReplaceBiomeBlocks.class))
+				return "ChunkProviderEvent.ReplaceBiomeBlocks has listeners";
+			if(MinecraftForge.TERRAIN_GEN_BUS.hasListeners(InitMapGenEvent.class))
+				return "InitMapGenEvent has listeners";
+			if(MinecraftForge.TERRAIN_GEN_BUS.hasListeners(WorldTypeEvent.InitBiomeGens.class))
+				return "WorldTypeEvent.InitBiomeGens has listeners";
+			for(BiomeGenBase biome : BiomeGenBase.getBiomeGenArray())
+				if(biome != null && !biome.getClass().getName().startsWith("net.minecraft.world.biome."))
+					return "non-vanilla biome " + biome.biomeName + " (" + biome.getClass().getName() + ")";
+			return null;
+		}
+	}
+
+	private static class GenerationThread extends Thread
+	{
+		GenerationThread(Runnable r, int number)
+		{
+			super(r, "UM chunk generation #" + number);
+			setDaemon(true);
+		}
+	}
+
+	public static class StageStat
+	{
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong total = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+		private volatile double meanMillis;
+		private volatile double maxMillis;
+
+		void record(long nanos)
+		{
+			count.incrementAndGet();
+			total.addAndGet(nanos);
+			for(long cur; nanos > (cur = max.get()) && !max.compareAndSet(cur, nanos);)
+				;
+		}
+
+		void roll()
+		{
+			long c = count.getAndSet(0);
+			long t = total.getAndSet(0);
+			meanMillis = c == 0 ? 0 : Math.round(t / c / 10_000d) / 100d;
+			maxMillis = Math.round(max.getAndSet(0) / 10_000d) / 100d;
+		}
+
+		/** @return mean latency in milliseconds during last measurement window */
+		public double getMeanMillis()
+		{
+			return meanMillis;
+		}
+
+		/** @return max latency in milliseconds during last measurement window */
+		public double getMaxMillis()
+		{
+			return maxMillis;
+		}
+	}
 }
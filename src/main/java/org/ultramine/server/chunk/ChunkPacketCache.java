@@ -0,0 +1,151 @@
+package org.ultramine.server.chunk;
+
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import org.ultramine.server.internal.UMHooks.ChunkPacketData;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-world LRU cache of compressed chunk packet payloads, so players loading the same area (spawn after restart)
+ * reuse one compressed chunk instead of compressing it for each of them. Entry is valid while all sections of the
+ * chunk are the same objects with the same modification counters and biomes are not changed, see {@link Stamp}.
+ * Entries are also evicted on block changes and chunk unloading.
+ * <p>
+ * Cache size is limited by {@code -Dorg.ultramine.chunk.send.cacheSizeMb} (per world, 0 disables caching).
+ */
+@ThreadSafe
+public class ChunkPacketCache
+{
+	private static final long MAX_MEMORY = Long.parseLong(System.getProperty("org.ultramine.chunk.send.cacheSizeMb", "16")) << 20;
+	private static final int ENTRY_OVERHEAD = 512;
+
+	private final Map<Integer, Entry> map = new LinkedHashMap<>(64, 0.75f, true);
+	private long memory;
+	private long hits;
+	private long misses;
+
+	public static boolean isEnabled()
+	{
+		return MAX_MEMORY > 0;
+	}
+
+	/** Must be called from the thread owning the chunk. @return cached payload or null */
+	public synchronized ChunkPacketData get(Chunk chunk)
+	{
+		int key = ChunkHash.chunkToKey(chunk.xPosition, chunk.zPosition);
+		Entry entry = map.get(key);
+		if(entry != null)
+		{
+			if(entry.stamp.matches(chunk))
+			{
+				hits++;
+				return entry.data;
+			}
+			remove(key);
+		}
+		misses++;
+		return null;
+	}
+
+	public synchronized void put(int cx, int cz, Stamp stamp, ChunkPacketData data)
+	{
+		remove(ChunkHash.chunkToKey(cx, cz));
+		Entry entry = new Entry(stamp, data);
+		map.put(ChunkHash.chunkToKey(cx, cz), entry);
+		memory += entry.memory;
+		for(Iterator<Entry> it = map.values().iterator(); memory > MAX_MEMORY && it.hasNext();)
+		{
+			memory -= it.next().memory;
+			it.remove();
+		}
+	}
+
+	public synchronized void invalidate(int cx, int cz)
+	{
+		if(!map.isEmpty())
+			remove(ChunkHash.chunkToKey(cx, cz));
+	}
+
+	public synchronized void clear()
+	{
+		map.clear();
+		memory = 0;
+	}
+
+	private void remove(int key)
+	{
+		Entry entry = map.remove(key);
+		if(entry != null)
+			memory -= entry.memory;
+	}
+
+	public synchronized int size()
+	{
+		return map.size();
+	}
+
+	public synchronized long getMemory()
+	{
+		return memory;
+	}
+
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	private static class Entry
+	{
+		final Stamp stamp;
+		final ChunkPacketData data;
+		final int memory;
+
+		Entry(Stamp stamp, ChunkPacketData data)
+		{
+			this.stamp = stamp;
+			this.data = data;
+			this.memory = data.data.length + ENTRY_OVERHEAD;
+		}
+	}
+
+	/** State of the chunk at the moment of snapshot creation. Must be created from the thread owning the chunk */
+	public static class Stamp
+	{
+		private final ExtendedBlockStorage[] ebsArr;
+		private final int[] modCounts;
+		private final byte[] biomeArray;
+
+		public Stamp(Chunk chunk)
+		{
+			this.ebsArr = chunk.getBlockStorageArray().clone();
+			this.modCounts = new int[ebsArr.length];
+			for(int i = 0; i < ebsArr.length; i++)
+				if(ebsArr[i] != null)
+					modCounts[i] = ebsArr[i].getModCount();
+			this.biomeArray = chunk.getBiomeArray().clone();
+		}
+
+		boolean matches(Chunk chunk)
+		{
+			ExtendedBlockStorage[] current = chunk.getBlockStorageArray();
+			if(current.length != ebsArr.length)
+				return false;
+			for(int i = 0; i < ebsArr.length; i++)
+			{
+				if(current[i] != ebsArr[i] || current[i] != null && current[i].getModCount() != modCounts[i])
+					return false;
+			}
+			return Arrays.equals(biomeArray, chunk.getBiomeArray());
+		}
+	}
+}
@@ -0,0 +1,219 @@
+package org.ultramine.server.chunk;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.world.chunk.storage.AnvilChunkLoader;
+import org.ultramine.server.util.DeflaterPool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Shared part of the staged chunk save pipeline of {@link AnvilChunkLoader}. Pending chunks are serialized to NBT
+ * and deflated in parallel on the worker pool of this class, then written to region files by the file IO thread
+ * grouped by region file, in order of completion.
+ * <p>
+ * Instead of a fixed limit on the save queue, chunk unloading is throttled by {@link #getQueueCapacity()}, which
+ * follows measured region write throughput.
+ * <p>
+ * Number of worker threads is set by {@code -Dorg.ultramine.chunk.save.threads} (0 disables the pipeline, chunks are
+ * serialized and written one by one on the file IO thread, as before).
+ */
+public class ChunkSavePipeline
+{
+	private static final int THREADS = Integer.parseInt(System.getProperty("org.ultramine.chunk.save.threads",
+			Integer.toString(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)))));
+	private static final int MIN_QUEUE_CAPACITY = 64;
+	private static final int MAX_QUEUE_CAPACITY = 4096;
+	private static final int QUEUE_CAPACITY_SECONDS = 2;
+	private static final long ROLL_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+	private static final ChunkSavePipeline INSTANCE = new ChunkSavePipeline();
+
+	private final ExecutorService executor;
+	private final DeflaterPool deflaterPool = new DeflaterPool(Deflater.DEFAULT_COMPRESSION, Math.max(THREADS, 1) * 2);
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger awaitingWrite = new AtomicInteger();
+	private final AtomicLong serialized = new AtomicLong();
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong writtenBytes = new AtomicLong();
+	private final AtomicLong rawBytes = new AtomicLong();
+	private final AtomicLong compressedBytes = new AtomicLong();
+	private final ChunkGenerationQueue.StageStat serializeStat = new ChunkGenerationQueue.StageStat();
+	private final ChunkGenerationQueue.StageStat writeStat = new ChunkGenerationQueue.StageStat();
+	private volatile long lastRoll = System.nanoTime();
+	private volatile double serializeThroughput;
+	private volatile double writeThroughput;
+	private volatile double writeBytesThroughput;
+	private volatile double compressionRatio;
+
+	private ChunkSavePipeline()
+	{
+		executor = THREADS > 0 ? Executors.newFixedThreadPool(THREADS,
+				new ThreadFactoryBuilder().setNameFormat("UM chunk save #%d").setDaemon(true).build()) : null;
+	}
+
+	public static ChunkSavePipeline instance()
+	{
+		return INSTANCE;
+	}
+
+	public static boolean isEnabled()
+	{
+		return THREADS > 0;
+	}
+
+	/** @return max number of chunks being serialized at once for a single chunk loader */
+	public int getMaxInFlight()
+	{
+		return THREADS * 4;
+	}
+
+	/** @return how many chunks may be queued for save by a single world before chunk unloading is postponed */
+	public int getQueueCapacity()
+	{
+		roll();
+		return Math.max(MIN_QUEUE_CAPACITY, Math.min(MAX_QUEUE_CAPACITY, (int) (writeThroughput * QUEUE_CAPACITY_SECONDS)));
+	}
+
+	public void submit(Runnable task)
+	{
+		inFlight.incrementAndGet();
+		executor.execute(task);
+	}
+
+	/**
+	 * Serializes and deflates chunk NBT in region file format (zlib stream). Called from worker threads, records
+	 * serialize stage statistics.
+	 */
+	public Output serialize(NBTTagCompound nbt) throws IOException
+	{
+		long start = System.nanoTime();
+		Deflater deflater = deflaterPool.acquire();
+		try
+		{
+			Output out = new Output();
+			DataOutputStream dos = new DataOutputStream(new DeflaterOutputStream(out, deflater, 4096));
+			CompressedStreamTools.write(nbt, dos);
+			dos.close();
+			serialized.incrementAndGet();
+			rawBytes.addAndGet(deflater.getBytesRead());
+			compressedBytes.addAndGet(out.size());
+			return out;
+		}
+		finally
+		{
+			deflaterPool.release(deflater);
+			serializeStat.record(System.nanoTime() - start);
+		}
+	}
+
+	/** Must be called from worker threads once per submitted task, after its result is queued for writing */
+	public void onSerialized()
+	{
+		awaitingWrite.incrementAndGet();
+		inFlight.decrementAndGet();
+	}
+
+	/** Must be called from file IO thread once per serialized chunk */
+	public void onWritten(long nanos, int bytes)
+	{
+		awaitingWrite.decrementAndGet();
+		written.incrementAndGet();
+		writtenBytes.addAndGet(bytes);
+		writeStat.record(nanos);
+		roll();
+	}
+
+	private void roll()
+	{
+		long now = System.nanoTime();
+		long last = lastRoll;
+		if(now - last < ROLL_INTERVAL)
+			return;
+		synchronized(this)
+		{
+			if(lastRoll != last)
+				return;
+			double seconds = (now - last) / 1e9;
+			serializeThroughput = serialized.getAndSet(0) / seconds;
+			writeThroughput = written.getAndSet(0) / seconds;
+			writeBytesThroughput = writtenBytes.getAndSet(0) / seconds;
+			long raw = rawBytes.getAndSet(0);
+			long compressed = compressedBytes.getAndSet(0);
+			compressionRatio = compressed == 0 ? 0 : (double) raw / compressed;
+			serializeStat.roll();
+			writeStat.roll();
+			lastRoll = now;
+		}
+	}
+
+	public int getInFlight()
+	{
+		return inFlight.get();
+	}
+
+	public int getAwaitingWrite()
+	{
+		return awaitingWrite.get();
+	}
+
+	/** @return chunks per second serialized during last measurement window */
+	public double getSerializeThroughput()
+	{
+		roll();
+		return serializeThroughput;
+	}
+
+	/** @return chunks per second written during last measurement window */
+	public double getWriteThroughput()
+	{
+		roll();
+		return writeThroughput;
+	}
+
+	/** @return bytes per second written during last measurement window */
+	public double getWriteBytesThroughput()
+	{
+		roll();
+		return writeBytesThroughput;
+	}
+
+	public double getCompressionRatio()
+	{
+		return compressionRatio;
+	}
+
+	public ChunkGenerationQueue.StageStat getSerializeStat()
+	{
+		return serializeStat;
+	}
+
+	public ChunkGenerationQueue.StageStat getWriteStat()
+	{
+		return writeStat;
+	}
+
+	/** Deflated chunk data, exposes internal buffer to avoid copying */
+	public static class Output extends ByteArrayOutputStream
+	{
+		Output()
+		{
+			super(8192);
+		}
+
+		public byte[] getBuffer()
+		{
+			return buf;
+		}
+	}
+}
@@ -3,7 +3,9 @@ package org.ultramine.server.chunk;
 import gnu.trove.TCollections;
 import gnu.trove.iterator.TIntIterator;
 import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.TIntObjectMap;
 import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.set.TIntSet;
 import gnu.trove.set.hash.TIntHashSet;
 import io.netty.util.concurrent.Future;
@@ -16,10 +18,13 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.ultramine.core.service.InjectService;
 import org.ultramine.server.WorldConstants;
+import org.ultramine.server.internal.UMHooks.ChunkPacketData;
 import org.ultramine.server.util.BlockFace;
 import org.ultramine.server.util.ChunkCoordComparator;
 import org.ultramine.server.util.TIntArrayListImpl;
@@ -34,6 +39,7 @@ import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.MathHelper;
 import net.minecraft.world.WorldServer;
 import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.gen.ChunkProviderServer;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.world.ChunkWatchEvent;
 import net.openhft.koloboke.collect.IntCursor;
@@ -43,7 +49,10 @@ import net.openhft.koloboke.collect.set.hash.HashIntSets;
 public class ChunkSendManager
 {
 	private static final Logger log = LogManager.getLogger();
-	private static final ExecutorService executor = Executors.newFixedThreadPool(1);
+	private static final int COMPRESSION_THREADS = Integer.parseInt(System.getProperty("org.ultramine.chunk.send.threads",
+			Integer.toString(Math.max(1, Runtime.getRuntime().availableProcessors() / 2))));
+	private static final ExecutorService executor = Executors.newFixedThreadPool(COMPRESSION_THREADS,
+			new ThreadFactoryBuilder().setNameFormat("UM chunk compression #%d").setDaemon(true).build());
 	@InjectService private static AntiXRayService<Object> antiXRayService;
 	private static final double MIN_RATE = 0.2d;
 	
@@ -55,6 +64,7 @@ public class ChunkSendManager
 	private final TIntArrayListImpl toSend = new TIntArrayListImpl(441);
 	private final TIntIntMap sending = TCollections.synchronizedMap(new TIntIntHashMap());
 	private final TIntSet sendingStage2 = TCollections.synchronizedSet(new TIntHashSet());
+	private final TIntObjectMap<ChunkLoadCallback> loading = TCollections.synchronizedMap(new TIntObjectHashMap<ChunkLoadCallback>());
 	private final IntSet sent = HashIntSets.newMutableSet();
 	private final Queue<ChunkIdStruct> toUpdate = Queues.newConcurrentLinkedQueue();
 	private final AtomicInteger sendingQueueSize = new AtomicInteger();
@@ -72,6 +82,15 @@ public class ChunkSendManager
 		this.player = player;
 	}
 	
+	/**
+	 * Compresses lazily compressed packet on chunk compression threads. The packet may be sent right away: if network
+	 * thread gets to it first, it compresses the packet by itself.
+	 */
+	public static void deflateAsync(S21PacketChunkData packet)
+	{
+		executor.execute(packet::ensureDeflated);
+	}
+
 	public int getViewDistance()
 	{
 		return Math.min(manager == null ? 10 : manager.getWorldServer().getViewDistance(), player.getRenderDistance());
@@ -320,9 +339,9 @@ public class ChunkSendManager
 			int curID = ++sendIndexCounter;
 			sending.put(key, curID);
 			sendingQueueSize.incrementAndGet();
-			int ncx = ChunkHash.keyToX(key);
-			int ncz = ChunkHash.keyToZ(key);
-			manager.getWorldServer().theChunkProviderServer.loadAsyncWithRadius(ncx, ncz, 1, new ChunkLoadCallback(curID));
+			ChunkLoadCallback callback = new ChunkLoadCallback(curID);
+			loading.put(key, callback);
+			callback.load(manager.getWorldServer().theChunkProviderServer, ChunkHash.keyToX(key), ChunkHash.keyToZ(key), 1);
 		}
 	}
 	
@@ -394,6 +413,11 @@ public class ChunkSendManager
 	
 	private void cancelSending(int key)
 	{
+		// Chunk loads, which are not started yet, are removed from load queue
+		ChunkLoadCallback loadCallback = loading.remove(key);
+		if(loadCallback != null && loadCallback.cancel())
+			sendingQueueSize.decrementAndGet();
+
 		synchronized(lock)
 		{
 			sending.remove(key);
@@ -422,11 +446,41 @@ public class ChunkSendManager
 	private class ChunkLoadCallback implements IChunkLoadCallback
 	{
 		private final int id;
+		private ChunkProviderServer pendingProvider;
+		private CallbackMultiChunkDependentTask pendingLoad;
+		private int pendingX;
+		private int pendingZ;
+		private int pendingRadius;
 		
 		public ChunkLoadCallback(int id)
 		{
 			this.id = id;
 		}
+
+		/** Loads chunks in radius, then calls {@link #onChunkLoaded(Chunk)} for the central chunk */
+		void load(ChunkProviderServer provider, int cx, int cz, int radius)
+		{
+			pendingProvider = provider;
+			pendingX = cx;
+			pendingZ = cz;
+			pendingRadius = radius;
+			pendingLoad = new CallbackMultiChunkDependentTask((radius*2+1)*(radius*2+1), () -> {
+				pendingLoad = null;
+				onChunkLoaded(provider.getChunkIfExists(cx, cz));
+			});
+			provider.loadAsyncRadius(cx, cz, radius, pendingLoad);
+		}
+
+		/** @return true if some of chunk loads were cancelled, so {@link #onChunkLoaded(Chunk)} will not be called */
+		boolean cancel()
+		{
+			CallbackMultiChunkDependentTask load = pendingLoad;
+			if(load == null || pendingProvider.cancelLoadAsyncRadius(pendingX, pendingZ, pendingRadius, load) == 0)
+				return false;
+			load.cancel();
+			pendingLoad = null;
+			return true;
+		}
 		
 		@Override
 		public void onChunkLoaded(Chunk chunk)
@@ -434,41 +488,69 @@ public class ChunkSendManager
 			int key = ChunkHash.chunkToKey(chunk.xPosition, chunk.zPosition);
 			if(sending.get(key) != id)
 			{
+				finishLoading(key);
 				sendingQueueSize.decrementAndGet();
 				return;
 			}
 			
 			if(chunk.isTerrainPopulated)
 			{
+				finishLoading(key);
 				chunk.func_150804_b(true);
 				chunk.setBindState(ChunkBindState.PLAYER);
 				executor.execute(new CompressAndSendChunkTask(new ChunkIdStruct(chunk, id)));
 			}
 			else if(!chunk.worldObj.chunkRoundExists(chunk.xPosition, chunk.zPosition, WorldConstants.GENCHUNK_PRELOAD_RADIUS))
 			{
-				((WorldServer)chunk.worldObj).theChunkProviderServer.loadAsyncWithRadius(chunk.xPosition, chunk.zPosition, WorldConstants.GENCHUNK_PRELOAD_RADIUS, this);
+				load(((WorldServer)chunk.worldObj).theChunkProviderServer, chunk.xPosition, chunk.zPosition, WorldConstants.GENCHUNK_PRELOAD_RADIUS);
 			}
 			else //impossible?
 			{
 				log.fatal("Chunk[{}]({}, {}) not populated when loaded {} chunk radius", chunk.worldObj.provider.dimensionId, chunk.xPosition, chunk.zPosition,
 						WorldConstants.GENCHUNK_PRELOAD_RADIUS);
+				finishLoading(key);
 				sendingQueueSize.decrementAndGet();
 				sending.remove(key);
 			}
 		}
+
+		private void finishLoading(int key)
+		{
+			synchronized(loading)
+			{
+				if(loading.get(key) == this)
+					loading.remove(key);
+			}
+		}
 	};
 	
 	private class CompressAndSendChunkTask implements Runnable
 	{
 		private final ChunkIdStruct chunkId;
+		private final ChunkPacketCache cache;
+		private final ChunkPacketData cachedData;
+		private final ChunkPacketCache.Stamp stamp;
 		private final ChunkSnapshot chunkSnapshot;
 		private final Object antiXRayParam;
 
 		public CompressAndSendChunkTask(ChunkIdStruct chunkId)
 		{
 			this.chunkId = chunkId;
-			this.chunkSnapshot = ChunkSnapshot.of(chunkId.chunk); // must be sync
-			this.antiXRayParam = antiXRayService.prepareChunkSync(this.chunkSnapshot, chunkId.chunk);
+			// Compressed data may be shared between players only if it does not depend on player
+			this.cache = ChunkPacketCache.isEnabled() && antiXRayService.isPlayerIndependent() ? manager.getChunkPacketCache() : null;
+			this.cachedData = cache != null ? cache.get(chunkId.chunk) : null;
+			if(cachedData != null)
+			{
+				this.stamp = null;
+				this.chunkSnapshot = null;
+				this.antiXRayParam = null;
+			}
+			else
+			{
+				this.stamp = cache != null ? new ChunkPacketCache.Stamp(chunkId.chunk) : null;
+				this.chunkSnapshot = ChunkSnapshot.of(chunkId.chunk); // must be sync
+				this.antiXRayParam = antiXRayService.prepareChunkSync(this.chunkSnapshot, chunkId.chunk);
+			}
 		}
 		
 		private boolean checkActual()
@@ -488,13 +570,24 @@ public class ChunkSendManager
 		{
 			if(!checkActual())
 			{
-				chunkSnapshot.release();
+				if(chunkSnapshot != null)
+					chunkSnapshot.release();
 				return;
 			}
 
-			antiXRayService.prepareChunkAsync(chunkSnapshot, antiXRayParam);
-			S21PacketChunkData packet = S21PacketChunkData.makeForSend(chunkSnapshot); // may be async for chunk snapshot
-			packet.deflate(); // chunkSnapshot released here
+			S21PacketChunkData packet;
+			if(cachedData != null)
+			{
+				packet = S21PacketChunkData.makeForSend(chunkId.chunk.xPosition, chunkId.chunk.zPosition, cachedData);
+			}
+			else
+			{
+				antiXRayService.prepareChunkAsync(chunkSnapshot, antiXRayParam);
+				packet = S21PacketChunkData.makeForSend(chunkSnapshot); // may be async for chunk snapshot
+				packet.deflate(); // chunkSnapshot released here
+				if(stamp != null)
+					cache.put(chunkId.chunk.xPosition, chunkId.chunk.zPosition, stamp, packet.getPackedData());
+			}
 			
 			//Нужно одновременно отправить чанк и добавить его в список sendingStage2, чтобы можно было корректно отменить отправку:
 			//(Если чанк есть в списке sendingStage2, посылать пакет на отгрузку. В ином случае просто удалиь из списка sending)
@@ -6,9 +6,21 @@ import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 
 import java.util.Arrays;
-
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable (unless modified by {@link #setBlock}) copy of chunk blocks and light. Sections are not copied, but
+ * share off-heap slots with the chunk (and with other snapshots of the same chunk), slot is copied on the first
+ * write to it by any of holders, see {@link ExtendedBlockStorage#getWritableSlot()}. So snapshots of the same
+ * unmodified chunk, sent to many players, take no additional memory.
+ */
 public class ChunkSnapshot
 {
+	private static final AtomicLong createdCount = new AtomicLong();
+	private static final AtomicLong aliveCount = new AtomicLong();
+	private static final AtomicLong sharedSectionCount = new AtomicLong();
+	private static final AtomicLong copiedSectionCount = new AtomicLong();
+
 	private final int x;
 	private final int z;
 	private final boolean worldHasNoSky;
@@ -24,14 +36,29 @@ public class ChunkSnapshot
 		this.biomeArray = biomeArray;
 	}
 
+	/** Must be called from the thread owning the chunk */
 	public static ChunkSnapshot of(Chunk chunk)
 	{
-		ExtendedBlockStorage[] ebsOld = chunk.getBlockStorageArray();
+		byte[] biomeArray = chunk.getBiomeArray();
+		return new ChunkSnapshot(chunk.xPosition, chunk.zPosition, chunk.worldObj.provider.hasNoSky, share(chunk.getBlockStorageArray()), Arrays.copyOf(biomeArray, biomeArray.length));
+	}
+
+	private static ExtendedBlockStorage[] share(ExtendedBlockStorage[] ebsOld)
+	{
 		ExtendedBlockStorage[] ebsNew = new ExtendedBlockStorage[ebsOld.length];
+		int shared = 0;
 		for(int i = 0; i < ebsOld.length; i++)
-			ebsNew[i] = ebsOld[i] == null ? null : ebsOld[i].copy();
-		byte[] biomeArray = chunk.getBiomeArray();
-		return new ChunkSnapshot(chunk.xPosition, chunk.zPosition, chunk.worldObj.provider.hasNoSky, ebsNew, Arrays.copyOf(biomeArray, biomeArray.length));
+		{
+			if(ebsOld[i] != null)
+			{
+				ebsNew[i] = ebsOld[i].share();
+				shared++;
+			}
+		}
+		createdCount.incrementAndGet();
+		aliveCount.incrementAndGet();
+		sharedSectionCount.addAndGet(shared);
+		return ebsNew;
 	}
 
 	public int getX()
@@ -64,16 +91,13 @@ public class ChunkSnapshot
 		for(ExtendedBlockStorage ebs : ebsArr)
 			if(ebs != null)
 				ebs.release();
+		aliveCount.decrementAndGet();
 	}
 
 	public ChunkSnapshot copy()
 	{
-		ExtendedBlockStorage[] ebsOld = ebsArr;
-		ExtendedBlockStorage[] ebsNew = new ExtendedBlockStorage[ebsOld.length];
-		for(int i = 0; i < ebsOld.length; i++)
-			ebsNew[i] = ebsOld[i] == null ? null : ebsOld[i].copy();
 		byte[] biomeArray = this.biomeArray;
-		return new ChunkSnapshot(getX(), getZ(), isWorldHasNoSky(), ebsNew, Arrays.copyOf(biomeArray, biomeArray.length));
+		return new ChunkSnapshot(getX(), getZ(), isWorldHasNoSky(), share(ebsArr), Arrays.copyOf(biomeArray, biomeArray.length));
 	}
 
 	private static void rangeCheck(int x, int z)
@@ -124,7 +148,7 @@ public class ChunkSnapshot
 		ExtendedBlockStorage ebs = ebsArr[y >> 4];
 		if(ebs == null)
 			ebs = ebsArr[y >> 4] = new ExtendedBlockStorage(y >> 4 << 4, true);
-		ebs.getSlot().setBlockIdAndMeta(x, y & 15, z, blockId, meta);
+		ebs.getWritableSlot().setBlockIdAndMeta(x, y & 15, z, blockId, meta);
 		if(ebs.isEmpty())
 			ebs.incBlockRefCount();
 	}
@@ -142,4 +166,33 @@ public class ChunkSnapshot
 
 		return 0;
 	}
+
+	public static void onSectionCopiedOnWrite()
+	{
+		copiedSectionCount.incrementAndGet();
+	}
+
+	/** @return total number of snapshots created */
+	public static long getCreatedCount()
+	{
+		return createdCount.get();
+	}
+
+	/** @return number of snapshots not released yet */
+	public static long getAliveCount()
+	{
+		return aliveCount.get();
+	}
+
+	/** @return total number of sections shared with snapshots instead of copying */
+	public static long getSharedSectionCount()
+	{
+		return sharedSectionCount.get();
+	}
+
+	/** @return total number of shared sections copied on write (by chunk or by snapshot) */
+	public static long getCopiedSectionCount()
+	{
+		return copiedSectionCount.get();
+	}
 }
@@ -0,0 +1,373 @@
+package org.ultramine.server.chunk;
+
+import net.minecraft.world.chunk.storage.RegionFile;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ultramine.server.util.DeflaterPool;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Anvil region file backed by {@link FileChannel} positional I/O and a {@link BitSet} of used sectors. On-disk format
+ * is the same as in {@link RegionFile}, files may be freely switched between implementations.
+ * <p>
+ * Only header state is guarded by the monitor. Chunk data is always written to newly allocated sectors outside of
+ * the lock and then published by replacing the offset, so reads never wait for writes. Readers validate per-chunk
+ * version after reading and retry if the chunk was relocated (and its old sectors possibly reused) meanwhile.
+ * <p>
+ * Disabled by default, enabled by {@code -Dorg.ultramine.chunk.region.nio=true}.
+ */
+@ThreadSafe
+public class NioRegionFile extends RegionFile
+{
+	private static final Logger log = LogManager.getLogger();
+	private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("org.ultramine.chunk.region.nio", "false"));
+	private static final DeflaterPool deflaterPool = new DeflaterPool(Deflater.DEFAULT_COMPRESSION, 16);
+	private static final int SECTOR_BYTES = 4096;
+	private static final int HEADER_SECTORS = 2;
+	private static final int CHUNK_HEADER_BYTES = 5;
+	private static final int MAX_READ_ATTEMPTS = 8;
+
+	private final File file;
+	private volatile FileChannel channel;
+	private volatile boolean closed;
+	private final Object channelLock = new Object();
+
+	private final int[] offsets = new int[1024];
+	private final int[] timestamps = new int[1024];
+	private final int[] versions = new int[1024];
+	private final BitSet usedSectors = new BitSet();
+	private int sectorCount;
+
+	public NioRegionFile(File file) throws IOException
+	{
+		this.file = file;
+		this.channel = open();
+
+		long length = channel.size();
+		if(length < HEADER_SECTORS * SECTOR_BYTES)
+		{
+			writeFully(ByteBuffer.allocate(HEADER_SECTORS * SECTOR_BYTES), 0);
+			length = HEADER_SECTORS * SECTOR_BYTES;
+		}
+		else if((length & (SECTOR_BYTES - 1)) != 0)
+		{
+			long padded = (length | (SECTOR_BYTES - 1)) + 1;
+			writeFully(ByteBuffer.allocate((int) (padded - length)), length);
+			length = padded;
+		}
+		sectorCount = (int) (length / SECTOR_BYTES);
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SECTORS * SECTOR_BYTES);
+		readFully(header, 0);
+		header.flip();
+		usedSectors.set(0, HEADER_SECTORS);
+		for(int i = 0; i < 1024; i++)
+		{
+			int offset = header.getInt();
+			offsets[i] = offset;
+			if(offset != 0 && (offset >> 8) + (offset & 255) <= sectorCount)
+				usedSectors.set(offset >> 8, (offset >> 8) + (offset & 255));
+		}
+		for(int i = 0; i < 1024; i++)
+			timestamps[i] = header.getInt();
+	}
+
+	public static boolean isEnabled()
+	{
+		return ENABLED;
+	}
+
+	@Override
+	public synchronized boolean chunkExists(int x, int z)
+	{
+		if(outOfBounds(x, z))
+			return false;
+		int offset = offsets[x + z * 32];
+		return offset != 0 && (offset >> 8) + (offset & 255) <= sectorCount;
+	}
+
+	@Override
+	public synchronized boolean isChunkSaved(int x, int z)
+	{
+		return offsets[x + z * 32] != 0;
+	}
+
+	@Override
+	public DataInputStream getChunkDataInputStream(int x, int z)
+	{
+		if(outOfBounds(x, z))
+			return null;
+		int index = x + z * 32;
+		try
+		{
+			for(int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++)
+			{
+				int offset;
+				int version;
+				synchronized(this)
+				{
+					offset = offsets[index];
+					version = versions[index];
+					if(offset == 0 || (offset >> 8) + (offset & 255) > sectorCount)
+						return null;
+				}
+
+				byte[] data = new byte[(offset & 255) * SECTOR_BYTES];
+				readFully(ByteBuffer.wrap(data), (long) (offset >> 8) * SECTOR_BYTES);
+
+				synchronized(this)
+				{
+					if(versions[index] != version)
+						continue;
+				}
+
+				return decode(data);
+			}
+			log.warn("Chunk [{}, {}] in region file {} is rewritten too frequently to be read", x, z, file);
+		}
+		catch(IOException e)
+		{
+			if(!closed)
+				log.warn("Failed to read chunk [{}, {}] from region file {}", x, z, file, e);
+		}
+		return null;
+	}
+
+	private static DataInputStream decode(byte[] data) throws IOException
+	{
+		int length = ((data[0] & 0xFF) << 24) | ((data[1] & 0xFF) << 16) | ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+		if(length <= 0 || length + 4 > data.length)
+			return null;
+		ByteArrayInputStream in = new ByteArrayInputStream(data, CHUNK_HEADER_BYTES, length - 1);
+		switch(data[4])
+		{
+		case 1: return new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+		case 2: return new DataInputStream(new BufferedInputStream(new InflaterInputStream(in)));
+		default: return null;
+		}
+	}
+
+	@Override
+	public DataOutputStream getChunkDataOutputStream(int x, int z)
+	{
+		if(outOfBounds(x, z))
+			return null;
+		Deflater deflater = deflaterPool.acquire();
+		return new DataOutputStream(new DeflaterOutputStream(new ChunkBuffer(x, z, deflater), deflater, SECTOR_BYTES));
+	}
+
+	@Override
+	protected void write(int x, int z, byte[] data, int length)
+	{
+		byte[] buf = new byte[length + CHUNK_HEADER_BYTES];
+		System.arraycopy(data, 0, buf, CHUNK_HEADER_BYTES, length);
+		writeChunk(x, z, buf, buf.length);
+	}
+
+	/**
+	 * @param buf chunk data with {@link #CHUNK_HEADER_BYTES} reserved at the beginning, header is filled in here
+	 * @param count length of buf, including reserved header
+	 */
+	private void writeChunk(int x, int z, byte[] buf, int count)
+	{
+		int sectors = (count - 1) / SECTOR_BYTES + 1;
+		if(sectors >= 256)
+		{
+			log.warn("Chunk [{}, {}] is too large to be saved in region file {} ({} bytes)", x, z, file, count);
+			return;
+		}
+		int length = count - 4;
+		buf[0] = (byte) (length >>> 24);
+		buf[1] = (byte) (length >>> 16);
+		buf[2] = (byte) (length >>> 8);
+		buf[3] = (byte) length;
+		buf[4] = 2;
+
+		int index = x + z * 32;
+		int start;
+		try
+		{
+			start = allocate(sectors);
+		}
+		catch(IOException e)
+		{
+			log.warn("Failed to allocate space for chunk [{}, {}] in region file {}", x, z, file, e);
+			return;
+		}
+
+		try
+		{
+			writeFully(ByteBuffer.wrap(buf, 0, count), (long) start * SECTOR_BYTES);
+		}
+		catch(IOException e)
+		{
+			synchronized(this)
+			{
+				usedSectors.clear(start, start + sectors);
+			}
+			log.warn("Failed to write chunk [{}, {}] to region file {}", x, z, file, e);
+			return;
+		}
+
+		int timestamp = (int) (System.currentTimeMillis() / 1000L);
+		synchronized(this)
+		{
+			int old = offsets[index];
+			int offset = start << 8 | sectors;
+			offsets[index] = offset;
+			timestamps[index] = timestamp;
+			versions[index]++;
+			if(old != 0)
+				usedSectors.clear(old >> 8, (old >> 8) + (old & 255));
+			try
+			{
+				writeFully(ByteBuffer.allocate(4).putInt(0, offset), index * 4);
+				writeFully(ByteBuffer.allocate(4).putInt(0, timestamp), SECTOR_BYTES + index * 4);
+			}
+			catch(IOException e)
+			{
+				log.warn("Failed to update header of region file {}", file, e);
+			}
+		}
+	}
+
+	/** First-fit search of {@code sectors} free sectors, extends file if there is no suitable gap */
+	private synchronized int allocate(int sectors) throws IOException
+	{
+		int start = usedSectors.nextClearBit(HEADER_SECTORS);
+		while(true)
+		{
+			int end = usedSectors.nextSetBit(start);
+			if(end == -1 || end - start >= sectors)
+				break;
+			start = usedSectors.nextClearBit(end);
+		}
+		if(start + sectors > sectorCount)
+		{
+			// Keeping file length aligned to sector size, as vanilla RegionFile expects it
+			writeFully(ByteBuffer.allocate(1), (long) (start + sectors) * SECTOR_BYTES - 1);
+			sectorCount = start + sectors;
+		}
+		usedSectors.set(start, start + sectors);
+		return start;
+	}
+
+	private static boolean outOfBounds(int x, int z)
+	{
+		return x < 0 || x >= 32 || z < 0 || z >= 32;
+	}
+
+	private FileChannel open() throws IOException
+	{
+		return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	/** Interrupting a thread blocked in channel I/O closes the channel, so reopening it for other users */
+	private FileChannel reopen(FileChannel failed) throws IOException
+	{
+		synchronized(channelLock)
+		{
+			if(closed)
+				throw new ClosedChannelException();
+			if(channel == failed)
+				channel = open();
+			return channel;
+		}
+	}
+
+	private void readFully(ByteBuffer buf, long position) throws IOException
+	{
+		FileChannel ch = channel;
+		while(buf.hasRemaining())
+		{
+			int read;
+			try
+			{
+				read = ch.read(buf, position + buf.position());
+			}
+			catch(ClosedChannelException e)
+			{
+				if(e instanceof ClosedByInterruptException)
+					throw e;
+				ch = reopen(ch);
+				continue;
+			}
+			if(read < 0)
+				break; // Last sector may be truncated by other software, remaining part is zeros
+		}
+	}
+
+	private void writeFully(ByteBuffer buf, long position) throws IOException
+	{
+		FileChannel ch = channel;
+		int base = buf.position();
+		while(buf.hasRemaining())
+		{
+			try
+			{
+				ch.write(buf, position + buf.position() - base);
+			}
+			catch(ClosedChannelException e)
+			{
+				if(e instanceof ClosedByInterruptException)
+					throw e;
+				ch = reopen(ch);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		synchronized(channelLock)
+		{
+			closed = true;
+			channel.close();
+		}
+	}
+
+	/** Deflated data is written to region file directly from the buffer, with space for chunk header reserved */
+	private class ChunkBuffer extends ByteArrayOutputStream
+	{
+		private final int chunkX;
+		private final int chunkZ;
+		private Deflater deflater;
+
+		ChunkBuffer(int chunkX, int chunkZ, Deflater deflater)
+		{
+			super(8096);
+			this.chunkX = chunkX;
+			this.chunkZ = chunkZ;
+			this.deflater = deflater;
+			this.count = CHUNK_HEADER_BYTES;
+		}
+
+		@Override
+		public void close()
+		{
+			if(deflater == null)
+				return;
+			deflaterPool.release(deflater);
+			deflater = null;
+			writeChunk(chunkX, chunkZ, buf, count);
+		}
+	}
+}
@@ -1,11 +1,13 @@
 package org.ultramine.server.chunk;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.mojang.authlib.GameProfile;
 import net.minecraft.block.Block;
 
 public class PendingBlockUpdate implements Comparable<PendingBlockUpdate>
 {
-	private static long nextTickEntryID;
+	private static final AtomicLong nextTickEntryID = new AtomicLong();
 	
 	private final Block block;
 	public final byte x;
@@ -22,7 +24,13 @@ public class PendingBlockUpdate implements Comparable<PendingBlockUpdate>
 	
 	public PendingBlockUpdate(int x, int y, int z, Block block, long time, int priority)
 	{
-		this.id = nextTickEntryID++;
+		this(x, y, z, block, time, priority, nextTickEntryID.getAndIncrement());
+	}
+
+	/** @param id insertion order of updates with the same time and priority */
+	public PendingBlockUpdate(int x, int y, int z, Block block, long time, int priority, long id)
+	{
+		this.id = id;
 		this.x = (byte)x;
 		this.y = (short)y;
 		this.z = (byte)z;
@@ -0,0 +1,466 @@
+package org.ultramine.server.chunk;
+
+import com.mojang.authlib.GameProfile;
+import net.minecraft.block.Block;
+import net.openhft.koloboke.collect.map.ShortIntMap;
+import net.openhft.koloboke.collect.map.hash.HashShortIntMaps;
+
+import javax.annotation.Nullable;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Per-chunk queue of scheduled block updates, a hierarchical timing wheel. Entries are stored in primitive arrays,
+ * coordinates, block id and priority are packed into a single long.
+ * <p>
+ * Near wheel has a bucket for each tick of the current 64-tick block, far wheel has a bucket for each of the next
+ * 63 blocks and is cascaded to near wheel when its block begins, more distant entries are kept in unordered
+ * overflow list. Buckets are unordered linked lists, only the bucket of the current tick is sorted by time (overdue
+ * entries are added to it), priority and insertion order, which is the same order as the vanilla TreeSet has.
+ * <p>
+ * World time may go back, {@link org.ultramine.server.internal.UMHooks} fast-forwards it to process updates of a chunk
+ * being unloaded. The wheel is rebuilt from the current time then, so updates are not delayed to the time it was at.
+ * <p>
+ * Not thread-safe, accessed from the world thread only.
+ */
+public class PendingBlockUpdateQueue
+{
+	private static final int WHEEL_BITS = 6;
+	private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+	private static final int NONE = -1;
+	/** Time of removed and free entries */
+	private static final long DEAD = Long.MIN_VALUE;
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int TRIM_CAPACITY = 1024;
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	private long[] packed = new long[INITIAL_CAPACITY]; // coord hash | block id << 16 | priority << 32
+	private long[] times = new long[INITIAL_CAPACITY];
+	private int[] seqs = new int[INITIAL_CAPACITY];
+	private int[] next = new int[INITIAL_CAPACITY]; // next entry in bucket or free list
+	private GameProfile[] initiators; // allocated on first entry with initiator
+	private int freeHead = NONE;
+	private int used;
+	private int size;
+	private int seq;
+	private ShortIntMap byCoord = HashShortIntMaps.newMutableMap();
+
+	private long base; // current tick, all entries of previous ticks are polled or moved to the current bucket
+	private final int[] nearHead = new int[WHEEL_SIZE];
+	private final int[] nearTail = new int[WHEEL_SIZE];
+	private long nearMask;
+	private final int[] farHead = new int[WHEEL_SIZE];
+	private final int[] farTail = new int[WHEEL_SIZE];
+	private long farMask;
+	private int overflowHead = NONE;
+	private long overflowMin = Long.MAX_VALUE;
+
+	private int[] ready = new int[INITIAL_CAPACITY]; // sorted entries of the current tick
+	private int[] sortBuffer = new int[INITIAL_CAPACITY];
+	private int readySize;
+	private int readyPos;
+
+	public PendingBlockUpdateQueue(long now)
+	{
+		reset(now);
+	}
+
+	/**
+	 * @param check do not schedule if there is an update of the same block at the same position already, replace
+	 *              update of other block. Without check, previous update is kept as is (chunk loading).
+	 * @param now current world time
+	 * @return true if the update was scheduled
+	 */
+	public boolean add(int x, int y, int z, Block block, long time, int priority, @Nullable GameProfile initiator, boolean check, long now)
+	{
+		short hash = ChunkHash.chunkCoordToHash(x, y, z);
+		if(check)
+		{
+			int prev = byCoord.getOrDefault(hash, NONE);
+			if(prev != NONE)
+			{
+				if(Block.isEqualTo(block, getBlock(prev)))
+					return false;
+				times[prev] = DEAD; // Will be freed when reached
+				size--;
+			}
+		}
+		if(size == 0)
+			reset(now);
+		else if(isRewound(now))
+			rebase(now);
+
+		int e = allocate();
+		packed[e] = (hash & 0xFFFFL) | (Block.getIdFromBlock(block) & 0xFFFFL) << 16 | (long)priority << 32;
+		times[e] = time;
+		seqs[e] = seq++;
+		if(initiator != null && initiators == null)
+			initiators = new GameProfile[packed.length];
+		if(initiators != null)
+			initiators[e] = initiator;
+		byCoord.put(hash, e);
+		size++;
+		insert(e);
+		return true;
+	}
+
+	/** @return next update scheduled not later than {@code now}, or null */
+	@Nullable
+	public PendingBlockUpdate poll(long now)
+	{
+		if(isRewound(now))
+			rebase(now);
+		while(true)
+		{
+			while(readyPos < readySize)
+			{
+				int e = ready[readyPos++];
+				if(times[e] == DEAD)
+					free(e);
+				else
+					return take(e);
+			}
+			readySize = readyPos = 0;
+
+			if(size == 0)
+			{
+				if(used != 0)
+					reset(now);
+				return null;
+			}
+			if(base > now)
+				return null;
+			int bucket = (int)base & WHEEL_MASK;
+			if(nearHead[bucket] != NONE)
+				collect(bucket);
+			else if(!advance(now))
+				return null;
+		}
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/** @return time, at which the first update may be polled, or 0 if the queue is empty */
+	public long getFirstTime()
+	{
+		if(size == 0)
+			return 0;
+		long min = Long.MAX_VALUE;
+		for(int e = 0; e < used; e++)
+			if(times[e] != DEAD)
+				min = Math.min(min, times[e]);
+		return Math.max(min, base);
+	}
+
+	/** @return copy of all scheduled updates in the order of execution */
+	public Set<PendingBlockUpdate> toSet()
+	{
+		List<PendingBlockUpdate> list = new ArrayList<>(size);
+		for(int e = 0; e < used; e++)
+			if(times[e] != DEAD)
+				list.add(toUpdate(e));
+		Collections.sort(list);
+		return new SnapshotSet(list);
+	}
+
+	/**
+	 * Normally current tick is not later than {@code now + 1} (all updates up to {@code now} are polled), and the ready
+	 * entries are of a tick not later than {@code now}.
+	 */
+	private boolean isRewound(long now)
+	{
+		return base > now + 1 || base > now && readyPos < readySize;
+	}
+
+	/** Moves current tick back to {@code now} and inserts all entries again, removed ones are freed */
+	private void rebase(long now)
+	{
+		clearWheel();
+		freeHead = NONE;
+		base = now;
+		for(int e = used - 1; e >= 0; e--)
+		{
+			if(times[e] == DEAD)
+				free(e);
+			else
+				insert(e);
+		}
+	}
+
+	private void reset(long now)
+	{
+		clearWheel();
+		freeHead = NONE;
+		used = 0;
+		base = now;
+		if(packed.length > TRIM_CAPACITY)
+		{
+			packed = new long[INITIAL_CAPACITY];
+			times = new long[INITIAL_CAPACITY];
+			seqs = new int[INITIAL_CAPACITY];
+			next = new int[INITIAL_CAPACITY];
+			initiators = null;
+			ready = new int[INITIAL_CAPACITY];
+			sortBuffer = new int[INITIAL_CAPACITY];
+			byCoord = HashShortIntMaps.newMutableMap();
+		}
+		else
+		{
+			byCoord.clear();
+		}
+	}
+
+	private void clearWheel()
+	{
+		for(int i = 0; i < WHEEL_SIZE; i++)
+		{
+			nearHead[i] = nearTail[i] = NONE;
+			farHead[i] = farTail[i] = NONE;
+		}
+		nearMask = farMask = 0;
+		overflowHead = NONE;
+		overflowMin = Long.MAX_VALUE;
+		readySize = readyPos = 0;
+	}
+
+	private int allocate()
+	{
+		int e = freeHead;
+		if(e != NONE)
+		{
+			freeHead = next[e];
+			return e;
+		}
+		if(used == packed.length)
+		{
+			int capacity = used * 2;
+			packed = Arrays.copyOf(packed, capacity);
+			times = Arrays.copyOf(times, capacity);
+			seqs = Arrays.copyOf(seqs, capacity);
+			next = Arrays.copyOf(next, capacity);
+			if(initiators != null)
+				initiators = Arrays.copyOf(initiators, capacity);
+		}
+		return used++;
+	}
+
+	private void free(int e)
+	{
+		times[e] = DEAD;
+		if(initiators != null)
+			initiators[e] = null;
+		next[e] = freeHead;
+		freeHead = e;
+	}
+
+	private PendingBlockUpdate take(int e)
+	{
+		PendingBlockUpdate p = toUpdate(e);
+		byCoord.remove(p.getChunkCoordHash(), e);
+		size--;
+		free(e);
+		return p;
+	}
+
+	private PendingBlockUpdate toUpdate(int e)
+	{
+		long data = packed[e];
+		int hash = (int)data & 0xFFFF;
+		PendingBlockUpdate p = new PendingBlockUpdate(hash & 15, hash >> 8, hash >> 4 & 15, getBlock(e), times[e], (int)(data >> 32), seqs[e]);
+		if(initiators != null)
+			p.initiator = initiators[e];
+		return p;
+	}
+
+	private Block getBlock(int e)
+	{
+		return Block.getBlockById((int)(packed[e] >>> 16) & 0xFFFF);
+	}
+
+	private void insert(int e)
+	{
+		long time = Math.max(times[e], base);
+		long block = time >> WHEEL_BITS;
+		long baseBlock = base >> WHEEL_BITS;
+		if(block == baseBlock)
+		{
+			int bucket = (int)time & WHEEL_MASK;
+			append(nearHead, nearTail, bucket, e);
+			nearMask |= 1L << bucket;
+		}
+		else if(block - baseBlock < WHEEL_SIZE)
+		{
+			int bucket = (int)block & WHEEL_MASK;
+			append(farHead, farTail, bucket, e);
+			farMask |= 1L << bucket;
+		}
+		else
+		{
+			next[e] = overflowHead;
+			overflowHead = e;
+			overflowMin = Math.min(overflowMin, time);
+		}
+	}
+
+	private void append(int[] heads, int[] tails, int bucket, int e)
+	{
+		next[e] = NONE;
+		if(heads[bucket] == NONE)
+			heads[bucket] = e;
+		else
+			next[tails[bucket]] = e;
+		tails[bucket] = e;
+	}
+
+	/** Moves all entries of the current tick bucket to ready array in order of execution */
+	private void collect(int bucket)
+	{
+		int count = 0;
+		for(int e = nearHead[bucket]; e != NONE; e = next[e])
+		{
+			if(count == ready.length)
+				ready = Arrays.copyOf(ready, count * 2);
+			ready[count++] = e;
+		}
+		nearHead[bucket] = nearTail[bucket] = NONE;
+		nearMask &= ~(1L << bucket);
+		if(sortBuffer.length < count)
+			sortBuffer = new int[ready.length];
+		sort(ready, sortBuffer, 0, count);
+		readySize = count;
+		readyPos = 0;
+	}
+
+	/**
+	 * Current tick bucket is empty, moves to the next non-empty one, if it is not later than {@code now}, otherwise
+	 * to {@code now + 1}.
+	 * @return true if moved to a tick not later than {@code now}
+	 */
+	private boolean advance(long now)
+	{
+		long later = nearMask & (-2L << ((int)base & WHEEL_MASK));
+		if(later != 0)
+		{
+			long time = (base & ~WHEEL_MASK) | Long.numberOfTrailingZeros(later);
+			base = Math.min(time, now + 1);
+			return time <= now;
+		}
+
+		long farBlock = nextFarBlock();
+		long nextBlock = Math.min(farBlock, overflowMin >> WHEEL_BITS);
+		long time = nextBlock == Long.MAX_VALUE ? now + 1 : Math.min(nextBlock << WHEEL_BITS, now + 1);
+		long oldBlock = base >> WHEEL_BITS;
+		base = time;
+		long newBlock = time >> WHEEL_BITS;
+		if(newBlock != oldBlock)
+		{
+			int bucket = (int)newBlock & WHEEL_MASK;
+			if((farMask & (1L << bucket)) != 0 && farBlock == newBlock)
+			{
+				int e = farHead[bucket];
+				farHead[bucket] = farTail[bucket] = NONE;
+				farMask &= ~(1L << bucket);
+				reinsert(e);
+			}
+			if(overflowHead != NONE && (overflowMin >> WHEEL_BITS) - newBlock < WHEEL_SIZE)
+			{
+				int e = overflowHead;
+				overflowHead = NONE;
+				overflowMin = Long.MAX_VALUE;
+				reinsert(e);
+			}
+		}
+		return time <= now;
+	}
+
+	private void reinsert(int e)
+	{
+		while(e != NONE)
+		{
+			int n = next[e];
+			if(times[e] == DEAD)
+				free(e);
+			else
+				insert(e);
+			e = n;
+		}
+	}
+
+	/** @return block (time >> WHEEL_BITS) of the nearest non-empty far wheel bucket, or Long.MAX_VALUE */
+	private long nextFarBlock()
+	{
+		if(farMask == 0)
+			return Long.MAX_VALUE;
+		long from = (base >> WHEEL_BITS) + 1;
+		return from + Long.numberOfTrailingZeros(Long.rotateRight(farMask, (int)from & WHEEL_MASK));
+	}
+
+	private int compare(int a, int b)
+	{
+		long ta = times[a];
+		long tb = times[b];
+		if(ta != tb)
+			return ta < tb ? -1 : 1;
+		int pa = (int)(packed[a] >> 32);
+		int pb = (int)(packed[b] >> 32);
+		if(pa != pb)
+			return pa < pb ? -1 : 1;
+		return seqs[a] - seqs[b];
+	}
+
+	private void sort(int[] arr, int[] buf, int from, int to)
+	{
+		if(to - from <= INSERTION_SORT_THRESHOLD)
+		{
+			for(int i = from + 1; i < to; i++)
+			{
+				int e = arr[i];
+				int j = i - 1;
+				for(; j >= from && compare(arr[j], e) > 0; j--)
+					arr[j + 1] = arr[j];
+				arr[j + 1] = e;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		sort(arr, buf, from, mid);
+		sort(arr, buf, mid, to);
+		if(compare(arr[mid - 1], arr[mid]) <= 0)
+			return;
+		System.arraycopy(arr, from, buf, from, to - from);
+		for(int i = from, l = from, r = mid; i < to; i++)
+			arr[i] = r >= to || l < mid && compare(buf[l], buf[r]) <= 0 ? buf[l++] : buf[r++];
+	}
+
+	/** Read-only set view of updates snapshot, for compatibility with code which used TreeSet */
+	private static class SnapshotSet extends AbstractSet<PendingBlockUpdate>
+	{
+		private final List<PendingBlockUpdate> list;
+
+		SnapshotSet(List<PendingBlockUpdate> list)
+		{
+			this.list = list;
+		}
+
+		@Override
+		public Iterator<PendingBlockUpdate> iterator()
+		{
+			return Collections.unmodifiableList(list).iterator();
+		}
+
+		@Override
+		public int size()
+		{
+			return list.size();
+		}
+	}
+}
@@ -171,5 +171,17 @@ public interface MemSlot
 		return other;
 	}
 
+	/**
+	 * Increments reference count of this slot. Shared slot must not be modified, holders should {@link #copy()}
+	 * it before writing and release their reference.
+	 * @return this slot
+	 */
+	@Nonnull
+	MemSlot share();
+
+	/** @return true if this slot is referenced more than once */
+	boolean isShared();
+
+	/** Decrements reference count of this slot, memory is released when the last reference is released */
 	void release();
 }
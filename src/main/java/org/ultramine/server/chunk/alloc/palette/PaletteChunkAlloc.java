@@ -0,0 +1,64 @@
+package org.ultramine.server.chunk.alloc.palette;
+
+import org.ultramine.server.chunk.alloc.ChunkAllocService;
+import org.ultramine.server.chunk.alloc.MemSlot;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocator of {@link PaletteMemSlot}s, enabled by {@code -Dorg.ultramine.chunk.alloc.layout=palette}. Sections are
+ * stored on the Java heap, so there is nothing to pool or free here, only memory accounting. Off-heap memory methods
+ * report size of storage arrays of all live slots, to be comparable with other layouts.
+ */
+@ThreadSafe
+public class PaletteChunkAlloc implements ChunkAllocService
+{
+	private static final boolean ENABLED = System.getProperty("org.ultramine.chunk.alloc.layout", "7").equals("palette");
+
+	private final AtomicInteger slots = new AtomicInteger();
+	private final AtomicLong memory = new AtomicLong();
+
+	public static boolean isEnabled()
+	{
+		return ENABLED;
+	}
+
+	@Nonnull
+	@Override
+	public MemSlot allocateSlot()
+	{
+		slots.incrementAndGet();
+		return new PaletteMemSlot(this);
+	}
+
+	void onMemoryChanged(int delta)
+	{
+		memory.addAndGet(delta);
+	}
+
+	void onSlotReleased(int slotMemory)
+	{
+		slots.decrementAndGet();
+		memory.addAndGet(-slotMemory);
+	}
+
+	public int getSlotCount()
+	{
+		return slots.get();
+	}
+
+	@Override
+	public long getOffHeapTotalMemory()
+	{
+		return memory.get();
+	}
+
+	@Override
+	public long getOffHeapUsedMemory()
+	{
+		return memory.get();
+	}
+}
@@ -0,0 +1,586 @@
+package org.ultramine.server.chunk.alloc.palette;
+
+import org.ultramine.server.chunk.alloc.ChunkAllocService;
+import org.ultramine.server.chunk.alloc.MemSlot;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Section storage with block states ({@code id | meta << 12}) packed as 1, 2, 4 or 8 bit indexes into a palette, or
+ * stored directly with 16 bits per block if there are more than 256 distinct states. Section filled with a single
+ * state has no block array at all, as well as light with the same value in the whole section (sky light underground,
+ * block light in most sections). Compare with 12k of {@link org.ultramine.server.chunk.alloc.unsafe.Unsafe7MemSlot}.
+ * <p>
+ * Storage is inflated on write, when palette overflows or light becomes non-uniform. Palette is compacted at the same
+ * time, so states which are not used anymore are dropped. Raw setters (chunk loading) build the most compact form.
+ * <p>
+ * Blocks are published as a single {@link Blocks} object, which is replaced on resize, so racy readers may see stale
+ * values, but never mismatched palette and data.
+ */
+public final class PaletteMemSlot implements MemSlot
+{
+	private static final AtomicIntegerFieldUpdater<PaletteMemSlot> REF_COUNT = AtomicIntegerFieldUpdater.newUpdater(PaletteMemSlot.class, "refCount");
+	private static final int OBJECT_OVERHEAD = 96; // slot, blocks and light objects with array headers, roughly
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+	private static final Blocks EMPTY = new Blocks(0, new int[1], 1); // single-state blocks are never modified
+
+	private final PaletteChunkAlloc alloc;
+	private volatile int refCount = 1;
+	private Blocks blocks = EMPTY;
+	private final Light blockLight = new Light();
+	private final Light skyLight = new Light();
+	private int memory;
+
+	PaletteMemSlot(PaletteChunkAlloc alloc)
+	{
+		this.alloc = alloc;
+		updateMemory();
+	}
+
+	//raw set
+
+	@Override
+	public void setLSB(byte[] arr, int start)
+	{
+		checkArray(arr, start, 4096);
+		Scratch s = SCRATCH.get();
+		char[] states = s.states;
+		blocks.decode(states);
+		for(int i = 0; i < 4096; i++)
+			states[i] = (char)(states[i] & 0xFF00 | arr[start + i] & 0xFF);
+		setBlocks(encode(s, false));
+	}
+
+	@Override
+	public void setMSB(byte[] arr, int start)
+	{
+		checkArray(arr, start, 2048);
+		Scratch s = SCRATCH.get();
+		char[] states = s.states;
+		blocks.decode(states);
+		for(int i = 0; i < 4096; i++)
+			states[i] = (char)(states[i] & 0xF0FF | getNibble(arr, start, i) << 8);
+		setBlocks(encode(s, false));
+	}
+
+	@Override
+	public void setBlockMetadata(byte[] arr, int start)
+	{
+		checkArray(arr, start, 2048);
+		Scratch s = SCRATCH.get();
+		char[] states = s.states;
+		blocks.decode(states);
+		for(int i = 0; i < 4096; i++)
+			states[i] = (char)(states[i] & 0x0FFF | getNibble(arr, start, i) << 12);
+		setBlocks(encode(s, false));
+	}
+
+	@Override
+	public void setData(@Nonnull byte[] lsb, @Nullable byte[] msb, @Nonnull byte[] meta, @Nonnull byte[] blockLight, @Nullable byte[] skyLight)
+	{
+		checkArray(lsb, 0, 4096);
+		if(msb != null)
+			checkArray(msb, 0, 2048);
+		checkArray(meta, 0, 2048);
+		checkArray(blockLight, 0, 2048);
+		if(skyLight != null)
+			checkArray(skyLight, 0, 2048);
+
+		Scratch s = SCRATCH.get();
+		char[] states = s.states;
+		for(int i = 0; i < 4096; i++)
+		{
+			int state = lsb[i] & 0xFF | getNibble(meta, 0, i) << 12;
+			if(msb != null)
+				state |= getNibble(msb, 0, i) << 8;
+			states[i] = (char)state;
+		}
+		blocks = encode(s, false);
+		this.blockLight.set(blockLight, 0);
+		if(skyLight != null)
+			this.skyLight.set(skyLight, 0);
+		else
+			this.skyLight.fill(0);
+		updateMemory();
+	}
+
+	@Override
+	public void setBlocklight(byte[] arr, int start)
+	{
+		checkArray(arr, start, 2048);
+		blockLight.set(arr, start);
+		updateMemory();
+	}
+
+	@Override
+	public void setSkylight(byte[] arr, int start)
+	{
+		checkArray(arr, start, 2048);
+		skyLight.set(arr, start);
+		updateMemory();
+	}
+
+	//raw copy
+
+	@Override
+	public void copyLSB(byte[] arr, int start)
+	{
+		checkArray(arr, start, 4096);
+		char[] states = SCRATCH.get().states;
+		blocks.decode(states);
+		for(int i = 0; i < 4096; i++)
+			arr[start + i] = (byte)states[i];
+	}
+
+	@Override
+	public void copyMSB(byte[] arr, int start)
+	{
+		checkArray(arr, start, 2048);
+		char[] states = SCRATCH.get().states;
+		blocks.decode(states);
+		for(int i = 0; i < 2048; i++)
+			arr[start + i] = (byte)(states[i << 1] >> 8 & 15 | (states[i << 1 | 1] >> 8 & 15) << 4);
+	}
+
+	@Override
+	public void copyBlockMetadata(byte[] arr, int start)
+	{
+		checkArray(arr, start, 2048);
+		char[] states = SCRATCH.get().states;
+		blocks.decode(states);
+		for(int i = 0; i < 2048; i++)
+			arr[start + i] = (byte)(states[i << 1] >> 12 | (states[i << 1 | 1] >> 12) << 4);
+	}
+
+	@Override
+	public void copyBlocklight(byte[] arr, int start)
+	{
+		checkArray(arr, start, 2048);
+		blockLight.copyTo(arr, start);
+	}
+
+	@Override
+	public void copySkylight(byte[] arr, int start)
+	{
+		checkArray(arr, start, 2048);
+		skyLight.copyTo(arr, start);
+	}
+
+	//clear
+
+	@Override
+	public void zerofillMSB()
+	{
+		Scratch s = SCRATCH.get();
+		char[] states = s.states;
+		blocks.decode(states);
+		for(int i = 0; i < 4096; i++)
+			states[i] &= 0xF0FF;
+		setBlocks(encode(s, false));
+	}
+
+	@Override
+	public void zerofillSkylight()
+	{
+		skyLight.fill(0);
+		updateMemory();
+	}
+
+	@Override
+	public void zerofillAll()
+	{
+		blocks = EMPTY;
+		blockLight.fill(0);
+		skyLight.fill(0);
+		updateMemory();
+	}
+
+	//
+
+	@Override
+	public int getBlockId(int x, int y, int z)
+	{
+		return blocks.get(y << 8 | z << 4 | x) & 0xFFF;
+	}
+
+	@Override
+	public void setBlockId(int x, int y, int z, int id)
+	{
+		int ind = y << 8 | z << 4 | x;
+		setState(ind, blocks.get(ind) & 0xF000 | id & 0xFFF);
+	}
+
+	@Override
+	public int getMeta(int x, int y, int z)
+	{
+		return blocks.get(y << 8 | z << 4 | x) >> 12;
+	}
+
+	@Override
+	public void setMeta(int x, int y, int z, int meta)
+	{
+		int ind = y << 8 | z << 4 | x;
+		setState(ind, blocks.get(ind) & 0x0FFF | (meta & 15) << 12);
+	}
+
+	@Override
+	public void setBlockIdAndMeta(int x, int y, int z, int id, int meta)
+	{
+		setState(y << 8 | z << 4 | x, id & 0xFFF | (meta & 15) << 12);
+	}
+
+	@Override
+	public int getBlockIdAndMeta(int x, int y, int z)
+	{
+		return blocks.get(y << 8 | z << 4 | x);
+	}
+
+	@Override
+	public int getBlocklight(int x, int y, int z)
+	{
+		return blockLight.get(y << 8 | z << 4 | x);
+	}
+
+	@Override
+	public void setBlocklight(int x, int y, int z, int val)
+	{
+		if(blockLight.set(y << 8 | z << 4 | x, val))
+			updateMemory();
+	}
+
+	@Override
+	public int getSkylight(int x, int y, int z)
+	{
+		return skyLight.get(y << 8 | z << 4 | x);
+	}
+
+	@Override
+	public void setSkylight(int x, int y, int z, int val)
+	{
+		if(skyLight.set(y << 8 | z << 4 | x, val))
+			updateMemory();
+	}
+
+	@Nonnull
+	@Override
+	public ChunkAllocService getAlloc()
+	{
+		return alloc;
+	}
+
+	@Override
+	public void copyFrom(@Nonnull MemSlot src)
+	{
+		if(getClass() != src.getClass())
+			throw new IllegalStateException();
+		if(refCount <= 0)
+			throw new IllegalStateException("Destination slot already released");
+		PaletteMemSlot other = (PaletteMemSlot)src;
+		if(other.refCount <= 0)
+			throw new IllegalStateException("Source slot already released");
+		Blocks otherBlocks = other.blocks;
+		blocks = otherBlocks.data == null ? otherBlocks : otherBlocks.copy();
+		blockLight.copyFrom(other.blockLight);
+		skyLight.copyFrom(other.skyLight);
+		updateMemory();
+	}
+
+	@Nonnull
+	@Override
+	public MemSlot share()
+	{
+		for(int count; (count = refCount) > 0;)
+			if(REF_COUNT.compareAndSet(this, count, count + 1))
+				return this;
+		throw new IllegalStateException("Slot already released");
+	}
+
+	@Override
+	public boolean isShared()
+	{
+		return refCount > 1;
+	}
+
+	@Override
+	public void release()
+	{
+		int count = REF_COUNT.decrementAndGet(this);
+		if(count < 0)
+			throw new IllegalStateException("Slot already released");
+		if(count == 0)
+			alloc.onSlotReleased(memory);
+	}
+
+	private void setState(int ind, int state)
+	{
+		Blocks b = blocks;
+		int value = b.indexOf(state);
+		if(value == -1)
+		{
+			if(b.size == b.palette.length)
+			{
+				Scratch s = SCRATCH.get();
+				b.decode(s.states);
+				s.states[ind] = (char)state;
+				setBlocks(encode(s, true));
+				return;
+			}
+			value = b.size;
+			b.palette[value] = state; // Written before index, so readers never see unset palette entry
+			b.size = value + 1;
+		}
+		if(b.data != null)
+			b.setValue(ind, value);
+	}
+
+	private void setBlocks(Blocks blocks)
+	{
+		this.blocks = blocks;
+		updateMemory();
+	}
+
+	private void updateMemory()
+	{
+		int newMemory = OBJECT_OVERHEAD + blocks.memory() + blockLight.memory() + skyLight.memory();
+		int delta = newMemory - memory;
+		if(delta != 0)
+		{
+			memory = newMemory;
+			alloc.onMemoryChanged(delta);
+		}
+	}
+
+	/**
+	 * Builds the most compact storage for {@link Scratch#states}.
+	 * @param grow reserve palette space for one more state, used on write to not inflate on each new state
+	 */
+	private static Blocks encode(Scratch s, boolean grow)
+	{
+		char[] states = s.states;
+		char[] index = s.index;
+		int[] found = s.palette;
+		int count = 0;
+		for(int i = 0; i < 4096; i++)
+		{
+			int state = states[i];
+			if(index[state] == 0)
+			{
+				found[count++] = state;
+				index[state] = (char)count;
+			}
+		}
+
+		int bits = bitsFor(grow ? count + 1 : count);
+		Blocks b;
+		if(bits == 0)
+		{
+			b = new Blocks(0, new int[] {found[0]}, 1);
+		}
+		else if(bits == 16)
+		{
+			b = new Blocks(16, null, 0);
+			for(int i = 0; i < 4096; i++)
+				b.setValue(i, states[i]);
+		}
+		else
+		{
+			b = new Blocks(bits, Arrays.copyOf(found, 1 << bits), count);
+			for(int i = 0; i < 4096; i++)
+				b.setValue(i, index[states[i]] - 1);
+		}
+
+		for(int i = 0; i < count; i++)
+			index[found[i]] = 0;
+		return b;
+	}
+
+	private static int bitsFor(int states)
+	{
+		return states <= 1 ? 0 : states <= 2 ? 1 : states <= 4 ? 2 : states <= 16 ? 4 : states <= 256 ? 8 : 16;
+	}
+
+	private static int getNibble(byte[] arr, int start, int ind)
+	{
+		byte data = arr[start + (ind >> 1)];
+		return (ind & 1) == 0 ? data & 15 : data >> 4 & 15;
+	}
+
+	private static void checkArray(byte[] arr, int start, int length)
+	{
+		if(arr == null || arr.length - start < length) throw new IllegalArgumentException();
+	}
+
+	/** Packed block states of a section. Only palette entries above {@link #size} and data are mutable */
+	private static final class Blocks
+	{
+		final int bits;
+		final int bitsShift;
+		final int wordShift;
+		final int mask;
+		/** null if states are stored directly */
+		final int[] palette;
+		/** null if all blocks have the same state, palette[0] */
+		final long[] data;
+		int size;
+
+		Blocks(int bits, int[] palette, int size)
+		{
+			this(bits, palette, size, bits == 0 ? null : new long[bits << 6]);
+		}
+
+		private Blocks(int bits, int[] palette, int size, long[] data)
+		{
+			this.bits = bits;
+			this.bitsShift = bits == 0 ? 0 : Integer.numberOfTrailingZeros(bits);
+			this.wordShift = 6 - bitsShift;
+			this.mask = (1 << bits) - 1;
+			this.palette = palette;
+			this.size = size;
+			this.data = data;
+		}
+
+		int get(int ind)
+		{
+			if(data == null)
+				return palette[0];
+			int value = (int)(data[ind >> wordShift] >>> ((ind & ((1 << wordShift) - 1)) << bitsShift)) & mask;
+			return palette == null ? value : palette[value];
+		}
+
+		void setValue(int ind, int value)
+		{
+			int word = ind >> wordShift;
+			int shift = (ind & ((1 << wordShift) - 1)) << bitsShift;
+			data[word] = data[word] & ~((long)mask << shift) | (long)value << shift;
+		}
+
+		/** @return palette index of the state, or -1 if it is not in palette */
+		int indexOf(int state)
+		{
+			if(palette == null)
+				return state;
+			for(int i = 0; i < size; i++)
+				if(palette[i] == state)
+					return i;
+			return -1;
+		}
+
+		void decode(char[] out)
+		{
+			if(data == null)
+			{
+				Arrays.fill(out, (char)palette[0]);
+				return;
+			}
+			for(int i = 0; i < 4096; i++)
+				out[i] = (char)get(i);
+		}
+
+		Blocks copy()
+		{
+			return new Blocks(bits, palette == null ? null : palette.clone(), size, data == null ? null : data.clone());
+		}
+
+		int memory()
+		{
+			return (palette == null ? 0 : palette.length * 4) + (data == null ? 0 : data.length * 8);
+		}
+	}
+
+	/** Nibble array, which is not allocated while all values are the same */
+	private static final class Light
+	{
+		private byte[] data;
+		private int value;
+
+		int get(int ind)
+		{
+			byte[] local = data;
+			if(local == null)
+				return value;
+			byte b = local[ind >> 1];
+			return (ind & 1) == 0 ? b & 15 : b >> 4 & 15;
+		}
+
+		/** @return true if array was allocated */
+		boolean set(int ind, int val)
+		{
+			val &= 15;
+			byte[] local = data;
+			boolean inflated = false;
+			if(local == null)
+			{
+				if(val == value)
+					return false;
+				local = new byte[2048];
+				Arrays.fill(local, (byte)(value | value << 4));
+				inflated = true;
+			}
+			int off = ind >> 1;
+			if((ind & 1) == 0)
+				local[off] = (byte)(local[off] & 240 | val);
+			else
+				local[off] = (byte)(local[off] & 15 | val << 4);
+			data = local;
+			return inflated;
+		}
+
+		void set(byte[] arr, int start)
+		{
+			byte first = arr[start];
+			boolean uniform = (first & 15) == (first >> 4 & 15);
+			for(int i = 1; uniform && i < 2048; i++)
+				uniform = arr[start + i] == first;
+			if(uniform)
+			{
+				fill(first & 15);
+			}
+			else
+			{
+				byte[] local = data;
+				if(local == null)
+					local = new byte[2048];
+				System.arraycopy(arr, start, local, 0, 2048);
+				data = local;
+			}
+		}
+
+		void fill(int val)
+		{
+			value = val;
+			data = null;
+		}
+
+		void copyTo(byte[] arr, int start)
+		{
+			byte[] local = data;
+			if(local == null)
+				Arrays.fill(arr, start, start + 2048, (byte)(value | value << 4));
+			else
+				System.arraycopy(local, 0, arr, start, 2048);
+		}
+
+		void copyFrom(Light other)
+		{
+			byte[] otherData = other.data;
+			value = other.value;
+			data = otherData == null ? null : otherData.clone();
+		}
+
+		int memory()
+		{
+			return data == null ? 0 : data.length;
+		}
+	}
+
+	/** Per-thread buffers for decoding and encoding */
+	private static final class Scratch
+	{
+		final char[] states = new char[4096];
+		final int[] palette = new int[4096];
+		final char[] index = new char[65536];
+	}
+}
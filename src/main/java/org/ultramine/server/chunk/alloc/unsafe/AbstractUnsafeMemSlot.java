@@ -5,14 +5,17 @@ import org.ultramine.server.chunk.alloc.MemSlot;
 import org.ultramine.server.util.UnsafeUtil;
 import sun.misc.Unsafe;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 abstract class AbstractUnsafeMemSlot implements MemSlot
 {
 	static final int SLOT_SIZE = 4096*3;
 	protected static final Unsafe U = UnsafeUtil.getUnsafe();
+	private static final AtomicIntegerFieldUpdater<AbstractUnsafeMemSlot> REF_COUNT = AtomicIntegerFieldUpdater.newUpdater(AbstractUnsafeMemSlot.class, "refCount");
 
 	protected final UnsafeChunkAlloc alloc;
 	protected final long pointer;
-	private boolean isReleased;
+	private volatile int refCount = 1;
 
 	AbstractUnsafeMemSlot(UnsafeChunkAlloc alloc, long pointer)
 	{
@@ -36,20 +39,36 @@ abstract class AbstractUnsafeMemSlot implements MemSlot
 	{
 		if(getClass() != src.getClass())
 			throw new IllegalStateException();
-		if(isReleased)
+		if(refCount <= 0)
 			throw new IllegalStateException("Destination slot already released");
-		if(((AbstractUnsafeMemSlot)src).isReleased)
+		if(((AbstractUnsafeMemSlot)src).refCount <= 0)
 			throw new IllegalStateException("Source slot already released");
 		U.copyMemory(((AbstractUnsafeMemSlot)src).getPointer(), pointer, SLOT_SIZE);
 	}
 
+	@Override
+	public MemSlot share()
+	{
+		for(int count; (count = refCount) > 0;)
+			if(REF_COUNT.compareAndSet(this, count, count + 1))
+				return this;
+		throw new IllegalStateException("Slot already released");
+	}
+
+	@Override
+	public boolean isShared()
+	{
+		return refCount > 1;
+	}
+
 	@Override
 	public void release()
 	{
-		if(isReleased)
+		int count = REF_COUNT.decrementAndGet(this);
+		if(count < 0)
 			throw new IllegalStateException("Slot already released");
-		alloc.releaseSlot(pointer);
-		isReleased = true;
+		if(count == 0)
+			alloc.releaseSlot(pointer);
 	}
 
 	protected final void setByte(int ind, byte data)
@@ -94,8 +113,11 @@ abstract class AbstractUnsafeMemSlot implements MemSlot
 	{
 		try
 		{
-			if(!isReleased)
-				release();
+			if(refCount > 0)
+			{
+				refCount = 0;
+				alloc.releaseSlot(pointer);
+			}
 		}
 		catch(Throwable t)
 		{
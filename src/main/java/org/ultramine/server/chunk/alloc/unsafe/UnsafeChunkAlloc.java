@@ -10,16 +10,24 @@ import sun.misc.Unsafe;
 
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.ThreadSafe;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Deque;
-import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.LongFunction;
 
 import static org.ultramine.server.chunk.alloc.unsafe.AbstractUnsafeMemSlot.SLOT_SIZE;
 
+/**
+ * Released slots are kept in several FIFO lists of raw pointers, selected by current thread, so threads loading,
+ * snapshotting and saving chunks do not contend on a single monitor. Allocation reuses the oldest released slot
+ * of the thread's own list, then takes slots from other lists, and only then allocates new memory. Number of lists
+ * is set by {@code -Dorg.ultramine.chunk.alloc.offheap.stripes=N} (rounded down to a power of two, 1 gives a single
+ * list as before striping).
+ * <p>
+ * By default every slot is allocated separately and freed {@link #SLOT_FREE_DELAY} ms after release. With
+ * {@code -Dorg.ultramine.chunk.alloc.offheap.arenaMb=N} slots are carved from N-megabyte blocks instead (large
+ * blocks are mmap'ed by libc), such memory is never returned to the OS and released slots are only reused.
+ */
 @ThreadSafe
 public class UnsafeChunkAlloc implements ChunkAllocService
 {
@@ -28,83 +36,162 @@ public class UnsafeChunkAlloc implements ChunkAllocService
 	// We delaying freeing not only for caching, but to be sure that nobody access this memory from other threads through data races
 	private static final int SLOT_FREE_DELAY = 5000;
 	private static final boolean USE_8_LAYOUT = System.getProperty("org.ultramine.chunk.alloc.layout", "7").equals("8"); // false by default
+	private static final int ARENA_SLOTS = Integer.parseInt(System.getProperty("org.ultramine.chunk.alloc.offheap.arenaMb", "0")) * (1024 * 1024 / SLOT_SIZE);
+	private static final int STRIPES = Integer.highestOneBit(Math.max(1, Integer.parseInt(System.getProperty("org.ultramine.chunk.alloc.offheap.stripes",
+			Integer.toString(Math.min(64, Runtime.getRuntime().availableProcessors() * 2) * 2 - 1)))));
 
 	private final LongFunction<MemSlot> slotFactory = USE_8_LAYOUT ? pointer -> new Unsafe8MemSlot(this, pointer) : pointer -> new Unsafe7MemSlot(this, pointer);
-	private final Deque<ReleasedSlot> releasedSlots = new ArrayDeque<>();
-	private int slots;
+	private final Stripe[] stripes = new Stripe[STRIPES];
+	private final AtomicInteger slots = new AtomicInteger();
+	private final AtomicInteger releasedSlots = new AtomicInteger();
+
+	private final Object arenaLock = new Object();
+	private long arenaNext; // guarded by arenaLock
+	private int arenaSlotsLeft; // guarded by arenaLock
 
 	public UnsafeChunkAlloc()
 	{
-		new Timer("OffHeapChunkAlloc cleaner", true).schedule(new TimerTask()
+		for(int i = 0; i < STRIPES; i++)
+			stripes[i] = new Stripe();
+		if(ARENA_SLOTS == 0)
 		{
-			@Override
-			public void run()
+			new Timer("OffHeapChunkAlloc cleaner", true).schedule(new TimerTask()
 			{
-				releaseAvailableSlots();
-			}
-		}, 2000, 2000);
+				@Override
+				public void run()
+				{
+					releaseAvailableSlots();
+				}
+			}, 2000, 2000);
+		}
 	}
 
 	@Nonnull
 	@Override
-	public synchronized MemSlot allocateSlot()
+	public MemSlot allocateSlot()
 	{
-		ReleasedSlot released = releasedSlots.poll();
-		if(released != null)
-			return slotFactory.apply(released.pointer);
-		slots++;
-		if(slots >= SLOT_LIMIT)
+		int index = stripeIndex();
+		long pointer = stripes[index].poll();
+		for(int i = 1; pointer == 0 && i < STRIPES; i++)
+			pointer = stripes[(index + i) & (STRIPES - 1)].poll();
+		if(pointer != 0)
+		{
+			releasedSlots.decrementAndGet();
+			return slotFactory.apply(pointer);
+		}
+
+		if(slots.incrementAndGet() >= SLOT_LIMIT)
+		{
+			slots.decrementAndGet();
 			throw new OutOfMemoryError("Off-heap chunk storage");
-		return slotFactory.apply(U.allocateMemory(SLOT_SIZE));
+		}
+		return slotFactory.apply(ARENA_SLOTS == 0 ? U.allocateMemory(SLOT_SIZE) : carveSlot());
+	}
+
+	void releaseSlot(long pointer)
+	{
+		releasedSlots.incrementAndGet();
+		stripes[stripeIndex()].add(pointer, System.currentTimeMillis());
+	}
+
+	private static int stripeIndex()
+	{
+		return (int)Thread.currentThread().getId() & (STRIPES - 1);
 	}
 
-	synchronized void releaseSlot(long pointer)
+	private long carveSlot()
 	{
-		releasedSlots.add(new ReleasedSlot(pointer));
+		synchronized(arenaLock)
+		{
+			if(arenaSlotsLeft == 0)
+			{
+				arenaNext = U.allocateMemory((long)ARENA_SLOTS * SLOT_SIZE);
+				arenaSlotsLeft = ARENA_SLOTS;
+			}
+			long pointer = arenaNext;
+			arenaNext += SLOT_SIZE;
+			arenaSlotsLeft--;
+			return pointer;
+		}
 	}
 
 	@Override
 	public long getOffHeapTotalMemory()
 	{
-		return (long)slots * SLOT_SIZE;
+		return (long)slots.get() * SLOT_SIZE;
 	}
 
 	@Override
 	public long getOffHeapUsedMemory()
 	{
-		return (long)(slots - releasedSlots.size()) * SLOT_SIZE;
+		return (long)(slots.get() - releasedSlots.get()) * SLOT_SIZE;
 	}
 
 	private void releaseAvailableSlots()
 	{
 		TLongList toRelease = new TLongArrayList();
-		synchronized(this)
-		{
-			long time = System.currentTimeMillis();
-			while(true)
-			{
-				ReleasedSlot slot = releasedSlots.peek();
-				if(slot == null || time - slot.time < SLOT_FREE_DELAY)
-					break;
-				releasedSlots.poll();
-				toRelease.add(slot.pointer);
-			}
-			slots -= toRelease.size();
-		}
+		long deadline = System.currentTimeMillis() - SLOT_FREE_DELAY;
+		for(Stripe stripe : stripes)
+			stripe.pollReleasedBefore(deadline, toRelease);
+		releasedSlots.addAndGet(-toRelease.size());
+		slots.addAndGet(-toRelease.size());
 
 		for(TLongIterator it = toRelease.iterator(); it.hasNext();)
 			U.freeMemory(it.next());
 	}
 
-	private static class ReleasedSlot
+	/** Ring buffer of released slot pointers with release times, oldest first */
+	private static final class Stripe
 	{
-		final long pointer;
-		final long time;
+		private long[] pointers = new long[64];
+		private long[] times = new long[64];
+		private int head;
+		private int size;
 
-		public ReleasedSlot(long pointer)
+		synchronized void add(long pointer, long time)
 		{
-			this.pointer = pointer;
-			time = System.currentTimeMillis();
+			if(size == pointers.length)
+				grow();
+			int tail = (head + size) & (pointers.length - 1);
+			pointers[tail] = pointer;
+			times[tail] = time;
+			size++;
+		}
+
+		/** @return pointer to the oldest released slot or 0 if there is no one */
+		synchronized long poll()
+		{
+			if(size == 0)
+				return 0;
+			long pointer = pointers[head];
+			head = (head + 1) & (pointers.length - 1);
+			size--;
+			return pointer;
+		}
+
+		synchronized void pollReleasedBefore(long deadline, TLongList out)
+		{
+			while(size != 0 && times[head] <= deadline)
+			{
+				out.add(pointers[head]);
+				head = (head + 1) & (pointers.length - 1);
+				size--;
+			}
+		}
+
+		private void grow()
+		{
+			long[] newPointers = new long[pointers.length * 2];
+			long[] newTimes = new long[times.length * 2];
+			for(int i = 0; i < size; i++)
+			{
+				int ind = (head + i) & (pointers.length - 1);
+				newPointers[i] = pointers[ind];
+				newTimes[i] = times[ind];
+			}
+			pointers = newPointers;
+			times = newTimes;
+			head = 0;
 		}
 	}
 }
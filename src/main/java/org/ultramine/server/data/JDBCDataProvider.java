@@ -29,7 +29,6 @@ import org.ultramine.server.ConfigurationHandler;
 import org.ultramine.server.data.player.PlayerData;
 import org.ultramine.server.data.player.PlayerDataExtension;
 import org.ultramine.server.data.player.PlayerDataExtensionInfo;
-import org.ultramine.server.util.GlobalExecutors;
 import org.ultramine.server.util.WarpLocation;
 
 import com.mojang.authlib.GameProfile;
@@ -48,6 +47,7 @@ public class JDBCDataProvider implements IDataProvider
 	private final String tab_warps;
 
 	private final TObjectIntMap<UUID> playerIDs = TCollections.synchronizedMap(new TObjectIntHashMap<UUID>(128, 0.75F, -1));
+	private final JDBCWriteQueue writeQueue;
 
 	public JDBCDataProvider(ServerConfigurationManager mgr)
 	{
@@ -60,6 +60,12 @@ public class JDBCDataProvider implements IDataProvider
 		tab_warps = tablePrefix + "warps";
 		
 		ds = Databases.getDataSource(ConfigurationHandler.getServerConfig().settings.inSQLServerStorage.database);
+		writeQueue = new JDBCWriteQueue(ds);
+	}
+
+	public JDBCWriteQueue getWriteQueue()
+	{
+		return writeQueue;
 	}
 
 	@Override
@@ -150,6 +156,10 @@ public class JDBCDataProvider implements IDataProvider
 	@Override
 	public NBTTagCompound loadPlayer(int dim, GameProfile player)
 	{
+		JDBCWriteQueue.Write pending = writeQueue.getPending(gameDataKey(dim, player));
+		if(pending instanceof PlayerWrite)
+			return ((PlayerWrite)pending).getNBT();
+
 		int id = playerIDs.get(player.getId());
 		if(id == -1)
 			return null;
@@ -191,36 +201,16 @@ public class JDBCDataProvider implements IDataProvider
 	@Override
 	public void savePlayer(final int dim, final GameProfile player, final NBTTagCompound nbt)
 	{
-		GlobalExecutors.writingIO().execute(new Runnable()
+		writeQueue.add(new PlayerWrite(gameDataKey(dim, player), "INSERT INTO `"+tab_player_gamedata+"` (`pid`, `data`, `forDim`, `curDim`) VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE "
+				+ "`data`=values(data), `forDim`=values(forDim), `curDim`=values(curDim)", player, nbt)
 		{
 			@Override
-			public void run()
+			protected void bind(PreparedStatement ps) throws SQLException
 			{
-				int id = playerIDs.get(player.getId());
-
-				Connection conn = null;
-				PreparedStatement ps = null;
-				try
-				{
-					conn = ds.getConnection();
-					if(id == -1)
-						id = createPlayerID(conn, player);
-					ps = conn.prepareStatement("INSERT INTO `"+tab_player_gamedata+"` (`pid`, `data`, `forDim`, `curDim`) VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE "
-							+ "`data`=values(data), `forDim`=values(forDim), `curDim`=values(curDim)");
-					ps.setInt(1, id);
-					ps.setBytes(2, CompressedStreamTools.compress(nbt));
-					ps.setInt(3, dim);
-					ps.setInt(4, nbt.getInteger("Dimension"));
-					ps.executeUpdate();
-				}
-				catch(Exception e)
-				{
-					log.warn("Failed to save player gamedata " + player.getName(), e);
-				}
-				finally
-				{
-					close(conn, ps, null);
-				}
+				ps.setInt(1, id);
+				ps.setBytes(2, getCompressed());
+				ps.setInt(3, dim);
+				ps.setInt(4, nbt.getInteger("Dimension"));
 			}
 		});
 	}
@@ -228,6 +218,10 @@ public class JDBCDataProvider implements IDataProvider
 	@Override
 	public PlayerData loadPlayerData(GameProfile player)
 	{
+		JDBCWriteQueue.Write pending = writeQueue.getPending(playerDataKey(player));
+		if(pending instanceof PlayerWrite)
+			return readPlayerData(((PlayerWrite)pending).getNBT());
+
 		int id = playerIDs.get(player.getId());
 		if(id == -1)
 			return readPlayerData(null);
@@ -299,34 +293,13 @@ public class JDBCDataProvider implements IDataProvider
 		}
 		
 		final GameProfile player = data.getProfile();
-		
-		GlobalExecutors.writingIO().execute(new Runnable()
+		writeQueue.add(new PlayerWrite(playerDataKey(player), "INSERT INTO `"+tab_player_data+"` (`pid`, `data`) VALUES (?, ?) ON DUPLICATE KEY UPDATE `data`=values(data)", player, nbt)
 		{
 			@Override
-			public void run()
+			protected void bind(PreparedStatement ps) throws SQLException
 			{
-				int id = playerIDs.get(player.getId());
-				
-				Connection conn = null;
-				PreparedStatement ps = null;
-				try
-				{
-					conn = ds.getConnection();
-					if(id == -1)
-						id = createPlayerID(conn, player);
-					ps = conn.prepareStatement("INSERT INTO `"+tab_player_data+"` (`pid`, `data`) VALUES (?, ?) ON DUPLICATE KEY UPDATE `data`=values(data)");
-					ps.setInt(1, id);
-					ps.setBytes(2, CompressedStreamTools.compress(nbt));
-					ps.executeUpdate();
-				}
-				catch(Exception e)
-				{
-					log.warn("Failed to save player data " + player.getName(), e);
-				}
-				finally
-				{
-					close(conn, ps, null);
-				}
+				ps.setInt(1, id);
+				ps.setBytes(2, getCompressed());
 			}
 		});
 	}
@@ -373,40 +346,22 @@ public class JDBCDataProvider implements IDataProvider
 	@Override
 	public void saveWarp(final String name, final WarpLocation warp)
 	{
-		GlobalExecutors.writingIO().execute(new Runnable()
+		writeQueue.add(new JDBCWriteQueue.Write("warp:" + name, "INSERT INTO `"+tab_warps+"` (`name`, `dimension`, `x`, `y`, `z`, `yaw`, `pitch`, `random`) VALUES "
+				+ "(?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE "
+				+ "`dimension`=values(dimension), `x`=values(x), `y`=values(y), `z`=values(z), `yaw`=values(yaw), `pitch`=values(pitch), `random`=values(random)")
 		{
 			@Override
-			public void run()
+			protected void bind(PreparedStatement ps) throws SQLException
 			{
-				Connection conn = null;
-				PreparedStatement ps = null;
-				try
-				{
-					conn = ds.getConnection();
-					ps = conn.prepareStatement("INSERT INTO `"+tab_warps+"` (`name`, `dimension`, `x`, `y`, `z`, `yaw`, `pitch`, `random`) VALUES "
-							+ "(?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE "
-							+ "`dimension`=values(dimension), `x`=values(x), `y`=values(y), `z`=values(z), `yaw`=values(yaw), `pitch`=values(pitch), `random`=values(random)");
-					
-					ps.setString(1, name);
-					
-					ps.setInt(2, warp.dimension);
-					ps.setDouble(3, warp.x);
-					ps.setDouble(4, warp.y);
-					ps.setDouble(5, warp.z);
-					ps.setFloat(6, warp.yaw);
-					ps.setFloat(7, warp.pitch);
-					ps.setDouble(8, warp.randomRadius);
-					
-					ps.executeUpdate();
-				}
-				catch(Exception e)
-				{
-					log.warn("Failed to save warp: " + name, e);
-				}
-				finally
-				{
-					close(conn, ps, null);
-				}
+				ps.setString(1, name);
+
+				ps.setInt(2, warp.dimension);
+				ps.setDouble(3, warp.x);
+				ps.setDouble(4, warp.y);
+				ps.setDouble(5, warp.z);
+				ps.setFloat(6, warp.yaw);
+				ps.setFloat(7, warp.pitch);
+				ps.setDouble(8, warp.randomRadius);
 			}
 		});
 	}
@@ -414,28 +369,13 @@ public class JDBCDataProvider implements IDataProvider
 	@Override
 	public void removeWarp(final String name)
 	{
-		GlobalExecutors.writingIO().execute(new Runnable()
+		// Same key as saveWarp, so only the last of queued save and remove is executed
+		writeQueue.add(new JDBCWriteQueue.Write("warp:" + name, "DELETE FROM `"+tab_warps+"` WHERE `name`=?")
 		{
 			@Override
-			public void run()
+			protected void bind(PreparedStatement ps) throws SQLException
 			{
-				Connection conn = null;
-				PreparedStatement ps = null;
-				try
-				{
-					conn = ds.getConnection();
-					ps = conn.prepareStatement("DELETE FROM `"+tab_warps+"` WHERE `name`=?");
-					ps.setString(1, name);
-					ps.executeUpdate();
-				}
-				catch(Exception e)
-				{
-					log.warn("Failed to remove warp: " + name, e);
-				}
-				finally
-				{
-					close(conn, ps, null);
-				}
+				ps.setString(1, name);
 			}
 		});
 	}
@@ -446,7 +386,6 @@ public class JDBCDataProvider implements IDataProvider
 		ResultSet rs = null;
 		try
 		{
-			conn = ds.getConnection();
 			ps = conn.prepareStatement("INSERT INTO `"+tab_player_ids+"` (`uuid`) VALUES (?)", Statement.RETURN_GENERATED_KEYS);
 			ps.setBytes(1, toBytes(player.getId()));
 			ps.executeUpdate();
@@ -469,6 +408,42 @@ public class JDBCDataProvider implements IDataProvider
 		}
 	}
 
+	private static String gameDataKey(int dim, GameProfile player)
+	{
+		return "gamedata:" + player.getId() + ":" + dim;
+	}
+
+	private static String playerDataKey(GameProfile player)
+	{
+		return "data:" + player.getId();
+	}
+
+	private abstract class PlayerWrite extends JDBCWriteQueue.NBTWrite
+	{
+		private final GameProfile player;
+		protected int id;
+
+		PlayerWrite(String key, String sql, GameProfile player, NBTTagCompound nbt)
+		{
+			super(key, sql, nbt);
+			this.player = player;
+		}
+
+		@Override
+		protected void prepare(Connection conn) throws SQLException
+		{
+			id = playerIDs.get(player.getId());
+			if(id == -1)
+				id = createPlayerID(conn, player);
+		}
+
+		@Override
+		public String toString()
+		{
+			return key + " (" + player.getName() + ")";
+		}
+	}
+
 	private void close(Connection conn, Statement ps, ResultSet rs)
 	{
 		if(rs != null) try{rs.close();} catch(SQLException e){}
@@ -0,0 +1,285 @@
+package org.ultramine.server.data;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ultramine.server.util.GlobalExecutors;
+import org.ultramine.server.util.LatencyRecorder;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind queue of {@link JDBCDataProvider}. Writes are keyed, a newer write replaces a queued one with the same
+ * key. Queued writes are flushed on {@link GlobalExecutors#writingIO()} thread in JDBC batches, one batch per SQL
+ * statement, inside a single transaction. NBT is compressed on a separate worker pool as soon as a write is queued.
+ * <p>
+ * Writes stay visible through {@link #getPending(String)} until their transaction is committed, so loads do not
+ * read stale data from the database.
+ */
+@ThreadSafe
+public class JDBCWriteQueue
+{
+	private static final Logger log = LogManager.getLogger();
+	private static final ExecutorService compressor = Executors.newFixedThreadPool(
+			Integer.parseInt(System.getProperty("org.ultramine.data.compression.threads", "2")),
+			new ThreadFactoryBuilder().setNameFormat("UM data compression #%d").setDaemon(true).build());
+
+	private final DataSource ds;
+	private final Object lock = new Object();
+	private Map<String, Write> pending = new LinkedHashMap<>(); // guarded by lock
+	private Map<String, Write> flushing = Collections.emptyMap(); // guarded by lock
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	private final Runnable flushTask = this::flush;
+
+	private final LatencyRecorder queueLatency = new LatencyRecorder(1024);
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong batchedWrites = new AtomicLong();
+	private final AtomicLong coalescedWrites = new AtomicLong();
+	private volatile int lastBatchSize;
+
+	public JDBCWriteQueue(DataSource ds)
+	{
+		this.ds = ds;
+	}
+
+	public void add(Write write)
+	{
+		synchronized(lock)
+		{
+			if(pending.put(write.key, write) != null)
+				coalescedWrites.incrementAndGet();
+		}
+		if(flushScheduled.compareAndSet(false, true))
+			GlobalExecutors.writingIO().execute(flushTask);
+	}
+
+	/** @return the latest not yet committed write with the given key, or null */
+	public Write getPending(String key)
+	{
+		synchronized(lock)
+		{
+			Write write = pending.get(key);
+			return write != null ? write : flushing.get(key);
+		}
+	}
+
+	private void flush()
+	{
+		flushScheduled.set(false);
+		Map<String, Write> batch;
+		synchronized(lock)
+		{
+			batch = pending;
+			if(batch.isEmpty())
+				return;
+			pending = new LinkedHashMap<>();
+			flushing = batch;
+		}
+
+		try
+		{
+			if(!writeBatch(batch))
+				writeOneByOne(batch);
+			long now = System.nanoTime();
+			for(Write write : batch.values())
+				queueLatency.record(now - write.queuedAt);
+			batches.incrementAndGet();
+			batchedWrites.addAndGet(batch.size());
+			lastBatchSize = batch.size();
+		}
+		finally
+		{
+			synchronized(lock)
+			{
+				flushing = Collections.emptyMap();
+			}
+		}
+	}
+
+	/** @return false if the transaction was rolled back */
+	private boolean writeBatch(Map<String, Write> batch)
+	{
+		Connection conn = null;
+		Map<String, PreparedStatement> statements = new LinkedHashMap<>();
+		try
+		{
+			conn = ds.getConnection();
+			List<Write> prepared = new ArrayList<>(batch.size());
+			for(Write write : batch.values())
+			{
+				try
+				{
+					write.prepare(conn);
+					prepared.add(write);
+				}
+				catch(Exception e)
+				{
+					log.warn("Failed to prepare " + write, e);
+				}
+			}
+
+			conn.setAutoCommit(false);
+			for(Write write : prepared)
+			{
+				PreparedStatement ps = statements.get(write.sql);
+				if(ps == null)
+					statements.put(write.sql, ps = conn.prepareStatement(write.sql));
+				write.bind(ps);
+				ps.addBatch();
+			}
+			for(PreparedStatement ps : statements.values())
+				ps.executeBatch();
+			conn.commit();
+			return true;
+		}
+		catch(Exception e)
+		{
+			log.warn("Failed to save batch of " + batch.size() + " writes, retrying one by one", e);
+			if(conn != null) try{conn.rollback();} catch(SQLException ignored){}
+			return false;
+		}
+		finally
+		{
+			for(PreparedStatement ps : statements.values())
+				try{ps.close();} catch(SQLException ignored){}
+			if(conn != null) try{conn.setAutoCommit(true);} catch(SQLException ignored){}
+			if(conn != null) try{conn.close();} catch(SQLException ignored){}
+		}
+	}
+
+	private void writeOneByOne(Map<String, Write> batch)
+	{
+		for(Write write : batch.values())
+		{
+			Connection conn = null;
+			PreparedStatement ps = null;
+			try
+			{
+				conn = ds.getConnection();
+				write.prepare(conn);
+				ps = conn.prepareStatement(write.sql);
+				write.bind(ps);
+				ps.executeUpdate();
+			}
+			catch(Exception e)
+			{
+				log.warn("Failed to save " + write, e);
+			}
+			finally
+			{
+				if(ps != null) try{ps.close();} catch(SQLException ignored){}
+				if(conn != null) try{conn.close();} catch(SQLException ignored){}
+			}
+		}
+	}
+
+	/** @return time between queueing and commit of recent writes */
+	public LatencyRecorder getQueueLatency()
+	{
+		return queueLatency;
+	}
+
+	public double getMeanBatchSize()
+	{
+		long count = batches.get();
+		return count == 0 ? 0 : (double) batchedWrites.get() / count;
+	}
+
+	public int getLastBatchSize()
+	{
+		return lastBatchSize;
+	}
+
+	/** @return number of writes replaced by a newer write with the same key before flush */
+	public long getCoalescedWrites()
+	{
+		return coalescedWrites.get();
+	}
+
+	public int getQueueSize()
+	{
+		synchronized(lock)
+		{
+			return pending.size();
+		}
+	}
+
+	public static abstract class Write
+	{
+		final String key;
+		final String sql;
+		final long queuedAt = System.nanoTime();
+
+		protected Write(String key, String sql)
+		{
+			this.key = key;
+			this.sql = sql;
+		}
+
+		/** Called on writing thread before the batch transaction, for example to create missing ids */
+		protected void prepare(Connection conn) throws SQLException
+		{
+		}
+
+		/** Sets statement parameters, called on writing thread inside the batch transaction */
+		protected abstract void bind(PreparedStatement ps) throws SQLException;
+
+		@Override
+		public String toString()
+		{
+			return key;
+		}
+	}
+
+	/** Write of compressed NBT, compression is started on the worker pool right away */
+	public static abstract class NBTWrite extends Write
+	{
+		private final NBTTagCompound nbt;
+		private final CompletableFuture<byte[]> compressed;
+
+		protected NBTWrite(String key, String sql, NBTTagCompound nbt)
+		{
+			super(key, sql);
+			this.nbt = nbt;
+			this.compressed = CompletableFuture.supplyAsync(() -> {
+				try
+				{
+					return CompressedStreamTools.compress(nbt);
+				}
+				catch(IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}, compressor);
+		}
+
+		/** @return a copy of written NBT */
+		public NBTTagCompound getNBT()
+		{
+			return (NBTTagCompound) nbt.copy();
+		}
+
+		protected byte[] getCompressed()
+		{
+			return compressed.join();
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package org.ultramine.server.event;
+
+import cpw.mods.fml.common.eventhandler.Event;
+import cpw.mods.fml.common.eventhandler.IEventListener;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in profiler of event posting, counts posted events per type and measures time spent by every listener. Filled by
+ * {@link cpw.mods.fml.common.eventhandler.EventBus} of all buses while enabled, results are shown by
+ * {@code /eventdebug} command.
+ */
+@ThreadSafe
+public class EventProfiler
+{
+	private static volatile boolean enabled;
+	private static final ConcurrentMap<Class<?>, Entry> events = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<IEventListener, Entry> listeners = new ConcurrentHashMap<>();
+
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/** Enabling profiler resets previously collected results */
+	public static void setEnabled(boolean enabled)
+	{
+		if(enabled && !EventProfiler.enabled)
+		{
+			events.clear();
+			listeners.clear();
+		}
+		EventProfiler.enabled = enabled;
+	}
+
+	public static void recordPost(Event event, long nanos)
+	{
+		events.computeIfAbsent(event.getClass(), cls -> new Entry(cls.getName())).record(nanos);
+	}
+
+	public static void recordListener(IEventListener listener, long nanos)
+	{
+		listeners.computeIfAbsent(listener, l -> new Entry(l.toString())).record(nanos);
+	}
+
+	/** @return event types sorted by total time of all listeners, descending */
+	public static List<Entry> getEvents()
+	{
+		return sorted(events.values());
+	}
+
+	/** @return listeners sorted by total time, descending */
+	public static List<Entry> getListeners()
+	{
+		return sorted(listeners.values());
+	}
+
+	private static List<Entry> sorted(Iterable<Entry> entries)
+	{
+		List<Entry> list = new ArrayList<>();
+		for(Entry entry : entries)
+			list.add(entry);
+		list.sort(Comparator.comparingLong(Entry::getTotalTime).reversed());
+		return list;
+	}
+
+	public static class Entry
+	{
+		private final String name;
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalTime = new AtomicLong();
+
+		private Entry(String name)
+		{
+			this.name = name;
+		}
+
+		private void record(long nanos)
+		{
+			count.incrementAndGet();
+			totalTime.addAndGet(nanos);
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public long getCount()
+		{
+			return count.get();
+		}
+
+		/** @return total time in nanoseconds */
+		public long getTotalTime()
+		{
+			return totalTime.get();
+		}
+	}
+}
@@ -39,7 +39,7 @@ public class ServerWorldEventProxy extends WorldEventProxy
 	public void pushState(WorldUpdateObjectType state)
 	{
 		object.setType(state);
-		current = this;
+		setCurrent(this);
 	}
 	
 	@Override
@@ -49,7 +49,7 @@ public class ServerWorldEventProxy extends WorldEventProxy
 		object.setEntity(null);
 		object.setTileEntity(null);
 		object.setBlockUpdateInitiator(null);
-		current = null;
+		setCurrent(null);
 	}
 	
 	@Override
@@ -140,6 +140,9 @@ public class ServerWorldEventProxy extends WorldEventProxy
 			}
 		}
 		
+		if(!MinecraftForge.EVENT_BUS.hasListeners(SetBlockEvent.class))
+			return true;
+		
 		boolean isNeighbor = neighborStack.size() > 0;
 		boolean isNeighborItself = isNeighbor && neighborStack.get(neighborStack.size() - 1) == ChunkHash.blockCoordToHash(x, y, z);
 		
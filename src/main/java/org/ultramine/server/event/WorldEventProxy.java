@@ -7,6 +7,7 @@ import net.minecraft.entity.Entity;
 import net.minecraft.item.ItemStack;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.world.World;
+import org.ultramine.server.world.ParallelWorldTicker.WorldTickThread;
 
 public class WorldEventProxy
 {
@@ -14,8 +15,20 @@ public class WorldEventProxy
 	
 	public static WorldEventProxy getCurrent()
 	{
+		Thread thread = Thread.currentThread();
+		if(thread instanceof WorldTickThread)
+			return ((WorldTickThread) thread).getEventProxy();
 		return current;
 	}
+
+	protected static void setCurrent(WorldEventProxy proxy)
+	{
+		Thread thread = Thread.currentThread();
+		if(thread instanceof WorldTickThread)
+			((WorldTickThread) thread).setEventProxy(proxy);
+		else
+			current = proxy;
+	}
 	
 	public World getWorld()
 	{
@@ -2,11 +2,8 @@ package org.ultramine.server.internal;
 
 import net.minecraft.entity.Entity;
 import net.minecraft.tileentity.TileEntity;
-import net.openhft.koloboke.collect.map.ShortObjMap;
-import net.openhft.koloboke.collect.map.hash.HashShortObjMaps;
 import org.ultramine.server.util.CachedEntry;
 
-import java.util.TreeSet;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
@@ -17,16 +14,6 @@ public class LambdaHolder
 	public static final Predicate<?> TILE_ENTITY_REMOVAL_PREDICATE = o -> ((TileEntity)o).removeThisTick;
 	public static final Supplier<Boolean> BOOLEAN_FALSE_SUPPLIER = () -> Boolean.FALSE;
 
-	public static <T> Supplier<TreeSet<T>> newTreeSet()
-	{
-		return TreeSet::new;
-	}
-
-	public static <T> Supplier<ShortObjMap<T>> newShortObjMap()
-	{
-		return HashShortObjMaps::newMutableMap;
-	}
-
 	@SuppressWarnings({"Guava"})
 	public static <T> com.google.common.base.Function<CachedEntry<T>, T> cachedEntryGetValueGuavaFunc()
 	{
@@ -40,6 +40,7 @@ import org.ultramine.server.chunk.ChunkGenerationQueue;
 import org.ultramine.server.chunk.ChunkSnapshot;
 import org.ultramine.server.event.WorldEventProxy;
 import org.ultramine.server.event.WorldUpdateObject;
+import org.ultramine.server.world.ParallelWorldTicker;
 
 import com.mojang.authlib.GameProfile;
 import org.ultramine.server.util.GlobalExecutors;
@@ -59,7 +60,7 @@ public class UMHooks
 		}
 		
 		log.error("Direct Throwable.printStackTrace() call");
-		if(Thread.currentThread().getName().equals("Server thread"))
+		if(Thread.currentThread().getName().equals("Server thread") || ParallelWorldTicker.isWorldThread())
 		{
 			WorldEventProxy wep = WorldEventProxy.getCurrent();
 			if(wep != null)
@@ -282,7 +283,16 @@ public class UMHooks
 
 	public static ChunkPacketData extractAndDeflateChunkPacketData(Deflater deflater, ChunkSnapshot chunkSnapshot)
 	{
-		return new ChunkPacker(deflater, chunkSnapshot).pack();
+		return new ChunkPacker(deflater, chunkSnapshot, 0xFFFF, true).pack();
+	}
+
+	/**
+	 * Packs only sections of the given mask (including empty ones), without biomes, as vanilla does for chunk
+	 * updates which are not "ground-up continuous"
+	 */
+	public static ChunkPacketData extractAndDeflateChunkSections(Deflater deflater, ChunkSnapshot chunkSnapshot, int sectionMask)
+	{
+		return new ChunkPacker(deflater, chunkSnapshot, sectionMask, false).pack();
 	}
 
 	private static class ChunkPacker
@@ -291,13 +301,17 @@ public class UMHooks
 		private static final byte[] EMPTY_CHUNK_SEQUENCE = {120, -38, -19, -63, 49, 1, 0, 0, 0, -62, -96, -11, 79, 109, 13, 15, -96, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, -128, 119, 3, 48, 0, 0, 1};
 		private final Deflater deflater;
 		private final ChunkSnapshot chunkSnapshot;
+		private final int sectionMask;
+		private final boolean groundUp;
 		private byte[] data;
 		private int dataLen;
 
-		private ChunkPacker(Deflater deflater, ChunkSnapshot chunkSnapshot)
+		private ChunkPacker(Deflater deflater, ChunkSnapshot chunkSnapshot, int sectionMask, boolean groundUp)
 		{
 			this.deflater = deflater;
 			this.chunkSnapshot = chunkSnapshot;
+			this.sectionMask = sectionMask;
+			this.groundUp = groundUp;
 		}
 
 		public ChunkPacketData pack()
@@ -309,11 +323,11 @@ public class UMHooks
 			for(int i = 0; i < ebsArr.length; ++i)
 			{
 				ExtendedBlockStorage ebs = ebsArr[i];
-				if(ebs != null && !ebs.isEmpty())
+				if(ebs != null && (sectionMask & (1 << i)) != 0 && (!groundUp || !ebs.isEmpty()))
 					mask |= 1 << i;
 			}
 
-			if(mask == 0)
+			if(mask == 0 && groundUp)
 				return new ChunkPacketData(EMPTY_CHUNK_SEQUENCE, EMPTY_CHUNK_SEQUENCE.length, 1); // Simulates empty 0-level EBS
 
 			this.data = new byte[4096];
@@ -322,7 +336,7 @@ public class UMHooks
 			for(int i = 0; i < ebsArr.length; ++i)
 			{
 				ExtendedBlockStorage ebs = ebsArr[i];
-				if(ebs != null && !ebs.isEmpty())
+				if((mask & (1 << i)) != 0)
 				{
 					ebs.getSlot().copyLSB(buf, 0);
 					write(buf, 4096);
@@ -332,7 +346,7 @@ public class UMHooks
 			for(int i = 0; i < ebsArr.length; ++i)
 			{
 				ExtendedBlockStorage ebs = ebsArr[i];
-				if(ebs != null && !ebs.isEmpty())
+				if((mask & (1 << i)) != 0)
 				{
 					ebs.getSlot().copyBlockMetadata(buf, 0);
 					write(buf, 2048);
@@ -342,7 +356,7 @@ public class UMHooks
 			for(int i = 0; i < ebsArr.length; ++i)
 			{
 				ExtendedBlockStorage ebs = ebsArr[i];
-				if(ebs != null && !ebs.isEmpty())
+				if((mask & (1 << i)) != 0)
 				{
 					ebs.getSlot().copyBlocklight(buf, 0);
 					write(buf, 2048);
@@ -354,7 +368,7 @@ public class UMHooks
 				for(int i = 0; i < ebsArr.length; ++i)
 				{
 					ExtendedBlockStorage ebs = ebsArr[i];
-					if(ebs != null && !ebs.isEmpty())
+					if((mask & (1 << i)) != 0)
 					{
 						ebs.getSlot().copySkylight(buf, 0);
 						write(buf, 2048);
@@ -365,14 +379,15 @@ public class UMHooks
 			for(int i = 0; i < ebsArr.length; ++i)
 			{
 				ExtendedBlockStorage ebs = ebsArr[i];
-				if(ebs != null && !ebs.isEmpty())
+				if((mask & (1 << i)) != 0)
 				{
 					ebs.getSlot().copyMSB(buf, 0);
 					write(buf, 2048);
 				}
 			}
 
-			write(chunkSnapshot.getBiomeArray(), chunkSnapshot.getBiomeArray().length);
+			if(groundUp)
+				write(chunkSnapshot.getBiomeArray(), chunkSnapshot.getBiomeArray().length);
 
 			deflater.finish();
 			while (!deflater.finished()) {
@@ -0,0 +1,177 @@
+package org.ultramine.server.network;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import net.minecraft.network.NetworkManager;
+import net.minecraft.network.Packet;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbound packet path of a play connection, enabled by {@code -Dorg.ultramine.network.coalesceWrites=true}.
+ * Packets are written to the channel without flush. Packets sent from other threads are queued and written by a
+ * single event loop task, which is scheduled once per server tick by {@link NetworkManager#processReceivedPackets()}
+ * and also flushes the channel. The channel is flushed earlier when more than
+ * {@code -Dorg.ultramine.network.flushThresholdKb} is written or too many packets are queued.
+ * <p>
+ * Packets written from the event loop itself keep order with queued ones: they are queued too while the queue is not
+ * empty.
+ */
+@ThreadSafe
+public final class CoalescingWriter
+{
+	private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("org.ultramine.network.coalesceWrites", "false"));
+	private static final int FLUSH_THRESHOLD = Integer.parseInt(System.getProperty("org.ultramine.network.flushThresholdKb", "64")) * 1024;
+	private static final int MAX_QUEUED_PACKETS = 1024;
+	private static final long ROLL_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+	private static final AtomicLong flushes = new AtomicLong();
+	private static final AtomicLong flushedBytes = new AtomicLong();
+	private static final AtomicLong tasks = new AtomicLong();
+	private static volatile long lastRoll = System.nanoTime();
+	private static volatile double flushesPerSecond;
+	private static volatile double bytesPerFlush;
+	private static volatile double tasksPerSecond;
+
+	private final Channel channel;
+	private final Queue<PendingWrite> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicBoolean taskScheduled = new AtomicBoolean();
+	private final Runnable task = this::runTask;
+	private int unflushedBytes; // event loop only
+
+	public CoalescingWriter(Channel channel)
+	{
+		this.channel = channel;
+	}
+
+	public static boolean isEnabled()
+	{
+		return ENABLED;
+	}
+
+	/** May be called from any thread */
+	public void write(Packet packet, GenericFutureListener<? extends Future<? super Void>>[] listeners)
+	{
+		if(channel.eventLoop().inEventLoop() && queue.isEmpty())
+		{
+			doWrite(packet, listeners);
+			return;
+		}
+
+		queue.add(new PendingWrite(packet, listeners));
+		if(queued.incrementAndGet() >= MAX_QUEUED_PACKETS)
+			flush();
+	}
+
+	/** Writes and flushes all pending packets in a single event loop task. May be called from any thread */
+	public void flush()
+	{
+		if(channel.eventLoop().inEventLoop())
+		{
+			runTask();
+		}
+		else if(taskScheduled.compareAndSet(false, true))
+		{
+			tasks.incrementAndGet();
+			channel.eventLoop().execute(task);
+		}
+	}
+
+	/** Writes queued packets without flush, must be called from event loop before any packet written bypassing this writer */
+	public void drain()
+	{
+		for(PendingWrite write; (write = queue.poll()) != null;)
+		{
+			queued.decrementAndGet();
+			doWrite(write.packet, write.listeners);
+		}
+	}
+
+	/** Called by encoder from event loop */
+	public void onEncoded(int bytes)
+	{
+		unflushedBytes += bytes;
+	}
+
+	private void runTask()
+	{
+		taskScheduled.set(false);
+		drain();
+		doFlush();
+	}
+
+	private void doWrite(Packet packet, GenericFutureListener<? extends Future<? super Void>>[] listeners)
+	{
+		channel.write(packet).addListeners(listeners).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+		if(unflushedBytes >= FLUSH_THRESHOLD)
+			doFlush();
+	}
+
+	private void doFlush()
+	{
+		int bytes = unflushedBytes;
+		if(bytes == 0)
+			return;
+		unflushedBytes = 0;
+		channel.flush();
+		flushes.incrementAndGet();
+		flushedBytes.addAndGet(bytes);
+	}
+
+	public static void roll()
+	{
+		long now = System.nanoTime();
+		long last = lastRoll;
+		if(now - last < ROLL_INTERVAL)
+			return;
+		synchronized(CoalescingWriter.class)
+		{
+			if(lastRoll != last)
+				return;
+			double seconds = (now - last) / 1e9;
+			long flushCount = flushes.getAndSet(0);
+			long bytes = flushedBytes.getAndSet(0);
+			flushesPerSecond = flushCount / seconds;
+			bytesPerFlush = flushCount == 0 ? 0 : (double) bytes / flushCount;
+			tasksPerSecond = tasks.getAndSet(0) / seconds;
+			lastRoll = now;
+		}
+	}
+
+	public static double getFlushesPerSecond()
+	{
+		return flushesPerSecond;
+	}
+
+	public static double getBytesPerFlush()
+	{
+		return bytesPerFlush;
+	}
+
+	/** @return event loop tasks scheduled by all writers per second */
+	public static double getTasksPerSecond()
+	{
+		return tasksPerSecond;
+	}
+
+	private static final class PendingWrite
+	{
+		final Packet packet;
+		final GenericFutureListener<? extends Future<? super Void>>[] listeners;
+
+		PendingWrite(Packet packet, GenericFutureListener<? extends Future<? super Void>>[] listeners)
+		{
+			this.packet = packet;
+			this.listeners = listeners;
+		}
+	}
+}
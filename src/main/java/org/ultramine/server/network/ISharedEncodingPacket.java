@@ -0,0 +1,13 @@
+package org.ultramine.server.network;
+
+import javax.annotation.Nullable;
+
+/**
+ * Packet which may be sent to many players with exactly the same content. If {@link #getSharedEncoding()} returns
+ * non-null value, the packet is serialized only once and the resulting bytes are copied to every connection.
+ */
+public interface ISharedEncodingPacket
+{
+	@Nullable
+	SharedPacketEncoding getSharedEncoding();
+}
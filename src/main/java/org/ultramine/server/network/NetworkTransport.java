@@ -0,0 +1,126 @@
+package org.ultramine.server.network;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import net.minecraft.network.NetworkStatistics;
+import net.minecraft.util.MessageSerializer;
+import net.minecraft.util.MessageSerializer2;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Server socket transport selection.
+ * <p>
+ * Native epoll transport is used on Linux if netty-transport-native-epoll of matching version is present in
+ * classpath (it is not shipped with the server), disabled by {@code -Dorg.ultramine.network.epoll=false}. Epoll
+ * classes are accessed reflectively, so server falls back to NIO if they are missing or native library can not be
+ * loaded.
+ * <p>
+ * With {@code -Dorg.ultramine.network.pooledDirect=true} child channels use pooled allocator and
+ * {@link MessageSerializer} writes packet length prefix in place (as 3-byte varint), so the prepender does not copy
+ * every packet to add it.
+ */
+public final class NetworkTransport
+{
+	private static final Logger log = LogManager.getLogger();
+	private static final boolean EPOLL = Boolean.parseBoolean(System.getProperty("org.ultramine.network.epoll", "true"));
+	private static final boolean POOLED_DIRECT = Boolean.parseBoolean(System.getProperty("org.ultramine.network.pooledDirect", "false"));
+	private static final String EPOLL_PACKAGE = "io.netty.channel.epoll.";
+
+	private static final boolean epollAvailable = EPOLL && checkEpoll();
+
+	private NetworkTransport()
+	{
+	}
+
+	private static boolean checkEpoll()
+	{
+		if(!System.getProperty("os.name", "").toLowerCase().startsWith("linux"))
+			return false;
+		try
+		{
+			Class<?> epoll = Class.forName(EPOLL_PACKAGE + "Epoll");
+			if((Boolean) epoll.getMethod("isAvailable").invoke(null))
+				return true;
+			log.info("Native epoll transport is not available, using NIO");
+		}
+		catch(ClassNotFoundException ignored)
+		{
+		}
+		catch(ReflectiveOperationException | LinkageError e)
+		{
+			log.warn("Failed to check native epoll transport, using NIO", e);
+		}
+		return false;
+	}
+
+	public static boolean isEpoll()
+	{
+		return epollAvailable;
+	}
+
+	public static boolean isPooledDirect()
+	{
+		return POOLED_DIRECT;
+	}
+
+	public static EventLoopGroup newEventLoopGroup(ThreadFactory threadFactory)
+	{
+		if(epollAvailable)
+		{
+			try
+			{
+				EventLoopGroup group = (EventLoopGroup) Class.forName(EPOLL_PACKAGE + "EpollEventLoopGroup")
+						.getConstructor(int.class, ThreadFactory.class).newInstance(0, threadFactory);
+				log.info("Using native epoll transport");
+				return group;
+			}
+			catch(ReflectiveOperationException | LinkageError e)
+			{
+				log.warn("Failed to create epoll event loop group, using NIO", e);
+			}
+		}
+		return new NioEventLoopGroup(0, threadFactory);
+	}
+
+	/** @return server channel class matching type of the given event loop group */
+	@SuppressWarnings("unchecked")
+	public static Class<? extends ServerChannel> getServerChannelClass(EventLoopGroup group)
+	{
+		if(!(group instanceof NioEventLoopGroup))
+		{
+			try
+			{
+				return (Class<? extends ServerChannel>) Class.forName(EPOLL_PACKAGE + "EpollServerSocketChannel");
+			}
+			catch(ClassNotFoundException e)
+			{
+				throw new IllegalStateException(e);
+			}
+		}
+		return NioServerSocketChannel.class;
+	}
+
+	public static PooledByteBufAllocator getAllocator()
+	{
+		return PooledByteBufAllocator.DEFAULT;
+	}
+
+	public static ChannelHandler newPrepender()
+	{
+		// Pass-through handler keeps "prepender" name in pipeline, encryption handler is inserted before it
+		return POOLED_DIRECT ? new ChannelOutboundHandlerAdapter() : new MessageSerializer2();
+	}
+
+	public static ChannelHandler newEncoder(NetworkStatistics statistics)
+	{
+		return new MessageSerializer(statistics, POOLED_DIRECT);
+	}
+}
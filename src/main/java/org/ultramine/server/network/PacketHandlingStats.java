@@ -0,0 +1,90 @@
+package org.ultramine.server.network;
+
+import net.minecraft.network.Packet;
+import org.ultramine.server.util.LatencyRecorder;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per packet type counters and handling time histograms of received packets. Packets with {@link Packet#hasPriority()}
+ * are handled on network threads, others are queued and handled on server thread.
+ */
+@ThreadSafe
+public class PacketHandlingStats
+{
+	private static final List<Entry> entries = new CopyOnWriteArrayList<>();
+	private static final ClassValue<Entry> byClass = new ClassValue<Entry>()
+	{
+		@Override
+		protected Entry computeValue(Class<?> type)
+		{
+			Entry entry = new Entry(type.getSimpleName());
+			entries.add(entry);
+			return entry;
+		}
+	};
+
+	public static void record(Packet packet, long nanos, boolean networkThread)
+	{
+		Entry entry = byClass.get(packet.getClass());
+		entry.networkThread = networkThread;
+		entry.count.incrementAndGet();
+		entry.totalTime.addAndGet(nanos);
+		entry.time.record(nanos);
+	}
+
+	/** @return all packet types ever received, sorted by total handling time, descending */
+	public static List<Entry> getEntries()
+	{
+		List<Entry> list = new ArrayList<>(entries);
+		list.sort(Comparator.comparingLong(Entry::getTotalTime).reversed());
+		return list;
+	}
+
+	public static class Entry
+	{
+		private final String name;
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalTime = new AtomicLong();
+		private final LatencyRecorder time = new LatencyRecorder(256);
+		private volatile boolean networkThread;
+
+		private Entry(String name)
+		{
+			this.name = name;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public long getCount()
+		{
+			return count.get();
+		}
+
+		/** @return total handling time in nanoseconds */
+		public long getTotalTime()
+		{
+			return totalTime.get();
+		}
+
+		/** @return true if the last packet of this type was handled on network thread */
+		public boolean isNetworkThread()
+		{
+			return networkThread;
+		}
+
+		/** @return handling time of recent packets */
+		public LatencyRecorder getTime()
+		{
+			return time;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package org.ultramine.server.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.Packet;
+import net.minecraft.network.PacketBuffer;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+
+/**
+ * Serialized form of a packet (packet id and body) which is written by the first network thread encoding it and
+ * reused by all other connections. Packet content must not change after it was passed to the first connection.
+ */
+@ThreadSafe
+public final class SharedPacketEncoding
+{
+	private volatile ByteBuf encoded;
+	private int packetId;
+
+	public void encode(Packet packet, int packetId, ByteBuf out) throws IOException
+	{
+		ByteBuf buf = encoded;
+		if(buf == null)
+		{
+			synchronized(this)
+			{
+				buf = encoded;
+				if(buf == null)
+				{
+					buf = Unpooled.buffer();
+					PacketBuffer packetBuffer = new PacketBuffer(buf);
+					packetBuffer.writeVarIntToBuffer(packetId);
+					packet.writePacketData(packetBuffer);
+					this.packetId = packetId;
+					encoded = buf;
+				}
+			}
+		}
+
+		if(this.packetId != packetId) // Same class registered with other id in other connection state, never happens in vanilla
+		{
+			PacketBuffer packetBuffer = new PacketBuffer(out);
+			packetBuffer.writeVarIntToBuffer(packetId);
+			packet.writePacketData(packetBuffer);
+			return;
+		}
+
+		out.writeBytes(buf, buf.readerIndex(), buf.readableBytes());
+	}
+}
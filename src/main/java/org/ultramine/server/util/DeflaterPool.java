@@ -0,0 +1,47 @@
+package org.ultramine.server.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Thread-safe pool of {@link Deflater} instances. Deflater allocates native zlib buffers on creation, so reusing
+ * them is much cheaper than creating a new one for every compressed packet.
+ */
+public class DeflaterPool
+{
+	private final Queue<Deflater> pool = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final int level;
+	private final int limit;
+
+	public DeflaterPool(int level, int limit)
+	{
+		this.level = level;
+		this.limit = limit;
+	}
+
+	public Deflater acquire()
+	{
+		Deflater deflater = pool.poll();
+		if(deflater == null)
+			return new Deflater(level);
+		size.decrementAndGet();
+		return deflater;
+	}
+
+	public void release(Deflater deflater)
+	{
+		if(size.incrementAndGet() <= limit)
+		{
+			deflater.reset();
+			pool.add(deflater);
+		}
+		else
+		{
+			size.decrementAndGet();
+			deflater.end();
+		}
+	}
+}
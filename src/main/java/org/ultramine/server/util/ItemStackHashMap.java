@@ -44,19 +44,25 @@ public class ItemStackHashMap<V> implements Map<ItemStack, V>, UMInternalRegistr
 	{
 		if(key.getItemDamage() == 32767)
 			hasWildcard = true;
-		return fastMap.put(Item.getIdFromItem(key.getItem()) | (key.getItemDamage() << 16), value);
+		return fastMap.put(fastKey(Item.getIdFromItem(key.getItem()), key.getItemDamage()), value);
 	}
 	
 	private V removeFastMap(ItemStack key)
 	{
-		return fastMap.remove(Item.getIdFromItem(key.getItem()) | (key.getItemDamage() << 16));
+		return fastMap.remove(fastKey(Item.getIdFromItem(key.getItem()), key.getItemDamage()));
+	}
+	
+	/** @return key of item id and damage, as used by fast lookup. Valid until ids are remapped */
+	public static int fastKey(int id, int meta)
+	{
+		return id | (meta << 16);
 	}
 	
 	public V get(int id, int meta)
 	{
-		V ret = fastMap.get(id | (meta << 16));
+		V ret = fastMap.get(fastKey(id, meta));
 		if(ret == null && hasWildcard)
-			ret = fastMap.get(id | (32767 << 16));
+			ret = fastMap.get(fastKey(id, 32767));
 		return ret;
 	}
 	
@@ -0,0 +1,60 @@
+package org.ultramine.server.util;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+
+/**
+ * Keeps a fixed number of most recent latency samples and calculates percentiles over them on demand.
+ */
+@ThreadSafe
+public class LatencyRecorder
+{
+	private final long[] samples;
+	private int index;
+	private int size;
+	private long count;
+
+	public LatencyRecorder(int capacity)
+	{
+		this.samples = new long[capacity];
+	}
+
+	public synchronized void record(long nanos)
+	{
+		samples[index] = nanos;
+		index = (index + 1) % samples.length;
+		if(size < samples.length)
+			size++;
+		count++;
+	}
+
+	/** @return total number of recorded samples */
+	public synchronized long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * @param percentiles values in range [0, 100]
+	 * @return latencies in milliseconds for each requested percentile, zeros if there is no samples
+	 */
+	public double[] getPercentilesMillis(double... percentiles)
+	{
+		long[] sorted;
+		synchronized(this)
+		{
+			sorted = Arrays.copyOf(samples, size);
+		}
+		Arrays.sort(sorted);
+		double[] result = new double[percentiles.length];
+		if(sorted.length == 0)
+			return result;
+		for(int i = 0; i < percentiles.length; i++)
+		{
+			int rank = (int) Math.ceil(percentiles[i] / 100d * sorted.length) - 1;
+			long nanos = sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+			result[i] = Math.round(nanos / 10_000d) / 100d;
+		}
+		return result;
+	}
+}
@@ -6,6 +6,7 @@ import net.minecraft.util.MathHelper;
 import net.minecraft.util.MovingObjectPosition;
 import net.minecraft.util.Vec3;
 import net.minecraft.world.World;
+import org.ultramine.server.internal.LambdaHolder;
 
 import java.util.Arrays;
 
@@ -63,7 +64,8 @@ public class MinecraftUtil
 	{
 		private static final byte SIZE = 16;
 		private static final int SIZE_HALF = SIZE / 2;
-		private static final byte[] AREA = new byte[SIZE * SIZE * SIZE];
+		/** Per thread, since worlds may be ticked concurrently */
+		private static final ThreadLocal<byte[]> LOCAL_AREA = ThreadLocal.withInitial(LambdaHolder.newByteArray(SIZE * SIZE * SIZE));
 		private static final int EMPTY = 0;
 		private static final int WOOD = -1;
 		private static final int LEAVES = Byte.MAX_VALUE;
@@ -74,6 +76,7 @@ public class MinecraftUtil
 		private final int by;
 		private final int bz;
 		private final int distance;
+		private final byte[] area = LOCAL_AREA.get();
 
 		public LeavesPathFinder(World world, int bx, int by, int bz, int distance)
 		{
@@ -91,7 +94,7 @@ public class MinecraftUtil
 			if(!world.checkChunksExist(bx - distance - 1, by - distance - 1, bz - distance - 1, bx + distance + 1, by + distance + 1, bz + distance + 1))
 				return true;
 
-			Arrays.fill(AREA, (byte)EMPTY);
+			Arrays.fill(area, (byte)EMPTY);
 			setVal(0, 0, 0, LEAVES);
 			return recursivePathFind(0, 0, 0, 0);
 		}
@@ -127,14 +130,14 @@ public class MinecraftUtil
 			return false;
 		}
 
-		private static int getVal(int x, int y, int z)
+		private int getVal(int x, int y, int z)
 		{
-			return AREA[((x + SIZE_HALF) << 8) | ((y + SIZE_HALF) << 4) | (z + SIZE_HALF)];
+			return area[((x + SIZE_HALF) << 8) | ((y + SIZE_HALF) << 4) | (z + SIZE_HALF)];
 		}
 
-		private static void setVal(int x, int y, int z, int newVal)
+		private void setVal(int x, int y, int z, int newVal)
 		{
-			AREA[((x + SIZE_HALF) << 8) | ((y + SIZE_HALF) << 4) | (z + SIZE_HALF)] = (byte)newVal;
+			area[((x + SIZE_HALF) << 8) | ((y + SIZE_HALF) << 4) | (z + SIZE_HALF)] = (byte)newVal;
 		}
 	}
 }
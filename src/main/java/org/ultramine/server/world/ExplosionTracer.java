@@ -0,0 +1,625 @@
+package org.ultramine.server.world;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.material.Material;
+import net.minecraft.entity.Entity;
+import net.minecraft.util.MathHelper;
+import net.minecraft.world.ChunkPosition;
+import net.minecraft.world.Explosion;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import net.openhft.koloboke.collect.map.LongFloatMap;
+import net.openhft.koloboke.collect.map.hash.HashLongFloatMaps;
+import net.openhft.koloboke.collect.set.LongSet;
+import net.openhft.koloboke.collect.set.hash.HashLongSets;
+import org.ultramine.server.chunk.ChunkSnapshot;
+import org.ultramine.server.util.LatencyRecorder;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traces explosion rays for {@link Explosion#doExplosionA()}, one instance per world.
+ * <p>
+ * If the exploder and all blocks on the way use default explosion resistance (which depends on block type only), rays
+ * are traced on {@link ChunkSnapshot}s of the affected chunks by a fork-join pool, sharing one per-type resistance
+ * cache. Otherwise rays are traced on the world thread as vanilla does, with resistance cached per position. Identical
+ * explosions at the same position in the same tick are batched: if the first of them reached the same positions as
+ * the weakest and the strongest possible ray strengths would (e.g. every ray is stopped by the first block, as in
+ * water), and no section in range has been modified since then, its result is reused. Otherwise the result depends on
+ * ray strengths drawn from {@code world.rand} and every explosion is traced.
+ * <p>
+ * Only ray tracing is done off the world thread, blocks and entities are affected by {@link Explosion} as before.
+ */
+public class ExplosionTracer
+{
+	private static final boolean PARALLEL = Boolean.parseBoolean(System.getProperty("org.ultramine.core.world.explosion.parallel", "true"));
+	private static final int THREADS = Integer.parseInt(System.getProperty("org.ultramine.core.world.explosion.threads",
+			Integer.toString(Math.max(1, Runtime.getRuntime().availableProcessors() - 1))));
+	private static final float PARALLEL_MIN_SIZE = Float.parseFloat(System.getProperty("org.ultramine.core.world.explosion.parallelMinSize", "2"));
+	private static final int RAYS_PER_TASK = 128;
+	private static final int MAX_SNAPSHOT_CHUNKS = 1024;
+	private static final int MAX_BATCHED = 64;
+	/** Largest value of {@link java.util.Random#nextFloat()} */
+	private static final float MAX_NEXT_FLOAT = 1.0F - 1.0F / (1 << 24);
+
+	private static final ClassValue<Boolean> DEFAULT_RESISTANCE = new ClassValue<Boolean>()
+	{
+		@Override
+		protected Boolean computeValue(Class<?> type)
+		{
+			return isDeclaredBy(type, Block.class, "getExplosionResistance", Entity.class, World.class, int.class, int.class, int.class, double.class, double.class, double.class)
+					&& isDeclaredBy(type, Block.class, "func_149638_a", Entity.class) && isDeclaredBy(type, Block.class, "getExplosionResistance", Entity.class);
+		}
+	};
+	private static final ClassValue<Boolean> DEFAULT_EXPLODER = new ClassValue<Boolean>()
+	{
+		@Override
+		protected Boolean computeValue(Class<?> type)
+		{
+			return isDeclaredBy(type, Entity.class, "func_145772_a", Explosion.class, World.class, int.class, int.class, int.class, Block.class)
+					&& isDeclaredBy(type, Entity.class, "func_145774_a", Explosion.class, World.class, int.class, int.class, int.class, Block.class, float.class);
+		}
+	};
+	private static final double[] DIRECTIONS_16 = directions(16);
+
+	private static final AtomicLong parallelCount = new AtomicLong();
+	private static final AtomicLong sequentialCount = new AtomicLong();
+	private static final AtomicLong batchedCount = new AtomicLong();
+	private static final LatencyRecorder traceTime = new LatencyRecorder(1024);
+
+	private final World world;
+	private final float[] resistanceCache = new float[4096];
+	private LongFloatMap positionResistanceCache;
+	private final Map<BatchKey, Batch> batches = new HashMap<>();
+	private long batchTick = Long.MIN_VALUE;
+
+	public ExplosionTracer(World world)
+	{
+		this.world = world;
+	}
+
+	/**
+	 * Must be called from the world thread. Consumes {@code world.rand} exactly as vanilla tracing does.
+	 * @param grid number of rays per cube edge
+	 * @return positions of blocks reached by rays
+	 */
+	public Set<ChunkPosition> trace(Explosion explosion, int grid)
+	{
+		long start = System.nanoTime();
+		double[] dirs = grid == 16 ? DIRECTIONS_16 : directions(grid);
+		float[] strengths = new float[dirs.length / 3];
+		for(int i = 0; i < strengths.length; i++)
+			strengths[i] = explosion.explosionSize * (0.7F + world.rand.nextFloat() * 0.6F);
+
+		Set<ChunkPosition> result = null;
+		boolean parallel = PARALLEL && !world.isRemote && explosion.explosionSize >= PARALLEL_MIN_SIZE &&
+				(explosion.exploder == null || DEFAULT_EXPLODER.get(explosion.exploder.getClass()));
+		BatchKey key = null;
+		if(parallel)
+		{
+			key = new BatchKey(explosion, grid);
+			result = getBatched(key);
+			if(result != null)
+			{
+				batchedCount.incrementAndGet();
+				traceTime.record(System.nanoTime() - start);
+				return result;
+			}
+			result = traceParallel(explosion, dirs, strengths, key);
+		}
+		if(result == null)
+			result = traceSequential(explosion, dirs, strengths);
+
+		traceTime.record(System.nanoTime() - start);
+		return result;
+	}
+
+	private Set<ChunkPosition> traceSequential(Explosion explosion, double[] dirs, float[] strengths)
+	{
+		sequentialCount.incrementAndGet();
+		LongFloatMap cache = positionResistanceCache;
+		if(cache == null)
+			cache = positionResistanceCache = HashLongFloatMaps.getDefaultFactory().withDefaultValue(Float.NaN).newMutableMap();
+		Entity exploder = explosion.exploder;
+		HashSet<ChunkPosition> result = new HashSet<>();
+		try
+		{
+			for(int ray = 0; ray < strengths.length; ray++)
+			{
+				double dx = dirs[ray * 3];
+				double dy = dirs[ray * 3 + 1];
+				double dz = dirs[ray * 3 + 2];
+				float f1 = strengths[ray];
+				double x = explosion.explosionX;
+				double y = explosion.explosionY;
+				double z = explosion.explosionZ;
+
+				for(float f2 = 0.3F; f1 > 0.0F; f1 -= f2 * 0.75F)
+				{
+					int bx = MathHelper.floor_double(x);
+					int by = MathHelper.floor_double(y);
+					int bz = MathHelper.floor_double(z);
+					Block block = world.getBlock(bx, by, bz);
+
+					if(block.getMaterial() != Material.air)
+					{
+						long pos = pack(bx, by, bz);
+						float f3 = cache.get(pos);
+						if(Float.isNaN(f3))
+						{
+							f3 = exploder != null ? exploder.func_145772_a(explosion, world, bx, by, bz, block) :
+									block.getExplosionResistance(null, world, bx, by, bz, explosion.explosionX, explosion.explosionY, explosion.explosionZ);
+							cache.put(pos, f3);
+						}
+						f1 -= (f3 + 0.3F) * f2;
+					}
+
+					if(f1 > 0.0F && (exploder == null || exploder.func_145774_a(explosion, world, bx, by, bz, block, f1)))
+						result.add(new ChunkPosition(bx, by, bz));
+
+					x += dx * (double)f2;
+					y += dy * (double)f2;
+					z += dz * (double)f2;
+				}
+			}
+		}
+		finally
+		{
+			cache.clear();
+		}
+		return result;
+	}
+
+	/** @return traced positions or null if some block on the way has custom resistance or chunks are not loaded */
+	private Set<ChunkPosition> traceParallel(Explosion explosion, double[] dirs, float[] strengths, BatchKey key)
+	{
+		double reach = explosion.explosionSize * 1.3F / (0.3F * 0.75F) * 0.3F + 1;
+		int minCX = MathHelper.floor_double(explosion.explosionX - reach) >> 4;
+		int maxCX = MathHelper.floor_double(explosion.explosionX + reach) >> 4;
+		int minCZ = MathHelper.floor_double(explosion.explosionZ - reach) >> 4;
+		int maxCZ = MathHelper.floor_double(explosion.explosionZ + reach) >> 4;
+		int width = maxCX - minCX + 1;
+		int length = maxCZ - minCZ + 1;
+		if(width * length > MAX_SNAPSHOT_CHUNKS)
+			return null;
+
+		Chunk[] chunks = new Chunk[width * length];
+		for(int cz = minCZ; cz <= maxCZ; cz++)
+		{
+			for(int cx = minCX; cx <= maxCX; cx++)
+			{
+				Chunk chunk = world.getChunkIfExists(cx, cz);
+				if(chunk == null)
+					return null;
+				chunks[(cz - minCZ) * width + (cx - minCX)] = chunk;
+			}
+		}
+
+		ChunkSnapshot[] snapshots = new ChunkSnapshot[chunks.length];
+		try
+		{
+			for(int i = 0; i < chunks.length; i++)
+				snapshots[i] = ChunkSnapshot.of(chunks[i]);
+			Arrays.fill(resistanceCache, Float.NaN);
+			Area area = new Area(explosion, dirs, strengths, snapshots, minCX, minCZ, width, resistanceCache);
+			// Tasks are not joined, the world thread may be a worker of another fork-join pool (ParallelWorldTicker)
+			int taskCount = (strengths.length + RAYS_PER_TASK - 1) / RAYS_PER_TASK;
+			LongSet[] results = new LongSet[taskCount];
+			CountDownLatch latch = new CountDownLatch(taskCount - 1);
+			for(int i = 1; i < taskCount; i++)
+				PoolHolder.POOL.execute(new RayTask(area, i, results, latch));
+			new RayTask(area, 0, results, null).run();
+			try
+			{
+				latch.await();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				area.aborted = true;
+			}
+			if(area.aborted)
+				return null;
+
+			parallelCount.incrementAndGet();
+			LongSet positions = results[0];
+			for(int i = 1; i < taskCount; i++)
+				positions.addAll(results[i]);
+			Set<ChunkPosition> result = new HashSet<>(Math.max(16, (int)(positions.size() / 0.75F) + 1));
+			positions.forEach((long pos) -> result.add(new ChunkPosition(unpackX(pos), unpackY(pos), unpackZ(pos))));
+			if(!area.strengthDependent)
+				putBatched(key, new Batch(result, chunks, minCX, minCZ, width));
+			return result;
+		}
+		finally
+		{
+			for(ChunkSnapshot snapshot : snapshots)
+				if(snapshot != null)
+					snapshot.release();
+		}
+	}
+
+	private Set<ChunkPosition> getBatched(BatchKey key)
+	{
+		long tick = world.getTotalWorldTime();
+		if(tick != batchTick)
+		{
+			batches.clear();
+			batchTick = tick;
+			return null;
+		}
+		Batch batch = batches.get(key);
+		if(batch == null)
+			return null;
+		if(batch.isValid(world))
+			return batch.result;
+		batches.remove(key);
+		return null;
+	}
+
+	private void putBatched(BatchKey key, Batch batch)
+	{
+		if(world.getTotalWorldTime() != batchTick)
+		{
+			batches.clear();
+			batchTick = world.getTotalWorldTime();
+		}
+		if(batches.size() < MAX_BATCHED || batches.containsKey(key))
+			batches.put(key, batch);
+	}
+
+	public static long getParallelCount()
+	{
+		return parallelCount.get();
+	}
+
+	public static long getSequentialCount()
+	{
+		return sequentialCount.get();
+	}
+
+	public static long getBatchedCount()
+	{
+		return batchedCount.get();
+	}
+
+	/** @return time of tracing rays of an explosion on the world thread, in nanoseconds */
+	public static LatencyRecorder getTraceTime()
+	{
+		return traceTime;
+	}
+
+	/** Ray directions in vanilla order, only rays through the surface of the grid cube are cast */
+	private static double[] directions(int grid)
+	{
+		double[] dirs = new double[(grid * grid * grid - (grid - 2) * (grid - 2) * (grid - 2)) * 3];
+		int n = 0;
+		for(int i = 0; i < grid; ++i)
+		{
+			for(int j = 0; j < grid; ++j)
+			{
+				for(int k = 0; k < grid; ++k)
+				{
+					if(i == 0 || i == grid - 1 || j == 0 || j == grid - 1 || k == 0 || k == grid - 1)
+					{
+						double d0 = (double)((float)i / ((float)grid - 1.0F) * 2.0F - 1.0F);
+						double d1 = (double)((float)j / ((float)grid - 1.0F) * 2.0F - 1.0F);
+						double d2 = (double)((float)k / ((float)grid - 1.0F) * 2.0F - 1.0F);
+						double d3 = Math.sqrt(d0 * d0 + d1 * d1 + d2 * d2);
+						dirs[n++] = d0 / d3;
+						dirs[n++] = d1 / d3;
+						dirs[n++] = d2 / d3;
+					}
+				}
+			}
+		}
+		return dirs;
+	}
+
+	private static boolean isDeclaredBy(Class<?> type, Class<?> base, String name, Class<?>... params)
+	{
+		try
+		{
+			return type.getMethod(name, params).getDeclaringClass() == base;
+		}
+		catch(NoSuchMethodException e)
+		{
+			return true; // Method has another name in this environment
+		}
+	}
+
+	private static long pack(int x, int y, int z)
+	{
+		return ((long)x & 0x3FFFFFF) << 38 | ((long)y & 0xFFF) << 26 | ((long)z & 0x3FFFFFF);
+	}
+
+	private static int unpackX(long pos)
+	{
+		return (int)(pos >> 38);
+	}
+
+	private static int unpackY(long pos)
+	{
+		return (int)(pos << 26 >> 52);
+	}
+
+	private static int unpackZ(long pos)
+	{
+		return (int)(pos << 38 >> 38);
+	}
+
+	private static class PoolHolder
+	{
+		static final ForkJoinPool POOL = new ForkJoinPool(THREADS);
+	}
+
+	/** Immutable input of parallel tracing, shared by all tasks of an explosion */
+	private static class Area
+	{
+		final double x;
+		final double y;
+		final double z;
+		final Entity exploder;
+		final double[] dirs;
+		final float[] strengths;
+		/** Bounds of {@code explosionSize * (0.7F + rand.nextFloat() * 0.6F)} */
+		final float minStrength;
+		final float maxStrength;
+		final ChunkSnapshot[] snapshots;
+		final int minCX;
+		final int minCZ;
+		final int width;
+		final int length;
+		/** Resistance by block id, NaN if not calculated yet. Races are benign, all threads write the same value */
+		final float[] resistanceCache;
+		volatile boolean aborted;
+		/** Set if some ray reaches other positions with the weakest strength than with the strongest one */
+		volatile boolean strengthDependent;
+
+		Area(Explosion explosion, double[] dirs, float[] strengths, ChunkSnapshot[] snapshots, int minCX, int minCZ, int width, float[] resistanceCache)
+		{
+			this.x = explosion.explosionX;
+			this.y = explosion.explosionY;
+			this.z = explosion.explosionZ;
+			this.exploder = explosion.exploder;
+			this.dirs = dirs;
+			this.strengths = strengths;
+			this.minStrength = explosion.explosionSize * 0.7F;
+			this.maxStrength = explosion.explosionSize * (0.7F + MAX_NEXT_FLOAT * 0.6F);
+			this.snapshots = snapshots;
+			this.minCX = minCX;
+			this.minCZ = minCZ;
+			this.width = width;
+			this.length = snapshots.length / width;
+			this.resistanceCache = resistanceCache;
+		}
+
+		/** @return block id or -1 if position is out of snapshotted area */
+		int getBlockId(int bx, int by, int bz)
+		{
+			if(by < 0 || by >= 256)
+				return 0;
+			int cx = (bx >> 4) - minCX;
+			int cz = (bz >> 4) - minCZ;
+			if(cx < 0 || cx >= width || cz < 0 || cz >= length)
+				return -1;
+			return snapshots[cz * width + cx].getBlockId(bx & 15, by, bz & 15);
+		}
+
+		/** @return resistance of the block or NaN if it may depend on world state */
+		float getResistance(int id, Block block)
+		{
+			float resistance = resistanceCache[id];
+			if(Float.isNaN(resistance))
+			{
+				if(!DEFAULT_RESISTANCE.get(block.getClass()))
+					return Float.NaN;
+				resistance = resistanceCache[id] = block.getExplosionResistance(exploder);
+			}
+			return resistance;
+		}
+	}
+
+	/** Traces {@link #RAYS_PER_TASK} rays starting from {@code index * RAYS_PER_TASK} */
+	private static class RayTask implements Runnable
+	{
+		private final Area area;
+		private final int index;
+		private final LongSet[] results;
+		private final CountDownLatch latch;
+
+		RayTask(Area area, int index, LongSet[] results, CountDownLatch latch)
+		{
+			this.area = area;
+			this.index = index;
+			this.results = results;
+			this.latch = latch;
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				results[index] = trace(index * RAYS_PER_TASK, Math.min(area.strengths.length, (index + 1) * RAYS_PER_TASK));
+			}
+			catch(Throwable t)
+			{
+				area.aborted = true;
+			}
+			finally
+			{
+				if(latch != null)
+					latch.countDown();
+			}
+		}
+
+		private LongSet trace(int from, int to)
+		{
+			LongSet result = HashLongSets.newMutableSet();
+			Area area = this.area;
+			for(int ray = from; ray < to && !area.aborted; ray++)
+			{
+				double dx = area.dirs[ray * 3];
+				double dy = area.dirs[ray * 3 + 1];
+				double dz = area.dirs[ray * 3 + 2];
+				float f1 = area.strengths[ray];
+				double x = area.x;
+				double y = area.y;
+				double z = area.z;
+				// Bounding strengths are traced along while the ray may still differ between them. Float subtraction
+				// is monotonic, so if they reach the same positions, every strength in between does too
+				boolean checkStrength = !area.strengthDependent;
+				float fMin = area.minStrength;
+				float fMax = area.maxStrength;
+
+				for(float f2 = 0.3F; f1 > 0.0F || checkStrength && fMax > 0.0F; f1 -= f2 * 0.75F, fMin -= f2 * 0.75F, fMax -= f2 * 0.75F)
+				{
+					int bx = MathHelper.floor_double(x);
+					int by = MathHelper.floor_double(y);
+					int bz = MathHelper.floor_double(z);
+					int id = area.getBlockId(bx, by, bz);
+					if(id < 0)
+					{
+						area.aborted = true;
+						break;
+					}
+					Block block = Block.getBlockById(id);
+
+					if(block.getMaterial() != Material.air)
+					{
+						float f3 = area.getResistance(id, block);
+						if(Float.isNaN(f3))
+						{
+							if(f1 > 0.0F)
+								area.aborted = true;
+							else
+								area.strengthDependent = true; // Only the strongest ray could reach this block
+							break;
+						}
+						f1 -= (f3 + 0.3F) * f2;
+						fMin -= (f3 + 0.3F) * f2;
+						fMax -= (f3 + 0.3F) * f2;
+					}
+
+					if(f1 > 0.0F)
+						result.add(pack(bx, by, bz));
+					if(checkStrength && (fMin > 0.0F) != (fMax > 0.0F))
+					{
+						area.strengthDependent = true;
+						checkStrength = false;
+					}
+
+					x += dx * (double)f2;
+					y += dy * (double)f2;
+					z += dz * (double)f2;
+				}
+			}
+			return result;
+		}
+	}
+
+	private static class BatchKey
+	{
+		private final double x;
+		private final double y;
+		private final double z;
+		private final float size;
+		private final int grid;
+		private final Class<?> exploderClass;
+
+		BatchKey(Explosion explosion, int grid)
+		{
+			this.x = explosion.explosionX;
+			this.y = explosion.explosionY;
+			this.z = explosion.explosionZ;
+			this.size = explosion.explosionSize;
+			this.grid = grid;
+			this.exploderClass = explosion.exploder != null ? explosion.exploder.getClass() : null;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(this == o)
+				return true;
+			if(!(o instanceof BatchKey))
+				return false;
+			BatchKey other = (BatchKey)o;
+			return Double.compare(x, other.x) == 0 && Double.compare(y, other.y) == 0 && Double.compare(z, other.z) == 0 &&
+					Float.compare(size, other.size) == 0 && grid == other.grid && exploderClass == other.exploderClass;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int result = Double.hashCode(x);
+			result = 31 * result + Double.hashCode(y);
+			result = 31 * result + Double.hashCode(z);
+			result = 31 * result + Float.hashCode(size);
+			return 31 * result + grid;
+		}
+	}
+
+	/**
+	 * Result of a traced explosion and modification counters of all sections it was traced on. Chunks are not
+	 * referenced, so the batch does not hold unloaded chunks in memory
+	 */
+	private static class Batch
+	{
+		private final Set<ChunkPosition> result;
+		private final int minCX;
+		private final int minCZ;
+		private final int width;
+		private final int length;
+		private final ExtendedBlockStorage[] sections;
+		private final int[] modCounts;
+
+		Batch(Set<ChunkPosition> result, Chunk[] chunks, int minCX, int minCZ, int width)
+		{
+			this.result = result;
+			this.minCX = minCX;
+			this.minCZ = minCZ;
+			this.width = width;
+			this.length = chunks.length / width;
+			this.sections = new ExtendedBlockStorage[chunks.length * 16];
+			this.modCounts = new int[sections.length];
+			for(int i = 0; i < chunks.length; i++)
+			{
+				ExtendedBlockStorage[] arr = chunks[i].getBlockStorageArray();
+				for(int j = 0; j < 16; j++)
+				{
+					ExtendedBlockStorage ebs = arr[j];
+					sections[i * 16 + j] = ebs;
+					modCounts[i * 16 + j] = ebs != null ? ebs.getModCount() : 0;
+				}
+			}
+		}
+
+		boolean isValid(World world)
+		{
+			for(int i = 0; i < width * length; i++)
+			{
+				Chunk chunk = world.getChunkIfExists(minCX + i % width, minCZ + i / width);
+				if(chunk == null)
+					return false;
+				ExtendedBlockStorage[] arr = chunk.getBlockStorageArray();
+				for(int j = 0; j < 16; j++)
+				{
+					ExtendedBlockStorage ebs = arr[j];
+					if(ebs != sections[i * 16 + j] || ebs != null && ebs.getModCount() != modCounts[i * 16 + j])
+						return false;
+				}
+			}
+			return true;
+		}
+	}
+}
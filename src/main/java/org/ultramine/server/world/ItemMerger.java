@@ -0,0 +1,290 @@
+package org.ultramine.server.world;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.item.EntityItem;
+import net.minecraft.entity.item.EntityXPOrb;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.AxisAlignedBB;
+import net.minecraft.util.MathHelper;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.openhft.koloboke.collect.map.LongIntMap;
+import net.openhft.koloboke.collect.map.hash.HashLongIntMaps;
+import net.openhft.koloboke.collect.set.LongSet;
+import net.openhft.koloboke.collect.set.hash.HashLongSets;
+import org.ultramine.server.ServerLoadBalancer;
+import org.ultramine.server.chunk.ChunkEntityBucket;
+import org.ultramine.server.chunk.ChunkHash;
+import org.ultramine.server.util.ItemStackHashMap;
+import org.ultramine.server.util.LatencyRecorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Merges item stacks and experience orbs lying close to each other, one instance per world. Replaces AABB query, which
+ * was made by each {@link EntityItem} every 25 ticks or after moving to another block. Orbs are not merged in vanilla,
+ * so their merging is off unless enabled by {@code -Dorg.ultramine.core.world.itemMerge.xpOrbs=true}.
+ * <p>
+ * Entities queue themselves on update as candidates, and all candidates of a tick are merged in one pass after the
+ * entity update loop. The pass indexes item entities of the sections around candidates into a grid of 1 block cells,
+ * keyed by cell and stack identity ({@link ItemStackHashMap#fastKey}), so a candidate checks only entities, which are
+ * close enough and may be stacked with it. Items are merged by {@link EntityItem#combineItems}, as before.
+ * <p>
+ * In chunks, where {@link ServerLoadBalancer} updates items at random, because their number exceeds the lower limit,
+ * items not being updated are still merged every 25 ticks, so the number of them goes down.
+ */
+public class ItemMerger
+{
+	private static final boolean MERGE_XP_ORBS = Boolean.parseBoolean(System.getProperty("org.ultramine.core.world.itemMerge.xpOrbs", "false"));
+	private static final int MERGE_INTERVAL = 25;
+	private static final int MAX_XP_VALUE = 2477;
+	private static final int XP_ORB_KEY = -1;
+
+	private static final AtomicLong mergedItems = new AtomicLong();
+	private static final AtomicLong mergedXPOrbs = new AtomicLong();
+	private static final AtomicLong checkedCandidates = new AtomicLong();
+	private static final LatencyRecorder passTime = new LatencyRecorder(1024);
+
+	private final World world;
+	private final ServerLoadBalancer balancer;
+	private final List<Entity> candidates = new ArrayList<>();
+
+	// Grid, reused between passes. Entities of a cell with the same key are linked by index in next[]
+	private final LongIntMap cells = HashLongIntMaps.newMutableMap();
+	private final LongSet indexedSections = HashLongSets.newMutableSet();
+	private final LongSet sweptChunks = HashLongSets.newMutableSet();
+	private final List<Entity> indexed = new ArrayList<>();
+	private int[] keys = new int[64];
+	private int[] next = new int[64];
+
+	public ItemMerger(World world, ServerLoadBalancer balancer)
+	{
+		this.world = world;
+		this.balancer = balancer;
+	}
+
+	/** Queues the item to be merged with nearby items at the end of entity update loop. World thread only */
+	public void enqueue(EntityItem item)
+	{
+		candidates.add(item);
+	}
+
+	/** Queues the orb to be merged with nearby orbs at the end of entity update loop. World thread only */
+	public void enqueue(EntityXPOrb orb)
+	{
+		if(MERGE_XP_ORBS)
+			candidates.add(orb);
+	}
+
+	/** Merges queued entities. Must be called from the world thread after entity update loop */
+	public void mergeQueued()
+	{
+		if(candidates.isEmpty())
+			return;
+		long start = System.nanoTime();
+		try
+		{
+			addThrottled();
+			for(Entity e : candidates)
+				if(isMergeable(e))
+					indexAround(e);
+			for(Entity e : candidates)
+				if(isMergeable(e))
+					merge(e);
+			checkedCandidates.addAndGet(candidates.size());
+		}
+		finally
+		{
+			candidates.clear();
+			cells.clear();
+			indexedSections.clear();
+			sweptChunks.clear();
+			indexed.clear();
+		}
+		passTime.record(System.nanoTime() - start);
+	}
+
+	public void onUnload()
+	{
+		candidates.clear();
+	}
+
+	/** Adds entities of chunks, where they are updated at random, to candidates every 25 ticks */
+	private void addThrottled()
+	{
+		long time = world.getTotalWorldTime();
+		for(int i = 0, size = candidates.size(); i < size; i++)
+		{
+			Entity e = candidates.get(i);
+			if(!isMergeable(e) || !e.addedToChunk)
+				continue;
+			ChunkEntityBucket bucket = e instanceof EntityItem ? ChunkEntityBucket.ITEM : ChunkEntityBucket.XP_ORB;
+			if(!sweptChunks.add((long)ChunkHash.chunkToKey(e.chunkCoordX, e.chunkCoordZ) << 1 | bucket.ordinal()) || !balancer.isUpdateThrottled(e))
+				continue;
+			Chunk chunk = world.getChunkIfExists(e.chunkCoordX, e.chunkCoordZ);
+			if(chunk == null)
+				continue;
+			for(int sy = 0; sy < 16; sy++)
+			{
+				List<Entity> list = chunk.getBucket(bucket, sy);
+				if(list == null)
+					continue;
+				for(Entity other : list)
+					if((time + other.getEntityId()) % MERGE_INTERVAL == 0 && other != e)
+						candidates.add(other);
+			}
+		}
+	}
+
+	/** Adds entities of sections, which may contain entities close to the candidate, to the grid */
+	private void indexAround(Entity e)
+	{
+		AxisAlignedBB bb = e.boundingBox;
+		ChunkEntityBucket bucket = e instanceof EntityItem ? ChunkEntityBucket.ITEM : ChunkEntityBucket.XP_ORB;
+		int minCX = MathHelper.floor_double(bb.minX - 1.0D) >> 4;
+		int maxCX = MathHelper.floor_double(bb.maxX + 1.0D) >> 4;
+		int minCZ = MathHelper.floor_double(bb.minZ - 1.0D) >> 4;
+		int maxCZ = MathHelper.floor_double(bb.maxZ + 1.0D) >> 4;
+		int minSY = MathHelper.clamp_int(MathHelper.floor_double(bb.minY - 1.0D) >> 4, 0, 15);
+		int maxSY = MathHelper.clamp_int(MathHelper.floor_double(bb.maxY + 1.0D) >> 4, 0, 15);
+		for(int cx = minCX; cx <= maxCX; cx++)
+		{
+			for(int cz = minCZ; cz <= maxCZ; cz++)
+			{
+				for(int sy = minSY; sy <= maxSY; sy++)
+				{
+					long sectionKey = ((long)ChunkHash.chunkToKey(cx, cz) << 4 | sy) << 1 | bucket.ordinal();
+					if(!indexedSections.add(sectionKey))
+						continue;
+					Chunk chunk = world.getChunkIfExists(cx, cz);
+					List<Entity> list = chunk == null ? null : chunk.getBucket(bucket, sy);
+					if(list != null)
+						for(Entity other : list)
+							index(other);
+				}
+			}
+		}
+	}
+
+	private void index(Entity e)
+	{
+		if(!isMergeable(e))
+			return;
+		int i = indexed.size();
+		if(i == keys.length)
+		{
+			keys = Arrays.copyOf(keys, i * 2);
+			next = Arrays.copyOf(next, i * 2);
+		}
+		AxisAlignedBB bb = e.boundingBox;
+		int key = keyOf(e);
+		long cell = cellKey(MathHelper.floor_double((bb.minX + bb.maxX) * 0.5D), MathHelper.floor_double((bb.minY + bb.maxY) * 0.5D),
+				MathHelper.floor_double((bb.minZ + bb.maxZ) * 0.5D), key);
+		indexed.add(e);
+		keys[i] = key;
+		next[i] = cells.getOrDefault(cell, -1);
+		cells.put(cell, i);
+	}
+
+	/** Merges the candidate with entities, which bounding boxes intersect its box expanded by 0.5 horizontally */
+	private void merge(Entity e)
+	{
+		int key = keyOf(e);
+		AxisAlignedBB area = e.boundingBox.expand(0.5D, 0.0D, 0.5D);
+		// Cells of entities up to 1 block in size, which may intersect the area
+		int minX = MathHelper.floor_double(area.minX - 0.5D);
+		int maxX = MathHelper.floor_double(area.maxX + 0.5D);
+		int minY = MathHelper.floor_double(area.minY - 0.5D);
+		int maxY = MathHelper.floor_double(area.maxY + 0.5D);
+		int minZ = MathHelper.floor_double(area.minZ - 0.5D);
+		int maxZ = MathHelper.floor_double(area.maxZ + 0.5D);
+		for(int x = minX; x <= maxX; x++)
+		{
+			for(int y = minY; y <= maxY; y++)
+			{
+				for(int z = minZ; z <= maxZ; z++)
+				{
+					for(int i = cells.getOrDefault(cellKey(x, y, z, key), -1); i != -1; i = next[i])
+					{
+						Entity other = indexed.get(i);
+						if(other == e || keys[i] != key || other.isDead || !other.boundingBox.intersectsWith(area))
+							continue;
+						if(e instanceof EntityItem)
+						{
+							if(((EntityItem)e).combineItems((EntityItem)other))
+								mergedItems.incrementAndGet();
+						}
+						else
+						{
+							if(combineOrbs((EntityXPOrb)e, (EntityXPOrb)other))
+								mergedXPOrbs.incrementAndGet();
+						}
+						if(e.isDead)
+							return;
+					}
+				}
+			}
+		}
+	}
+
+	/** Larger orb absorbs the smaller one, if their sum does not exceed the largest vanilla orb value */
+	private static boolean combineOrbs(EntityXPOrb orb, EntityXPOrb other)
+	{
+		if(other.xpValue > orb.xpValue)
+			return combineOrbs(other, orb);
+		if(orb.xpValue + other.xpValue > MAX_XP_VALUE)
+			return false;
+		orb.xpValue += other.xpValue;
+		other.setDead();
+		return true;
+	}
+
+	private boolean isMergeable(Entity e)
+	{
+		return !e.isDead && e.worldObj == world && e.width <= 1.0F && e.height <= 1.0F;
+	}
+
+	/** @return stack identity of the item, ignoring damage of items without subtypes, as {@link EntityItem#combineItems} does */
+	private static int keyOf(Entity e)
+	{
+		if(!(e instanceof EntityItem))
+			return XP_ORB_KEY;
+		ItemStack stack = ((EntityItem)e).getEntityItem();
+		Item item = stack.getItem();
+		if(item == null)
+			return 0;
+		return ItemStackHashMap.fastKey(Item.getIdFromItem(item), item.getHasSubtypes() ? stack.getItemDamage() : 0);
+	}
+
+	private static long cellKey(int x, int y, int z, int key)
+	{
+		long cell = ((long)x & 0x3FFFFFF) << 38 | ((long)z & 0x3FFFFFF) << 12 | (y & 0xFFF);
+		return cell ^ key * 0x9E3779B97F4A7C15L;
+	}
+
+	public static long getMergedItems()
+	{
+		return mergedItems.get();
+	}
+
+	public static long getMergedXPOrbs()
+	{
+		return mergedXPOrbs.get();
+	}
+
+	/** @return number of entities checked by merge passes, including the ones not queued, but swept in throttled chunks */
+	public static long getCheckedCandidates()
+	{
+		return checkedCandidates.get();
+	}
+
+	/** @return duration of a merge pass, in nanoseconds */
+	public static LatencyRecorder getPassTime()
+	{
+		return passTime;
+	}
+}
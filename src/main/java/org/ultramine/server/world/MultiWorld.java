@@ -93,6 +93,8 @@ public class MultiWorld
 	{
 		if(e.world.isRemote)
 			return;
+		e.world.getAsyncPathfinder().onUnload();
+		e.world.getItemMerger().onUnload();
 		WorldDescriptor desc = getDescByID(e.world.provider.dimensionId);
 		if(desc != null)
 			desc.onUnload();
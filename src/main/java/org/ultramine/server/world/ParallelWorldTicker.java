@@ -0,0 +1,213 @@
+package org.ultramine.server.world;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Throwables;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.network.Packet;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.management.ServerConfigurationManager;
+import net.minecraft.util.IChatComponent;
+import net.minecraft.world.Teleporter;
+import net.minecraft.world.WorldServer;
+import net.minecraftforge.common.DimensionManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ultramine.server.chunk.ChunkProfiler;
+import org.ultramine.server.event.WorldEventProxy;
+
+/**
+ * Ticks independent worlds on a fork-join pool. Each world (tick, entities, tracker) is processed by a single
+ * {@link WorldTickThread}; operations touching several worlds at once (dimension changes, global broadcasts) are
+ * deferred to a merge phase, which runs on the main server thread after all worlds are ticked.
+ * <p>
+ * Disabled by default, enabled by {@code -Dorg.ultramine.core.world.parallelTick=true}. Mods which keep global
+ * mutable state in world tick handlers may be incompatible with this mode.
+ * <p>
+ * Scratch state of vanilla blocks is kept per thread: the redstone wire update set, the leaves decay search area, the
+ * falling block flag set by chunk providers during population, the furnace inventory keeping flag and the end portal
+ * placing flag. Redstone torch burnout lists are kept per world, stronghold layout (static piece weights) is built under
+ * a lock. Mods setting {@code BlockFalling.fallInstantly} or {@code BlockEndPortal.field_149948_a} directly still
+ * affect all worlds while it is set.
+ */
+public class ParallelWorldTicker
+{
+	private static final Logger log = LogManager.getLogger();
+	private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("org.ultramine.core.world.parallelTick", "false"));
+	private static final int THREADS = Integer.parseInt(System.getProperty("org.ultramine.core.world.parallelTick.threads",
+			Integer.toString(Runtime.getRuntime().availableProcessors())));
+	private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private static final boolean CPU_TIME_SUPPORTED = threadBean.isCurrentThreadCpuTimeSupported();
+	private static final Queue<Runnable> deferred = new ConcurrentLinkedQueue<>();
+
+	private final MinecraftServer server;
+	private final ForkJoinPool pool;
+
+	public ParallelWorldTicker(MinecraftServer server)
+	{
+		this.server = server;
+		AtomicInteger threadCounter = new AtomicInteger();
+		this.pool = new ForkJoinPool(Math.max(1, THREADS), pool -> new WorldTickThread(pool, threadCounter.incrementAndGet()), null, false);
+		log.info("Parallel world ticking enabled, using {} threads", pool.getParallelism());
+	}
+
+	public static boolean isEnabled()
+	{
+		return ENABLED;
+	}
+
+	public static boolean isWorldThread()
+	{
+		return Thread.currentThread() instanceof WorldTickThread;
+	}
+
+	/** @return CPU time of current thread in nanoseconds or 0, if not supported by JVM */
+	public static long currentThreadCpuTime()
+	{
+		return CPU_TIME_SUPPORTED ? threadBean.getCurrentThreadCpuTime() : 0;
+	}
+
+	/**
+	 * Defers task to merge phase of current tick if invoked from world tick thread.
+	 * @return true if task was deferred, false if caller should execute it itself
+	 */
+	public static boolean defer(Runnable task)
+	{
+		if(!isWorldThread())
+			return false;
+		deferred.add(task);
+		return true;
+	}
+
+	public static boolean deferTravelToDimension(Entity entity, int dimension)
+	{
+		return defer(() -> entity.travelToDimension(dimension));
+	}
+
+	public static boolean deferTransferPlayerToDimension(ServerConfigurationManager mgr, EntityPlayerMP player, int dimension, Teleporter teleporter)
+	{
+		return defer(() -> mgr.transferPlayerToDimension(player, dimension, teleporter));
+	}
+
+	public static boolean deferPacketToAllPlayers(ServerConfigurationManager mgr, Packet packet)
+	{
+		return defer(() -> mgr.sendPacketToAllPlayers(packet));
+	}
+
+	public static boolean deferChatMsg(ServerConfigurationManager mgr, IChatComponent msg, boolean isChat)
+	{
+		return defer(() -> mgr.sendChatMsgImpl(msg, isChat));
+	}
+
+	/**
+	 * Parallel mode is not used while vanilla profiler or chunk profiler is enabled, because both of them are
+	 * not thread-safe. Ticking a single world in parallel makes no sense too.
+	 */
+	public boolean canTickInParallel(int worldCount)
+	{
+		return worldCount > 1 && !server.theProfiler.profilingEnabled && !ChunkProfiler.instance().isEnabled();
+	}
+
+	public void tickWorlds(Integer[] ids)
+	{
+		WorldTickTask[] tasks = new WorldTickTask[ids.length];
+		for(int i = 0; i < ids.length; i++)
+		{
+			int id = ids[i];
+			if(id == 0 || server.getAllowNether())
+			{
+				WorldServer world = DimensionManager.getWorld(id);
+				if(world != null)
+					pool.execute(tasks[i] = new WorldTickTask(id, world));
+			}
+		}
+
+		Throwable error = null;
+		for(WorldTickTask task : tasks)
+		{
+			if(task == null)
+				continue;
+			task.join();
+			server.recordWorldTickTime(task.dimension, task.wallTime, task.cpuTime);
+			if(error == null)
+				error = task.error;
+		}
+
+		merge();
+
+		if(error != null)
+			throw Throwables.propagate(error);
+	}
+
+	private void merge()
+	{
+		for(Runnable task; (task = deferred.poll()) != null;)
+			task.run();
+	}
+
+	private class WorldTickTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int dimension;
+		private final WorldServer world;
+		private long wallTime;
+		private long cpuTime;
+		private Throwable error;
+
+		WorldTickTask(int dimension, WorldServer world)
+		{
+			this.dimension = dimension;
+			this.world = world;
+		}
+
+		@Override
+		protected void compute()
+		{
+			long wallStart = System.nanoTime();
+			long cpuStart = currentThreadCpuTime();
+			try
+			{
+				server.tickWorld(world);
+			}
+			catch(Throwable t)
+			{
+				error = t;
+			}
+			finally
+			{
+				wallTime = System.nanoTime() - wallStart;
+				cpuTime = currentThreadCpuTime() - cpuStart;
+			}
+		}
+	}
+
+	public static class WorldTickThread extends ForkJoinWorkerThread
+	{
+		private WorldEventProxy eventProxy;
+
+		private WorldTickThread(ForkJoinPool pool, int number)
+		{
+			super(pool);
+			setName("World tick thread #" + number);
+		}
+
+		public WorldEventProxy getEventProxy()
+		{
+			return eventProxy;
+		}
+
+		public void setEventProxy(WorldEventProxy eventProxy)
+		{
+			this.eventProxy = eventProxy;
+		}
+	}
+}
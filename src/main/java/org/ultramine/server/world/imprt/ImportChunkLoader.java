@@ -13,6 +13,7 @@ import net.minecraft.world.World;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.storage.AnvilChunkLoader;
 import net.minecraft.world.chunk.storage.RegionFile;
+import net.minecraft.world.chunk.storage.RegionFileCache;
 import net.minecraft.world.storage.ThreadedFileIOBase;
 import net.openhft.koloboke.collect.map.IntObjMap;
 import net.openhft.koloboke.collect.map.hash.HashIntObjMaps;
@@ -56,7 +57,7 @@ public abstract class ImportChunkLoader extends AnvilChunkLoader
 					log.error("Error unpacking RegionFile: "+name, e);
 				}
 			}
-			region = new RegionFile(regFile);
+			region = RegionFileCache.createRegionFile(regFile);
 			regionCache.put(key, region);
 		}
 		return region;
@@ -88,6 +89,12 @@ public abstract class ImportChunkLoader extends AnvilChunkLoader
 		return getRegion(cx, cz).getChunkDataInputStream(cx & 31, cz & 31);
 	}
 
+	@Override
+	protected RegionFile getRegionFile(int cx, int cz)
+	{
+		return getRegion(cx, cz);
+	}
+
 	@Override
 	protected DataOutputStream getChunkOutputStream(AnvilChunkLoader.PendingChunk pending)
 	{
@@ -0,0 +1,334 @@
+package org.ultramine.server.world.pathfinding;
+
+import net.minecraft.pathfinding.PathEntity;
+import net.minecraft.pathfinding.PathFinder;
+import net.minecraft.util.MathHelper;
+import net.minecraft.world.ChunkCache;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.openhft.koloboke.collect.map.LongObjMap;
+import net.openhft.koloboke.collect.map.hash.HashLongObjMaps;
+import org.ultramine.server.chunk.ChunkHash;
+import org.ultramine.server.chunk.ChunkSnapshot;
+import org.ultramine.server.util.LatencyRecorder;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Searches paths for {@link net.minecraft.pathfinding.PathNavigate} on worker threads, one instance per world. Opt-in,
+ * see {@link #isEnabled()}.
+ * <p>
+ * A search runs on a {@link SnapshotBlockView} over chunk snapshots, taken on the world thread when the path is
+ * requested. Snapshots are shared by all requests of a tick. The path is delivered to the navigator on a later tick. If
+ * search reaches a block, which can not be checked off the world thread, or the area is too large, the path is
+ * searched on the world thread as before.
+ * <p>
+ * Requests with the same search inputs (see {@link PathRequest#equals}) share one search while it is in flight and
+ * for {@code cacheTicks} after it was requested, so mobs of the same size heading to the same target get the same
+ * path. Cached paths are not invalidated by block changes, they may be outdated by {@code cacheTicks} at most.
+ */
+public class AsyncPathfinder
+{
+	private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("org.ultramine.core.world.pathfinding.async", "false"));
+	private static final int THREADS = Integer.parseInt(System.getProperty("org.ultramine.core.world.pathfinding.threads",
+			Integer.toString(Math.max(1, Runtime.getRuntime().availableProcessors() / 2))));
+	private static final int CACHE_TICKS = Integer.parseInt(System.getProperty("org.ultramine.core.world.pathfinding.cacheTicks", "20"));
+	private static final int MAX_TASKS = 4096;
+	private static final int MAX_VIEW_CHUNKS = 144;
+
+	private static final AtomicLong searchCount = new AtomicLong();
+	private static final AtomicLong expandedNodes = new AtomicLong();
+	private static final AtomicLong cacheHits = new AtomicLong();
+	private static final AtomicLong cacheMisses = new AtomicLong();
+	private static final AtomicLong fallbackCount = new AtomicLong();
+	private static final LatencyRecorder searchTime = new LatencyRecorder(1024);
+
+	private final World world;
+	/** Tasks by request, both in flight and done ones, world thread only */
+	private final Map<PathRequest, PathTask> tasks = new HashMap<>();
+	private SnapshotSet snapshots;
+	private int searchesThisTick;
+	private double searchesPerTick;
+	private long lastPurgeTick;
+
+	public AsyncPathfinder(World world)
+	{
+		this.world = world;
+	}
+
+	/** @return true if paths are searched off the world thread, {@code -Dorg.ultramine.core.world.pathfinding.async} */
+	public static boolean isEnabled()
+	{
+		return ENABLED;
+	}
+
+	/**
+	 * Must be called from the world thread.
+	 * @return task searching the path, may be already done
+	 */
+	public PathTask request(PathRequest request)
+	{
+		long tick = world.getTotalWorldTime();
+		PathTask task = tasks.get(request);
+		if(task != null && (!task.isDone() || tick - task.tick <= CACHE_TICKS))
+		{
+			cacheHits.incrementAndGet();
+			return task;
+		}
+
+		cacheMisses.incrementAndGet();
+		searchesThisTick++;
+		task = new PathTask(request, tick);
+		if(!submit(task))
+		{
+			task.fallback = true;
+			task.done = true;
+		}
+		if(tasks.size() >= MAX_TASKS)
+			purge(tick);
+		if(tasks.size() < MAX_TASKS)
+			tasks.put(request, task);
+		return task;
+	}
+
+	/** @return false if search area is too large to search off the world thread */
+	private boolean submit(PathTask task)
+	{
+		PathRequest r = task.request;
+		int sizeX = r.getSizeX();
+		int reach = MathHelper.ceiling_float_int(r.range) + 2;
+		int minX = Math.min(r.getEndX() - reach, Math.min(MathHelper.floor_double(r.minX), r.entityX) - 2);
+		int maxX = Math.max(r.getEndX() + reach + sizeX, Math.max(MathHelper.floor_double(r.minX), r.entityX) + sizeX + 2);
+		int minZ = Math.min(r.getEndZ() - reach, Math.min(MathHelper.floor_double(r.minZ), r.entityZ) - 2);
+		int maxZ = Math.max(r.getEndZ() + reach + sizeX, Math.max(MathHelper.floor_double(r.minZ), r.entityZ) + sizeX + 2);
+		int minCX = minX >> 4;
+		int minCZ = minZ >> 4;
+		int width = (maxX >> 4) - minCX + 1;
+		int length = (maxZ >> 4) - minCZ + 1;
+		if(width * length > MAX_VIEW_CHUNKS)
+			return false;
+
+		SnapshotSet set = snapshots;
+		if(set == null)
+			set = snapshots = new SnapshotSet();
+		ChunkSnapshot[] area = new ChunkSnapshot[width * length];
+		for(int cz = 0; cz < length; cz++)
+			for(int cx = 0; cx < width; cx++)
+				area[cz * width + cx] = set.get(world, minCX + cx, minCZ + cz);
+		set.users.incrementAndGet();
+		task.view = new SnapshotBlockView(area, minCX, minCZ, width);
+		task.snapshots = set;
+		PoolHolder.POOL.execute(task);
+		return true;
+	}
+
+	/** Must be called from the world thread on each tick */
+	public void onTick()
+	{
+		long tick = world.getTotalWorldTime();
+		searchesPerTick = searchesPerTick * 0.95 + searchesThisTick * 0.05;
+		searchesThisTick = 0;
+		if(snapshots != null)
+		{
+			snapshots.release();
+			snapshots = null;
+		}
+		if(tick - lastPurgeTick > CACHE_TICKS)
+			purge(tick);
+	}
+
+	public void onUnload()
+	{
+		if(snapshots != null)
+		{
+			snapshots.release();
+			snapshots = null;
+		}
+		tasks.clear();
+	}
+
+	private void purge(long tick)
+	{
+		lastPurgeTick = tick;
+		for(Iterator<PathTask> it = tasks.values().iterator(); it.hasNext();)
+		{
+			PathTask task = it.next();
+			if(task.isDone() && tick - task.tick > CACHE_TICKS)
+				it.remove();
+		}
+	}
+
+	/** Records search made on the world thread by vanilla code */
+	public void recordSearch(PathFinder finder, long nanos)
+	{
+		searchesThisTick++;
+		record(finder, nanos);
+	}
+
+	private static void record(PathFinder finder, long nanos)
+	{
+		searchCount.incrementAndGet();
+		expandedNodes.addAndGet(finder.getExpandedNodes());
+		searchTime.record(nanos);
+	}
+
+	/** @return average number of path searches per tick in this world, both on and off the world thread */
+	public double getSearchesPerTick()
+	{
+		return searchesPerTick;
+	}
+
+	public static long getSearchCount()
+	{
+		return searchCount.get();
+	}
+
+	public static long getExpandedNodes()
+	{
+		return expandedNodes.get();
+	}
+
+	public static long getCacheHits()
+	{
+		return cacheHits.get();
+	}
+
+	public static long getCacheMisses()
+	{
+		return cacheMisses.get();
+	}
+
+	/** @return number of requests searched on the world thread, because they could not be searched off it */
+	public static long getFallbackCount()
+	{
+		return fallbackCount.get();
+	}
+
+	/** @return duration of a path search, in nanoseconds */
+	public static LatencyRecorder getSearchTime()
+	{
+		return searchTime;
+	}
+
+	private static class PoolHolder
+	{
+		static final ForkJoinPool POOL = new ForkJoinPool(THREADS, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+	}
+
+	/** Snapshots taken during one tick, released when the tick is over and all searches on them are done */
+	private static class SnapshotSet
+	{
+		/** The set itself is a user until the end of tick */
+		final AtomicInteger users = new AtomicInteger(1);
+		final LongObjMap<ChunkSnapshot> map = HashLongObjMaps.newMutableMap();
+
+		/** World thread only, while the tick is not over */
+		ChunkSnapshot get(World world, int cx, int cz)
+		{
+			long key = ChunkHash.chunkToKey(cx, cz);
+			ChunkSnapshot snapshot = map.get(key);
+			if(snapshot == null && !map.containsKey(key))
+			{
+				Chunk chunk = world.getChunkIfExists(cx, cz);
+				snapshot = chunk != null ? ChunkSnapshot.of(chunk) : null;
+				map.put(key, snapshot);
+			}
+			return snapshot;
+		}
+
+		/** May be called from any thread */
+		void release()
+		{
+			if(users.decrementAndGet() == 0)
+			{
+				for(ChunkSnapshot snapshot : map.values())
+					if(snapshot != null)
+						snapshot.release();
+			}
+		}
+	}
+
+	public static class PathTask implements Runnable
+	{
+		private final PathRequest request;
+		private final long tick;
+		private SnapshotBlockView view;
+		private SnapshotSet snapshots;
+		private PathEntity result;
+		private boolean fallback;
+		private volatile boolean done;
+
+		PathTask(PathRequest request, long tick)
+		{
+			this.request = request;
+			this.tick = tick;
+		}
+
+		@Override
+		public void run()
+		{
+			long start = System.nanoTime();
+			try
+			{
+				PathFinder finder = new PathFinder(view, request.woodenDoorAllowed, request.movementBlockAllowed, request.pathingInWater, request.canDrown);
+				result = finder.createPath(request, view);
+				record(finder, System.nanoTime() - start);
+			}
+			catch(Throwable t)
+			{
+				// SnapshotBlockView.FallbackException or error in block code, it will be reproduced on the world thread
+				fallback = true;
+			}
+			finally
+			{
+				view = null;
+				snapshots.release();
+				snapshots = null;
+				done = true;
+			}
+		}
+
+		public PathRequest getRequest()
+		{
+			return request;
+		}
+
+		/** @return true if the path is ready or has to be searched on the world thread */
+		public boolean isDone()
+		{
+			return done;
+		}
+
+		/**
+		 * Must be called from the world thread after {@link #isDone()} returned true. Searches the path on the world
+		 * thread, if it could not be searched off it.
+		 * @return the path with its own progress, or null if there is no path
+		 */
+		public PathEntity getPath(World world)
+		{
+			if(fallback)
+			{
+				fallback = false;
+				fallbackCount.incrementAndGet();
+				result = searchSync(world, request);
+			}
+			return result != null ? result.copy() : null;
+		}
+
+		private static PathEntity searchSync(World world, PathRequest r)
+		{
+			int l = (int)(r.range + 16.0F);
+			ChunkCache chunkcache = new ChunkCache(world, r.entityX - l, r.entityY - l, r.entityZ - l, r.entityX + l, r.entityY + l, r.entityZ + l, 0);
+			PathFinder finder = new PathFinder(chunkcache, r.woodenDoorAllowed, r.movementBlockAllowed, r.pathingInWater, r.canDrown);
+			long start = System.nanoTime();
+			PathEntity path = finder.createPath(r, world);
+			record(finder, System.nanoTime() - start);
+			return path;
+		}
+	}
+}
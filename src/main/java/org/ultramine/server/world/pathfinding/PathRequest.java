@@ -0,0 +1,154 @@
+package org.ultramine.server.world.pathfinding;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.util.MathHelper;
+
+/**
+ * Entity state and target of a path search, captured on the world thread, so that the search may run on another
+ * thread. Requests are equal if they have the same search inputs: the same start and target blocks, entity size class,
+ * range and flags, so mobs of the same size heading to the same target may share the result.
+ */
+public final class PathRequest
+{
+	public final double minX;
+	public final double minY;
+	public final double minZ;
+	public final float width;
+	public final float height;
+	public final boolean inWater;
+	public final boolean inLava;
+	public final int maxSafePointTries;
+	public final int entityX;
+	public final int entityY;
+	public final int entityZ;
+	public final double targetX;
+	public final double targetY;
+	public final double targetZ;
+	public final float range;
+	public final boolean woodenDoorAllowed;
+	public final boolean movementBlockAllowed;
+	public final boolean pathingInWater;
+	public final boolean canDrown;
+
+	private final int startX;
+	private final int startY;
+	private final int startZ;
+	private final int endX;
+	private final int endY;
+	private final int endZ;
+	private final int flags;
+	private final int hash;
+
+	public PathRequest(Entity entity, double targetX, double targetY, double targetZ, float range,
+			boolean woodenDoorAllowed, boolean movementBlockAllowed, boolean pathingInWater, boolean canDrown)
+	{
+		this.minX = entity.boundingBox.minX;
+		this.minY = entity.boundingBox.minY;
+		this.minZ = entity.boundingBox.minZ;
+		this.width = entity.width;
+		this.height = entity.height;
+		this.inWater = entity.isInWater();
+		this.inLava = entity.handleLavaMovement();
+		this.maxSafePointTries = entity.getMaxSafePointTries();
+		this.entityX = MathHelper.floor_double(entity.posX);
+		this.entityY = MathHelper.floor_double(entity.posY);
+		this.entityZ = MathHelper.floor_double(entity.posZ);
+		this.targetX = targetX;
+		this.targetY = targetY;
+		this.targetZ = targetZ;
+		this.range = range;
+		this.woodenDoorAllowed = woodenDoorAllowed;
+		this.movementBlockAllowed = movementBlockAllowed;
+		this.pathingInWater = pathingInWater;
+		this.canDrown = canDrown;
+
+		this.startX = MathHelper.floor_double(minX);
+		this.startY = canDrown && inWater ? (int)minY : MathHelper.floor_double(minY + 0.5D);
+		this.startZ = MathHelper.floor_double(minZ);
+		this.endX = MathHelper.floor_double(targetX - (double)(width / 2.0F));
+		this.endY = MathHelper.floor_double(targetY);
+		this.endZ = MathHelper.floor_double(targetZ - (double)(width / 2.0F));
+		this.flags = (woodenDoorAllowed ? 1 : 0) | (movementBlockAllowed ? 2 : 0) | (pathingInWater ? 4 : 0) | (canDrown ? 8 : 0) |
+				(inWater ? 16 : 0) | (inLava ? 32 : 0) | getSizeX() << 6 | getSizeY() << 14;
+		int h = startX;
+		h = 31 * h + startY;
+		h = 31 * h + startZ;
+		h = 31 * h + endX;
+		h = 31 * h + endY;
+		h = 31 * h + endZ;
+		h = 31 * h + entityX;
+		h = 31 * h + entityY;
+		h = 31 * h + entityZ;
+		h = 31 * h + Float.floatToIntBits(range);
+		h = 31 * h + maxSafePointTries;
+		this.hash = 31 * h + flags;
+	}
+
+	/** Request of {@link net.minecraft.world.World#getPathEntityToEntity} */
+	public static PathRequest toEntity(Entity entity, Entity target, float range,
+			boolean woodenDoorAllowed, boolean movementBlockAllowed, boolean pathingInWater, boolean canDrown)
+	{
+		return new PathRequest(entity, target.posX, target.boundingBox.minY, target.posZ, range, woodenDoorAllowed, movementBlockAllowed, pathingInWater, canDrown);
+	}
+
+	/** Request of {@link net.minecraft.world.World#getEntityPathToXYZ} */
+	public static PathRequest toBlock(Entity entity, int x, int y, int z, float range,
+			boolean woodenDoorAllowed, boolean movementBlockAllowed, boolean pathingInWater, boolean canDrown)
+	{
+		return new PathRequest(entity, (double)((float)x + 0.5F), (double)((float)y + 0.5F), (double)((float)z + 0.5F), range,
+				woodenDoorAllowed, movementBlockAllowed, pathingInWater, canDrown);
+	}
+
+	/** @return true if both requests are for the same entity size and their end points differ by one block at most */
+	public boolean isNearTarget(PathRequest other)
+	{
+		return getSizeX() == other.getSizeX() && getSizeY() == other.getSizeY() && (flags & 0xF) == (other.flags & 0xF) &&
+				Math.abs(endX - other.endX) <= 1 && Math.abs(endY - other.endY) <= 1 && Math.abs(endZ - other.endZ) <= 1;
+	}
+
+	/** @return horizontal size of the entity in blocks, as used by path search */
+	public int getSizeX()
+	{
+		return MathHelper.floor_float(width + 1.0F);
+	}
+
+	/** @return vertical size of the entity in blocks, as used by path search */
+	public int getSizeY()
+	{
+		return MathHelper.floor_float(height + 1.0F);
+	}
+
+	public int getEndX()
+	{
+		return endX;
+	}
+
+	public int getEndY()
+	{
+		return endY;
+	}
+
+	public int getEndZ()
+	{
+		return endZ;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if(this == o)
+			return true;
+		if(!(o instanceof PathRequest))
+			return false;
+		PathRequest r = (PathRequest)o;
+		return hash == r.hash && startX == r.startX && startY == r.startY && startZ == r.startZ && endX == r.endX && endY == r.endY && endZ == r.endZ &&
+				entityX == r.entityX && entityY == r.entityY && entityZ == r.entityZ && Float.floatToIntBits(range) == Float.floatToIntBits(r.range) &&
+				maxSafePointTries == r.maxSafePointTries && flags == r.flags;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return hash;
+	}
+}
@@ -0,0 +1,157 @@
+package org.ultramine.server.world.pathfinding;
+
+import cpw.mods.fml.relauncher.Side;
+import cpw.mods.fml.relauncher.SideOnly;
+import net.minecraft.block.Block;
+import net.minecraft.block.material.Material;
+import net.minecraft.init.Blocks;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.world.IBlockAccess;
+import net.minecraft.world.biome.BiomeGenBase;
+import net.minecraftforge.common.util.ForgeDirection;
+import org.ultramine.server.chunk.ChunkSnapshot;
+
+/**
+ * Read-only block view over {@link ChunkSnapshot}s of a rectangular chunk area, used by path search off the world
+ * thread. Tile entities are not available. Blocks of not loaded chunks are air, as for
+ * {@link net.minecraft.world.World#getBlockIfExists}.
+ * <p>
+ * Search can not be completed on the view, if it reaches a block out of the area or a block with custom
+ * {@link Block#getBlocksMovement} (which may depend on tile entity), {@link FallbackException} is thrown then.
+ */
+public class SnapshotBlockView implements IBlockAccess
+{
+	/** Blocks with getBlocksMovement() of vanilla blocks, depending on block type and metadata only */
+	private static final ClassValue<Boolean> SAFE_BLOCKS = new ClassValue<Boolean>()
+	{
+		@Override
+		protected Boolean computeValue(Class<?> type)
+		{
+			try
+			{
+				return type.getMethod("getBlocksMovement", IBlockAccess.class, int.class, int.class, int.class).getDeclaringClass().getName().startsWith("net.minecraft.block.");
+			}
+			catch(NoSuchMethodException e)
+			{
+				return true; // Method has another name in this environment
+			}
+		}
+	};
+
+	private final ChunkSnapshot[] snapshots;
+	private final int minCX;
+	private final int minCZ;
+	private final int width;
+	private final int length;
+
+	/** @param snapshots snapshots by {@code (cz - minCZ) * width + (cx - minCX)}, null for not loaded chunks */
+	public SnapshotBlockView(ChunkSnapshot[] snapshots, int minCX, int minCZ, int width)
+	{
+		this.snapshots = snapshots;
+		this.minCX = minCX;
+		this.minCZ = minCZ;
+		this.width = width;
+		this.length = snapshots.length / width;
+	}
+
+	private ChunkSnapshot getSnapshot(int x, int z)
+	{
+		int cx = (x >> 4) - minCX;
+		int cz = (z >> 4) - minCZ;
+		if(cx < 0 || cx >= width || cz < 0 || cz >= length)
+			throw FallbackException.INSTANCE;
+		return snapshots[cz * width + cx];
+	}
+
+	@Override
+	public Block getBlock(int x, int y, int z)
+	{
+		if(y < 0 || y >= 256)
+			return Blocks.air;
+		ChunkSnapshot snapshot = getSnapshot(x, z);
+		if(snapshot == null)
+			return Blocks.air;
+		Block block = snapshot.getBlock(x & 15, y, z & 15);
+		if(!SAFE_BLOCKS.get(block.getClass()))
+			throw FallbackException.INSTANCE;
+		return block;
+	}
+
+	@Override
+	public TileEntity getTileEntity(int x, int y, int z)
+	{
+		return null;
+	}
+
+	@Override
+	@SideOnly(Side.CLIENT)
+	public int getLightBrightnessForSkyBlocks(int x, int y, int z, int minBlockLight)
+	{
+		return 0;
+	}
+
+	@Override
+	public int getBlockMetadata(int x, int y, int z)
+	{
+		if(y < 0 || y >= 256)
+			return 0;
+		ChunkSnapshot snapshot = getSnapshot(x, z);
+		return snapshot == null ? 0 : snapshot.getBlockMeta(x & 15, y, z & 15);
+	}
+
+	@Override
+	public int isBlockProvidingPowerTo(int x, int y, int z, int side)
+	{
+		return 0;
+	}
+
+	@Override
+	public boolean isAirBlock(int x, int y, int z)
+	{
+		return getBlock(x, y, z).getMaterial() == Material.air;
+	}
+
+	@Override
+	@SideOnly(Side.CLIENT)
+	public BiomeGenBase getBiomeGenForCoords(int x, int z)
+	{
+		ChunkSnapshot snapshot = getSnapshot(x, z);
+		BiomeGenBase biome = snapshot == null ? null : BiomeGenBase.getBiome(snapshot.getBiomeArray()[(z & 15) << 4 | (x & 15)] & 255);
+		return biome != null ? biome : BiomeGenBase.plains;
+	}
+
+	@Override
+	@SideOnly(Side.CLIENT)
+	public int getHeight()
+	{
+		return 256;
+	}
+
+	@Override
+	@SideOnly(Side.CLIENT)
+	public boolean extendedLevelsInChunkCache()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean isSideSolid(int x, int y, int z, ForgeDirection side, boolean _default)
+	{
+		if(y < 0 || y >= 256)
+			return _default;
+		return getBlock(x, y, z).isSideSolid(this, x, y, z, side);
+	}
+
+	/** Thrown when path search should be repeated on the world thread. Has no stack trace */
+	public static class FallbackException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		static final FallbackException INSTANCE = new FallbackException();
+
+		private FallbackException()
+		{
+			super(null, null, false, false);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package org.ultramine.server.chunk
+
+import net.minecraft.entity.Entity
+import net.minecraft.entity.item.EntityItem
+import net.minecraft.entity.item.EntityXPOrb
+import net.minecraft.entity.passive.EntityCow
+import net.minecraft.entity.player.EntityPlayerMP
+import net.minecraft.util.AxisAlignedBB
+import net.minecraft.world.World
+import net.minecraft.world.chunk.Chunk
+import net.minecraft.world.chunk.IChunkProvider
+import org.ultramine.server.util.UnsafeUtil
+import spock.lang.Specification
+
+class ChunkEntityBucketTest extends Specification {
+	private int nextId = 1
+
+	def "Buckets follow entities moved between sections and chunks"() {
+		setup:
+		def chunk = new Chunk(null, 0, 0)
+		def other = new Chunk(null, 1, 0)
+		def items = (0..<20).collect { entity(EntityItem, 2 + it % 10, 5, 3) }
+		def orbs = (0..<5).collect { entity(EntityXPOrb, 4, 20, 4) }
+		def cows = (0..<5).collect { entity(EntityCow, 6, 70, 6) }
+		(items + orbs + cows).each { chunk.addEntity(it) }
+
+		when: "half of items fall to section 1, orbs rise to section 6, cows walk to the next chunk"
+		items[0..<10].each { move(it, it.posX, 18, it.posZ, chunk, chunk) }
+		orbs.each { move(it, it.posX, 100, it.posZ, chunk, chunk) }
+		cows.each { move(it, 20, it.posY, it.posZ, chunk, other) }
+
+		then:
+		inSync(chunk)
+		inSync(other)
+		chunk.getBucket(ChunkEntityBucket.ITEM, 0) == items[10..<20]
+		chunk.getBucket(ChunkEntityBucket.ITEM, 1) == items[0..<10]
+		chunk.getBucket(ChunkEntityBucket.XP_ORB, 1).isEmpty()
+		chunk.getBucket(ChunkEntityBucket.XP_ORB, 6) == orbs
+		chunk.getBucket(ChunkEntityBucket.LIVING, 4).isEmpty()
+		other.getBucket(ChunkEntityBucket.LIVING, 4) == cows
+		query(chunk, EntityItem, 16, 32) == items[0..<10] as Set
+		query(chunk, EntityXPOrb, 96, 112) == orbs as Set
+		query(other, EntityCow, 64, 80) == cows as Set
+	}
+
+	def "Dead entities and players leave buckets on chunk unload"() {
+		setup:
+		def world = (TestWorld)UnsafeUtil.getUnsafe().allocateInstance(TestWorld)
+		world.@unloadedEntityList = []
+		def chunk = new Chunk(world, 0, 0)
+		def items = (0..<10).collect { entity(EntityItem, 8, 40, 8) }
+		def cows = (0..<3).collect { entity(EntityCow, 8, 40, 8) }
+		def player = entity(EntityPlayerMP, 8, 40, 8)
+		(items + cows + [player]).each { chunk.addEntity(it) }
+		items[0..<4].each { it.isDead = true }
+		cows[0].isDead = true
+
+		when:
+		chunk.onChunkUnload()
+
+		then:
+		inSync(chunk)
+		chunk.entityLists[2] == items[4..<10] + cows[1..<3]
+		chunk.getBucket(ChunkEntityBucket.ITEM, 2) == items[4..<10]
+		chunk.getBucket(ChunkEntityBucket.LIVING, 2) == cows[1..<3]
+	}
+
+	private <T extends Entity> T entity(Class<T> type, double x, double y, double z) {
+		T entity = (T)UnsafeUtil.getUnsafe().allocateInstance(type)
+		entity.setEntityId(nextId++)
+		def boundingBox = Entity.getDeclaredField("boundingBox")
+		boundingBox.accessible = true
+		boundingBox.set(entity, AxisAlignedBB.getBoundingBox(0, 0, 0, 0, 0, 0))
+		entity.width = 0.25f
+		entity.height = 0.25f
+		entity.setPosition(x, y, z)
+		return entity
+	}
+
+	/** As World.updateEntityWithOptionalForce does when entity changes section or chunk */
+	private static void move(Entity entity, double x, double y, double z, Chunk from, Chunk to) {
+		entity.setPosition(x, y, z)
+		from.removeEntityAtIndex(entity, entity.chunkCoordY)
+		to.addEntity(entity)
+	}
+
+	private static Set query(Chunk chunk, Class type, double minY, double maxY) {
+		def x = chunk.xPosition * 16
+		def z = chunk.zPosition * 16
+		def result = []
+		chunk.getEntitiesOfTypeWithinAAAB(type, AxisAlignedBB.getBoundingBox(x, minY, z, x + 16, maxY, z + 16), result, null)
+		return result as Set
+	}
+
+	/** Every bucket holds exactly the entities of its type from the section list, in the same order */
+	private static boolean inSync(Chunk chunk) {
+		for(int section = 0; section < 16; section++) {
+			for(ChunkEntityBucket bucket : ChunkEntityBucket.values()) {
+				List expected = chunk.entityLists[section].findAll { (ChunkEntityBucket.maskOf(it) & 1 << bucket.ordinal()) != 0 }
+				List actual = chunk.getBucket(bucket, section) ?: []
+				assert actual == expected, "$bucket bucket of section $section"
+			}
+		}
+		return true
+	}
+
+	/** Allocated without constructor, only unloadedEntityList is set */
+	static class TestWorld extends World {
+		TestWorld() {
+			super(null, null, null, null, null)
+		}
+
+		@Override
+		protected IChunkProvider createChunkProvider() {
+			return null
+		}
+
+		@Override
+		protected int func_152379_p() {
+			return 0
+		}
+
+		@Override
+		Entity getEntityByID(int id) {
+			return null
+		}
+	}
+}
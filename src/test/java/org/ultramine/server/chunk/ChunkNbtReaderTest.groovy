@@ -0,0 +1,188 @@
+package org.ultramine.server.chunk
+
+import net.minecraft.nbt.ChunkNbtReader
+import net.minecraft.nbt.CompressedStreamTools
+import net.minecraft.nbt.EbsSaveFakeNbt
+import net.minecraft.nbt.NBTTagCompound
+import net.minecraft.nbt.NBTTagList
+import net.minecraft.world.chunk.storage.AnvilChunkLoader
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage
+import org.ultramine.server.chunk.alloc.MemSlot
+import org.ultramine.server.chunk.alloc.unsafe.UnsafeChunkAlloc
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ChunkNbtReaderTest extends Specification {
+	private static final int SLOT_SIZE = 4096 * 3
+
+	UnsafeChunkAlloc alloc = new UnsafeChunkAlloc()
+	Random random = new Random(42)
+
+	def setup() {
+		// Injected by ServiceInjectionTransformer on server
+		def field = ExtendedBlockStorage.getDeclaredField("alloc")
+		field.accessible = true
+		field.set(null, alloc)
+	}
+
+	def "Vanilla sections are streamed into slots"() {
+		setup:
+		def sections = [section(0, true), section(5, false)]
+		def root = chunk(sections)
+
+		when:
+		def nbt = ChunkNbtReader.read(stream(root), true)
+		def read = nbt.getCompoundTag("Level").getTagList("Sections", 10)
+
+		then:
+		alloc.getOffHeapUsedMemory() == 2 * SLOT_SIZE
+		read.tagCount() == 2
+		read.getCompoundTagAt(0) instanceof EbsSaveFakeNbt
+		read.getCompoundTagAt(1) instanceof EbsSaveFakeNbt
+		slotMatches(ebs(read, 0).getSlot(), sections[0], true)
+		slotMatches(ebs(read, 1).getSlot(), sections[1], true)
+		ebs(read, 1).getYLocation() == 5 << 4
+		nbt.getCompoundTag("Level").getInteger("xPos") == 3
+		nbt.getCompoundTag("Level").getTagList("Entities", 10) == root.getCompoundTag("Level").getTagList("Entities", 10)
+
+		when: "sections are accessed as nbt, as by ChunkDataEvent.Load listeners"
+		def converted = read.getCompoundTagAt(0)
+
+		then:
+		converted.getByte("Y") == 0
+		converted.getByteArray("Blocks") == sections[0].getByteArray("Blocks")
+		converted.getByteArray("Add") == sections[0].getByteArray("Add")
+		converted.getByteArray("Data") == sections[0].getByteArray("Data")
+		converted.getByteArray("SkyLight") == sections[0].getByteArray("SkyLight")
+
+		when:
+		AnvilChunkLoader.releaseNbt(nbt)
+
+		then:
+		alloc.getOffHeapUsedMemory() == 0
+	}
+
+	def "Sky light is not stored for worlds without sky"() {
+		setup:
+		def sections = [section(2, true)]
+
+		when:
+		def nbt = ChunkNbtReader.read(stream(chunk(sections)), false)
+		def slot = ebs(nbt.getCompoundTag("Level").getTagList("Sections", 10), 0).getSlot()
+
+		then:
+		slotMatches(slot, sections[0], false)
+		slot.copySkylight() == new byte[2048]
+
+		cleanup:
+		AnvilChunkLoader.releaseNbt(nbt)
+	}
+
+	def "Sections with extra tags or unexpected arrays are kept as nbt"() {
+		setup:
+		def modded = section(1, true)
+		modded.setInteger("ModData", 42)
+		def extended = section(2, false)
+		extended.setByteArray("Blocks", bytes(8192))
+		def sections = [section(0, true), modded, extended]
+
+		when:
+		def nbt = ChunkNbtReader.read(stream(chunk(sections)), true)
+		def read = nbt.getCompoundTag("Level").getTagList("Sections", 10)
+
+		then:
+		alloc.getOffHeapUsedMemory() == SLOT_SIZE
+		read.getCompoundTagAt(0) instanceof EbsSaveFakeNbt
+		!(read.getCompoundTagAt(1) instanceof EbsSaveFakeNbt)
+		!(read.getCompoundTagAt(2) instanceof EbsSaveFakeNbt)
+		read.getCompoundTagAt(1) == modded
+		read.getCompoundTagAt(2) == extended
+
+		when:
+		AnvilChunkLoader.releaseNbt(nbt)
+
+		then:
+		alloc.getOffHeapUsedMemory() == 0
+	}
+
+	@Unroll
+	def "Truncated stream releases streamed slots (cut at #fraction)"() {
+		setup:
+		def data = write(chunk([section(0, true), section(1, true), section(2, true)]))
+		def cut = Arrays.copyOf(data, (int)(data.length * fraction))
+
+		when:
+		ChunkNbtReader.read(new DataInputStream(new ByteArrayInputStream(cut)), true)
+
+		then:
+		thrown(IOException)
+		alloc.getOffHeapTotalMemory() >= minAllocated * SLOT_SIZE
+		alloc.getOffHeapUsedMemory() == 0
+
+		where:
+		fraction | minAllocated
+		0.2      | 0
+		0.5      | 1
+		0.8      | 2
+		0.999    | 3
+	}
+
+	private static ExtendedBlockStorage ebs(NBTTagList sections, int index) {
+		return ((EbsSaveFakeNbt)sections.getCompoundTagAt(index)).getEbs()
+	}
+
+	private static boolean slotMatches(MemSlot slot, NBTTagCompound section, boolean hasSky) {
+		assert slot.copyLSB() == section.getByteArray("Blocks")
+		assert slot.copyMSB() == (section.hasKey("Add") ? section.getByteArray("Add") : new byte[2048])
+		assert slot.copyBlockMetadata() == section.getByteArray("Data")
+		assert slot.copyBlocklight() == section.getByteArray("BlockLight")
+		if(hasSky)
+			assert slot.copySkylight() == section.getByteArray("SkyLight")
+		return true
+	}
+
+	private NBTTagCompound section(int y, boolean withAdd) {
+		def section = new NBTTagCompound()
+		section.setByte("Y", (byte)y)
+		section.setByteArray("Blocks", bytes(4096))
+		if(withAdd)
+			section.setByteArray("Add", bytes(2048))
+		section.setByteArray("Data", bytes(2048))
+		section.setByteArray("BlockLight", bytes(2048))
+		section.setByteArray("SkyLight", bytes(2048))
+		return section
+	}
+
+	private static NBTTagCompound chunk(List<NBTTagCompound> sections) {
+		def list = new NBTTagList()
+		sections.each { list.appendTag(it.copy()) }
+		def entity = new NBTTagCompound()
+		entity.setString("id", "Item")
+		def entities = new NBTTagList()
+		entities.appendTag(entity)
+		def level = new NBTTagCompound()
+		level.setInteger("xPos", 3)
+		level.setInteger("zPos", -2)
+		level.setTag("Sections", list)
+		level.setTag("Entities", entities)
+		def root = new NBTTagCompound()
+		root.setTag("Level", level)
+		return root
+	}
+
+	private byte[] bytes(int length) {
+		def arr = new byte[length]
+		random.nextBytes(arr)
+		return arr
+	}
+
+	private static byte[] write(NBTTagCompound root) {
+		def out = new ByteArrayOutputStream()
+		CompressedStreamTools.write(root, new DataOutputStream(out))
+		return out.toByteArray()
+	}
+
+	private static DataInputStream stream(NBTTagCompound root) {
+		return new DataInputStream(new ByteArrayInputStream(write(root)))
+	}
+}
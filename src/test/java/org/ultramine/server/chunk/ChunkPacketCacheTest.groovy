@@ -0,0 +1,55 @@
+package org.ultramine.server.chunk
+
+import net.minecraft.world.chunk.Chunk
+import org.ultramine.core.service.ServiceDelegate
+import org.ultramine.server.internal.UMHooks.ChunkPacketData
+import org.ultramine.server.service.ServiceDelegateGenerator
+import spock.lang.Specification
+
+class ChunkPacketCacheTest extends Specification {
+	def "Default anti-xray provider is player independent through service delegate"() {
+		setup:
+		ServiceDelegate<AntiXRayService> delegate = ServiceDelegateGenerator.makeServiceDelegate(getClass(), "xray", AntiXRayService.class).newInstance()
+		delegate.setProvider(new AntiXRayService.EmptyImpl())
+
+		expect:
+		delegate.asService().getClass() != AntiXRayService.EmptyImpl.class
+		delegate.asService().isPlayerIndependent()
+	}
+
+	def "Cached payload is returned while chunk is unchanged"() {
+		setup:
+		def cache = new ChunkPacketCache()
+		def chunk = new Chunk(null, 3, -7)
+		def data = new ChunkPacketData(new byte[100], 100, 0)
+
+		when:
+		def first = cache.get(chunk)
+		cache.put(chunk.xPosition, chunk.zPosition, new ChunkPacketCache.Stamp(chunk), data)
+		def second = cache.get(chunk)
+		def third = cache.get(chunk)
+
+		then:
+		first == null
+		second.is(data)
+		third.is(data)
+		cache.getHits() == 2
+		cache.getMisses() == 1
+	}
+
+	def "Cached payload is dropped when chunk biomes change"() {
+		setup:
+		def cache = new ChunkPacketCache()
+		def chunk = new Chunk(null, 0, 0)
+		cache.put(0, 0, new ChunkPacketCache.Stamp(chunk), new ChunkPacketData(new byte[100], 100, 0))
+
+		when:
+		chunk.getBiomeArray()[0] = 1
+		def data = cache.get(chunk)
+
+		then:
+		data == null
+		cache.getHits() == 0
+		cache.size() == 0
+	}
+}
@@ -0,0 +1,145 @@
+package org.ultramine.server.chunk
+
+import net.minecraft.world.chunk.storage.RegionFile
+import spock.lang.Specification
+
+class NioRegionFileTest extends Specification {
+	static final int SECTOR = 4096
+
+	File file
+
+	def setup() {
+		file = File.createTempFile("region", ".mca")
+		file.delete()
+	}
+
+	def cleanup() {
+		file.delete()
+	}
+
+	def "New file has header sectors only"() {
+		when:
+		def region = new NioRegionFile(file)
+		region.close()
+
+		then:
+		file.length() == 2 * SECTOR
+	}
+
+	def "Allocation grows file by whole sectors"() {
+		setup:
+		def region = new NioRegionFile(file)
+
+		when:
+		write(region, 0, 0, payload(1, 5 * SECTOR))
+		write(region, 1, 0, payload(2, 100))
+		region.close()
+
+		then:
+		file.length() % SECTOR == 0
+		file.length() == (2 + 6 + 1) * SECTOR
+	}
+
+	def "Freed sectors are reused by first fit"() {
+		setup:
+		def region = new NioRegionFile(file)
+		write(region, 0, 0, payload(1, 5 * SECTOR))   // sectors 2..7
+		write(region, 1, 0, payload(2, 100))          // sector 8
+
+		when: "chunk is rewritten smaller, its old sectors are freed after the new ones are allocated"
+		write(region, 0, 0, payload(3, 100))          // sector 9, frees 2..7
+		def lengthAfterRewrite = file.length()
+		write(region, 2, 0, payload(4, 3 * SECTOR))   // fits into 2..5
+		write(region, 3, 0, payload(5, 100))          // fits into 6
+		region.close()
+
+		then:
+		lengthAfterRewrite == 10 * SECTOR
+		file.length() == 10 * SECTOR
+	}
+
+	def "Too large chunk is not saved"() {
+		setup:
+		def region = new NioRegionFile(file)
+
+		when:
+		write(region, 5, 5, payload(1, 256 * SECTOR))
+
+		then:
+		!region.chunkExists(5, 5)
+		file.length() == 2 * SECTOR
+
+		cleanup:
+		region.close()
+	}
+
+	def "Written chunks read back after reopening, with both backends"() {
+		setup:
+		def random = new Random(42)
+		def chunks = [:]
+		def region = new NioRegionFile(file)
+		200.times {
+			int x = random.nextInt(32)
+			int z = random.nextInt(32)
+			byte[] data = payload(random.nextLong(), random.nextInt(3 * SECTOR))
+			write(region, x, z, data)
+			chunks[[x, z]] = data
+		}
+		region.close()
+
+		when:
+		def reopened = new NioRegionFile(file)
+		def vanilla = new RegionFile(file)
+
+		then:
+		chunks.every { key, data -> read(reopened, key[0], key[1]) == data }
+		chunks.every { key, data -> read(vanilla, key[0], key[1]) == data }
+
+		cleanup:
+		reopened.close()
+		vanilla.close()
+	}
+
+	def "Chunks written after reopening do not overlap existing ones"() {
+		setup:
+		def region = new NioRegionFile(file)
+		write(region, 0, 0, payload(1, 2 * SECTOR))
+		write(region, 1, 0, payload(2, 2 * SECTOR))
+		write(region, 0, 0, payload(3, 100))
+		region.close()
+
+		when:
+		def reopened = new NioRegionFile(file)
+		write(reopened, 2, 0, payload(4, SECTOR))
+
+		then:
+		read(reopened, 0, 0) == payload(3, 100)
+		read(reopened, 1, 0) == payload(2, 2 * SECTOR)
+		read(reopened, 2, 0) == payload(4, SECTOR)
+
+		cleanup:
+		reopened.close()
+	}
+
+	/** Incompressible data, so its deflated size is close to its length */
+	static byte[] payload(long seed, int length) {
+		byte[] data = new byte[length]
+		new Random(seed).nextBytes(data)
+		return data
+	}
+
+	static void write(RegionFile region, int x, int z, byte[] data) {
+		def out = region.getChunkDataOutputStream(x, z)
+		out.write(data)
+		out.close()
+	}
+
+	static byte[] read(RegionFile region, int x, int z) {
+		def input = region.getChunkDataInputStream(x, z)
+		try {
+			return input.bytes
+		} finally {
+			input.close()
+		}
+	}
+}
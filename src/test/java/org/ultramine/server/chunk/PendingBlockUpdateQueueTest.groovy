@@ -0,0 +1,102 @@
+package org.ultramine.server.chunk
+
+import net.minecraft.init.Blocks
+import spock.lang.Specification
+
+class PendingBlockUpdateQueueTest extends Specification {
+	def "Updates are polled in the same order as from TreeSet"() {
+		expect:
+		compareWithTreeSet(seed, false)
+
+		where:
+		seed << (0..<20)
+	}
+
+	def "Updates are polled in the same order as from TreeSet when world time goes back"() {
+		expect:
+		compareWithTreeSet(seed, true)
+
+		where:
+		seed << (0..<20)
+	}
+
+	def "Update scheduled after fast-forward is not delayed"() {
+		setup:
+		def queue = new PendingBlockUpdateQueue(1000)
+		queue.add(0, 0, 0, Blocks.stone, 5000, 0, null, true, 1000)
+		queue.add(2, 0, 0, Blocks.stone, 9000, 0, null, true, 1000)
+
+		when: "time is fast-forwarded to the first update, as UMHooks does on chunk unload, and restored"
+		def fast = queue.poll(queue.getFirstTime())
+		queue.add(1, 0, 0, Blocks.stone, 1002, 0, null, true, 1000)
+
+		then:
+		fast.scheduledTime == 5000
+		queue.poll(1001) == null
+		queue.poll(1002).x == 1
+		queue.size() == 1
+	}
+
+	def "Partially polled tick is not polled again after time goes back"() {
+		setup:
+		def queue = new PendingBlockUpdateQueue(1000)
+		queue.add(0, 0, 0, Blocks.stone, 1100, 0, null, true, 1000)
+		queue.add(1, 0, 0, Blocks.stone, 1100, 1, null, true, 1000)
+
+		when:
+		def first = queue.poll(1100)
+		def early = queue.poll(1050)
+		def second = queue.poll(1100)
+
+		then:
+		first.x == 0
+		early == null
+		second.x == 1
+	}
+
+	/**
+	 * Schedules random updates, polls them tick by tick (sometimes only a few of a tick, as UMHooks does) and checks,
+	 * that the queue returns the same updates, as the vanilla TreeSet does.
+	 */
+	static boolean compareWithTreeSet(long seed, boolean rewind) {
+		def random = new Random(seed)
+		long now = 1000 + random.nextInt(100000)
+		def queue = new PendingBlockUpdateQueue(now)
+		def expected = new TreeSet<PendingBlockUpdate>()
+		def coords = new HashSet<Integer>()
+		int seq = 0
+		for(int step = 0; step < 3000; step++) {
+			int adds = random.nextInt(6)
+			for(int i = 0; i < adds; i++) {
+				int x = random.nextInt(16), y = random.nextInt(256), z = random.nextInt(16)
+				if(!coords.add(x | z << 4 | y << 8))
+					continue
+				long time = now + (random.nextInt(10) == 0 ? random.nextInt(20000) : random.nextInt(200))
+				int priority = random.nextInt(5) - 2
+				assert queue.add(x, y, z, Blocks.stone, time, priority, null, true, now)
+				expected.add(new PendingBlockUpdate(x, y, z, Blocks.stone, time, priority, seq++))
+			}
+
+			int limit = random.nextInt(4) == 0 ? random.nextInt(3) : Integer.MAX_VALUE
+			for(int i = 0; i < limit; i++) {
+				def e = !expected.isEmpty() && expected.first().scheduledTime <= now ? expected.pollFirst() : null
+				def p = queue.poll(now)
+				if(e == null && p == null)
+					break
+				assert p != null && e != null
+				assert [p.x, p.y, p.z, p.scheduledTime, p.priority] == [e.x, e.y, e.z, e.scheduledTime, e.priority]
+				coords.remove(e.x | e.z << 4 | e.y << 8)
+			}
+			assert queue.size() == expected.size()
+
+			int jump = random.nextInt(50)
+			if(jump == 0)
+				now += 1000 + random.nextInt(5000)
+			else if(jump == 1 && rewind)
+				now -= 1 + random.nextInt(5000)
+			else
+				now++
+		}
+		return true
+	}
+}
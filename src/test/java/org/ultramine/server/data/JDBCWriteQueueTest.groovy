@@ -0,0 +1,172 @@
+package org.ultramine.server.data
+
+import org.h2.jdbcx.JdbcDataSource
+import org.ultramine.server.util.GlobalExecutors
+import spock.lang.Specification
+
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.SQLException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class JDBCWriteQueueTest extends Specification {
+	static final String UPSERT = "INSERT INTO `kv` (`k`, `v`) VALUES (?, ?) ON DUPLICATE KEY UPDATE `v`=values(v)"
+	static int databases
+
+	JdbcDataSource ds
+	JDBCWriteQueue queue
+	CountDownLatch gate
+
+	def setup() {
+		ds = new JdbcDataSource()
+		ds.setURL("jdbc:h2:mem:writequeue" + databases++ + ";MODE=MySQL;DB_CLOSE_DELAY=-1")
+		sql("CREATE TABLE `kv` (`k` VARCHAR(64) PRIMARY KEY, `v` INT NOT NULL)")
+		queue = new JDBCWriteQueue(ds)
+		gate = new CountDownLatch(1)
+	}
+
+	def cleanup() {
+		gate.countDown()
+		sql("DROP ALL OBJECTS")
+	}
+
+	def "Newer write replaces queued write with the same key"() {
+		setup:
+		blockWriter()
+
+		when:
+		queue.add(new KVWrite("a", 1))
+		queue.add(new KVWrite("a", 2))
+		queue.add(new KVWrite("b", 3))
+
+		then:
+		queue.getQueueSize() == 2
+		queue.getCoalescedWrites() == 1
+		queue.getPending("a").value == 2
+
+		when:
+		flush()
+
+		then:
+		rows() == [a: 2, b: 3]
+		queue.getLastBatchSize() == 2
+		queue.getQueueSize() == 0
+	}
+
+	def "Queued writes are committed in one batch"() {
+		setup:
+		blockWriter()
+		5.times { queue.add(new KVWrite("k" + it, it)) }
+
+		when:
+		flush()
+
+		then:
+		rows() == [k0: 0, k1: 1, k2: 2, k3: 3, k4: 4]
+		queue.getMeanBatchSize() == 5
+		queue.getLastBatchSize() == 5
+	}
+
+	def "Batch with a failing row is rolled back and retried one by one"() {
+		setup:
+		blockWriter()
+		queue.add(new KVWrite("a", 1))
+		queue.add(new KVWrite("b", -1))
+		queue.add(new KVWrite("c", 3))
+
+		when:
+		flush()
+
+		then: "rows of the batch are committed, except the failing one"
+		rows() == [a: 1, c: 3]
+		queue.getLastBatchSize() == 3
+	}
+
+	def "Write is visible as pending until it is committed"() {
+		setup:
+		def preparing = new CountDownLatch(1)
+		def write = new KVWrite("a", 2)
+		write.preparing = preparing
+		write.proceed = gate
+		sql("INSERT INTO `kv` VALUES ('a', 1)")
+
+		when: "write is being flushed, its transaction is not committed yet"
+		queue.add(write)
+		assert preparing.await(10, TimeUnit.SECONDS)
+
+		then:
+		queue.getQueueSize() == 0
+		queue.getPending("a").is(write)
+		rows() == [a: 1]
+
+		when:
+		gate.countDown()
+		flush()
+
+		then:
+		queue.getPending("a") == null
+		rows() == [a: 2]
+	}
+
+	/** Holds the writing thread, so writes added meanwhile are queued into one batch */
+	void blockWriter() {
+		GlobalExecutors.writingIO().execute { gate.await() }
+	}
+
+	/** Releases the writing thread and waits for the flush, the writing executor is single-threaded */
+	void flush() {
+		gate.countDown()
+		GlobalExecutors.writingIO().submit({} as Runnable).get(10, TimeUnit.SECONDS)
+	}
+
+	Map<String, Integer> rows() {
+		def rows = [:]
+		Connection conn = ds.getConnection()
+		try {
+			def rs = conn.createStatement().executeQuery("SELECT `k`, `v` FROM `kv` ORDER BY `k`")
+			while(rs.next())
+				rows[rs.getString(1)] = rs.getInt(2)
+		} finally {
+			conn.close()
+		}
+		return rows
+	}
+
+	void sql(String sql) {
+		Connection conn = ds.getConnection()
+		try {
+			conn.createStatement().execute(sql)
+		} finally {
+			conn.close()
+		}
+	}
+
+	/** Write of a negative value fails on binding */
+	static class KVWrite extends JDBCWriteQueue.Write {
+		final int value
+		CountDownLatch preparing
+		CountDownLatch proceed
+
+		KVWrite(String key, int value) {
+			super(key, UPSERT)
+			this.value = value
+		}
+
+		@Override
+		protected void prepare(Connection conn) throws SQLException {
+			if(preparing != null) {
+				preparing.countDown()
+				proceed.await(10, TimeUnit.SECONDS)
+			}
+		}
+
+		@Override
+		protected void bind(PreparedStatement ps) throws SQLException {
+			if(value < 0)
+				throw new SQLException("Negative value of " + key)
+			ps.setString(1, key)
+			ps.setInt(2, value)
+		}
+	}
+}
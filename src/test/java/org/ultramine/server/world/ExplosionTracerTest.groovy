@@ -0,0 +1,177 @@
+package org.ultramine.server.world
+
+import net.minecraft.block.Block
+import net.minecraft.block.BlockAir
+import net.minecraft.block.BlockDirt
+import net.minecraft.block.BlockObsidian
+import net.minecraft.block.BlockStone
+import net.minecraft.entity.Entity
+import net.minecraft.world.ChunkPosition
+import net.minecraft.world.Explosion
+import net.minecraft.world.World
+import net.minecraft.world.WorldProviderSurface
+import net.minecraft.world.chunk.Chunk
+import net.minecraft.world.chunk.IChunkProvider
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage
+import org.ultramine.server.chunk.alloc.unsafe.UnsafeChunkAlloc
+import org.ultramine.server.util.UnsafeUtil
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ExplosionTracerTest extends Specification {
+	private static final int GRID = 16
+
+	TestWorld world
+	ExplosionTracer tracer
+
+	def setupSpec() {
+		// Registered by GameData on server, before Blocks is initialized
+		def add = Block.blockRegistry.class.getDeclaredMethod("addObjectRaw", int, String, Object)
+		add.accessible = true
+		if(Block.blockRegistry.getObjectById(1) == null) {
+			add.invoke(Block.blockRegistry, 0, "minecraft:air", new BlockAir())
+			add.invoke(Block.blockRegistry, 1, "minecraft:stone", new BlockStone().setResistance(10.0F))
+			add.invoke(Block.blockRegistry, 3, "minecraft:dirt", new BlockDirt().setResistance(2.5F))
+			add.invoke(Block.blockRegistry, 49, "minecraft:obsidian", new BlockObsidian().setResistance(2000.0F))
+		}
+	}
+
+	def setup() {
+		// Injected by ServiceInjectionTransformer on server
+		def alloc = ExtendedBlockStorage.getDeclaredField("alloc")
+		alloc.accessible = true
+		alloc.set(null, new UnsafeChunkAlloc())
+
+		world = (TestWorld)UnsafeUtil.getUnsafe().allocateInstance(TestWorld)
+		world.chunks = [:]
+		def provider = World.getDeclaredField("provider")
+		provider.accessible = true
+		provider.set(world, UnsafeUtil.getUnsafe().allocateInstance(WorldProviderSurface))
+		tracer = new ExplosionTracer(world)
+	}
+
+	@Unroll
+	def "Parallel tracing matches sequential on a fixed seed (seed #seed, size #size)"() {
+		setup:
+		def random = new Random(seed)
+		fill(-24, 40, -24, 40, 88, 40) { random.nextInt(3) == 0 ? Block.getBlockById(random.nextBoolean() ? 1 : 3) : null }
+		def explosion = new Explosion(world, null, 8.5, 64.5, 8.5, size)
+		def parallelCount = ExplosionTracer.getParallelCount()
+
+		when:
+		world.rand = new Random(seed)
+		def parallel = tracer.trace(explosion, GRID)
+
+		then:
+		ExplosionTracer.getParallelCount() == parallelCount + 1
+		!parallel.isEmpty()
+		parallel == traceSequential(explosion, new Random(seed), 1)[0]
+
+		where:
+		seed | size
+		1    | 2.0F
+		2    | 4.0F
+		3    | 4.0F
+		4    | 6.0F
+	}
+
+	def "Identical explosions are traced again if result depends on ray strengths"() {
+		setup:
+		fill(-24, 40, -24, 40, 60, 40) { Block.getBlockById(1) }
+		def explosion = new Explosion(world, null, 8.5, 64.5, 8.5, 4.0F)
+		def batchedCount = ExplosionTracer.getBatchedCount()
+
+		when:
+		world.rand = new Random(42)
+		def first = tracer.trace(explosion, GRID)
+		def second = tracer.trace(explosion, GRID)
+		def expected = traceSequential(explosion, new Random(42), 2)
+
+		then:
+		ExplosionTracer.getBatchedCount() == batchedCount
+		first == expected[0]
+		second == expected[1]
+		first != second
+	}
+
+	def "Identical explosions reuse result if every ray is stopped regardless of strength"() {
+		setup:
+		fill(4, 60, 4, 13, 69, 13) { Block.getBlockById(49) }
+		fill(8, 64, 8, 8, 64, 8) { null }
+		def explosion = new Explosion(world, null, 8.5, 64.5, 8.5, 4.0F)
+		def batchedCount = ExplosionTracer.getBatchedCount()
+
+		when:
+		world.rand = new Random(42)
+		def first = tracer.trace(explosion, GRID)
+		def second = tracer.trace(explosion, GRID)
+		def expected = traceSequential(explosion, new Random(42), 2)
+
+		then:
+		ExplosionTracer.getBatchedCount() == batchedCount + 1
+		first == [new ChunkPosition(8, 64, 8)] as Set
+		first == expected[0]
+		second == expected[1]
+	}
+
+	/** Traces {@code count} explosions on the world thread, drawing ray strengths as {@link ExplosionTracer#trace} does */
+	private List<Set<ChunkPosition>> traceSequential(Explosion explosion, Random random, int count) {
+		def dirs = ExplosionTracer.directions(GRID)
+		return (0..<count).collect {
+			def strengths = new float[dirs.length / 3]
+			for(int i = 0; i < strengths.length; i++)
+				strengths[i] = explosion.explosionSize * (0.7F + random.nextFloat() * 0.6F)
+			return tracer.traceSequential(explosion, dirs, strengths)
+		}
+	}
+
+	/** Sets blocks in the box, null block is air */
+	private void fill(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Closure<Block> block) {
+		for(int x = minX; x <= maxX; x++)
+			for(int y = minY; y <= maxY; y++)
+				for(int z = minZ; z <= maxZ; z++)
+					world.setTestBlock(x, y, z, block.call() ?: Block.getBlockById(0))
+	}
+
+	/** Allocated without constructor, only provider and chunks are set, chunks are created on access */
+	static class TestWorld extends World {
+		Map<Long, Chunk> chunks
+
+		TestWorld() {
+			super(null, null, null, null, null)
+		}
+
+		void setTestBlock(int x, int y, int z, Block block) {
+			def chunk = getChunkFromChunkCoords(x >> 4, z >> 4)
+			def ebs = chunk.getBlockStorageArray()[y >> 4]
+			if(ebs == null)
+				ebs = chunk.getBlockStorageArray()[y >> 4] = new ExtendedBlockStorage(y & ~15, true)
+			ebs.func_150818_a(x & 15, y & 15, z & 15, block)
+		}
+
+		@Override
+		Chunk getChunkFromChunkCoords(int cx, int cz) {
+			return chunks.computeIfAbsent(((long)cx << 32) | (cz & 0xFFFFFFFFL)) { new Chunk(this, cx, cz) }
+		}
+
+		@Override
+		long getTotalWorldTime() {
+			return 0
+		}
+
+		@Override
+		protected IChunkProvider createChunkProvider() {
+			return null
+		}
+
+		@Override
+		protected int func_152379_p() {
+			return 0
+		}
+
+		@Override
+		Entity getEntityByID(int id) {
+			return null
+		}
+	}
+}